@@ -1,10 +1,6 @@
 package se.liu.ida.entities;
 
 import java.awt.*;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
 
 import se.liu.ida.logic.Direction;
 import se.liu.ida.objects.Board;
@@ -20,60 +16,46 @@ public class BotPlayer extends Player {
      * Constructs a new BotPLayer on a random spot on the game area with specified
      * color with a randomized direction
      * 
+     * @param board the board the player plays on
      * @param color the color of the player
      */
-    public BotPlayer(Color color) {
-        super(color);
+    public BotPlayer(Board board, Color color) {
+        super(board, color);
 
-        ArrayList<String> names = new ArrayList<>();
-        BufferedReader br = null;
-
-        try {
-            br = new BufferedReader(
-                    new InputStreamReader(this.getClass().getResourceAsStream("res/pokemon_names.txt")));
-            while (br.ready())
-                names.add(br.readLine());
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (br != null)
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-        }
-
-        this.name = names.get(this.r.nextInt(names.size()));
+        this.name = PlayerNames.random(this.r);
     }
 
     /**
      * Constructs a new BotPLayer on a random spot on the game area with random
      * color
+     * 
+     * @param board the board the player plays on
      */
-    public BotPlayer() {
-        super();
+    public BotPlayer(Board board) {
+        super(board);
 
-        ArrayList<String> names = new ArrayList<>();
-        BufferedReader br = null;
+        this.name = PlayerNames.random(this.r);
+    }
 
-        try {
-            br = new BufferedReader(
-                    new InputStreamReader(this.getClass().getResourceAsStream("res/pokemon_names.txt")));
-            while (br.ready())
-                names.add(br.readLine());
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (br != null)
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-        }
+    /**
+     * Restores a BotPlayer from a saved game
+     * 
+     * @param board       the board the player plays on
+     * @param color       the color of the player
+     * @param name        the name of the player
+     * @param randomState state of the player's random generator
+     */
+    public BotPlayer(Board board, Color color, String name, long randomState) {
+        super(board, color, name, randomState);
+    }
 
-        this.name = names.get(this.r.nextInt(names.size()));
+    /**
+     * Creates a new bot of the same kind as this to take its place after it died
+     * 
+     * @return a new bot on the same board
+     */
+    public BotPlayer respawn() {
+        return new BotPlayer(board);
     }
 
     /**
@@ -93,9 +75,10 @@ public class BotPlayer extends Player {
         if (rand < 0.25d)
             currentDirection = Direction.WEST;
         while ((this.x + this.currentDirection.getX() < 0
-                || this.x + this.currentDirection.getX() >= Board.getInstance().getMapWidth())
+                || this.x + this.currentDirection.getX() >= board.getMapWidth())
                 || (this.y + this.currentDirection.getY() < 0
-                        || this.y + this.currentDirection.getY() >= Board.getInstance().getMapHeight())) {
+                        || this.y + this.currentDirection.getY() >= board.getMapHeight())) {
+            rand = r.nextDouble();
             if (rand < 1d)
                 currentDirection = Direction.NORTH;
             if (rand < 0.75d)
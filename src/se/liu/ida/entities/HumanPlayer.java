@@ -2,28 +2,104 @@ package se.liu.ida.entities;
 
 import java.awt.Color;
 
+import se.liu.ida.logic.Direction;
+import se.liu.ida.logic.InputQueue;
+import se.liu.ida.objects.Board;
+
 /**
  * A HumanPlayer is a player controlled by a person. HumanPlayer adds reactions to key presses on top of abstract class
- * Player. HumanPlayer stores which key speed direction should be updated regarding to in the next tick as well.
+ * Player. Key presses and turns from the network are queued and the board applies at most one of them per tick.
  */
 public class HumanPlayer extends Player {
+    // Most turns waiting for their tick
+    private static final int INPUT_CAPACITY = 16;
+
+    // Turns waiting for their tick, offered by one thread and taken by the board
+    private final InputQueue inputs = new InputQueue(INPUT_CAPACITY);
+    // Largest share of the game area owned so far, in percent
+    private double bestPercentOwned;
 
     /**
      * Constructs a HumanPlayer on a random spot on the game area with specified color
+     * @param board the board the player plays on
      * @param color the color of the player
      * @param name the name of player
      */
-    public HumanPlayer(Color color, String name) {
-        super(color);
+    public HumanPlayer(Board board, Color color, String name) {
+        super(board, color);
         this.name = name;
     }
     /**
      * Constructs a HumanPlayer on a random spot on the game area
+     * @param board the board the player plays on
      * @param name the name of player
      */
-    public HumanPlayer(String name) {
-        super();
+    public HumanPlayer(Board board, String name) {
+        super(board);
         this.name = name;
     }
 
+    /**
+     * Restores a HumanPlayer from a saved game
+     * @param board the board the player plays on
+     * @param color the color of the player
+     * @param name the name of player
+     * @param randomState state of the player's random generator
+     * @param bestPercentOwned largest share of the game area owned so far, in percent
+     */
+    public HumanPlayer(Board board, Color color, String name, long randomState, double bestPercentOwned) {
+        super(board, color, name, randomState);
+        this.bestPercentOwned = bestPercentOwned;
+    }
+
+    /**
+     * Queues a turn for the next tick. Must always be called from the same thread, such as the event dispatch thread.
+     * @param direction direction to turn in
+     * @return false if too many turns are waiting and the turn was dropped
+     */
+    public boolean queueTurn(Direction direction) {
+        return inputs.offer(direction);
+    }
+
+    /**
+     * Queues a turn for a given tick, for turns from the network or a replay. Must always be called from the same
+     * thread.
+     * @param direction direction to turn in
+     * @param tick tick to turn on, the next tick if it has passed
+     * @return false if too many turns are waiting and the turn was dropped
+     */
+    public boolean queueTurn(Direction direction, long tick) {
+        return inputs.offer(direction, tick);
+    }
+
+    /**
+     * Turns with the next queued turn that is due, called by the board before moving the player
+     * @param tick tick being simulated
+     */
+    public void applyInput(long tick) {
+        Direction direction = inputs.poll(tick);
+        if (direction != null)
+            this.currentDirection = direction;
+    }
+
+    /**
+     * Remembers the share of the game area owned if it is the largest so far, called by the board every tick
+     */
+    public void recordScore() {
+        bestPercentOwned = Math.max(bestPercentOwned, getPercentOwned());
+    }
+
+    /**
+     * @return largest share of the game area owned so far, in percent
+     */
+    public double getBestPercentOwned() {
+        return bestPercentOwned;
+    }
+
+    /**
+     * @return the queue of turns waiting for their tick
+     */
+    public InputQueue getInputs() {
+        return inputs;
+    }
 }
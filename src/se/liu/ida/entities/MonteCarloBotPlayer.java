@@ -0,0 +1,154 @@
+package se.liu.ida.entities;
+
+import java.awt.Color;
+
+import se.liu.ida.logic.Direction;
+import se.liu.ida.objects.Board;
+import se.liu.ida.objects.BoardSnapshot;
+
+/**
+ * MonteCarloBotPlayer is a BotPlayer that looks ahead before it moves. Each tick
+ * it forks a snapshot of the board and plays out a number of random rollouts
+ * for every direction it can turn to. The direction whose rollouts survive and
+ * claim the most on average is chosen. Rollouts are undone through the
+ * snapshot's journal instead of forking the snapshot again, which keeps each
+ * rollout in O(rollout depth).
+ */
+public class MonteCarloBotPlayer extends BotPlayer {
+    private static final int ROLLOUTS_PER_DIRECTION = 24;
+    private static final int ROLLOUT_DEPTH = 20;
+    // Trail length at which a rollout starts to head back home
+    private static final int RETURN_HOME_TRAIL = 8;
+    private static final double TURN_PROBABILITY = 0.3;
+    private static final double DEATH_SCORE = -1000;
+
+    /**
+     * Constructs a new MonteCarloBotPlayer on a random spot on the game area with
+     * specified color
+     *
+     * @param board the board the player plays on
+     * @param color the color of the player
+     */
+    public MonteCarloBotPlayer(Board board, Color color) {
+        super(board, color);
+    }
+
+    /**
+     * Constructs a new MonteCarloBotPlayer on a random spot on the game area with
+     * random color
+     *
+     * @param board the board the player plays on
+     */
+    public MonteCarloBotPlayer(Board board) {
+        super(board);
+    }
+
+    /**
+     * Restores a MonteCarloBotPlayer from a saved game
+     *
+     * @param board       the board the player plays on
+     * @param color       the color of the player
+     * @param name        the name of the player
+     * @param randomState state of the player's random generator
+     */
+    public MonteCarloBotPlayer(Board board, Color color, String name, long randomState) {
+        super(board, color, name, randomState);
+    }
+
+    @Override
+    public BotPlayer respawn() {
+        return new MonteCarloBotPlayer(board);
+    }
+
+    /**
+     * Chooses the best direction by simulating ahead and then moves in it
+     */
+    @Override
+    public void move() {
+        this.currentDirection = chooseDirection();
+        this.x += this.currentDirection.getX();
+        this.y += this.currentDirection.getY();
+    }
+
+    /**
+     * Runs rollouts for every direction except turning back and returns the one
+     * with best average score
+     *
+     * @return the direction to move in
+     */
+    private Direction chooseDirection() {
+        BoardSnapshot snapshot = board.getSnapshot().fork();
+        int me = snapshot.indexOf(this);
+        if (me < 0)
+            return currentDirection;
+
+        Direction best = currentDirection;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        int startOwned = snapshot.getOwnedCount(me);
+        for (Direction direction : Direction.values()) {
+            if (isReverse(direction, currentDirection))
+                continue;
+            double score = 0;
+            for (int i = 0; i < ROLLOUTS_PER_DIRECTION; i++) {
+                int mark = snapshot.mark();
+                score += rollout(snapshot, me, direction, startOwned);
+                snapshot.undo(mark);
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                best = direction;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Plays out one random line of play starting with first
+     *
+     * @param snapshot   snapshot to play in
+     * @param me         index of this player in snapshot
+     * @param first      first direction to move in
+     * @param startOwned number of cells owned before the rollout
+     * @return score of the rollout, gained cells if alive
+     */
+    private double rollout(BoardSnapshot snapshot, int me, Direction first, int startOwned) {
+        Direction direction = first;
+        for (int depth = 0; depth < ROLLOUT_DEPTH; depth++) {
+            if (!snapshot.advance(me, direction))
+                return DEATH_SCORE;
+            direction = rolloutPolicy(snapshot, me, direction);
+        }
+        // Unclaimed trail is a risk so it only counts for part of its length
+        return snapshot.getOwnedCount(me) - startOwned + 0.25 * snapshot.getTrailLength(me);
+    }
+
+    /**
+     * Picks the next direction in a rollout. Keeps going straight most of the time
+     * and turns back towards the start of the trail once the trail gets long.
+     */
+    private Direction rolloutPolicy(BoardSnapshot snapshot, int me, Direction direction) {
+        int start = snapshot.getTrailStart(me);
+        if (start >= 0 && snapshot.getTrailLength(me) >= RETURN_HOME_TRAIL) {
+            int toHomeX = start % snapshot.getWidth() - snapshot.getX(me);
+            int toHomeY = start / snapshot.getWidth() - snapshot.getY(me);
+            Direction home;
+            if (Math.abs(toHomeX) > Math.abs(toHomeY))
+                home = toHomeX > 0 ? Direction.EAST : Direction.WEST;
+            else
+                home = toHomeY > 0 ? Direction.SOUTH : Direction.NORTH;
+            if (!isReverse(home, direction))
+                return home;
+        }
+        if (r.nextDouble() < TURN_PROBABILITY) {
+            boolean vertical = direction.getX() == 0;
+            if (vertical)
+                return r.nextBoolean() ? Direction.EAST : Direction.WEST;
+            return r.nextBoolean() ? Direction.NORTH : Direction.SOUTH;
+        }
+        return direction;
+    }
+
+    private static boolean isReverse(Direction a, Direction b) {
+        return a.getX() == -b.getX() && a.getY() == -b.getY();
+    }
+}
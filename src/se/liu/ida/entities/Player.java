@@ -3,9 +3,10 @@ package se.liu.ida.entities;
 import java.awt.Color;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import se.liu.ida.logic.Direction;
+import se.liu.ida.logic.GameRandom;
 import se.liu.ida.objects.Board;
 import se.liu.ida.objects.Tile;
 
@@ -17,6 +18,11 @@ import se.liu.ida.objects.Tile;
  * player.
  */
 public abstract class Player implements Comparable<Player> {
+    // Source of player ids, 0 is reserved for no player
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+
+    // Unique id of the player
+    protected final int id = NEXT_ID.getAndIncrement();
     // Current coords
     protected int y;
     protected int x;
@@ -31,63 +37,101 @@ public abstract class Player implements Comparable<Player> {
     protected ArrayList<Tile> tilesContested;
     // Enum that indicate the current direction
     protected Direction currentDirection;
-    // Util random object
-    protected Random r;
+    // Util random object, whose state is saved with the game
+    protected GameRandom r;
+    // The board the player plays on
+    protected final Board board;
+    // Tile the player is currently on
+    protected Tile currentTile;
+    // Direction the player moves in during the current tick, used to smooth
+    // drawing
+    protected int dx;
+    protected int dy;
+    // Position before the last move, drawing moves the player from here
+    protected int lastX;
+    protected int lastY;
+    // Smallest rectangle around every tile the player has owned, it doesn't
+    // shrink when tiles are lost to other players
+    protected int minOwnedX = Integer.MAX_VALUE;
+    protected int minOwnedY = Integer.MAX_VALUE;
+    protected int maxOwnedX = Integer.MIN_VALUE;
+    protected int maxOwnedY = Integer.MIN_VALUE;
 
     /**
      * Initializes a player on a random spot on the game area with specified color
      * 
+     * @param board the board the player plays on
      * @param color the color of the player
      */
-    protected Player(Color color) {
+    protected Player(Board board, Color color) {
+        this.board = board;
         this.isAlive = true;
         this.tilesOwned = new ArrayList<>();
         this.tilesContested = new ArrayList<>();
-        this.r = new Random();
+        this.r = new GameRandom(board.nextSeed());
 
         this.color = color;
 
-        var width = Board.getInstance().getMapWidth();
-        var height = Board.getInstance().getMapHeight();
-        while ((this.x - 3 < 0 || this.x + 3 >= width) || (this.y - 3 < 0 || this.y + 3 >= height)) {
-            this.x = r.nextInt(width);
-            this.y = r.nextInt(height);
-        }
-
-        var rand = r.nextDouble();
-        if (rand < 1d)
-            currentDirection = Direction.NORTH;
-        if (rand < 0.75d)
-            currentDirection = Direction.EAST;
-        if (rand < 0.5d)
-            currentDirection = Direction.SOUTH;
-        if (rand < 0.25d)
-            currentDirection = Direction.WEST;
+        findSpawn();
     }
 
-    protected Player() {
+    /**
+     * Initializes a player on a random spot on the game area with random color
+     * 
+     * @param board the board the player plays on
+     */
+    protected Player(Board board) {
+        this.board = board;
         this.isAlive = true;
         this.tilesOwned = new ArrayList<>();
         this.tilesContested = new ArrayList<>();
-        this.r = new Random();
+        this.r = new GameRandom(board.nextSeed());
 
         this.color = new Color(r.nextInt(255), r.nextInt(255), r.nextInt(255));
 
-        var width = Board.getInstance().getMapWidth();
-        var height = Board.getInstance().getMapHeight();
-
-        var isTooClose = false;
+        findSpawn();
+    }
 
-        for (var i = this.x - 1; i < this.x + 1; i++)
-            for (var j = this.y - 1; j < this.y + 1; j++)
-                if (Board.getInstance().getTileAt(i, j).getOwner() != null)
-                    isTooClose = true;
-        
+    /**
+     * Restores a player from a saved game. The player has no tiles and no
+     * position until they are restored too.
+     * 
+     * @param board       the board the player plays on
+     * @param color       the color of the player
+     * @param name        the name of the player
+     * @param randomState state of the player's random generator
+     */
+    protected Player(Board board, Color color, String name, long randomState) {
+        this.board = board;
+        this.isAlive = true;
+        this.tilesOwned = new ArrayList<>();
+        this.tilesContested = new ArrayList<>();
+        this.r = GameRandom.ofState(randomState);
+        this.color = color;
+        this.name = name;
+    }
 
-        while ((this.x - 3 < 0 || this.x + 3 >= width) || (this.y - 3 < 0 || this.y + 3 >= height) || isTooClose) {
-            this.x = r.nextInt(width);
-            this.y = r.nextInt(height);
+    /**
+     * Picks a random position at least three tiles from the edges whose starting
+     * area isn't owned by anyone, and a random direction
+     */
+    private void findSpawn() {
+        var width = board.getMapWidth();
+        var height = board.getMapHeight();
+
+        var isTooClose = true;
+        for (var attempt = 0; isTooClose && attempt < 1000; attempt++) {
+            this.x = 3 + r.nextInt(width - 6);
+            this.y = 3 + r.nextInt(height - 6);
+
+            isTooClose = false;
+            for (var i = this.x - 1; i <= this.x + 1; i++)
+                for (var j = this.y - 1; j <= this.y + 1; j++)
+                    if (board.getTileAt(i, j).getOwner() != null)
+                        isTooClose = true;
         }
+        this.lastX = x;
+        this.lastY = y;
 
         var rand = r.nextDouble();
         if (rand < 1d)
@@ -108,8 +152,46 @@ public abstract class Player implements Comparable<Player> {
         this.y += this.currentDirection.getY();
     }
     
+    /**
+     * Remembers where the player is before it moves, called by the board before
+     * moving the player
+     */
+    public void rememberPosition() {
+        this.lastX = x;
+        this.lastY = y;
+    }
+
     public void changeDirection(Direction d)    {this.currentDirection = d;}
 
+    /**
+     * Get the direction the player is currently moving in
+     *
+     * @return current direction of the player
+     */
+    public Direction getDirection() {
+        return currentDirection;
+    }
+
+    /**
+     * Updates the direction used to smooth drawing to the current direction
+     */
+    public void updateD() {
+        this.dx = this.currentDirection.getX();
+        this.dy = this.currentDirection.getY();
+    }
+
+    /**
+     * Checks if moving on to tile runs over a trail. Running over a trail kills
+     * the player whose trail it is, including this player's own trail.
+     * 
+     * @param t Tile the player moved on to
+     */
+    public void checkCollision(Tile t) {
+        if (t.getContestedOwner() != null) {
+            t.getContestedOwner().die();
+        }
+    }
+
     /**
      * Logic for when player gets killed. Turns all associated tiles to neutral
      */
@@ -119,7 +201,9 @@ public abstract class Player implements Comparable<Player> {
         ArrayList<Tile> ownedTilesCopy = (ArrayList<Tile>) tilesOwned.clone();
         ArrayList<Tile> contestedTilesCopy = (ArrayList<Tile>) tilesContested.clone();
         for (int i = 0; i < ownedTilesCopy.size(); i++) {
-            ownedTilesCopy.get(i).setOwner(null);
+            // Tiles other players have captured since stay theirs
+            if (ownedTilesCopy.get(i).getOwner() == this)
+                ownedTilesCopy.get(i).setOwner(null);
         }
 
         for (int i = 0; i < contestedTilesCopy.size(); i++) {
@@ -139,6 +223,10 @@ public abstract class Player implements Comparable<Player> {
         tilesOwned.add(t);
         t.setOwner(this);
         t.setContestedOwner(null);
+        minOwnedX = Math.min(minOwnedX, t.getX());
+        minOwnedY = Math.min(minOwnedY, t.getY());
+        maxOwnedX = Math.max(maxOwnedX, t.getX());
+        maxOwnedY = Math.max(maxOwnedY, t.getY());
     }
 
     /**
@@ -147,8 +235,7 @@ public abstract class Player implements Comparable<Player> {
      * @return percentage of how much of the total game area a player owns
      */
     public double getPercentOwned() {
-        return 100 * getTilesOwned().size()
-                / (double) (Board.getInstance().getMapHeight() * Board.getInstance().getMapWidth());
+        return 100 * getTilesOwned().size() / (double) (board.getMapHeight() * board.getMapWidth());
     }
 
     /**
@@ -171,6 +258,24 @@ public abstract class Player implements Comparable<Player> {
         tilesContested.clear();
     }
 
+    /**
+     * Get the unique id of the player, ids are never 0
+     * 
+     * @return id of the player
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get the state of the player's random generator, to save the game
+     * 
+     * @return state of the random generator
+     */
+    public long getRandomState() {
+        return r.getState();
+    }
+
     /**
      * The x position in the tile system
      * 
@@ -181,10 +286,13 @@ public abstract class Player implements Comparable<Player> {
     }
 
     /**
+     * Places the player, which isn't drawn moving there
+     * 
      * @param x the x to set
      */
     public void setX(int x) {
         this.x = x;
+        this.lastX = x;
     }
 
     /**
@@ -197,10 +305,55 @@ public abstract class Player implements Comparable<Player> {
     }
 
     /**
+     * Places the player, which isn't drawn moving there
+     * 
      * @param y the y to set
      */
     public void setY(int y) {
         this.y = y;
+        this.lastY = y;
+    }
+
+    /**
+     * @return x position before the last move
+     */
+    public int getLastX() {
+        return lastX;
+    }
+
+    /**
+     * @return y position before the last move
+     */
+    public int getLastY() {
+        return lastY;
+    }
+
+    /**
+     * @return x direction the player moves in during the current tick
+     */
+    public int getDx() {
+        return dx;
+    }
+
+    /**
+     * @return y direction the player moves in during the current tick
+     */
+    public int getDy() {
+        return dy;
+    }
+
+    /**
+     * @param tile the tile the player is currently on
+     */
+    public void setCurrentTile(Tile tile) {
+        this.currentTile = tile;
+    }
+
+    /**
+     * @return the board the player plays on
+     */
+    public Board getBoard() {
+        return board;
     }
 
     /**
@@ -237,6 +390,29 @@ public abstract class Player implements Comparable<Player> {
         return tilesOwned;
     }
 
+    /**
+     * Get the smallest rectangle around every tile the player has owned. No tile
+     * the player owns is outside it, though it may be larger than the tiles it
+     * owns now.
+     * 
+     * @return smallest x position of a tile owned
+     */
+    public int getMinOwnedX() {
+        return minOwnedX;
+    }
+
+    public int getMinOwnedY() {
+        return minOwnedY;
+    }
+
+    public int getMaxOwnedX() {
+        return maxOwnedX;
+    }
+
+    public int getMaxOwnedY() {
+        return maxOwnedY;
+    }
+
     /**
      * Get tiles contested by player
      * 
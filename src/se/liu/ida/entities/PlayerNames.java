@@ -0,0 +1,59 @@
+package se.liu.ida.entities;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The Pokemon names players are given. The names are read once, the first time
+ * any are asked for, and shared by every player after that, so bots spawning
+ * and respawning in large worlds don't read the file again each time.
+ */
+public final class PlayerNames {
+    private PlayerNames() {
+    }
+
+    // Loads the names when first used, safely across threads
+    private static final class Holder {
+        private static final List<String> NAMES = read();
+    }
+
+    /**
+     * @return every name, in the order of the file
+     */
+    public static List<String> all() {
+        return Holder.NAMES;
+    }
+
+    /**
+     * Picks a random name
+     *
+     * @param r random generator to pick with
+     * @return the name
+     */
+    public static String random(Random r) {
+        List<String> names = Holder.NAMES;
+        return names.get(r.nextInt(names.size()));
+    }
+
+    private static List<String> read() {
+        ArrayList<String> names = new ArrayList<>();
+        InputStream in = PlayerNames.class.getResourceAsStream("res/pokemon_names.txt");
+        if (in == null)
+            throw new IllegalStateException("Missing resource res/pokemon_names.txt");
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null)
+                names.add(line);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return Collections.unmodifiableList(names);
+    }
+}
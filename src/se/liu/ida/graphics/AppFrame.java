@@ -4,17 +4,23 @@ import javax.swing.JFrame;
 
 import java.awt.CardLayout;
 
+import se.liu.ida.logic.GameController;
+import se.liu.ida.objects.Board;
+
 public class AppFrame extends JFrame {
     private Menu menu;
 	private GamePanel gamePanel;
+	private GameController gameController;
 
 	private static AppFrame instance = null;
 
 	public AppFrame()	{
         setSize(1000, 1000);
 		
-        menu = new Menu();
-		gamePanel = new GamePanel();
+        gameController = new GameController();
+        menu = new Menu(gameController);
+		gamePanel = new GamePanel(gameController);
+		gameController.setBoardListener(this::showBoard);
 
         getContentPane().setLayout(new CardLayout());
 
@@ -31,6 +37,20 @@ public class AppFrame extends JFrame {
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 	}
 
+	/**
+	 * Shows a board in the game panel, or the menu when a game has ended
+	 * @param board board to show, or null for the menu
+	 */
+	private void showBoard(Board board)	{
+		gamePanel.setBoard(board);
+		CardLayout cardLayout = (CardLayout) getContentPane().getLayout();
+		cardLayout.show(getContentPane(), board == null ? Menu.CARD_ID : GamePanel.CARD_ID);
+	}
+
+	public GameController getGameController()	{
+		return gameController;
+	}
+
 	public static AppFrame getInstance()	{
 		if (instance == null)
 			instance = new AppFrame();
@@ -1,17 +1,70 @@
 package se.liu.ida.graphics;
 
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+
+import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 
+import se.liu.ida.logic.GameController;
 import se.liu.ida.objects.Board;
 
 public class GamePanel extends JPanel{
 	public static final String CARD_ID = "game panel";
     private static final int SCALE_SIZE = 20;
 
+	private static final String SAVE_KEY = "save";
+
+	private final GameController gameController;
 	private Board board;
 
-	public GamePanel()	{
-		this.board = Board.getInstance();
+	/**
+	 * Creates the panel games are shown in, where F5 saves the game
+	 * @param gameController controller to save games with
+	 */
+	public GamePanel(GameController gameController)	{
+		this.gameController = gameController;
+		setLayout(new BorderLayout());
+		getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_F5, 0), SAVE_KEY);
+		getActionMap().put(SAVE_KEY, new AbstractAction() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (board != null && isShowing())
+					saveGame();
+			}
+		});
+	}
+
+	/**
+	 * Pauses and saves the game, telling the player once it is written
+	 */
+	private void saveGame()	{
+		gameController.saveGame().whenComplete((done, failure) -> SwingUtilities.invokeLater(() -> {
+			if (failure == null)
+				JOptionPane.showMessageDialog(this, "Game saved. Press P to keep playing, or resume it from the menu later.",
+						"Game saved", JOptionPane.INFORMATION_MESSAGE);
+			else
+				JOptionPane.showMessageDialog(this, "The game couldn't be saved: " + failure.getMessage(),
+						"Save failed", JOptionPane.ERROR_MESSAGE);
+		}));
+	}
+
+	/**
+	 * Sets the board to display in the panel, filling it
+	 * @param board the board to display, or null to display nothing
+	 */
+	public void setBoard(Board board)	{
+		if (this.board != null)
+			remove(this.board);
+		this.board = board;
+		if (board != null)
+			add(board, BorderLayout.CENTER);
+		revalidate();
+		repaint();
 	}
 
 }
@@ -1,25 +1,34 @@
 package se.liu.ida.graphics;
 
 import java.awt.Color;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.awt.GridLayout;
 import java.awt.Font;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSpinner;
 import javax.swing.JTextField;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
+import se.liu.ida.entities.PlayerNames;
 import se.liu.ida.logic.GameController;
+import se.liu.ida.objects.BoardArena;
+import se.liu.ida.storage.HighScore;
+import se.liu.ida.storage.HighScoreStore;
 
 /**
  * Class responsible for displaying menu and receiving game settings. Uses an
@@ -29,6 +38,15 @@ public class Menu extends JPanel {
     public static final String CARD_ID = "Menu";
 
     private static final String MONOSPACED = "Monospaced";
+    // Number of high scores shown
+    private static final int HIGH_SCORES = 5;
+    // Largest game area side and number of bots, in normal and large worlds
+    private static final int MAX_AREA = 500;
+    private static final int MAX_BOTS = 25;
+    private static final int LARGE_MAX_AREA = 10_000;
+    private static final int LARGE_MAX_BOTS = 2000;
+    // Time the settings must stay the same before a world is built for them
+    private static final int PREPARE_DELAY = 300;
 
     private JTextField p1NameField;
     private JTextField p2NameField;
@@ -36,40 +54,141 @@ public class Menu extends JPanel {
     private JSpinner areaHeightSpnr;
     private JSpinner gameSpeedSpnr;
     private JSpinner botNumberSpnr;
+    private JCheckBox largeWorldBox;
+    private JLabel highScoreList;
+    // Builds a world for the settings once they stop changing
+    private Timer prepareTimer;
 
     private Random r;
 
+    private GameController gameController;
+    private JButton resumeBtn;
+
     /**
      * Initializes the main menu
+     * 
+     * @param gameController controller to create games with
      */
-    public Menu() {
+    public Menu(GameController gameController) {
+        this.gameController = gameController;
         setBackground(Color.BLACK);
         
-        setLayout(new GridLayout(8, 2));
+        setLayout(new GridLayout(10, 2));
 
         addComponents();
 
+        prepareTimer = new Timer(PREPARE_DELAY, e -> prepareWorld());
+        prepareTimer.setRepeats(false);
+        for (JSpinner spinner : new JSpinner[] { areaWidthSpnr, areaHeightSpnr, botNumberSpnr })
+            spinner.addChangeListener(e -> prepareTimer.restart());
+
+        // Shows the scores of the last game when coming back to the menu
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentShown(ComponentEvent e) {
+                resumeBtn.setEnabled(gameController.hasSavedGame());
+                refreshHighScores();
+                prepareWorld();
+            }
+        });
+        refreshHighScores();
+        prepareWorld();
+    }
+
+    /**
+     * Builds a world for the chosen settings in the background, so pressing play
+     * doesn't wait for it. Worlds too large for the memory left are built when
+     * play is pressed instead, after warning the player.
+     */
+    private void prepareWorld() {
+        int width = (Integer) areaWidthSpnr.getValue();
+        int height = (Integer) areaHeightSpnr.getValue();
+        if (neededBytes(width, height) <= availableBytes())
+            gameController.prepare(width, height, (Integer) botNumberSpnr.getValue());
+    }
+
+    /**
+     * Reads the best high scores in the background and shows them when read, so
+     * the event dispatch thread never waits for the store
+     */
+    public void refreshHighScores() {
+        new SwingWorker<List<HighScore>, Void>() {
+            @Override
+            protected List<HighScore> doInBackground() throws Exception {
+                HighScoreStore store = gameController.getHighScores().get();
+                store.flush();
+                return store.top(HIGH_SCORES);
+            }
+
+            @Override
+            protected void done() {
+                StringBuilder text = new StringBuilder("<html>");
+                try {
+                    List<HighScore> scores = get();
+                    for (int i = 0; i < scores.size(); i++)
+                        text.append(i + 1).append(". ").append(escape(scores.get(i).toString())).append("<br>");
+                    if (scores.isEmpty())
+                        text.append("No games played yet");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                    text.append("High scores unavailable");
+                }
+                highScoreList.setText(text.append("</html>").toString());
+            }
+        }.execute();
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    /**
+     * Replaces the game with the one last saved, which the player unpauses with P,
+     * and tells the player if it can't be read
+     */
+    private void resumeSavedGame() {
+        try {
+            gameController.resumeSavedGame();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "The saved game couldn't be resumed: " + e.getMessage(),
+                    "Resume failed", JOptionPane.ERROR_MESSAGE);
+        }
     }
 
     /**
      * Adds and styles all components in menu
      */
     private void addComponents() {
-        // Empty cells
-        add(new JLabel(" "));
+        // Resumes the game last saved with F5, enabled when there is one
+        resumeBtn = new JButton("Resume Saved Game");
+        resumeBtn.setFont(new Font(MONOSPACED, Font.PLAIN, 24));
+        resumeBtn.setBackground(Color.BLACK);
+        resumeBtn.setForeground(Color.WHITE);
+        resumeBtn.setFocusPainted(false);
+        resumeBtn.setBorderPainted(false);
+        resumeBtn.setEnabled(gameController.hasSavedGame());
+        resumeBtn.addActionListener(l -> resumeSavedGame());
+        add(resumeBtn);
         add(new JLabel(" "));
 
         // Play buttons
         JButton playBtn = new JButton("Play Singleplayer");
         JButton playMultiBtn = new JButton("Play Multiplayer");
 
-        playBtn.addActionListener(l -> GameController.getInstance().createBoard(this.p1NameField.getText(),
-                (Integer) this.areaWidthSpnr.getValue(), (Integer) this.areaHeightSpnr.getValue(),
-                (Integer) this.gameSpeedSpnr.getValue(), (Integer) this.botNumberSpnr.getValue()));
-        playMultiBtn.addActionListener(
-                l -> GameController.getInstance().createBoard(this.p1NameField.getText(), this.p2NameField.getText(),
+        playBtn.addActionListener(l -> {
+            if (canStart())
+                this.gameController.createBoard(this.p1NameField.getText(), (Integer) this.areaWidthSpnr.getValue(),
+                        (Integer) this.areaHeightSpnr.getValue(), (Integer) this.gameSpeedSpnr.getValue(),
+                        (Integer) this.botNumberSpnr.getValue());
+        });
+        playMultiBtn.addActionListener(l -> {
+            if (canStart())
+                this.gameController.createBoard(this.p1NameField.getText(), this.p2NameField.getText(),
                         (Integer) this.areaWidthSpnr.getValue(), (Integer) this.areaHeightSpnr.getValue(),
-                        (Integer) this.gameSpeedSpnr.getValue(), (Integer) this.botNumberSpnr.getValue()));
+                        (Integer) this.gameSpeedSpnr.getValue(), (Integer) this.botNumberSpnr.getValue());
+        });
 
         JButton[] buttons = { playBtn, playMultiBtn };
 
@@ -101,26 +220,10 @@ public class Menu extends JPanel {
             add(label);
         }
 
-        ArrayList<String> names = new ArrayList<>();
-        BufferedReader br = null;
-        try {
-            br = new BufferedReader(new InputStreamReader(this.getClass().getResourceAsStream("res/pokemon_names.txt")));
-            while (br.ready())
-                names.add(br.readLine());
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (br != null)
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-        }
         r = new Random();
         // Name text fields
-        p1NameField = new JTextField(names.get(r.nextInt(names.size())));
-        p2NameField = new JTextField(names.get(r.nextInt(names.size())));
+        p1NameField = new JTextField(PlayerNames.random(r));
+        p2NameField = new JTextField(PlayerNames.random(r));
 
         JTextField[] textFields = { p1NameField, p2NameField };
 
@@ -138,13 +241,13 @@ public class Menu extends JPanel {
 
         // Setting labels and spinners
         JLabel areaHeightLabel = new JLabel("Game area height:");
-        areaHeightSpnr = new JSpinner(new SpinnerNumberModel(100, 25, 500, 5));
+        areaHeightSpnr = new JSpinner(new SpinnerNumberModel(100, 25, MAX_AREA, 5));
         JLabel areaWidthLabel = new JLabel("Game area width:");
-        areaWidthSpnr = new JSpinner(new SpinnerNumberModel(100, 25, 500, 5));
+        areaWidthSpnr = new JSpinner(new SpinnerNumberModel(100, 25, MAX_AREA, 5));
         JLabel speedLabel = new JLabel("Game speed (1-5):");
         gameSpeedSpnr = new JSpinner(new SpinnerNumberModel(3, 1, 5, 1));
         JLabel botNumberLabel = new JLabel("Number of bots:");
-        botNumberSpnr = new JSpinner(new SpinnerNumberModel(10, 0, 25, 1));
+        botNumberSpnr = new JSpinner(new SpinnerNumberModel(10, 0, MAX_BOTS, 1));
 
         JLabel[] settingLabels = { areaHeightLabel, areaWidthLabel, speedLabel, botNumberLabel };
         JSpinner[] settingSpinners = { areaHeightSpnr, areaWidthSpnr, gameSpeedSpnr, botNumberSpnr };
@@ -173,6 +276,84 @@ public class Menu extends JPanel {
             add(component);
         }
 
+        // Large worlds lift the limits on game area and bots
+        JLabel largeWorldLabel = new JLabel("Large world:");
+        largeWorldLabel.setFont(new Font(MONOSPACED, Font.PLAIN, 24));
+        largeWorldLabel.setForeground(Color.WHITE);
+        largeWorldLabel.setHorizontalAlignment(JLabel.RIGHT);
+        largeWorldBox = new JCheckBox("up to " + LARGE_MAX_AREA + "x" + LARGE_MAX_AREA + ", " + LARGE_MAX_BOTS + " bots");
+        largeWorldBox.setFont(new Font(MONOSPACED, Font.PLAIN, 24));
+        largeWorldBox.setBackground(Color.BLACK);
+        largeWorldBox.setForeground(Color.WHITE);
+        largeWorldBox.setFocusPainted(false);
+        largeWorldBox.addItemListener(e -> setLargeWorld(largeWorldBox.isSelected()));
+        add(largeWorldLabel);
+        add(largeWorldBox);
+
+        // High scores, filled in by refreshHighScores
+        JLabel highScoreLabel = new JLabel("High scores:");
+        highScoreLabel.setFont(new Font(MONOSPACED, Font.PLAIN, 24));
+        highScoreLabel.setForeground(Color.WHITE);
+        highScoreLabel.setHorizontalAlignment(JLabel.RIGHT);
+        highScoreList = new JLabel("Loading...");
+        highScoreList.setFont(new Font(MONOSPACED, Font.PLAIN, 14));
+        highScoreList.setForeground(Color.WHITE);
+        add(highScoreLabel);
+        add(highScoreList);
+
+    }
+
+    /**
+     * Sets the limits of the game area and bot spinners, lowering their values
+     * if they are above the new limits
+     * 
+     * @param large true for large world limits, false for normal limits
+     */
+    private void setLargeWorld(boolean large) {
+        setMaximum(areaHeightSpnr, large ? LARGE_MAX_AREA : MAX_AREA);
+        setMaximum(areaWidthSpnr, large ? LARGE_MAX_AREA : MAX_AREA);
+        setMaximum(botNumberSpnr, large ? LARGE_MAX_BOTS : MAX_BOTS);
+    }
+
+    private static void setMaximum(JSpinner spinner, int maximum) {
+        SpinnerNumberModel model = (SpinnerNumberModel) spinner.getModel();
+        model.setMaximum(maximum);
+        if ((Integer) model.getValue() > maximum)
+            model.setValue(maximum);
+    }
+
+    /**
+     * Checks that a game with the chosen settings can start, either because its
+     * world has been built already or because it fits in memory, and tells the
+     * player if it doesn't
+     * 
+     * @return true if the game can start
+     */
+    private boolean canStart() {
+        int width = (Integer) areaWidthSpnr.getValue();
+        int height = (Integer) areaHeightSpnr.getValue();
+        if (gameController.isPrepared(width, height, (Integer) botNumberSpnr.getValue()))
+            return true;
+        long needed = neededBytes(width, height);
+        long available = availableBytes();
+        if (needed <= available)
+            return true;
+        JOptionPane.showMessageDialog(this,
+                String.format("A %dx%d world needs about %d MB of memory but only %d MB is available.%n"
+                        + "Choose a smaller world or start the game with a larger -Xmx.", width, height,
+                        needed >> 20, available >> 20),
+                "World too large", JOptionPane.WARNING_MESSAGE);
+        return false;
+    }
+
+    private static long neededBytes(int width, int height) {
+        // Leaves room for the territory players claim
+        return 2 * BoardArena.estimateBytes(width, height);
+    }
+
+    private static long availableBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
     }
 
     /**
@@ -0,0 +1,212 @@
+package se.liu.ida.graphics;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import se.liu.ida.entities.Player;
+import se.liu.ida.objects.TileLayers;
+
+/**
+ * A Minimap keeps the territory of the whole game area as a pyramid of
+ * downsampled rasters, where each pixel of a level is the average color of the
+ * tiles it covers. Level 0 covers 4x4 tiles per pixel and each level above
+ * covers 4x4 pixels of the one below, so 16x16 and 64x64 tiles.
+ *
+ * After the first build the levels are only updated where tiles changed owner,
+ * as listed by TileLayers, so a tick costs O(changes x levels) rather than
+ * O(game area). Each changed pixel is recomputed from the 16 pixels or tiles
+ * under it, so the levels never drift from the tiles.
+ */
+public class Minimap {
+    // Pixels of one level covered by a pixel of the level above, per side
+    private static final int SHIFT = 2;
+    private static final int FACTOR = 1 << SHIFT;
+    private static final int LEVELS = 3;
+    private static final int NO_OWNER = Color.WHITE.getRGB();
+
+    private final TileLayers layers;
+    private final int[] widths = new int[LEVELS];
+    private final int[] heights = new int[LEVELS];
+    // Colors of each level row by row, and which pixels must be recomputed
+    private final int[][] levels = new int[LEVELS][];
+    private final boolean[][] dirty = new boolean[LEVELS][];
+    private final int[][] dirtyPixels = new int[LEVELS][];
+    private final int[] dirtyCounts = new int[LEVELS];
+
+    // Drawn color of every player on the board by id
+    private final HashMap<Integer, Integer> colors = new HashMap<>();
+    // Image the level shown is copied into for drawing
+    private BufferedImage display;
+
+    /**
+     * Creates a minimap of layers, with every level white until it is built
+     *
+     * @param layers layers of the game area
+     */
+    public Minimap(TileLayers layers) {
+        this.layers = layers;
+        int width = layers.getWidth();
+        int height = layers.getHeight();
+        for (int level = 0; level < LEVELS; level++) {
+            width = (width + FACTOR - 1) >> SHIFT;
+            height = (height + FACTOR - 1) >> SHIFT;
+            widths[level] = width;
+            heights[level] = height;
+            levels[level] = new int[width * height];
+            dirty[level] = new boolean[width * height];
+            dirtyPixels[level] = new int[64];
+        }
+    }
+
+    /**
+     * Builds every level from all tiles, in O(game area)
+     *
+     * @param players players on the board
+     */
+    public void rebuild(List<Player> players) {
+        updateColors(players);
+        for (int level = 0; level < LEVELS; level++) {
+            for (int pixel = 0; pixel < levels[level].length; pixel++)
+                levels[level][pixel] = average(level, pixel);
+        }
+    }
+
+    /**
+     * Updates the pixels over tiles whose owner changed since the layers' changes
+     * were last cleared. Leaves the changes for the caller to clear.
+     *
+     * @param players players on the board
+     */
+    public void update(List<Player> players) {
+        int changes = layers.getChangeCount();
+        if (changes == 0)
+            return;
+        updateColors(players);
+        int width = layers.getWidth();
+        for (int i = 0; i < changes; i++) {
+            int cell = layers.getChange(i);
+            if ((layers.getChangeFlags(cell) & TileLayers.OWNER_CHANGED) != 0)
+                markDirty(0, ((cell / width) >> SHIFT) * widths[0] + ((cell % width) >> SHIFT));
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            for (int i = 0; i < dirtyCounts[level]; i++) {
+                int pixel = dirtyPixels[level][i];
+                dirty[level][pixel] = false;
+                levels[level][pixel] = average(level, pixel);
+                if (level + 1 < LEVELS)
+                    markDirty(level + 1, ((pixel / widths[level]) >> SHIFT) * widths[level + 1]
+                            + ((pixel % widths[level]) >> SHIFT));
+            }
+            dirtyCounts[level] = 0;
+        }
+    }
+
+    /**
+     * Copies the finest level that fits in a square into an image for drawing,
+     * or the coarsest level if none fits. The image is reused by the next call.
+     *
+     * @param size side of the square in pixels
+     * @return image of the level
+     */
+    public BufferedImage snapshot(int size) {
+        int level = 0;
+        while (level + 1 < LEVELS && Math.max(widths[level], heights[level]) > size)
+            level++;
+        int width = widths[level];
+        int height = heights[level];
+        if (display == null || display.getWidth() != width || display.getHeight() != height)
+            display = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        display.getRaster().setDataElements(0, 0, width, height, levels[level]);
+        return display;
+    }
+
+    /**
+     * @return number of levels
+     */
+    public int getLevelCount() {
+        return LEVELS;
+    }
+
+    /**
+     * Get the color of a pixel of a level
+     *
+     * @param level level, 0 for the finest
+     * @param x     x position in the level
+     * @param y     y position in the level
+     * @return color as RGB
+     */
+    public int getRGB(int level, int x, int y) {
+        return levels[level][y * widths[level] + x];
+    }
+
+    private void markDirty(int level, int pixel) {
+        if (dirty[level][pixel])
+            return;
+        dirty[level][pixel] = true;
+        if (dirtyCounts[level] == dirtyPixels[level].length)
+            dirtyPixels[level] = Arrays.copyOf(dirtyPixels[level], 2 * dirtyCounts[level]);
+        dirtyPixels[level][dirtyCounts[level]++] = pixel;
+    }
+
+    private void updateColors(List<Player> players) {
+        colors.clear();
+        for (Player player : players)
+            colors.put(player.getId(), player.getColor().darker().getRGB());
+    }
+
+    /**
+     * Averages the tiles or pixels under a pixel, each pixel weighted by the
+     * number of tiles it covers
+     */
+    private int average(int level, int pixel) {
+        int x = pixel % widths[level];
+        int y = pixel / widths[level];
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        long weight = 0;
+        if (level == 0) {
+            int[] owners = layers.getOwners();
+            int width = layers.getWidth();
+            int maxX = Math.min(layers.getWidth(), (x + 1) << SHIFT);
+            int maxY = Math.min(layers.getHeight(), (y + 1) << SHIFT);
+            int lastId = TileLayers.NO_PLAYER;
+            int rgb = NO_OWNER;
+            for (int cellY = y << SHIFT; cellY < maxY; cellY++) {
+                for (int cellX = x << SHIFT; cellX < maxX; cellX++) {
+                    int id = owners[cellY * width + cellX];
+                    if (id != lastId) {
+                        lastId = id;
+                        rgb = colors.getOrDefault(id, NO_OWNER);
+                    }
+                    red += (rgb >> 16) & 0xff;
+                    green += (rgb >> 8) & 0xff;
+                    blue += rgb & 0xff;
+                    weight++;
+                }
+            }
+        } else {
+            int[] below = levels[level - 1];
+            int belowWidth = widths[level - 1];
+            int maxX = Math.min(belowWidth, (x + 1) << SHIFT);
+            int maxY = Math.min(heights[level - 1], (y + 1) << SHIFT);
+            // Tiles per side covered by a pixel below, less on the last row and column
+            int side = 1 << (SHIFT * level);
+            for (int belowY = y << SHIFT; belowY < maxY; belowY++) {
+                int tilesY = Math.min(side, layers.getHeight() - belowY * side);
+                for (int belowX = x << SHIFT; belowX < maxX; belowX++) {
+                    int covered = tilesY * Math.min(side, layers.getWidth() - belowX * side);
+                    int rgb = below[belowY * belowWidth + belowX];
+                    red += (long) ((rgb >> 16) & 0xff) * covered;
+                    green += (long) ((rgb >> 8) & 0xff) * covered;
+                    blue += (long) (rgb & 0xff) * covered;
+                    weight += covered;
+                }
+            }
+        }
+        return (int) (red / weight) << 16 | (int) (green / weight) << 8 | (int) (blue / weight);
+    }
+}
@@ -0,0 +1,64 @@
+package se.liu.ida.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import se.liu.ida.entities.BotPlayer;
+import se.liu.ida.objects.Board;
+import se.liu.ida.objects.BoardArena;
+
+/**
+ * Benchmarks keeping a minimap up to date tick by tick against building it from
+ * the whole game area, on a headless board. Checks that the updated minimap ends
+ * up the same as one built from scratch.
+ */
+public class MinimapBenchmark {
+    /**
+     * Arguments are size of game area, number of bots and ticks, which default to
+     * 4000, 400 and 500.
+     *
+     * @param args optional size, bots and ticks
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int botCount = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        List<Function<Board, ? extends BotPlayer>> bots = new ArrayList<>();
+        for (int i = 0; i < botCount; i++)
+            bots.add(BotPlayer::new);
+        Board board = new Board(new BoardArena(size, size), 1, bots);
+        Minimap minimap = new Minimap(board.getLayers());
+        long start = System.nanoTime();
+        minimap.rebuild(board.getPlayers());
+        double rebuildMillis = (System.nanoTime() - start) / 1e6;
+        board.getLayers().clearChanges();
+
+        long updateNanos = 0;
+        long changes = 0;
+        for (int i = 0; i < ticks; i++) {
+            board.tick();
+            changes += board.getLayers().getChangeCount();
+            start = System.nanoTime();
+            minimap.update(board.getPlayers());
+            updateNanos += System.nanoTime() - start;
+            board.getLayers().clearChanges();
+        }
+
+        Minimap rebuilt = new Minimap(board.getLayers());
+        rebuilt.rebuild(board.getPlayers());
+        for (int level = 0; level < minimap.getLevelCount(); level++) {
+            int levelSize = (size + (1 << (2 * level + 2)) - 1) >> (2 * level + 2);
+            for (int y = 0; y < levelSize; y++) {
+                for (int x = 0; x < levelSize; x++) {
+                    if (minimap.getRGB(level, x, y) != rebuilt.getRGB(level, x, y))
+                        throw new IllegalStateException("Level " + level + " differs at " + x + ", " + y);
+                }
+            }
+        }
+        System.out.printf("%dx%d, %d bots: rebuild %.1f ms, update %.3f ms per tick for %d changes per tick%n",
+                size, size, botCount, rebuildMillis, updateNanos / 1e6 / ticks, changes / ticks);
+    }
+}
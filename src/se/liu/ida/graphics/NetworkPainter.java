@@ -0,0 +1,140 @@
+package se.liu.ida.graphics;
+
+import java.awt.*;
+import java.util.HashMap;
+
+import se.liu.ida.logic.Direction;
+import se.liu.ida.network.ClientWorld;
+import se.liu.ida.network.NetworkClient;
+import se.liu.ida.network.PlayerPrediction;
+import se.liu.ida.objects.BoardSnapshot;
+import se.liu.ida.objects.Tile;
+
+/**
+ * Draws a network client's predicted game area the same way a Painter draws a
+ * board, following the local player. Other players are smoothed between ticks
+ * like in Painter, and when the prediction is corrected the local player is
+ * drawn where it was and slides to its corrected tile over about a tick.
+ */
+public class NetworkPainter {
+    private final int scale;
+    private final NetworkClient client;
+    // Colors of players by id
+    private final HashMap<Integer, Color> colors;
+
+    // Tile the view was last centered on, kept while the local player is dead
+    private int focusX;
+    private int focusY;
+    private long lastDrawNanos;
+
+    /**
+     * Creates a painter for a client
+     *
+     * @param scale  how much a tile should be scaled from one pixel
+     * @param client client whose prediction should be drawn
+     */
+    public NetworkPainter(int scale, NetworkClient client) {
+        this.scale = scale;
+        this.client = client;
+        this.colors = new HashMap<>();
+    }
+
+    /**
+     * Draws the game area within the clip bounds of g
+     *
+     * @param g graphics object used to draw
+     */
+    public void draw(Graphics g) {
+        int width = g.getClipBounds().width;
+        int height = g.getClipBounds().height;
+        PlayerPrediction prediction = client.getPrediction();
+        BoardSnapshot snapshot = prediction == null ? null : prediction.getSnapshot();
+        if (snapshot == null) {
+            g.setColor(Color.WHITE);
+            g.drawString("Connecting...", width / 2 - 40, height / 2);
+            return;
+        }
+
+        // Blend away corrections over about a tick
+        long now = System.nanoTime();
+        if (lastDrawNanos != 0 && client.getPeriodNanos() > 0)
+            prediction.decayError(Math.exp(-(now - lastDrawNanos) / (double) client.getPeriodNanos()));
+        lastDrawNanos = now;
+
+        int local = prediction.getIndex();
+        Direction focusDirection = null;
+        if (local >= 0) {
+            focusX = snapshot.getX(local);
+            focusY = snapshot.getY(local);
+            focusDirection = snapshot.getDirection(local);
+        }
+        drawGameArea(g, snapshot, width, height);
+        drawPlayers(g, snapshot, prediction, focusDirection, width, height);
+
+        if (local < 0) {
+            g.setColor(Color.BLACK);
+            g.drawString("You died, press Enter to play again", width / 2 - 110, height / 2 - scale);
+        }
+    }
+
+    /**
+     * Draws the tiles visible around the followed tile
+     */
+    private void drawGameArea(Graphics g, BoardSnapshot snapshot, int width, int height) {
+        int halfX = width / (2 * scale) + 2;
+        int halfY = height / (2 * scale) + 2;
+        for (int y = Math.max(0, focusY - halfY); y <= Math.min(snapshot.getHeight() - 1, focusY + halfY); y++) {
+            for (int x = Math.max(0, focusX - halfX); x <= Math.min(snapshot.getWidth() - 1, focusX + halfX); x++) {
+                int drawX = (x - focusX) * scale + ((width - scale) / 2);
+                int drawY = (y - focusY) * scale + ((height - scale) / 2);
+                int owner = snapshot.getOwner(x, y);
+                int contested = snapshot.getContestedOwner(x, y);
+                g.setColor(Color.WHITE);
+                g.fillRect(drawX, drawY, scale, scale);
+                g.setColor(Tile.colorOf(owner < 0 ? null : colorOf(snapshot.getId(owner)),
+                        contested < 0 ? null : colorOf(snapshot.getId(contested)), owner == contested));
+                g.fillRect(drawX, drawY, scale, scale);
+            }
+        }
+    }
+
+    /**
+     * Draws the players alive, smoothing their movement like Painter
+     */
+    private void drawPlayers(Graphics g, BoardSnapshot snapshot, PlayerPrediction prediction,
+            Direction focusDirection, int width, int height) {
+        double fraction = client.getTickFraction();
+        int focusDx = focusDirection == null ? 0 : focusDirection.getX();
+        int focusDy = focusDirection == null ? 0 : focusDirection.getY();
+        for (int i = 0; i < snapshot.getPlayerCount(); i++) {
+            if (!snapshot.isAlive(i))
+                continue;
+            int drawX = (snapshot.getX(i) - focusX) * scale + ((width - scale) / 2);
+            int drawY = (snapshot.getY(i) - focusY) * scale + ((height - scale) / 2);
+            if (i == prediction.getIndex()) {
+                drawX += (int) (prediction.getErrorX() * scale);
+                drawY += (int) (prediction.getErrorY() * scale);
+            } else {
+                Direction direction = snapshot.getDirection(i);
+                drawX += Painter.smoothing(direction.getX(), focusDx, fraction, scale);
+                drawY += Painter.smoothing(direction.getY(), focusDy, fraction, scale);
+            }
+            if ((drawX + scale > 0 && drawX < width) && (drawY + scale > 0 && drawY < height)) {
+                g.setColor(colorOf(snapshot.getId(i)));
+                g.fillRect(drawX, drawY, scale, scale);
+            }
+        }
+    }
+
+    private Color colorOf(int id) {
+        Color color = colors.get(id);
+        if (color == null) {
+            ClientWorld world = client.getWorld();
+            color = new Color(world.getColor(id));
+            // Players not seen yet are gray until they are
+            if (world.hasColor(id))
+                colors.put(id, color);
+        }
+        return color;
+    }
+}
@@ -0,0 +1,145 @@
+package se.liu.ida.graphics;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+
+import javax.swing.AbstractAction;
+import javax.swing.ActionMap;
+import javax.swing.InputMap;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import se.liu.ida.logic.Direction;
+import se.liu.ida.network.NetworkClient;
+
+/**
+ * A panel playing on a game server. Turns are predicted locally by the
+ * client, see NetworkClient, and the panel updates the client and repaints at
+ * the same rate as a local board.
+ */
+public class NetworkPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    private static final int SCALE_SIZE = 20;
+    private static final int FRAME_INTERVAL = 1000 / 60;
+
+    private final NetworkClient client;
+    private final NetworkPainter painter;
+    private final Timer timer;
+
+    /**
+     * Creates a panel for a connected client
+     *
+     * @param client client to play with
+     */
+    public NetworkPanel(NetworkClient client) {
+        this.client = client;
+        this.painter = new NetworkPainter(SCALE_SIZE, client);
+        this.timer = new Timer(FRAME_INTERVAL, e -> update());
+        setBackground(Color.BLACK);
+        specifyKeyActions();
+    }
+
+    /**
+     * Starts updating and repainting
+     */
+    public void start() {
+        timer.start();
+    }
+
+    /**
+     * Stops updating and closes the connection
+     */
+    public void stop() {
+        timer.stop();
+        try {
+            client.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void update() {
+        try {
+            client.update();
+        } catch (IOException e) {
+            e.printStackTrace();
+            timer.stop();
+        }
+        repaint();
+    }
+
+    @Override
+    public void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        painter.draw(g);
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    /**
+     * Binds the arrow keys to turns and Enter to joining again after dying
+     */
+    private void specifyKeyActions() {
+        InputMap im = getInputMap(WHEN_IN_FOCUSED_WINDOW);
+        ActionMap am = getActionMap();
+        bindTurn(im, am, KeyEvent.VK_UP, Direction.NORTH);
+        bindTurn(im, am, KeyEvent.VK_DOWN, Direction.SOUTH);
+        bindTurn(im, am, KeyEvent.VK_LEFT, Direction.WEST);
+        bindTurn(im, am, KeyEvent.VK_RIGHT, Direction.EAST);
+
+        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "join");
+        am.put("join", new AbstractAction() {
+            public void actionPerformed(ActionEvent evt) {
+                if (client.getPrediction() != null && client.getPrediction().getIndex() >= 0)
+                    return;
+                try {
+                    client.join();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    private void bindTurn(InputMap im, ActionMap am, int key, Direction direction) {
+        im.put(KeyStroke.getKeyStroke(key, 0), direction.name());
+        am.put(direction.name(), new AbstractAction() {
+            public void actionPerformed(ActionEvent evt) {
+                client.turn(direction);
+            }
+        });
+    }
+
+    /**
+     * Plays on a game server in a window of its own. Arguments are host, port
+     * and name, which default to localhost, 4000 and Player.
+     *
+     * @param args optional host, port and name
+     * @throws IOException if connecting fails
+     */
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 4000;
+        String name = args.length > 2 ? args[2] : "Player";
+        NetworkClient client = NetworkClient.connect(host, port, name);
+
+        SwingUtilities.invokeLater(() -> {
+            NetworkPanel panel = new NetworkPanel(client);
+            panel.setPreferredSize(new Dimension(1000, 800));
+            JFrame frame = new JFrame("paper.io - " + host + ":" + port);
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.add(panel);
+            frame.pack();
+            frame.setVisible(true);
+            panel.start();
+        });
+    }
+}
@@ -1,37 +1,57 @@
 package se.liu.ida.graphics;
 
 import java.awt.*;
-import java.util.List;
+import java.awt.image.BufferedImage;
+
+import se.liu.ida.objects.BoardFrame;
+import se.liu.ida.objects.Tile;
 
 /**
  * A Painter is responsible for drawing the game area. Multiple painters can be
- * used to draw the game area from different players views.
+ * used to draw the game area from different players views. Painters draw a
+ * BoardFrame captured from the board rather than the board itself, so the
+ * views of a split screen can be drawn at the same time on different threads.
  */
 public class Painter {
+    // Distance in pixels outside the view within which names are still drawn
+    private static final int NAME_MARGIN = 100;
+    private static final Font NAME_FONT = new Font("Monospaced", Font.PLAIN, 12);
 
     private int width;
     private int height;
     private final int scale;
-    private List<Player> players;
-    private Player focussedPlayer;
-    private Board board;
+    // Index of the view in frames, the same as the player's followed
+    private final int view;
     private boolean draw = true;
+    // Decides which work drawing sheds under load, or null to always draw everything
+    private final QualityController quality;
+    // Offscreen image the view is rendered into, reused while its size is the same
+    private BufferedImage buffer;
 
     /**
-     * Create a new painter with scale, board which state to be drawn, player to
-     * follow and all players
+     * Create a new painter with scale and the view of frames to draw
      * 
-     * @param scale            how much a tile should be scaled from one pixel
-     * @param board            board which state to be drawn
-     * @param focussedPlayer player to follow from which view the game area and
-     *                         player should be drawn
-     * @param players        all players that at each time should be drawn
+     * @param scale how much a tile should be scaled from one pixel
+     * @param view  index of the player followed among the players followed in
+     *              frames
      */
-    Painter(int scale, Board board, Player focussedPlayer, List<Player> players) {
+    public Painter(int scale, int view) {
+        this(scale, view, null);
+    }
+
+    /**
+     * Create a new painter that sheds work when a quality controller tells it to
+     * 
+     * @param scale   how much a tile should be scaled from one pixel
+     * @param view    index of the player followed among the players followed in
+     *                frames
+     * @param quality controller deciding which work to shed, or null to always
+     *                draw everything
+     */
+    public Painter(int scale, int view, QualityController quality) {
         this.scale = scale;
-        this.board = board;
-        this.players = players;
-        this.focussedPlayer = focussedPlayer;
+        this.view = view;
+        this.quality = quality;
     }
 
     /**
@@ -44,79 +64,150 @@ public class Painter {
     }
 
     /**
-     * Method is called from board to initialize a draw with graphics received
+     * Method is called from board to draw a frame with graphics received, with
+     * the view in the top left corner
      * 
-     * @param g graphics object used to draw
+     * @param g      graphics object used to draw
+     * @param frame  frame to draw
+     * @param width  width of the view in pixels
+     * @param height height of the view in pixels
      */
-    void draw(Graphics g) {
+    public void draw(Graphics g, BoardFrame frame, int width, int height) {
         if (draw) {
-            height = g.getClipBounds().height;
-            width = g.getClipBounds().width;
-            drawGameArea(g);
-            drawPlayers(g);
+            this.height = height;
+            this.width = width;
+            BoardFrame.Window window = frame.getWindow(view);
+            drawGameArea(g, frame, window, quality == null || quality.blendsTrails());
+            drawPlayers(g, frame, window, quality == null || quality.drawsNames());
+        }
+    }
+
+    /**
+     * Draws a frame into the painter's offscreen image, which is only safe to
+     * call from one thread at a time for each painter
+     * 
+     * @param frame  frame to draw
+     * @param width  width of the view in pixels
+     * @param height height of the view in pixels
+     * @return the image drawn, valid until the next call
+     */
+    public BufferedImage render(BoardFrame frame, int width, int height) {
+        if (buffer == null || buffer.getWidth() != width || buffer.getHeight() != height)
+            buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = buffer.createGraphics();
+        try {
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, width, height);
+            draw(g, frame, width, height);
+        } finally {
+            g.dispose();
         }
+        return buffer;
     }
 
     /**
      * Draws all players and their name on the map with corresponding color.
      * Doesn't draw players not seen by player.
      * 
-     * @param g Graphics object received as argument in paintComponent method
+     * @param g      graphics object to draw with
+     * @param frame  frame to draw
+     * @param window tiles around the player followed
+     * @param names  whether names are drawn
      */
-    private void drawPlayers(Graphics g) {
+    private void drawPlayers(Graphics g, BoardFrame frame, BoardFrame.Window window, boolean names) {
         int drawX;
         int drawY;
 
-        g.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        g.setFont(NAME_FONT);
         FontMetrics fontMetrics = g.getFontMetrics();
 
-        for (Player player : players) {
-            // x and y position relative to focussedPlayer at which player should be drawn
-            drawX = (player.getX() - focussedPlayer.getX()) * scale + ((width - scale) / 2);
-            drawY = (player.getY() - focussedPlayer.getY()) * scale + ((height - scale) / 2);
-            if (player != focussedPlayer) {
-                // For all other players than focussedPlayer we need to smooth animations
-                // regarding to animation smoothing
-                // of focussedPlayer
-                drawX += ((player.getDx() - focussedPlayer.getDx()) * scale
-                        * ((board.getTickCounter() + 1) / (double) board.getTickReset()));
-                drawY += ((player.getDy() - focussedPlayer.getDy()) * scale
-                        * ((board.getTickCounter() + 1) / (double) board.getTickReset()));
+        for (int i = 0; i < frame.getPlayerCount(); i++) {
+            // Position relative to the camera at which player should be drawn, moving
+            // between its last two positions like the camera does
+            drawX = toScreen(frame.getDrawX(i), window.getCameraX(), width);
+            drawY = toScreen(frame.getDrawY(i), window.getCameraY(), height);
+            // Names of players far outside the view can't reach into it
+            if (names && drawX + scale + NAME_MARGIN > 0 && drawX - NAME_MARGIN < width && drawY + scale + NAME_MARGIN > 0
+                    && drawY < height) {
+                g.setColor(Color.BLACK);
+                g.drawString(frame.getName(i), drawX + (scale - fontMetrics.stringWidth(frame.getName(i))) / 2,
+                        drawY + scale + 16);
             }
-            g.setColor(Color.BLACK);
-            g.drawString(player.getName(), drawX + (scale - fontMetrics.stringWidth(player.getName())) / 2,
-                    drawY + scale + 16);
 
             // Draw player if visible
             if ((drawX + scale > 0 && drawX < width) && (drawY + scale > 0 && drawY < height)) {
-                g.setColor(player.getColor());
+                g.setColor(frame.getColor(i));
                 g.fillRect(drawX, drawY, scale, scale);
             }
         }
     }
 
+    /**
+     * Get where on the view something at a position in tiles is drawn
+     * 
+     * @param position position in tiles
+     * @param camera   position in tiles the view is centered on
+     * @param size     size of the view in pixels
+     * @return position in pixels
+     */
+    private int toScreen(double position, double camera, int size) {
+        return (int) Math.round((position - camera) * scale) + ((size - scale) / 2);
+    }
+
+    /**
+     * Get how far to move a player from its tile to smooth its movement between
+     * ticks, relative to the player followed
+     * 
+     * @param delta         how far the player moves per tick
+     * @param focussedDelta how far the followed player moves per tick
+     * @param fraction      how far it is to the next tick, between 0 and 1
+     * @param scale         size of a tile in pixels
+     * @return offset in pixels
+     */
+    static int smoothing(double delta, double focussedDelta, double fraction, int scale) {
+        return (int) ((delta - focussedDelta) * scale * fraction);
+    }
+
     /**
      * Draws all tiles on the map with colors corresponding to owner and contested
-     * owner. Doesn't draw tiles not seen by player.
+     * owner. Only the window of tiles around the player followed is in the frame,
+     * so drawing costs the same on any size of game area.
      * 
-     * @param g Graphics object received as argument in paintComponent method
+     * @param g      graphics object to draw with
+     * @param frame  frame to draw
+     * @param window tiles around the player followed
+     * @param blend  whether trails are blended with what is under them, or drawn
+     *               in their player's plain color
      */
-    private void drawGameArea(Graphics g) {
+    private void drawGameArea(Graphics g, BoardFrame frame, BoardFrame.Window window, boolean blend) {
         int drawX;
         int drawY;
 
-        for (int y = 0; y < board.getAreaHeight(); y++) {
-            for (int x = 0; x < board.getAreaWidth(); x++) {
-                // x and y position relative to focussedPlayer at which tile should be drawn
-                drawX = (x - focussedPlayer.getX()) * scale + ((width - scale) / 2);
-                drawY = (y - focussedPlayer.getY()) * scale + ((height - scale) / 2);
+        int maxY = window.getTop() + window.getHeight();
+        int maxX = window.getLeft() + window.getWidth();
+        for (int y = window.getTop(); y < maxY; y++) {
+            for (int x = window.getLeft(); x < maxX; x++) {
+                // x and y position relative to the camera at which tile should be drawn
+                drawX = toScreen(x, window.getCameraX(), width);
+                drawY = toScreen(y, window.getCameraY(), height);
 
                 // If visible, draw the tile's color EDIT: drawing first with white, to have
                 // lighter colors
                 if ((drawX + scale > 0 && drawX < width) && (drawY + scale > 0 && drawY < height)) {
-                    g.setColor(Color.WHITE);
-                    g.fillRect(drawX, drawY, scale, scale);
-                    g.setColor(board.getTile(x, y).getColor());
+                    int owner = window.getOwner(x, y);
+                    int contested = window.getContestedOwner(x, y);
+                    Color color;
+                    if (!blend && contested >= 0)
+                        color = frame.getColor(contested);
+                    else
+                        color = Tile.colorOf(owner < 0 ? null : frame.getColor(owner),
+                                contested < 0 ? null : frame.getColor(contested), owner == contested);
+                    // White only shows through colors that aren't opaque
+                    if (color.getAlpha() < 255) {
+                        g.setColor(Color.WHITE);
+                        g.fillRect(drawX, drawY, scale, scale);
+                    }
+                    g.setColor(color);
                     g.fillRect(drawX, drawY, scale, scale);
                 }
             }
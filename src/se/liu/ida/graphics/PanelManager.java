@@ -2,8 +2,6 @@ package se.liu.ida.graphics;
 
 import java.awt.CardLayout;
 
-import se.liu.ida.logic.GameController;
-
 public class PanelManager {
 
     /**
@@ -14,11 +12,11 @@ public class PanelManager {
         CardLayout cardLayout = (CardLayout) AppFrame.getInstance().getContentPane().getLayout();
         if(id.equals(GamePanel.CARD_ID)){
             cardLayout.show(AppFrame.getInstance().getContentPane(), GamePanel.CARD_ID);
-            GameController.getInstance().unpause();
+            AppFrame.getInstance().getGameController().unpause();
         }
 		if(id.equals(Menu.CARD_ID)){
             cardLayout.show(AppFrame.getInstance().getContentPane(), Menu.CARD_ID);
-            GameController.getInstance().pause();
+            AppFrame.getInstance().getGameController().pause();
         }
     }
 }
@@ -0,0 +1,211 @@
+package se.liu.ida.graphics;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import se.liu.ida.objects.TickProfiler;
+
+/**
+ * A PerfHud draws an overlay of how the game performs: frames per second, a
+ * graph of the last seconds of tick times, the average time of each phase of a
+ * tick and of drawing, heap usage, garbage collection and allocation rate.
+ *
+ * Tick and frame times are read from a TickProfiler. Figures from the JVM are
+ * sampled at most twice per second, as some of them are costly to get.
+ */
+public class PerfHud {
+    // Seconds of ticks shown in the graph
+    private static final double GRAPH_SECONDS = 5;
+    private static final int GRAPH_WIDTH = 240;
+    private static final int GRAPH_HEIGHT = 60;
+    private static final int PADDING = 8;
+    private static final long SAMPLE_PERIOD_NANOS = 500_000_000L;
+    private static final long SECOND = 1_000_000_000L;
+    private static final String[] PHASE_NAMES = { "move", "collision", "fill", "respawn" };
+
+    private static final Color BACKGROUND = new Color(0, 0, 0, 180);
+    private static final Color TEXT = Color.WHITE;
+    private static final Color BAR = new Color(80, 200, 120);
+    private static final Color SLOW_BAR = new Color(230, 80, 60);
+    private static final Color BUDGET = Color.YELLOW;
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+    private final TickProfiler profiler;
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    // JVM figures of the last sample, and the totals they were computed from
+    private long sampledAt;
+    private long lastGcCount = -1;
+    private long lastGcMillis;
+    private long lastAllocated = -1;
+    private long usedBytes;
+    private long maxBytes;
+    private double gcPerSecond;
+    private double gcMillisPerSecond;
+    // Bytes allocated per second, or -1 if the JVM can't tell
+    private double allocatedPerSecond = -1;
+
+    /**
+     * Creates an overlay of a profiler's times
+     *
+     * @param profiler profiler the board records its ticks and frames to
+     */
+    public PerfHud(TickProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Draws the overlay with its top left corner at a position
+     *
+     * @param g        graphics to draw with
+     * @param x        x position in pixels
+     * @param y        y position in pixels
+     * @param tickRate ticks per second the board aims for
+     * @param quality  level of quality frames are drawn at
+     */
+    public void draw(Graphics g, int x, int y, double tickRate, int quality) {
+        long now = System.nanoTime();
+        if (now - sampledAt >= SAMPLE_PERIOD_NANOS)
+            sample(now);
+
+        long ticks = profiler.getTickCount();
+        long frames = profiler.getFrameCount();
+        // Only the newest half of each buffer is read, the writers don't reach it
+        // before drawing is done
+        long oldestTick = Math.max(0, ticks - TickProfiler.CAPACITY / 2);
+        long oldestFrame = Math.max(0, frames - TickProfiler.CAPACITY / 2);
+
+        int fps = 0;
+        long paintNanos = 0;
+        for (long frame = frames - 1; frame >= oldestFrame && now - profiler.getFrameEnd(frame) < SECOND; frame--) {
+            fps++;
+            paintNanos += profiler.getFrameNanos(frame);
+        }
+
+        int recent = 0;
+        long maxTick = 0;
+        long[] phases = new long[TickProfiler.PHASES];
+        for (long tick = ticks - 1; tick >= oldestTick && now - profiler.getTickEnd(tick) < SECOND; tick--) {
+            recent++;
+            maxTick = Math.max(maxTick, profiler.getTickNanos(tick));
+            for (int phase = 0; phase < TickProfiler.PHASES; phase++)
+                phases[phase] += profiler.getPhase(tick, phase);
+        }
+
+        String[] lines = new String[6];
+        lines[0] = String.format("FPS %d   ticks/s %d   quality %d", fps, recent, quality);
+        StringBuilder breakdown = new StringBuilder("ms");
+        for (int phase = 0; phase < TickProfiler.PHASES; phase++)
+            breakdown.append(String.format(" %s %.2f", PHASE_NAMES[phase], millis(phases[phase], recent)));
+        lines[1] = breakdown.toString();
+        lines[2] = String.format("ms paint %.2f   tick max %.2f", millis(paintNanos, fps), maxTick / 1e6);
+        lines[3] = String.format("heap %d / %d MB", usedBytes >> 20, maxBytes >> 20);
+        lines[4] = String.format("GC %.1f/s   %.1f ms/s", gcPerSecond, gcMillisPerSecond);
+        lines[5] = allocatedPerSecond < 0 ? "alloc n/a"
+                : String.format("alloc %.1f MB/s", allocatedPerSecond / (1 << 20));
+
+        g.setFont(FONT);
+        FontMetrics metrics = g.getFontMetrics();
+        int lineHeight = metrics.getHeight();
+        int width = GRAPH_WIDTH;
+        for (String line : lines)
+            width = Math.max(width, metrics.stringWidth(line));
+        int height = lines.length * lineHeight + PADDING + GRAPH_HEIGHT;
+
+        g.setColor(BACKGROUND);
+        g.fillRect(x, y, width + 2 * PADDING, height + 2 * PADDING);
+        g.setColor(TEXT);
+        for (int i = 0; i < lines.length; i++)
+            g.drawString(lines[i], x + PADDING, y + PADDING + i * lineHeight + metrics.getAscent());
+
+        drawGraph(g, x + PADDING, y + PADDING + lines.length * lineHeight + PADDING, now, oldestTick, ticks, tickRate);
+    }
+
+    /**
+     * Draws a bar per tick of the last seconds, the newest to the right, scaled
+     * so the time between two ticks is half the graph's height
+     */
+    private void drawGraph(Graphics g, int x, int y, long now, long oldestTick, long ticks, double tickRate) {
+        g.setColor(TEXT);
+        g.drawRect(x, y, GRAPH_WIDTH, GRAPH_HEIGHT);
+        double budget = SECOND / tickRate;
+        int budgetY = y + GRAPH_HEIGHT / 2;
+        g.setColor(BUDGET);
+        g.drawLine(x, budgetY, x + GRAPH_WIDTH, budgetY);
+
+        double span = GRAPH_SECONDS * SECOND;
+        for (long tick = ticks - 1; tick >= oldestTick; tick--) {
+            long age = now - profiler.getTickEnd(tick);
+            if (age >= span)
+                break;
+            long nanos = profiler.getTickNanos(tick);
+            int barX = x + GRAPH_WIDTH - 1 - (int) (age / span * GRAPH_WIDTH);
+            int barHeight = (int) Math.min(GRAPH_HEIGHT, nanos / budget * GRAPH_HEIGHT / 2);
+            g.setColor(nanos > budget ? SLOW_BAR : BAR);
+            g.drawLine(barX, y + GRAPH_HEIGHT, barX, y + GRAPH_HEIGHT - barHeight);
+        }
+    }
+
+    /**
+     * Samples heap usage, garbage collection and allocation, turning the totals
+     * into rates since the last sample
+     */
+    private void sample(long now) {
+        double seconds = (now - sampledAt) / 1e9;
+        Runtime runtime = Runtime.getRuntime();
+        usedBytes = runtime.totalMemory() - runtime.freeMemory();
+        maxBytes = runtime.maxMemory();
+
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcMillis += Math.max(0, collector.getCollectionTime());
+        }
+        if (lastGcCount >= 0) {
+            gcPerSecond = (gcCount - lastGcCount) / seconds;
+            gcMillisPerSecond = (gcMillis - lastGcMillis) / seconds;
+        }
+        lastGcCount = gcCount;
+        lastGcMillis = gcMillis;
+
+        long allocated = totalAllocated();
+        // Threads that ended take their bytes with them, which would look like a
+        // negative rate
+        if (allocated >= 0 && lastAllocated >= 0)
+            allocatedPerSecond = Math.max(0, allocated - lastAllocated) / seconds;
+        lastAllocated = allocated;
+        sampledAt = now;
+    }
+
+    /**
+     * @return bytes allocated so far by the threads alive, or -1 if the JVM
+     *         can't tell
+     */
+    private long totalAllocated() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        try {
+            if (!allocations.isThreadAllocatedMemoryEnabled())
+                return -1;
+            long total = 0;
+            for (long bytes : allocations.getThreadAllocatedBytes(threads.getAllThreadIds()))
+                total += Math.max(0, bytes);
+            return total;
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private static double millis(long nanos, int count) {
+        return count == 0 ? 0 : nanos / 1e6 / count;
+    }
+}
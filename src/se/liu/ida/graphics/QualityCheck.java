@@ -0,0 +1,48 @@
+package se.liu.ida.graphics;
+
+/**
+ * Checks that a QualityController sheds drawing work while ticks and frames
+ * take too long and restores it once they don't, by playing a simulated game at
+ * 12 ticks and 60 frames per second whose ticks are light, then heavy, then
+ * light again. Frames get cheaper with every level shed, as they do on a board.
+ */
+public class QualityCheck {
+    private static final double TICK_RATE = 12;
+    private static final double FRAME_RATE = 60;
+
+    /**
+     * Prints the level and load every second of the simulated game
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        QualityController quality = new QualityController(TICK_RATE, FRAME_RATE);
+        long frameNanos = (long) (1e9 / FRAME_RATE);
+        long tickNanos = (long) (1e9 / TICK_RATE);
+        int worst = QualityController.FULL;
+        int heavyEnd = -1;
+        long nextTick = 0;
+        for (long now = 0; now < 30_000_000_000L; now += frameNanos) {
+            int second = (int) (now / 1_000_000_000L);
+            boolean heavy = second >= 5 && second < 15;
+            if (now >= nextTick) {
+                quality.recordTick(heavy ? 55_000_000L : 2_000_000L, now);
+                nextTick += tickNanos;
+            }
+            // Names, blended trails and interpolation each cost a share of a frame
+            long frame = 2_000_000L + Math.max(0, 3 - quality.getLevel()) * 1_000_000L;
+            quality.recordFrame(frame, now);
+            worst = Math.max(worst, quality.getLevel());
+            if (second == 14)
+                heavyEnd = quality.getLevel();
+            if (now % 1_000_000_000L < frameNanos)
+                System.out.printf("%2d s: %s ticks, level %d, load %.2f%n", second, heavy ? "heavy" : "light",
+                        quality.getLevel(), quality.getLoad());
+        }
+        if (worst == QualityController.FULL || heavyEnd == QualityController.FULL)
+            throw new IllegalStateException("Heavy ticks didn't shed any work");
+        if (quality.getLevel() != QualityController.FULL)
+            throw new IllegalStateException("Work wasn't restored, level " + quality.getLevel());
+        System.out.println("Shed down to level " + worst + " and restored to full quality");
+    }
+}
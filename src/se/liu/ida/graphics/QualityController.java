@@ -0,0 +1,143 @@
+package se.liu.ida.graphics;
+
+/**
+ * A QualityController decides how much work drawing a frame may take, from the
+ * measured times of ticks and frames. Ticks and frames share the processor, so
+ * the controller adds up the share of each second they take. When that share
+ * gets too high it sheds drawing work one level at a time, so ticks keep their
+ * time, and it restores the work one level at a time once there is headroom
+ * again. Levels are kept for a while before changing again, so quality doesn't
+ * flicker between two levels.
+ *
+ * Times are recorded from the thread ticking and the thread drawing, the level
+ * can be read from any thread.
+ */
+public class QualityController {
+    // Levels in the order work is shed, each sheds the work of those before too
+    public static final int FULL = 0;
+    // Names of players aren't drawn
+    public static final int NO_NAMES = 1;
+    // Trails are drawn in their player's plain color instead of blended
+    public static final int FLAT_TRAILS = 2;
+    // Players and the view move a whole tile per tick
+    public static final int NO_INTERPOLATION = 3;
+    // The scoreboard is refreshed a few times per second instead of every frame
+    public static final int SLOW_SCOREBOARD = 4;
+
+    // Share of the processor above which work is shed and below which it is
+    // restored
+    private static final double HIGH_LOAD = 0.8;
+    private static final double LOW_LOAD = 0.5;
+    // Time to wait after a change before shedding more or restoring
+    private static final long SHED_DELAY_NANOS = 500_000_000L;
+    private static final long RESTORE_DELAY_NANOS = 3_000_000_000L;
+    // Weight of the latest time in the moving averages
+    private static final double WEIGHT = 0.1;
+    // Time between scoreboard refreshes at the lowest level
+    private static final long SCOREBOARD_PERIOD_NANOS = 250_000_000L;
+
+    private double tickRate;
+    private final double frameRate;
+    // Moving averages of tick and frame times
+    private double tickNanos;
+    private double frameNanos;
+    private long changedAt;
+    private volatile int level = FULL;
+
+    /**
+     * Creates a controller at full quality
+     *
+     * @param tickRate  ticks per second
+     * @param frameRate frames per second
+     */
+    public QualityController(double tickRate, double frameRate) {
+        this.tickRate = tickRate;
+        this.frameRate = frameRate;
+    }
+
+    /**
+     * @param tickRate ticks per second from now on
+     */
+    public synchronized void setTickRate(double tickRate) {
+        this.tickRate = tickRate;
+    }
+
+    /**
+     * Records how long a tick took
+     *
+     * @param nanos time of the tick
+     */
+    public void recordTick(long nanos) {
+        recordTick(nanos, System.nanoTime());
+    }
+
+    /**
+     * Records how long a frame took to draw
+     *
+     * @param nanos time of the frame
+     */
+    public void recordFrame(long nanos) {
+        recordFrame(nanos, System.nanoTime());
+    }
+
+    synchronized void recordTick(long nanos, long now) {
+        tickNanos = tickNanos == 0 ? nanos : tickNanos + WEIGHT * (nanos - tickNanos);
+        adjust(now);
+    }
+
+    synchronized void recordFrame(long nanos, long now) {
+        frameNanos = frameNanos == 0 ? nanos : frameNanos + WEIGHT * (nanos - frameNanos);
+        adjust(now);
+    }
+
+    /**
+     * Sheds or restores a level if the load calls for it and the level has been
+     * kept long enough
+     */
+    private void adjust(long now) {
+        double load = getLoad();
+        // A tick longer than its period falls behind however little is drawn
+        boolean pressure = load > HIGH_LOAD || tickNanos * tickRate > 1e9;
+        if (pressure && level < SLOW_SCOREBOARD && now - changedAt >= SHED_DELAY_NANOS) {
+            level++;
+            changedAt = now;
+        } else if (load < LOW_LOAD && level > FULL && now - changedAt >= RESTORE_DELAY_NANOS) {
+            level--;
+            changedAt = now;
+        }
+    }
+
+    /**
+     * @return share of each second taken by ticks and frames, on average
+     */
+    public synchronized double getLoad() {
+        return (tickNanos * tickRate + frameNanos * frameRate) / 1e9;
+    }
+
+    /**
+     * @return the current level, from <code>FULL</code> to
+     *         <code>SLOW_SCOREBOARD</code>
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    public boolean drawsNames() {
+        return level < NO_NAMES;
+    }
+
+    public boolean blendsTrails() {
+        return level < FLAT_TRAILS;
+    }
+
+    public boolean interpolates() {
+        return level < NO_INTERPOLATION;
+    }
+
+    /**
+     * @return time between scoreboard refreshes, 0 to refresh every frame
+     */
+    public long getScoreboardPeriodNanos() {
+        return level < SLOW_SCOREBOARD ? 0 : SCOREBOARD_PERIOD_NANOS;
+    }
+}
@@ -1,47 +1,295 @@
 package se.liu.ida.logic;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import se.liu.ida.entities.HumanPlayer;
 import se.liu.ida.objects.Board;
+import se.liu.ida.objects.BoardArena;
+import se.liu.ida.objects.SaveGame;
+import se.liu.ida.storage.HighScore;
+import se.liu.ida.storage.HighScoreStore;
 
 public class GameController {
+	// Where high scores are kept between runs
+	private static final Path HIGH_SCORE_DIRECTORY = Paths.get(System.getProperty("user.home"), ".paperio");
+	private static final Path SAVE_FILE = HIGH_SCORE_DIRECTORY.resolve("saved.game");
+	// Ticks per second for each step of game speed, speed 3 plays at 12 ticks per second
+	private static final int TICKS_PER_SPEED = 4;
 
 	private Board board;
-	
-	private boolean paused;
-
-	private static GameController instance = null;
+	// Memory of the last game, reused by the next game of the same size
+	private BoardArena arena;
+	// Builds worlds for the next game while the menu is shown, one at a time
+	private final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "world-builder");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+	// World built for the settings last shown in the menu, with its bots placed
+	private CompletableFuture<Board> prepared;
+	private int preparedWidth;
+	private int preparedHeight;
+	private int preparedBots;
+	// Opened in the background so startup doesn't wait for recovery
+	private final CompletableFuture<HighScoreStore> highScores;
+	// Told about every game started, and with null when a game ends
+	private Consumer<Board> boardListener = board -> {};
 
-	private GameController()	{
-		this.paused = false;
+	public GameController()	{
+		highScores = CompletableFuture.supplyAsync(() -> {
+			try {
+				HighScoreStore store = HighScoreStore.open(HIGH_SCORE_DIRECTORY);
+				// Writes scores still pending when the window is closed
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					try {
+						store.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}));
+				return store;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
 	}
 
 	public void createBoard(String p1Name, int mapWidth, int mapHeight, int gameSpeed, int botNumber)	{
-		// TODO: set the gamespeed
-		this.board = Board.createInstance(p1Name, mapWidth, mapHeight, botNumber);
+		release();
+		this.board = takePrepared(mapWidth, mapHeight, botNumber);
+		board.setTickRate(TICKS_PER_SPEED * gameSpeed);
+		board.start(p1Name);
+		started(board);
 	}
 	public void createBoard(String p1Name, String p2Name, int mapWidth, int mapHeight, int gameSpeed, int botNumber)	{
-		// TODO: set the gamespeed
-		this.board = Board.createInstance(p1Name, p2Name, mapWidth, mapHeight, botNumber);
+		release();
+		this.board = takePrepared(mapWidth, mapHeight, botNumber);
+		board.setTickRate(TICKS_PER_SPEED * gameSpeed);
+		board.start(p1Name, p2Name);
+		started(board);
+	}
+
+	/**
+	 * Sets who shows the games started, such as the window
+	 *
+	 * @param boardListener told about every board started, and with null when its
+	 *                      game ends, on the event dispatch thread
+	 */
+	public void setBoardListener(Consumer<Board> boardListener)	{
+		this.boardListener = boardListener;
+	}
+
+	/**
+	 * Records the scores of a started board once its game ends, releases it so
+	 * the world built for the next game can reuse its arena, and tells the
+	 * listener about it
+	 */
+	private void started(Board started)	{
+		started.setActionListener(e -> {
+			recordScores(started);
+			started.release();
+			boardListener.accept(null);
+		});
+		boardListener.accept(started);
+	}
+
+	/**
+	 * Starts building a world with the given settings in the background, so a game
+	 * with them starts without waiting. Replaces the world built for earlier
+	 * settings, which is released once it is done.
+	 *
+	 * @param mapWidth  width of game area
+	 * @param mapHeight height of game area
+	 * @param botNumber number of bots to have in game
+	 */
+	public void prepare(int mapWidth, int mapHeight, int botNumber)	{
+		if (isPrepared(mapWidth, mapHeight, botNumber))
+			return;
+		CompletableFuture<Board> replaced = prepared;
+		CompletableFuture<Void> previous = replaced == null ? CompletableFuture.completedFuture(null)
+				: replaced.handle((old, e) -> {
+					if (old != null)
+						old.release();
+					return null;
+				});
+		prepared = previous.thenApplyAsync(ignored -> new Board(arenaFor(mapWidth, mapHeight), botNumber), builder);
+		preparedWidth = mapWidth;
+		preparedHeight = mapHeight;
+		preparedBots = botNumber;
+	}
+
+	/**
+	 * @param mapWidth  width of game area
+	 * @param mapHeight height of game area
+	 * @param botNumber number of bots to have in game
+	 * @return true if a world with these settings is built or being built
+	 */
+	public boolean isPrepared(int mapWidth, int mapHeight, int botNumber)	{
+		return prepared != null && !prepared.isCompletedExceptionally() && preparedWidth == mapWidth
+				&& preparedHeight == mapHeight && preparedBots == botNumber;
+	}
+
+	/**
+	 * Takes the world prepared for the settings, waiting for it if it is still
+	 * being built, or builds one if the settings changed since
+	 */
+	private Board takePrepared(int mapWidth, int mapHeight, int botNumber)	{
+		boolean matches = isPrepared(mapWidth, mapHeight, botNumber);
+		CompletableFuture<Board> taken = prepared;
+		prepared = null;
+		Board built = null;
+		if (taken != null) {
+			try {
+				built = taken.join();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+		if (built != null && matches)
+			return built;
+		if (built != null)
+			built.release();
+		return new Board(arenaFor(mapWidth, mapHeight), botNumber);
+	}
+
+	/**
+	 * Get the arena of the last game if it has the size and is free, or a new one
+	 * otherwise. Called by both the world builder and the event dispatch thread.
+	 */
+	private synchronized BoardArena arenaFor(int mapWidth, int mapHeight)	{
+		if (arena == null || arena.getMapWidth() != mapWidth || arena.getMapHeight() != mapHeight
+				|| !arena.isFree())
+			arena = new BoardArena(mapWidth, mapHeight);
+		return arena;
+	}
+
+	/**
+	 * Releases the current board, if any, so its arena can be reused
+	 */
+	private void release()	{
+		if (board != null)
+			board.release();
+	}
+
+	/**
+	 * Appends the best share owned by every human player of a finished game to
+	 * the high scores, without waiting for it to be written. The scores are read
+	 * right away, so the board can be released after.
+	 *
+	 * @param finished board whose game ended
+	 */
+	private void recordScores(Board finished)	{
+		long time = System.currentTimeMillis();
+		List<HighScore> scores = new ArrayList<>();
+		for (HumanPlayer player : finished.getHumanPlayers())
+			scores.add(new HighScore(player.getName(), (int) Math.round(player.getBestPercentOwned() * 100),
+					finished.getMapWidth(), finished.getMapHeight(), finished.getTickNumber(), time));
+		highScores.thenAccept(store -> {
+			for (HighScore score : scores)
+				store.append(score);
+		});
+	}
+
+	/**
+	 * Saves the game between two ticks and writes it in the background, so the
+	 * game is only held up while the board is copied
+	 *
+	 * @param file file to save to
+	 * @return completes once the file is written
+	 */
+	public CompletableFuture<Void> saveGame(Path file)	{
+		SaveGame save;
+		synchronized (board) {
+			save = SaveGame.capture(board);
+		}
+		return CompletableFuture.runAsync(() -> {
+			try {
+				save.write(file);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Pauses the game and saves it to the file the menu resumes from
+	 *
+	 * @return completes once the file is written
+	 */
+	public CompletableFuture<Void> saveGame()	{
+		pause();
+		try {
+			Files.createDirectories(HIGH_SCORE_DIRECTORY);
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		return saveGame(SAVE_FILE);
+	}
+
+	/**
+	 * @return true if there is a saved game to resume
+	 */
+	public boolean hasSavedGame()	{return Files.isRegularFile(SAVE_FILE);}
+
+	/**
+	 * Replaces the game with the one last saved, which starts paused
+	 *
+	 * @throws IOException if the file can't be read or isn't a saved game
+	 */
+	public void resumeSavedGame() throws IOException	{
+		loadGame(SAVE_FILE);
+	}
+
+	/**
+	 * Replaces the game with a saved one, which starts paused
+	 *
+	 * @param file file to load
+	 * @throws IOException if the file can't be read or isn't a saved game
+	 */
+	public void loadGame(Path file) throws IOException	{
+		Board loaded = SaveGame.load(file);
+		release();
+		this.board = loaded;
+		started(loaded);
 	}
 
 	public void start()	{
 
 	}
 	public void stop()	{
-
+		if (board != null)
+			board.stop();
 	}
 	public void pause()	{
-		this.paused = true;
+		if (board != null)
+			board.setPaused(true);
 	}
 	public void unpause()	{
-		this.paused = false;
+		if (board != null)
+			board.setPaused(false);
 	}
 
-	public Boolean isPaused()	{return this.paused;}
+	public Boolean isPaused()	{return board == null || board.isPaused();}
 
-	public static GameController getInstance()	{
-		if (instance == null)
-			instance = new GameController();
-		return instance;
-	}
+	public Board getBoard()	{return this.board;}
+
+	/**
+	 * Get the high score store, which completes once it has been opened and
+	 * completes exceptionally if it couldn't be
+	 *
+	 * @return the high score store
+	 */
+	public CompletableFuture<HighScoreStore> getHighScores()	{return highScores;}
 
 }
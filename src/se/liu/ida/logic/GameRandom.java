@@ -0,0 +1,67 @@
+package se.liu.ida.logic;
+
+import java.util.Random;
+
+/**
+ * A Random whose state can be read and set, so a saved game continues with the
+ * same random numbers it would have drawn. It produces exactly the same numbers
+ * as java.util.Random for the same seed, but unlike it isn't thread safe: each
+ * generator must only be used by one thread at a time.
+ */
+public class GameRandom extends Random {
+    private static final long serialVersionUID = 1L;
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    // Set by setSeed, which Random's constructors call, so it has no initializer
+    private long state;
+
+    /**
+     * Creates a generator with a seed that differs between calls
+     */
+    public GameRandom() {
+        super();
+    }
+
+    /**
+     * Creates a generator drawing the same numbers as <code>new Random(seed)</code>
+     *
+     * @param seed the seed
+     */
+    public GameRandom(long seed) {
+        super(seed);
+    }
+
+    /**
+     * Creates a generator continuing from a state returned by <code>getState()</code>
+     *
+     * @param state the state
+     * @return the generator
+     */
+    public static GameRandom ofState(long state) {
+        GameRandom random = new GameRandom(0);
+        random.state = state & MASK;
+        return random;
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+        // Also resets the Gaussian Random keeps cached
+        super.setSeed(seed);
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * @return the state of the generator
+     */
+    public long getState() {
+        return state;
+    }
+}
@@ -0,0 +1,138 @@
+package se.liu.ida.logic;
+
+/**
+ * A bounded queue of turns from one producer thread, such as the event dispatch
+ * thread or a server's selector thread, to the thread ticking the board. The
+ * board takes at most one turn per tick, so several key presses between two
+ * ticks are applied on consecutive ticks instead of only the last one.
+ *
+ * A turn can be held back until a given tick, which is how network clients
+ * schedule the turns they predicted and how a replay feeds recorded turns.
+ * Every turn is timestamped when offered so the time until it is applied can be
+ * measured.
+ *
+ * <code>offer</code> must only be called from one thread, and
+ * <code>poll</code> only from one, possibly other, thread.
+ */
+public class InputQueue {
+    private final int mask;
+    private final Direction[] directions;
+    // Tick each turn is held back until, 0 for none
+    private final long[] ticks;
+    // When each turn was offered
+    private final long[] offered;
+
+    // Number of turns offered and taken, only written by the producer and the
+    // consumer respectively
+    private volatile long tail;
+    private volatile long head;
+    // Last direction offered, only touched by the producer
+    private Direction last;
+
+    // Time from offer to poll of the turns taken, only touched by the consumer
+    private long lastLatencyNanos;
+    private long totalLatencyNanos;
+    private long taken;
+
+    /**
+     * Creates an empty queue
+     *
+     * @param capacity most turns waiting at once, a power of two
+     * @throws IllegalArgumentException if capacity isn't a power of two
+     */
+    public InputQueue(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        this.mask = capacity - 1;
+        this.directions = new Direction[capacity];
+        this.ticks = new long[capacity];
+        this.offered = new long[capacity];
+    }
+
+    /**
+     * Offers a turn to be applied on the next tick. Called by the producer.
+     *
+     * @param direction direction to turn in
+     * @return false if the queue is full and the turn was dropped
+     */
+    public boolean offer(Direction direction) {
+        return offer(direction, 0);
+    }
+
+    /**
+     * Offers a turn to be applied on a tick, or on the next tick after it has
+     * passed. A turn in the same direction as the turn offered before it is
+     * already done and isn't queued, so a held key doesn't fill the queue. Called
+     * by the producer.
+     *
+     * @param direction direction to turn in
+     * @param tick      tick the turn is held back until
+     * @return false if the queue is full and the turn was dropped
+     */
+    public boolean offer(Direction direction, long tick) {
+        if (direction == last)
+            return true;
+        long t = tail;
+        if (t - head > mask)
+            return false;
+        int slot = (int) t & mask;
+        directions[slot] = direction;
+        ticks[slot] = tick;
+        offered[slot] = System.nanoTime();
+        // Publishes the slot to the consumer
+        tail = t + 1;
+        last = direction;
+        return true;
+    }
+
+    /**
+     * Takes the next turn if it is due. Called by the consumer at most once per
+     * tick.
+     *
+     * @param tick tick being simulated
+     * @return direction of the turn, or null if there is none due
+     */
+    public Direction poll(long tick) {
+        long h = head;
+        if (h == tail)
+            return null;
+        int slot = (int) h & mask;
+        if (ticks[slot] > tick)
+            return null;
+        Direction direction = directions[slot];
+        lastLatencyNanos = System.nanoTime() - offered[slot];
+        totalLatencyNanos += lastLatencyNanos;
+        taken++;
+        // Hands the slot back to the producer
+        head = h + 1;
+        return direction;
+    }
+
+    /**
+     * @return number of turns waiting
+     */
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    /**
+     * @return time from offer to poll of the last turn taken, in nanoseconds
+     */
+    public long getLastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+
+    /**
+     * @return mean time from offer to poll of all turns taken, in nanoseconds
+     */
+    public long getAverageLatencyNanos() {
+        return taken == 0 ? 0 : totalLatencyNanos / taken;
+    }
+
+    /**
+     * @return number of turns taken
+     */
+    public long getTaken() {
+        return taken;
+    }
+}
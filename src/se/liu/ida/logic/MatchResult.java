@@ -0,0 +1,62 @@
+package se.liu.ida.logic;
+
+import java.util.Map;
+
+/**
+ * The outcome of one headless match. Bots are grouped by strategy, the simple
+ * name of their class, and territory is measured in percent of the game area
+ * owned by all bots of a strategy together.
+ */
+public class MatchResult {
+    private final MatchSettings settings;
+    private final long elapsedNanos;
+    private final String winner;
+    private final Map<String, double[]> territory;
+
+    /**
+     * Creates the result of a match
+     *
+     * @param settings     settings the match was played with
+     * @param elapsedNanos wall time the match took
+     * @param winner       strategy owning the most territory at the end
+     * @param territory    territory per strategy, sampled every
+     *                     <code>settings.getSampleInterval()</code> ticks
+     */
+    public MatchResult(MatchSettings settings, long elapsedNanos, String winner, Map<String, double[]> territory) {
+        this.settings = settings;
+        this.elapsedNanos = elapsedNanos;
+        this.winner = winner;
+        this.territory = territory;
+    }
+
+    public MatchSettings getSettings() {
+        return settings;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Get how many ticks per second the match was simulated at
+     *
+     * @return ticks per second of wall time
+     */
+    public double getTicksPerSecond() {
+        return settings.getTicks() / (elapsedNanos / 1e9);
+    }
+
+    public String getWinner() {
+        return winner;
+    }
+
+    public Map<String, double[]> getTerritory() {
+        return territory;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("seed %d, %dx%d, %d ticks, %.0f ticks/s, winner %s", settings.getSeed(),
+                settings.getMapWidth(), settings.getMapHeight(), settings.getTicks(), getTicksPerSecond(), winner);
+    }
+}
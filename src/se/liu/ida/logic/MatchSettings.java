@@ -0,0 +1,65 @@
+package se.liu.ida.logic;
+
+import java.util.List;
+import java.util.function.Function;
+
+import se.liu.ida.entities.BotPlayer;
+import se.liu.ida.objects.Board;
+
+/**
+ * Settings for one headless match between bots: seed, size of game area, how
+ * long to play and which bots take part.
+ */
+public class MatchSettings {
+    private final long seed;
+    private final int mapWidth;
+    private final int mapHeight;
+    private final int ticks;
+    private final int sampleInterval;
+    private final List<Function<Board, ? extends BotPlayer>> bots;
+
+    /**
+     * Creates settings for a match
+     *
+     * @param seed           seed for all randomness in the match
+     * @param mapWidth       width of game area
+     * @param mapHeight      height of game area
+     * @param ticks          number of ticks to play
+     * @param sampleInterval number of ticks between territory samples
+     * @param bots           one factory per bot taking part, respawned bots are
+     *                       of the same kind
+     */
+    public MatchSettings(long seed, int mapWidth, int mapHeight, int ticks, int sampleInterval,
+            List<Function<Board, ? extends BotPlayer>> bots) {
+        this.seed = seed;
+        this.mapWidth = mapWidth;
+        this.mapHeight = mapHeight;
+        this.ticks = ticks;
+        this.sampleInterval = sampleInterval;
+        this.bots = bots;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getMapWidth() {
+        return mapWidth;
+    }
+
+    public int getMapHeight() {
+        return mapHeight;
+    }
+
+    public int getTicks() {
+        return ticks;
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    public List<Function<Board, ? extends BotPlayer>> getBots() {
+        return bots;
+    }
+}
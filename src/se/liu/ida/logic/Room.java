@@ -0,0 +1,178 @@
+package se.liu.ida.logic;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+
+import se.liu.ida.objects.Board;
+
+/**
+ * A Room is one world hosted by a RoomManager. Its board is ticked by the
+ * manager's shared scheduler and is only ever touched from the room's tick, so
+ * other threads hand work to the room with <code>submit</code>. A room that
+ * throws while ticking is closed without affecting other rooms.
+ *
+ * Each room measures its tick lag, how late a tick started compared to when it
+ * was due, and how long ticks take.
+ */
+public class Room implements Runnable {
+    private final int id;
+    private final Board board;
+    private final long periodNanos;
+    private final Queue<Consumer<Board>> commands;
+    // Called with the board after every tick
+    private volatile Consumer<Board> tickListener;
+
+    private ScheduledFuture<?> future;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    // When the first tick was due
+    private final long startNanos;
+    private volatile long ticks;
+    private volatile long lastLagNanos;
+    private volatile long maxLagNanos;
+    private volatile long totalTickNanos;
+
+    /**
+     * Creates a room around a board
+     *
+     * @param id          id of the room
+     * @param board       board to tick, must not be ticked by anything else
+     * @param periodNanos time between ticks
+     */
+    Room(int id, Board board, long periodNanos) {
+        this.id = id;
+        this.board = board;
+        this.periodNanos = periodNanos;
+        this.commands = new ConcurrentLinkedQueue<>();
+        this.startNanos = System.nanoTime();
+    }
+
+    void setFuture(ScheduledFuture<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * Runs queued commands and ticks the board once. Called by the scheduler.
+     */
+    @Override
+    public void run() {
+        if (closed)
+            return;
+        long start = System.nanoTime();
+        long lag = start - (startNanos + ticks * periodNanos);
+        lastLagNanos = lag;
+        if (lag > maxLagNanos)
+            maxLagNanos = lag;
+
+        try {
+            Consumer<Board> command;
+            while ((command = commands.poll()) != null)
+                command.accept(board);
+            board.tick();
+            Consumer<Board> listener = tickListener;
+            if (listener != null)
+                listener.accept(board);
+        } catch (RuntimeException e) {
+            failure = e;
+            close();
+        }
+
+        totalTickNanos += System.nanoTime() - start;
+        ticks++;
+    }
+
+    /**
+     * Queues a command to run on the room's board before its next tick
+     *
+     * @param command command to run with the board
+     */
+    public void submit(Consumer<Board> command) {
+        commands.add(command);
+    }
+
+    /**
+     * Sets a listener called with the board after every tick, from the room's
+     * tick
+     *
+     * @param tickListener listener to call or null for none
+     */
+    public void setTickListener(Consumer<Board> tickListener) {
+        this.tickListener = tickListener;
+    }
+
+    /**
+     * Stops ticking the room. Queued commands are dropped.
+     */
+    void close() {
+        closed = true;
+        commands.clear();
+        if (future != null)
+            future.cancel(false);
+        board.stop();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return time between ticks in nanoseconds
+     */
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * Get the room's board. The board must only be touched from commands passed
+     * to <code>submit</code>.
+     *
+     * @return board of the room
+     */
+    public Board getBoard() {
+        return board;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Get the exception that closed the room
+     *
+     * @return the exception thrown while ticking or null if there was none
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getLastLagNanos() {
+        return lastLagNanos;
+    }
+
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    /**
+     * Get the mean time a tick takes
+     *
+     * @return mean tick duration in nanoseconds
+     */
+    public long getMeanTickNanos() {
+        long n = ticks;
+        return n == 0 ? 0 : totalTickNanos / n;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("room %d: %d ticks, lag %.2f ms (max %.2f ms), tick %.3f ms%s", id, ticks,
+                lastLagNanos / 1e6, maxLagNanos / 1e6, getMeanTickNanos() / 1e6, closed ? ", closed" : "");
+    }
+}
@@ -0,0 +1,97 @@
+package se.liu.ida.logic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import se.liu.ida.entities.BotPlayer;
+import se.liu.ida.objects.Board;
+
+/**
+ * A RoomManager hosts many independent worlds in one process. All rooms are
+ * ticked by one shared scheduler on a small thread pool instead of one timer
+ * thread per board, and rooms can be created and closed at any time without
+ * leaving threads behind.
+ */
+public class RoomManager {
+    private final ScheduledExecutorService scheduler;
+    private final Map<Integer, Room> rooms;
+    private final AtomicInteger nextId;
+
+    /**
+     * Creates a manager ticking rooms on threads threads
+     *
+     * @param threads number of threads shared by all rooms
+     */
+    public RoomManager(int threads) {
+        this.scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "room-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rooms = new ConcurrentHashMap<>();
+        this.nextId = new AtomicInteger();
+    }
+
+    /**
+     * Creates a room with a headless board and starts ticking it
+     *
+     * @param mapWidth     width of game area
+     * @param mapHeight    height of game area
+     * @param seed         seed for all randomness in the room
+     * @param bots         one factory per bot in the room
+     * @param ticksPerSecond how many times per second the room is ticked
+     * @return the new room
+     */
+    public Room createRoom(int mapWidth, int mapHeight, long seed, List<Function<Board, ? extends BotPlayer>> bots,
+            int ticksPerSecond) {
+        Board board = new Board(mapWidth, mapHeight, seed, bots);
+        long period = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+        Room room = new Room(nextId.getAndIncrement(), board, period);
+        rooms.put(room.getId(), room);
+        room.setFuture(scheduler.scheduleAtFixedRate(room, 0, period, TimeUnit.NANOSECONDS));
+        return room;
+    }
+
+    /**
+     * @param id id of room
+     * @return the room with id or null if there is none
+     */
+    public Room getRoom(int id) {
+        return rooms.get(id);
+    }
+
+    /**
+     * @return all open rooms and rooms that closed themselves after failing
+     */
+    public Collection<Room> getRooms() {
+        return new ArrayList<>(rooms.values());
+    }
+
+    /**
+     * Stops ticking a room and forgets it
+     *
+     * @param id id of room to close
+     */
+    public void closeRoom(int id) {
+        Room room = rooms.remove(id);
+        if (room != null)
+            room.close();
+    }
+
+    /**
+     * Closes all rooms and stops the scheduler's threads
+     */
+    public void shutdown() {
+        for (Integer id : new ArrayList<>(rooms.keySet()))
+            closeRoom(id);
+        scheduler.shutdownNow();
+    }
+}
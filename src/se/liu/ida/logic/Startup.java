@@ -1,15 +1,22 @@
 package se.liu.ida.logic;
 
 import java.awt.EventQueue;
+import java.util.concurrent.CompletableFuture;
+
+import se.liu.ida.entities.PlayerNames;
+import se.liu.ida.graphics.AppFrame;
 
 /**
- * Startup class
+ * Startup class. Shows the menu right away, the first world is built in the
+ * background while the menu is shown.
  */
 public class Startup    {
     public static void main(String[] args) {
         System.setProperty("sun.java2d.opengl", "True");
 
-        EventQueue.invokeLater(Startup::new);
+        // Reads the names while the window system starts, the menu needs them first
+        CompletableFuture.runAsync(PlayerNames::all);
+        EventQueue.invokeLater(AppFrame::getInstance);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,97 @@
+package se.liu.ida.logic;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates match results as they come in: win rates and mean territory curve
+ * per strategy and mean simulation throughput. Results may be added from
+ * several threads.
+ */
+public class TournamentReport {
+    private int matches;
+    private double totalTicksPerSecond;
+    private final Map<String, Integer> wins = new TreeMap<>();
+    // Sum of territory and number of matches contributing at each sample
+    private final Map<String, double[]> territorySums = new TreeMap<>();
+    private final Map<String, int[]> territoryCounts = new TreeMap<>();
+
+    /**
+     * Adds the result of a finished match to the report
+     *
+     * @param result result to add
+     */
+    public synchronized void add(MatchResult result) {
+        matches++;
+        totalTicksPerSecond += result.getTicksPerSecond();
+        wins.merge(result.getWinner(), 1, Integer::sum);
+
+        for (Map.Entry<String, double[]> entry : result.getTerritory().entrySet()) {
+            double[] curve = entry.getValue();
+            double[] sums = territorySums.get(entry.getKey());
+            int[] counts = territoryCounts.get(entry.getKey());
+            if (sums == null || sums.length < curve.length) {
+                sums = sums == null ? new double[curve.length] : Arrays.copyOf(sums, curve.length);
+                counts = counts == null ? new int[curve.length] : Arrays.copyOf(counts, curve.length);
+                territorySums.put(entry.getKey(), sums);
+                territoryCounts.put(entry.getKey(), counts);
+            }
+            for (int i = 0; i < curve.length; i++) {
+                sums[i] += curve[i];
+                counts[i]++;
+            }
+        }
+    }
+
+    public synchronized int getMatches() {
+        return matches;
+    }
+
+    /**
+     * Get the share of matches a strategy has won
+     *
+     * @param strategy simple class name of the bots
+     * @return win rate between 0 and 1
+     */
+    public synchronized double getWinRate(String strategy) {
+        return matches == 0 ? 0 : wins.getOrDefault(strategy, 0) / (double) matches;
+    }
+
+    public synchronized double getMeanTicksPerSecond() {
+        return matches == 0 ? 0 : totalTicksPerSecond / matches;
+    }
+
+    /**
+     * Get the mean territory curve of a strategy over all matches it took part in
+     *
+     * @param strategy simple class name of the bots
+     * @return mean territory in percent at each sample
+     */
+    public synchronized double[] getMeanTerritory(String strategy) {
+        double[] sums = territorySums.get(strategy);
+        if (sums == null)
+            return new double[0];
+        int[] counts = territoryCounts.get(strategy);
+        double[] mean = new double[sums.length];
+        for (int i = 0; i < sums.length; i++)
+            mean[i] = sums[i] / counts[i];
+        return mean;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d matches, %.0f ticks/s per match%n", matches, getMeanTicksPerSecond()));
+        for (String strategy : territorySums.keySet()) {
+            double[] mean = getMeanTerritory(strategy);
+            sb.append(String.format("%-22s wins %5.1f%%  territory", strategy, 100 * getWinRate(strategy)));
+            // Print at most ten points of the curve
+            int step = Math.max(1, mean.length / 10);
+            for (int i = 0; i < mean.length; i += step)
+                sb.append(String.format(" %5.2f", mean[i]));
+            sb.append(String.format("%n"));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,199 @@
+package se.liu.ida.logic;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import se.liu.ida.entities.BotPlayer;
+import se.liu.ida.entities.MonteCarloBotPlayer;
+import se.liu.ida.entities.Player;
+import se.liu.ida.objects.Board;
+import se.liu.ida.objects.BoardArena;
+import se.liu.ida.storage.MatchEventLog;
+
+/**
+ * Runs headless matches between bots concurrently to compare bot strategies.
+ * Every match gets its own board and runs on its own thread from a fixed pool,
+ * and results are handed to a listener and aggregated in a report as soon as
+ * each match finishes.
+ */
+public class TournamentRunner {
+    // Memory of the last match of each size played on each thread
+    private static final ThreadLocal<Map<Long, BoardArena>> ARENAS = ThreadLocal.withInitial(HashMap::new);
+
+    private final int threads;
+    // Log every match publishes its events to, or null
+    private final MatchEventLog events;
+
+    /**
+     * Creates a runner playing up to threads matches at the same time
+     *
+     * @param threads number of matches to play concurrently
+     */
+    public TournamentRunner(int threads) {
+        this(threads, null);
+    }
+
+    /**
+     * Creates a runner playing up to threads matches at the same time and
+     * logging what happens in them
+     *
+     * @param threads number of matches to play concurrently
+     * @param events  log the matches publish deaths and captures to
+     */
+    public TournamentRunner(int threads, MatchEventLog events) {
+        this.threads = threads;
+        this.events = events;
+    }
+
+    /**
+     * Plays all matches and blocks until they are done
+     *
+     * @param matches  settings of the matches to play
+     * @param listener notified with each result as soon as its match finishes,
+     *                 from the calling thread
+     * @return report aggregating all results
+     * @throws InterruptedException if interrupted while waiting for matches
+     */
+    public TournamentReport run(List<MatchSettings> matches, Consumer<MatchResult> listener)
+            throws InterruptedException {
+        TournamentReport report = new TournamentReport();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CompletionService<MatchResult> completion = new ExecutorCompletionService<>(executor);
+            for (MatchSettings settings : matches)
+                completion.submit(() -> play(settings, events));
+
+            for (int i = 0; i < matches.size(); i++) {
+                try {
+                    MatchResult result = completion.take().get();
+                    report.add(result);
+                    listener.accept(result);
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return report;
+    }
+
+    /**
+     * Plays one match on the calling thread
+     *
+     * @param settings settings of the match
+     * @return the result of the match
+     */
+    public static MatchResult play(MatchSettings settings) {
+        return play(settings, null);
+    }
+
+    /**
+     * Plays one match on the calling thread, reusing the memory of the last
+     * match of the same size played on the thread
+     *
+     * @param settings settings of the match
+     * @param events   log to publish deaths and captures to, or null
+     * @return the result of the match
+     */
+    public static MatchResult play(MatchSettings settings, MatchEventLog events) {
+        BoardArena arena = ARENAS.get().computeIfAbsent(
+                (long) settings.getMapWidth() << 32 | settings.getMapHeight(),
+                size -> new BoardArena(settings.getMapWidth(), settings.getMapHeight()));
+        Board board = new Board(arena, settings.getSeed(), settings.getBots());
+        try {
+            return play(settings, board, events);
+        } finally {
+            board.release();
+        }
+    }
+
+    private static MatchResult play(MatchSettings settings, Board board, MatchEventLog events) {
+        board.setEventLog(events);
+        int samples = settings.getTicks() / settings.getSampleInterval() + 1;
+        Map<String, double[]> territory = new TreeMap<>();
+        for (Player player : board.getPlayers())
+            territory.put(strategyOf(player), new double[samples]);
+
+        long start = System.nanoTime();
+        for (int tick = 0; tick < settings.getTicks(); tick++) {
+            if (tick % settings.getSampleInterval() == 0)
+                sample(board, territory, tick / settings.getSampleInterval());
+            board.tick();
+        }
+        long elapsed = System.nanoTime() - start;
+        sample(board, territory, samples - 1);
+
+        String winner = null;
+        for (Map.Entry<String, double[]> entry : territory.entrySet()) {
+            if (winner == null || entry.getValue()[samples - 1] > territory.get(winner)[samples - 1])
+                winner = entry.getKey();
+        }
+        return new MatchResult(settings, elapsed, winner, territory);
+    }
+
+    /**
+     * Records the territory of every strategy at a sample index
+     */
+    private static void sample(Board board, Map<String, double[]> territory, int index) {
+        for (double[] curve : territory.values())
+            curve[index] = 0;
+        for (Player player : board.getPlayers()) {
+            double[] curve = territory.get(strategyOf(player));
+            if (curve != null)
+                curve[index] += player.getPercentOwned();
+        }
+    }
+
+    private static String strategyOf(Player player) {
+        return player.getClass().getSimpleName();
+    }
+
+    /**
+     * Plays a tournament between random and Monte-Carlo bots and prints the
+     * results. Arguments are number of matches and number of threads, which
+     * default to 16 and the number of available processors, and a directory to
+     * log match events to for MatchEventQuery.
+     *
+     * @param args optional number of matches, number of threads and event
+     *             directory
+     * @throws InterruptedException if interrupted while waiting for matches
+     * @throws IOException          if the event log fails
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        System.setProperty("java.awt.headless", "true");
+        int matchCount = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        List<MatchSettings> matches = new ArrayList<>();
+        for (int i = 0; i < matchCount; i++) {
+            List<Function<Board, ? extends BotPlayer>> bots = new ArrayList<>();
+            for (int j = 0; j < 4; j++) {
+                bots.add(BotPlayer::new);
+                bots.add(MonteCarloBotPlayer::new);
+            }
+            int size = i % 2 == 0 ? 50 : 100;
+            matches.add(new MatchSettings(i, size, size, 2000, 100, bots));
+        }
+
+        MatchEventLog events = args.length > 2 ? MatchEventLog.open(Paths.get(args[2])) : null;
+        TournamentReport report = new TournamentRunner(threads, events).run(matches, System.out::println);
+        System.out.print(report);
+        if (events != null) {
+            events.close();
+            System.out.printf("%d events dropped%n", events.getDropped());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package se.liu.ida.network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A pool of direct byte buffers in power of two size classes, so frames can be
+ * encoded on the room's tick and released by the selector thread after they
+ * are written without allocating per message. Buffers larger than the largest
+ * class are allocated and not pooled.
+ */
+class BufferPool {
+    // Smallest size class, 1 KiB
+    private static final int MIN_SHIFT = 10;
+
+    // Free buffers of each size class
+    private final ArrayBlockingQueue<ByteBuffer>[] free;
+
+    /**
+     * Creates an empty pool
+     *
+     * @param maxShift largest pooled buffer is 1 << maxShift bytes
+     * @param perClass most free buffers kept of each size class
+     */
+    BufferPool(int maxShift, int perClass) {
+        // Arrays of a generic type can only be created raw
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        ArrayBlockingQueue<ByteBuffer>[] free = new ArrayBlockingQueue[maxShift - MIN_SHIFT + 1];
+        this.free = free;
+        for (int i = 0; i < free.length; i++)
+            free[i] = new ArrayBlockingQueue<>(perClass);
+    }
+
+    /**
+     * Gets a cleared buffer with at least capacity bytes remaining
+     *
+     * @param capacity bytes needed
+     * @return a direct buffer from the pool, or a new one if none is free
+     */
+    ByteBuffer acquire(int capacity) {
+        int sizeClass = sizeClass(capacity);
+        if (sizeClass >= free.length)
+            return ByteBuffer.allocateDirect(capacity);
+        ByteBuffer buffer = free[sizeClass].poll();
+        if (buffer == null)
+            return ByteBuffer.allocateDirect(1 << (sizeClass + MIN_SHIFT));
+        return buffer.clear();
+    }
+
+    /**
+     * Gives a buffer back to the pool. Buffers that weren't acquired from a pool
+     * are ignored, and so are buffers when the pool is full.
+     *
+     * @param buffer buffer that is no longer used anywhere
+     */
+    void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (!buffer.isDirect() || buffer.isReadOnly() || Integer.bitCount(capacity) != 1)
+            return;
+        int sizeClass = sizeClass(capacity);
+        if (sizeClass < free.length)
+            free[sizeClass].offer(buffer);
+    }
+
+    private static int sizeClass(int capacity) {
+        if (capacity <= 1 << MIN_SHIFT)
+            return 0;
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+}
@@ -0,0 +1,126 @@
+package se.liu.ida.network;
+
+import java.util.Arrays;
+import java.util.List;
+
+import se.liu.ida.entities.Player;
+import se.liu.ida.objects.Board;
+import se.liu.ida.objects.TileLayers;
+
+/**
+ * The cells changed and players alive on each of the last ticks, kept in a ring
+ * so a delta can be built from any recent tick a client confirmed to the
+ * current one. Slots are reused, so recording allocates nothing once the
+ * arrays have grown. Only touched from the room's tick.
+ */
+class ChangeHistory {
+    private final Slot[] slots;
+    // Tick of the newest slot, -1 before anything is recorded
+    private long newestTick = -1;
+    // Number of slots recorded, at most slots.length
+    private int count;
+
+    /**
+     * Creates an empty history
+     *
+     * @param capacity number of ticks to keep
+     */
+    ChangeHistory(int capacity) {
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++)
+            slots[i] = new Slot();
+    }
+
+    /**
+     * Records the changed cells and players of the board's last tick. Must be
+     * called once after every tick, before the changes are cleared.
+     *
+     * @param board board after a tick
+     */
+    void record(Board board) {
+        long tick = board.getTickNumber();
+        if (count > 0 && tick != newestTick + 1)
+            count = 0;
+        newestTick = tick;
+        count = Math.min(count + 1, slots.length);
+
+        Slot slot = slot(tick);
+        TileLayers layers = board.getLayers();
+        int changes = layers.getChangeCount();
+        if (slot.cells.length < changes) {
+            slot.cells = new int[Math.max(changes, 2 * slot.cells.length)];
+            slot.flags = new byte[slot.cells.length];
+        }
+        for (int i = 0; i < changes; i++) {
+            int cell = layers.getChange(i);
+            slot.cells[i] = cell;
+            slot.flags[i] = (byte) layers.getChangeFlags(cell);
+        }
+        slot.cellCount = changes;
+
+        List<Player> players = board.getPlayers();
+        if (slot.players.length < players.size())
+            slot.players = new int[Math.max(players.size(), 2 * slot.players.length)];
+        for (int i = 0; i < players.size(); i++)
+            slot.players[i] = players.get(i).getId();
+        slot.playerCount = players.size();
+        Arrays.sort(slot.players, 0, slot.playerCount);
+    }
+
+    /**
+     * @return tick of the last recorded tick, -1 if none
+     */
+    long getNewestTick() {
+        return newestTick;
+    }
+
+    /**
+     * Whether a delta from base to the newest tick can be built, i.e. every tick
+     * after base is still recorded and base itself is, for its players
+     *
+     * @param base tick the client confirmed
+     * @return true if base is recent enough
+     */
+    boolean covers(long base) {
+        return base <= newestTick && base > newestTick - count;
+    }
+
+    int getCellCount(long tick) {
+        return slot(tick).cellCount;
+    }
+
+    int getCell(long tick, int i) {
+        return slot(tick).cells[i];
+    }
+
+    /**
+     * @return the <code>TileLayers</code> change flags of the i:th changed cell
+     */
+    int getFlags(long tick, int i) {
+        return slot(tick).flags[i];
+    }
+
+    /**
+     * @return whether the player with id was alive after tick
+     */
+    boolean hadPlayer(long tick, int id) {
+        Slot slot = slot(tick);
+        return Arrays.binarySearch(slot.players, 0, slot.playerCount, id) >= 0;
+    }
+
+    private Slot slot(long tick) {
+        return slots[(int) Math.floorMod(tick, (long) slots.length)];
+    }
+
+    /**
+     * What one tick changed
+     */
+    private static class Slot {
+        private int[] cells = new int[64];
+        private byte[] flags = new byte[64];
+        private int cellCount;
+        // Ids of players alive after the tick, sorted
+        private int[] players = new int[16];
+        private int playerCount;
+    }
+}
@@ -0,0 +1,94 @@
+package se.liu.ida.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import se.liu.ida.entities.Player;
+
+/**
+ * What one client can see: the rectangle of chunks around its player it is
+ * subscribed to and the players it has been told about. Only touched from the
+ * room's tick.
+ */
+class ClientView {
+    final Connection connection;
+    Player player;
+
+    // Center of the view, kept at the last position of the player after it dies
+    int centerX;
+    int centerY;
+
+    // Subscribed chunks now and before this tick's update, empty if min > max
+    int minChunkX = 0;
+    int maxChunkX = -1;
+    int minChunkY = 0;
+    int maxChunkY = -1;
+    int previousMinChunkX = 0;
+    int previousMaxChunkX = -1;
+    int previousMinChunkY = 0;
+    int previousMaxChunkY = -1;
+
+    // Chunks entered and exited this tick
+    int[] entered = new int[16];
+    int enteredCount;
+    int[] exited = new int[16];
+    int exitedCount;
+
+    // Changed cells within subscribed chunks this tick
+    int[] changes = new int[64];
+    int changeCount;
+
+    // Players visible this tick and ids of players visible last tick
+    final ArrayList<Player> players = new ArrayList<>();
+    HashSet<Integer> visible = new HashSet<>();
+    HashSet<Integer> nextVisible = new HashSet<>();
+
+    ClientView(Connection connection, Player player) {
+        this.connection = connection;
+        this.player = player;
+        this.centerX = player.getX();
+        this.centerY = player.getY();
+    }
+
+    boolean wasSubscribed(int chunkX, int chunkY) {
+        return chunkX >= previousMinChunkX && chunkX <= previousMaxChunkX && chunkY >= previousMinChunkY
+                && chunkY <= previousMaxChunkY;
+    }
+
+    boolean isSubscribed(int chunkX, int chunkY) {
+        return chunkX >= minChunkX && chunkX <= maxChunkX && chunkY >= minChunkY && chunkY <= maxChunkY;
+    }
+
+    void addEntered(int chunk) {
+        if (enteredCount == entered.length)
+            entered = Arrays.copyOf(entered, 2 * enteredCount);
+        entered[enteredCount++] = chunk;
+    }
+
+    void addExited(int chunk) {
+        if (exitedCount == exited.length)
+            exited = Arrays.copyOf(exited, 2 * exitedCount);
+        exited[exitedCount++] = chunk;
+    }
+
+    void addChange(int cell) {
+        if (changeCount == changes.length)
+            changes = Arrays.copyOf(changes, 2 * changeCount);
+        changes[changeCount++] = cell;
+    }
+
+    /**
+     * Forgets everything gathered for the last frame
+     */
+    void reset() {
+        enteredCount = 0;
+        exitedCount = 0;
+        changeCount = 0;
+        players.clear();
+        HashSet<Integer> swap = visible;
+        visible = nextVisible;
+        nextVisible = swap;
+        nextVisible.clear();
+    }
+}
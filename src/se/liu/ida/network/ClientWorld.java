@@ -0,0 +1,180 @@
+package se.liu.ida.network;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import se.liu.ida.logic.Direction;
+
+/**
+ * A player's client's copy of the game area, kept up to date by applying the
+ * VIEW frames of InterestManager. Cells outside the chunks the client is
+ * subscribed to are empty. Only the players in view are known, but the color
+ * of every player seen is remembered to draw its territory.
+ */
+public class ClientWorld {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int width;
+    private final int height;
+    private final int chunksX;
+    private final int[] owners;
+    private final int[] contested;
+    // Tick of the last view applied, -1 before the first
+    private long tick = -1;
+
+    // Players in view
+    private int playerCount;
+    private int[] ids = new int[16];
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+    private Direction[] directions = new Direction[16];
+    // Color of every player seen
+    private final HashMap<Integer, Integer> colors;
+
+    /**
+     * Creates an empty copy of a game area
+     *
+     * @param width  width of game area
+     * @param height height of game area
+     */
+    public ClientWorld(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.chunksX = (width + InterestManager.CHUNK_SIZE - 1) >> InterestManager.CHUNK_SHIFT;
+        this.owners = new int[width * height];
+        this.contested = new int[width * height];
+        this.colors = new HashMap<>();
+    }
+
+    /**
+     * Applies a VIEW frame
+     *
+     * @param payload payload of the frame from its position
+     * @throws IllegalArgumentException if the frame doesn't fit the game area
+     */
+    public void apply(ByteBuffer payload) {
+        tick = VarInts.getLong(payload);
+
+        int entered = VarInts.getInt(payload);
+        for (int i = 0; i < entered; i++) {
+            int chunk = VarInts.getInt(payload);
+            int left = (chunk % chunksX) << InterestManager.CHUNK_SHIFT;
+            int top = (chunk / chunksX) << InterestManager.CHUNK_SHIFT;
+            int right = Math.min(width, left + InterestManager.CHUNK_SIZE);
+            int bottom = Math.min(height, top + InterestManager.CHUNK_SIZE);
+            StateDecoder.readRows(payload, owners, width, left, top, right, bottom);
+            StateDecoder.readRows(payload, contested, width, left, top, right, bottom);
+        }
+
+        // Forget chunks out of view
+        int exited = VarInts.getInt(payload);
+        for (int i = 0; i < exited; i++) {
+            int chunk = VarInts.getInt(payload);
+            int left = (chunk % chunksX) << InterestManager.CHUNK_SHIFT;
+            int top = (chunk / chunksX) << InterestManager.CHUNK_SHIFT;
+            int right = Math.min(width, left + InterestManager.CHUNK_SIZE);
+            int bottom = Math.min(height, top + InterestManager.CHUNK_SIZE);
+            for (int y = top; y < bottom; y++) {
+                Arrays.fill(owners, y * width + left, y * width + right, 0);
+                Arrays.fill(contested, y * width + left, y * width + right, 0);
+            }
+        }
+
+        playerCount = VarInts.getInt(payload);
+        if (ids.length < playerCount) {
+            int length = Math.max(playerCount, 2 * ids.length);
+            ids = new int[length];
+            xs = new int[length];
+            ys = new int[length];
+            directions = new Direction[length];
+        }
+        for (int i = 0; i < playerCount; i++) {
+            ids[i] = VarInts.getInt(payload);
+            xs[i] = VarInts.getInt(payload);
+            ys[i] = VarInts.getInt(payload);
+            int direction = payload.get();
+            if (xs[i] >= width || ys[i] >= height || direction < 0 || direction >= DIRECTIONS.length)
+                throw new IllegalArgumentException("Bad player " + ids[i]);
+            directions[i] = DIRECTIONS[direction];
+            colors.put(ids[i], payload.getInt());
+        }
+
+        // Players that left the view aren't listed anymore
+        int left = VarInts.getInt(payload);
+        for (int i = 0; i < left; i++)
+            VarInts.getInt(payload);
+
+        StateDecoder.readCellRuns(payload, owners, contested);
+    }
+
+    /**
+     * @return tick of the last view applied, -1 before the first
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return owner ids in row major order, 0 for none, not to be modified
+     */
+    public int[] getOwners() {
+        return owners;
+    }
+
+    /**
+     * @return contested owner ids in row major order, 0 for none, not to be
+     *         modified
+     */
+    public int[] getContested() {
+        return contested;
+    }
+
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    /**
+     * @return ids of players in view, the first <code>getPlayerCount()</code> are
+     *         valid, not to be modified
+     */
+    public int[] getPlayerIds() {
+        return ids;
+    }
+
+    public int[] getPlayerXs() {
+        return xs;
+    }
+
+    public int[] getPlayerYs() {
+        return ys;
+    }
+
+    public Direction[] getPlayerDirections() {
+        return directions;
+    }
+
+    /**
+     * @param id id of player
+     * @return color of player as an RGB int, or gray if it hasn't been seen
+     */
+    public int getColor(int id) {
+        return colors.getOrDefault(id, 0xFF808080);
+    }
+
+    /**
+     * @param id id of player
+     * @return whether the player has been seen and its color is known
+     */
+    public boolean hasColor(int id) {
+        return colors.containsKey(id);
+    }
+}
@@ -0,0 +1,165 @@
+package se.liu.ida.network;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import se.liu.ida.entities.BotPlayer;
+import se.liu.ida.entities.Player;
+import se.liu.ida.objects.Board;
+import se.liu.ida.objects.TileLayers;
+
+/**
+ * Benchmarks StateEncoder and StateDecoder on a headless board of bots. One
+ * client applies a delta every tick, another a delta from eight ticks back
+ * every eight ticks, and a keyframe is encoded every hundred ticks. Both
+ * clients are checked against the board. Prints time and size per frame, the
+ * size of the same state with plain ints, and bytes allocated per frame.
+ */
+public class CodecBenchmark {
+    private static final int LAG = 8;
+    private static final int KEYFRAME_INTERVAL = 100;
+    private static final int WARMUP_TICKS = 500;
+
+    /**
+     * Arguments are size of game area, number of bots and ticks to measure,
+     * which default to 400, 50 and 5000.
+     *
+     * @param args optional size, bots and ticks
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int botNumber = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+
+        List<Function<Board, ? extends BotPlayer>> bots = new ArrayList<>();
+        for (int i = 0; i < botNumber; i++)
+            bots.add(BotPlayer::new);
+        Board board = new Board(size, size, 1, bots);
+        ChangeHistory history = new ChangeHistory(2 * LAG);
+        StateEncoder encoder = new StateEncoder(board, history);
+        BufferPool pool = new BufferPool(22, 4);
+        StateDecoder follower = new StateDecoder();
+        StateDecoder lagging = new StateDecoder();
+        StateDecoder keyframes = new StateDecoder();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        Stats delta = new Stats();
+        Stats lagged = new Stats();
+        Stats keyframe = new Stats();
+        long rawDeltaBytes = 0;
+        long allocated = 0;
+        for (int t = -WARMUP_TICKS; t < ticks; t++) {
+            board.tick();
+            history.record(board);
+            boolean measure = t >= 0;
+            long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+
+            if (follower.getTick() < 0) {
+                roundTrip(System.nanoTime(), encoder.keyframe(board, pool), follower, pool, null);
+                roundTrip(System.nanoTime(), encoder.keyframe(board, pool), lagging, pool, null);
+            } else {
+                roundTrip(System.nanoTime(), encoder.delta(board, follower.getTick(), pool), follower, pool,
+                        measure ? delta : null);
+                if (board.getTickNumber() - lagging.getTick() >= LAG)
+                    roundTrip(System.nanoTime(), encoder.delta(board, lagging.getTick(), pool), lagging, pool,
+                            measure ? lagged : null);
+            }
+            if (t % KEYFRAME_INTERVAL == 0)
+                roundTrip(System.nanoTime(), encoder.keyframe(board, pool), keyframes, pool,
+                        measure ? keyframe : null);
+
+            if (measure) {
+                allocated += threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+                rawDeltaBytes += Protocol.HEADER_SIZE + 8 + 4 + 17 * board.getPlayers().size() + 4
+                        + 12 * board.getLayers().getChangeCount();
+            }
+            check(board, follower);
+            if (lagging.getTick() == board.getTickNumber())
+                check(board, lagging);
+            board.getLayers().clearChanges();
+        }
+
+        int cells = size * size;
+        System.out.printf("%dx%d, %d bots, %d ticks%n", size, size, botNumber, ticks);
+        delta.print("delta", rawDeltaBytes / Math.max(1, delta.count));
+        lagged.print("delta " + LAG + " ticks", -1);
+        keyframe.print("keyframe", Protocol.HEADER_SIZE + 8 + 8L * cells);
+        long frames = delta.count + lagged.count + keyframe.count;
+        System.out.printf("allocated %.1f bytes/frame%n", (double) allocated / Math.max(1, frames));
+    }
+
+    /**
+     * Decodes a frame into decoder, adds timings to stats if not null and gives
+     * the frame back to the pool. Arguments are evaluated left to right, so
+     * encodeStart is taken before the frame is encoded.
+     */
+    private static void roundTrip(long encodeStart, ByteBuffer frame, StateDecoder decoder, BufferPool pool,
+            Stats stats) {
+        long decodeStart = System.nanoTime();
+        int length = frame.getInt();
+        byte type = frame.get();
+        if (!decoder.apply(type, frame) || frame.position() != 4 + length)
+            throw new IllegalStateException("Frame not applied");
+        long decodeEnd = System.nanoTime();
+        if (stats != null) {
+            stats.count++;
+            stats.bytes += 4 + length;
+            stats.encodeNanos += decodeStart - encodeStart;
+            stats.decodeNanos += decodeEnd - decodeStart;
+        }
+        pool.release(frame);
+    }
+
+    /**
+     * Checks that a decoder has the same layers and players as the board
+     */
+    private static void check(Board board, StateDecoder decoder) {
+        TileLayers layers = board.getLayers();
+        if (decoder.getTick() != board.getTickNumber() || !Arrays.equals(layers.getOwners(), decoder.getOwners())
+                || !Arrays.equals(layers.getContested(), decoder.getContestedLayer()))
+            throw new IllegalStateException("Layers differ at tick " + board.getTickNumber());
+        List<Player> players = board.getPlayers();
+        if (players.size() != decoder.getPlayerCount())
+            throw new IllegalStateException("Players differ at tick " + board.getTickNumber());
+        for (int i = 0; i < decoder.getPlayerCount(); i++) {
+            Player player = null;
+            for (Player p : players)
+                if (p.getId() == decoder.getPlayerId(i))
+                    player = p;
+            if (player == null || player.getX() != decoder.getPlayerX(i) || player.getY() != decoder.getPlayerY(i)
+                    || player.getDirection() != decoder.getPlayerDirection(i)
+                    || player.getColor().getRGB() != decoder.getPlayerColor(i))
+                throw new IllegalStateException("Player differs at tick " + board.getTickNumber());
+        }
+    }
+
+    /**
+     * Counts and sizes of one kind of frame
+     */
+    private static class Stats {
+        private long count;
+        private long bytes;
+        private long encodeNanos;
+        private long decodeNanos;
+
+        /**
+         * @param rawBytes size per frame with plain ints, -1 if not known
+         */
+        private void print(String name, long rawBytes) {
+            if (count == 0)
+                return;
+            System.out.printf("%-16s %6d frames %9.1f bytes/frame %8.2f us encode %8.2f us decode", name, count,
+                    (double) bytes / count, encodeNanos / 1000.0 / count, decodeNanos / 1000.0 / count);
+            if (rawBytes > 0)
+                System.out.printf("  (plain ints %d bytes)", rawBytes);
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package se.liu.ida.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import se.liu.ida.entities.HumanPlayer;
+
+/**
+ * One client connected to the game server. Reading and writing is only done by
+ * the server's selector thread. <code>player</code> and <code>view</code> are
+ * set from the room's tick, and the selector thread reads <code>player</code>
+ * to queue the client's turns, so it is volatile like the other fields both
+ * threads use.
+ */
+class Connection {
+    // Frames queued for a client that doesn't keep up before it is dropped
+    static final int MAX_QUEUED_FRAMES = 64;
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ByteBuffer readBuffer;
+    // Pool written frames are given back to
+    private final BufferPool pool;
+
+    // Queued frames in a ring, written with one gathering write, and the shared
+    // frame each came from or null if it isn't shared
+    private final ByteBuffer[] frames;
+    private final SharedFrame[] owners;
+    private int head;
+    private int count;
+
+    // Number of frames queued, read from the room's tick
+    volatile int queued;
+    // Last tick the client acknowledged applying, -1 if none
+    volatile long ackedTick = -1;
+
+    // Spectator state only touched by the selector thread: whether the client
+    // spectates, whether it has been sent every tick up to sentTick and gets
+    // the shared deltas, and whether a catch-up frame has been asked for
+    boolean spectator;
+    boolean synced;
+    long sentTick = -1;
+    boolean catchUpPending;
+
+    // Set by the selector thread to ask the room's tick for a catch-up frame
+    volatile boolean catchUp;
+    // Tick of the last keyframe a spectator was given, -1 if none, set from the
+    // room's tick
+    volatile long keyframeTick = -1;
+
+    // The player controlled by the client, null until it has joined, set from
+    // the room's tick and read by the selector thread to queue turns
+    volatile HumanPlayer player;
+    // What the client can see, only touched from the room's tick
+    ClientView view;
+
+    Connection(SocketChannel channel, SelectionKey key, BufferPool pool) {
+        this.channel = channel;
+        this.key = key;
+        this.pool = pool;
+        this.readBuffer = ByteBuffer.allocate(4 * Protocol.MAX_CLIENT_FRAME);
+        this.frames = new ByteBuffer[MAX_QUEUED_FRAMES];
+        this.owners = new SharedFrame[MAX_QUEUED_FRAMES];
+    }
+
+    /**
+     * Reads what is available from the channel into the read buffer
+     *
+     * @return the read buffer flipped for reading, the caller must compact it
+     * @throws IOException if reading fails or the client closed the connection
+     */
+    ByteBuffer read() throws IOException {
+        if (channel.read(readBuffer) < 0)
+            throw new IOException("Connection closed by client");
+        return readBuffer.flip();
+    }
+
+    /**
+     * Queues a frame to be written
+     *
+     * @param frame frame to write, its position and limit must not be shared
+     * @return false if the client has too many frames queued and should be
+     *         dropped, true otherwise
+     */
+    boolean enqueue(ByteBuffer frame) {
+        return enqueue(frame, null);
+    }
+
+    /**
+     * Queues a view of a shared frame to be written
+     *
+     * @param shared frame to write a view of
+     * @return false if the client has too many frames queued, true otherwise
+     */
+    boolean enqueue(SharedFrame shared) {
+        if (count == MAX_QUEUED_FRAMES)
+            return false;
+        return enqueue(shared.share(), shared);
+    }
+
+    private boolean enqueue(ByteBuffer frame, SharedFrame owner) {
+        if (count == MAX_QUEUED_FRAMES)
+            return false;
+        int tail = (head + count) % MAX_QUEUED_FRAMES;
+        frames[tail] = frame;
+        owners[tail] = owner;
+        queued = ++count;
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        return true;
+    }
+
+    /**
+     * Writes as much of the queued frames as the channel accepts, with one
+     * gathering write per contiguous part of the ring, and gives written frames
+     * back to the pool
+     *
+     * @throws IOException if writing fails
+     */
+    void flush() throws IOException {
+        while (count > 0) {
+            int length = Math.min(count, MAX_QUEUED_FRAMES - head);
+            channel.write(frames, head, length);
+            int written = 0;
+            while (written < length && !frames[head].hasRemaining()) {
+                release();
+                written++;
+            }
+            queued = count;
+            // The channel is full, wait until it is writable again
+            if (written < length)
+                return;
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * @return number of frames queued
+     */
+    int getQueued() {
+        return count;
+    }
+
+    /**
+     * Gives the frame at the head of the ring back and removes it
+     */
+    private void release() {
+        if (owners[head] != null)
+            owners[head].release(pool);
+        else
+            pool.release(frames[head]);
+        frames[head] = null;
+        owners[head] = null;
+        head = (head + 1) % MAX_QUEUED_FRAMES;
+        count--;
+    }
+
+    void close() {
+        key.cancel();
+        while (count > 0)
+            release();
+        queued = 0;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package se.liu.ida.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+import se.liu.ida.entities.BotPlayer;
+import se.liu.ida.entities.HumanPlayer;
+import se.liu.ida.logic.Direction;
+import se.liu.ida.logic.Room;
+import se.liu.ida.logic.RoomManager;
+import se.liu.ida.objects.Board;
+
+/**
+ * An authoritative game server. The simulation runs headless in a Room and
+ * clients only send their name and direction changes. A direction change is
+ * tagged with the tick the client predicted it for, see NetworkClient, and is
+ * applied on that tick if it arrives in time, or on the next one. All sockets
+ * are served by one selector thread without a thread per client.
+ *
+ * Each client is only sent the part of the game area around its player, see
+ * InterestManager. The room's tick encodes frames into pooled buffers and
+ * hands them to the selector thread through an outbox, so the simulation never
+ * waits for the network. A player's client that can't keep up with the frames
+ * is dropped.
+ *
+ * Spectators follow the whole game area, see StateEncoder. Each tick's delta is
+ * encoded once and the same buffer is queued on every spectator that is in
+ * sync, and written with gathering writes. A spectator whose queue grows is
+ * left out of sync until its queue drains, and then catches up with a delta
+ * from the last tick it acknowledged, or a keyframe shared by all spectators
+ * catching up on the same tick if the history doesn't go back that far.
+ */
+public class GameServer implements Runnable {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    // Tiles a client sees in each direction, a bit more than a painter shows
+    private static final int VIEW_RADIUS = 32;
+    // Ticks a spectator can be behind and still catch up with a delta
+    private static final int HISTORY_TICKS = 64;
+    // Queued frames at which a spectator falls out of sync, and at which it
+    // asks to catch up
+    private static final int SPECTATOR_LAG_FRAMES = Connection.MAX_QUEUED_FRAMES / 2;
+    private static final int SPECTATOR_CATCH_UP_FRAMES = Connection.MAX_QUEUED_FRAMES / 8;
+
+    private final Room room;
+    private final BufferPool pool;
+    // Only touched from the room's tick
+    private final InterestManager interest;
+    private final ChangeHistory history;
+    private final StateEncoder encoder;
+    private final List<Connection> spectators;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    // Frames from the room's tick waiting to be queued on connections
+    private final Queue<Outgoing> outbox;
+    // Only touched by the selector thread
+    private final Set<Connection> connections;
+    private volatile boolean running;
+
+    /**
+     * Creates a server for room listening on port
+     *
+     * @param port port to listen on, 0 for any free port
+     * @param room room to serve, the server takes over its tick listener
+     * @throws IOException if the server socket can't be opened
+     */
+    public GameServer(int port, Room room) throws IOException {
+        this.room = room;
+        Board board = room.getBoard();
+        this.pool = new BufferPool(20, 256);
+        this.interest = new InterestManager(board.getMapWidth(), board.getMapHeight(), VIEW_RADIUS, pool);
+        this.history = new ChangeHistory(HISTORY_TICKS);
+        this.encoder = new StateEncoder(board, history);
+        this.spectators = new ArrayList<>();
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.outbox = new ConcurrentLinkedQueue<>();
+        this.connections = new HashSet<>();
+
+        server.configureBlocking(false);
+        server.bind(new InetSocketAddress(port));
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        room.setTickListener(this::afterTick);
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Serves clients until <code>close()</code> is called
+     */
+    @Override
+    public void run() {
+        running = true;
+        try {
+            while (running) {
+                selector.select();
+                drainOutbox();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable())
+                            read(connection);
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                            requestCatchUp(connection);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // A client sending a malformed frame only loses its own
+                        // connection
+                        disconnect(connection);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (Connection connection : new ArrayList<>(connections))
+                disconnect(connection);
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stops the server and disconnects all clients
+     */
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            Connection connection = new Connection(channel, key, pool);
+            key.attach(connection);
+            connections.add(connection);
+        }
+    }
+
+    /**
+     * Reads and handles all complete frames from a client
+     */
+    private void read(Connection connection) throws IOException {
+        ByteBuffer buffer = connection.read();
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 1 || length > Protocol.MAX_CLIENT_FRAME)
+                throw new IOException("Bad frame length " + length);
+            if (buffer.remaining() < 4 + length)
+                break;
+            buffer.getInt();
+            int end = buffer.position() + length;
+            // The payload can't be read past the end of its frame
+            handle(connection, buffer.get(), buffer.slice(buffer.position(), length - 1));
+            buffer.position(end);
+        }
+        buffer.compact();
+    }
+
+    private void handle(Connection connection, byte type, ByteBuffer payload) throws IOException {
+        switch (type) {
+            case Protocol.JOIN:
+                String name = Protocol.readName(payload);
+                expectEnd(payload, type);
+                room.submit(board -> {
+                    if (connection.player == null || !connection.player.isAlive()) {
+                        connection.player = board.joinPlayer(name);
+                        if (connection.view == null)
+                            connection.view = interest.add(connection, connection.player);
+                        connection.view.player = connection.player;
+                        post(connection, Protocol.welcome(connection.player, board, InterestManager.CHUNK_SIZE,
+                                interest.getViewRadius(), room.getPeriodNanos()));
+                    }
+                });
+                break;
+            case Protocol.DIRECTION:
+                expectSize(payload, type, 9);
+                int ordinal = payload.get();
+                if (ordinal < 0 || ordinal >= DIRECTIONS.length)
+                    throw new IOException("Bad direction " + ordinal);
+                long inputTick = payload.getLong();
+                if (inputTick < 0)
+                    throw new IOException("Bad input tick " + inputTick);
+                HumanPlayer player = connection.player;
+                if (player != null)
+                    player.queueTurn(DIRECTIONS[ordinal], inputTick);
+                break;
+            case Protocol.ACK:
+                expectSize(payload, type, 8);
+                long tick = payload.getLong();
+                if (tick > connection.ackedTick)
+                    connection.ackedTick = tick;
+                break;
+            case Protocol.SPECTATE:
+                expectSize(payload, type, 0);
+                if (connection.spectator)
+                    break;
+                connection.spectator = true;
+                requestCatchUp(connection);
+                room.submit(board -> {
+                    if (!spectators.contains(connection))
+                        spectators.add(connection);
+                });
+                break;
+            default:
+                throw new IOException("Unknown message type " + type);
+        }
+    }
+
+    private static void expectSize(ByteBuffer payload, byte type, int size) throws IOException {
+        if (payload.remaining() != size)
+            throw new IOException("Bad payload size " + payload.remaining() + " for message type " + type);
+    }
+
+    private static void expectEnd(ByteBuffer payload, byte type) throws IOException {
+        if (payload.hasRemaining())
+            throw new IOException(payload.remaining() + " bytes left over in message type " + type);
+    }
+
+    private void disconnect(Connection connection) {
+        if (!connections.remove(connection))
+            return;
+        connection.close();
+        room.submit(board -> {
+            if (connection.player != null)
+                connection.player.die();
+            if (connection.view != null)
+                interest.remove(connection.view);
+            spectators.remove(connection);
+            connection.player = null;
+            connection.view = null;
+        });
+    }
+
+    /**
+     * Called on the room's tick, sends every client what it can see
+     */
+    private void afterTick(Board board) {
+        history.record(board);
+        sendSpectators(board);
+        interest.update(board, this::post);
+        board.getLayers().clearChanges();
+    }
+
+    /**
+     * Encodes the tick's delta once for all spectators in sync, and catch-up
+     * frames for the spectators that asked for one
+     */
+    private void sendSpectators(Board board) {
+        if (spectators.isEmpty())
+            return;
+        long tick = board.getTickNumber();
+        ByteBuffer delta = encoder.delta(board, tick - 1, pool);
+        if (delta != null)
+            outbox.add(new Outgoing(null, delta, tick, false));
+
+        boolean keyframe = false;
+        for (Connection spectator : spectators) {
+            if (!spectator.catchUp)
+                continue;
+            spectator.catchUp = false;
+            ByteBuffer frame = encoder.delta(board, Math.max(spectator.ackedTick, spectator.keyframeTick), pool);
+            if (frame != null) {
+                outbox.add(new Outgoing(spectator, frame, tick, false));
+            } else {
+                spectator.keyframeTick = tick;
+                keyframe = true;
+            }
+        }
+        if (keyframe)
+            outbox.add(new Outgoing(null, encoder.keyframe(board, pool), tick, true));
+        selector.wakeup();
+    }
+
+    /**
+     * Hands a frame to the selector thread
+     *
+     * @param target connection to send to
+     * @param frame  frame to send
+     */
+    private void post(Connection target, ByteBuffer frame) {
+        outbox.add(new Outgoing(target, frame, -1, false));
+        selector.wakeup();
+    }
+
+    /**
+     * Queues frames from the outbox on their connections
+     */
+    private void drainOutbox() {
+        List<Connection> slow = new ArrayList<>();
+        Outgoing outgoing;
+        while ((outgoing = outbox.poll()) != null) {
+            if (outgoing.target == null) {
+                broadcast(outgoing);
+                continue;
+            }
+            Connection target = outgoing.target;
+            if (!connections.contains(target)) {
+                pool.release(outgoing.frame);
+            } else if (outgoing.tick < 0) {
+                if (!target.enqueue(outgoing.frame)) {
+                    pool.release(outgoing.frame);
+                    slow.add(target);
+                }
+            } else {
+                // A spectator's catch-up delta
+                target.catchUpPending = false;
+                if (target.enqueue(outgoing.frame)) {
+                    target.synced = true;
+                    target.sentTick = outgoing.tick;
+                } else {
+                    pool.release(outgoing.frame);
+                }
+            }
+        }
+        for (Connection connection : slow)
+            disconnect(connection);
+    }
+
+    /**
+     * Queues a shared delta on every spectator in sync, or a shared keyframe on
+     * every spectator it was encoded for
+     */
+    private void broadcast(Outgoing outgoing) {
+        SharedFrame shared = new SharedFrame(outgoing.frame);
+        for (Connection connection : connections) {
+            if (!connection.spectator)
+                continue;
+            if (outgoing.keyframe) {
+                if (!connection.catchUpPending || connection.keyframeTick != outgoing.tick)
+                    continue;
+                connection.catchUpPending = false;
+                if (!connection.enqueue(shared)) {
+                    connection.keyframeTick = -1;
+                    continue;
+                }
+            } else {
+                if (!connection.synced)
+                    continue;
+                if (connection.sentTick != outgoing.tick - 1 || connection.getQueued() >= SPECTATOR_LAG_FRAMES
+                        || !connection.enqueue(shared)) {
+                    connection.synced = false;
+                    requestCatchUp(connection);
+                    continue;
+                }
+            }
+            connection.synced = true;
+            connection.sentTick = outgoing.tick;
+        }
+        shared.release(pool);
+    }
+
+    /**
+     * Asks the room's tick for a catch-up frame for a spectator that is out of
+     * sync, once its queue has drained
+     */
+    private void requestCatchUp(Connection connection) {
+        if (!connection.spectator || connection.synced || connection.catchUpPending
+                || connection.getQueued() > SPECTATOR_CATCH_UP_FRAMES)
+            return;
+        connection.catchUpPending = true;
+        connection.catchUp = true;
+    }
+
+    /**
+     * A frame waiting in the outbox
+     */
+    private static class Outgoing {
+        // Null for frames shared by spectators
+        private final Connection target;
+        private final ByteBuffer frame;
+        // Tick of a spectator's frame, -1 for other frames
+        private final long tick;
+        private final boolean keyframe;
+
+        Outgoing(Connection target, ByteBuffer frame, long tick, boolean keyframe) {
+            this.target = target;
+            this.frame = frame;
+            this.tick = tick;
+            this.keyframe = keyframe;
+        }
+    }
+
+    /**
+     * Starts a server with a room of bots. Arguments are port, size of game area
+     * and number of bots, which default to 4000, 200 and 20.
+     *
+     * @param args optional port, size and number of bots
+     * @throws IOException if the server socket can't be opened
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int botNumber = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        List<Function<Board, ? extends BotPlayer>> bots = new ArrayList<>();
+        for (int i = 0; i < botNumber; i++)
+            bots.add(BotPlayer::new);
+        Room room = new RoomManager(1).createRoom(size, size, System.nanoTime(), bots, 20);
+        GameServer server = new GameServer(port, room);
+        System.out.println("Listening on port " + server.getPort());
+        server.run();
+    }
+}
@@ -0,0 +1,241 @@
+package se.liu.ida.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import se.liu.ida.entities.Player;
+import se.liu.ida.objects.Board;
+import se.liu.ida.objects.TileLayers;
+
+/**
+ * Interest management for the game server. The game area is split into square
+ * chunks and every client subscribes to the chunks within its view radius of
+ * its player. Each chunk keeps a list of subscribed clients, so changed cells
+ * and players are fanned out only to the clients that can see them, and what
+ * a server sends per tick scales with the size of the views and not the game
+ * area.
+ *
+ * A client is sent a chunk's cells when the chunk enters its view, an exit when
+ * it leaves, and in between only changed cells. Players are listed while they
+ * are in a visible chunk and their ids are sent once when they leave the view.
+ * All methods must be called from the room's tick.
+ */
+class InterestManager {
+    static final int CHUNK_SHIFT = 4;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    // Varint id, x and y, direction and color
+    private static final int MAX_PLAYER_SIZE = 3 * VarInts.MAX_INT_SIZE + 1 + 4;
+
+    private final int width;
+    private final int height;
+    private final int chunksX;
+    private final int chunksY;
+    private final int viewRadius;
+    private final BufferPool pool;
+
+    // Clients subscribed to each chunk
+    private final List<ClientView>[] subscribers;
+    private final List<ClientView> views;
+
+    /**
+     * Creates an interest manager for a game area
+     *
+     * @param width      width of game area
+     * @param height     height of game area
+     * @param viewRadius how many tiles a client sees in each direction from its
+     *                   player
+     * @param pool       pool to take frame buffers from
+     */
+    InterestManager(int width, int height, int viewRadius, BufferPool pool) {
+        this.width = width;
+        this.height = height;
+        this.chunksX = (width + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+        this.chunksY = (height + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+        this.viewRadius = viewRadius;
+        this.pool = pool;
+        // Arrays of a generic type can only be created raw
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        List<ClientView>[] subscribers = new List[chunksX * chunksY];
+        this.subscribers = subscribers;
+        for (int i = 0; i < subscribers.length; i++)
+            subscribers[i] = new ArrayList<>();
+        this.views = new ArrayList<>();
+    }
+
+    int getViewRadius() {
+        return viewRadius;
+    }
+
+    /**
+     * Starts tracking a client. Its chunks are subscribed on the next update.
+     *
+     * @param connection connection of client
+     * @param player     player the client's view follows
+     * @return the client's view
+     */
+    ClientView add(Connection connection, Player player) {
+        ClientView view = new ClientView(connection, player);
+        views.add(view);
+        return view;
+    }
+
+    /**
+     * Stops tracking a client and unsubscribes all its chunks
+     *
+     * @param view view of client
+     */
+    void remove(ClientView view) {
+        views.remove(view);
+        for (int cy = view.minChunkY; cy <= view.maxChunkY; cy++)
+            for (int cx = view.minChunkX; cx <= view.maxChunkX; cx++)
+                subscribers[cy * chunksX + cx].remove(view);
+    }
+
+    /**
+     * Moves every client's subscriptions along with its player, gathers what
+     * each client can see and sends it one frame
+     *
+     * @param board board after a tick
+     * @param send  called with each client's connection and frame
+     */
+    void update(Board board, BiConsumer<Connection, ByteBuffer> send) {
+        for (ClientView view : views)
+            resubscribe(view);
+
+        // Fan out changed cells to the subscribers of their chunks
+        TileLayers layers = board.getLayers();
+        for (int i = 0; i < layers.getChangeCount(); i++) {
+            int cell = layers.getChange(i);
+            int chunkX = (cell % width) >> CHUNK_SHIFT;
+            int chunkY = (cell / width) >> CHUNK_SHIFT;
+            for (ClientView view : subscribers[chunkY * chunksX + chunkX]) {
+                // Entered chunks are sent whole
+                if (view.wasSubscribed(chunkX, chunkY))
+                    view.addChange(cell);
+            }
+        }
+
+        // Fan out players to the subscribers of the chunk they are in
+        for (Player player : board.getPlayers()) {
+            int x = player.getX();
+            int y = player.getY();
+            if (!player.isAlive() || x < 0 || x >= width || y < 0 || y >= height)
+                continue;
+            for (ClientView view : subscribers[(y >> CHUNK_SHIFT) * chunksX + (x >> CHUNK_SHIFT)]) {
+                view.players.add(player);
+                view.nextVisible.add(player.getId());
+            }
+        }
+
+        for (ClientView view : views) {
+            send.accept(view.connection, encode(board, view));
+            view.reset();
+        }
+    }
+
+    /**
+     * Moves a client's chunk rectangle to its player and updates subscriber lists
+     * for the chunks that entered or left it
+     */
+    private void resubscribe(ClientView view) {
+        if (view.player.isAlive()) {
+            view.centerX = view.player.getX();
+            view.centerY = view.player.getY();
+        }
+        view.previousMinChunkX = view.minChunkX;
+        view.previousMaxChunkX = view.maxChunkX;
+        view.previousMinChunkY = view.minChunkY;
+        view.previousMaxChunkY = view.maxChunkY;
+        view.minChunkX = Math.max(0, (view.centerX - viewRadius) >> CHUNK_SHIFT);
+        view.maxChunkX = Math.min(chunksX - 1, (view.centerX + viewRadius) >> CHUNK_SHIFT);
+        view.minChunkY = Math.max(0, (view.centerY - viewRadius) >> CHUNK_SHIFT);
+        view.maxChunkY = Math.min(chunksY - 1, (view.centerY + viewRadius) >> CHUNK_SHIFT);
+
+        for (int cy = view.previousMinChunkY; cy <= view.previousMaxChunkY; cy++) {
+            for (int cx = view.previousMinChunkX; cx <= view.previousMaxChunkX; cx++) {
+                if (!view.isSubscribed(cx, cy)) {
+                    subscribers[cy * chunksX + cx].remove(view);
+                    view.addExited(cy * chunksX + cx);
+                }
+            }
+        }
+        for (int cy = view.minChunkY; cy <= view.maxChunkY; cy++) {
+            for (int cx = view.minChunkX; cx <= view.maxChunkX; cx++) {
+                if (!view.wasSubscribed(cx, cy)) {
+                    subscribers[cy * chunksX + cx].add(view);
+                    view.addEntered(cy * chunksX + cx);
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes a VIEW frame: tick, entered chunks with their cells as rows of runs,
+     * exited chunks, visible players, ids of players that left the view and runs
+     * of changed cells. Numbers are varints, see StateEncoder for the runs.
+     */
+    private ByteBuffer encode(Board board, ClientView view) {
+        int[] owners = board.getLayers().getOwners();
+        int[] contested = board.getLayers().getContested();
+        Arrays.sort(view.changes, 0, view.changeCount);
+
+        int size = Protocol.HEADER_SIZE + VarInts.MAX_LONG_SIZE + VarInts.MAX_INT_SIZE * (4 + view.exitedCount)
+                + MAX_PLAYER_SIZE * view.players.size()
+                + StateEncoder.cellRunsSize(view.changes, view.changeCount, owners, contested);
+        for (int i = 0; i < view.enteredCount; i++) {
+            int chunk = view.entered[i];
+            int left = (chunk % chunksX) << CHUNK_SHIFT;
+            int top = (chunk / chunksX) << CHUNK_SHIFT;
+            int right = Math.min(width, left + CHUNK_SIZE);
+            int bottom = Math.min(height, top + CHUNK_SIZE);
+            size += VarInts.MAX_INT_SIZE + StateEncoder.rowsSize(owners, width, left, top, right, bottom)
+                    + StateEncoder.rowsSize(contested, width, left, top, right, bottom);
+        }
+        int exitedPlayers = 0;
+        for (Integer id : view.visible)
+            if (!view.nextVisible.contains(id))
+                exitedPlayers++;
+        size += VarInts.MAX_INT_SIZE * exitedPlayers;
+
+        ByteBuffer buffer = pool.acquire(size);
+        Protocol.beginFrame(buffer, Protocol.VIEW);
+        VarInts.putLong(buffer, board.getTickNumber());
+
+        VarInts.putInt(buffer, view.enteredCount);
+        for (int i = 0; i < view.enteredCount; i++) {
+            int chunk = view.entered[i];
+            VarInts.putInt(buffer, chunk);
+            int left = (chunk % chunksX) << CHUNK_SHIFT;
+            int top = (chunk / chunksX) << CHUNK_SHIFT;
+            int right = Math.min(width, left + CHUNK_SIZE);
+            int bottom = Math.min(height, top + CHUNK_SIZE);
+            StateEncoder.writeRows(buffer, owners, width, left, top, right, bottom);
+            StateEncoder.writeRows(buffer, contested, width, left, top, right, bottom);
+        }
+
+        VarInts.putInt(buffer, view.exitedCount);
+        for (int i = 0; i < view.exitedCount; i++)
+            VarInts.putInt(buffer, view.exited[i]);
+
+        VarInts.putInt(buffer, view.players.size());
+        for (Player player : view.players) {
+            VarInts.putInt(buffer, player.getId());
+            VarInts.putInt(buffer, player.getX());
+            VarInts.putInt(buffer, player.getY());
+            buffer.put((byte) player.getDirection().ordinal());
+            buffer.putInt(player.getColor().getRGB());
+        }
+
+        VarInts.putInt(buffer, exitedPlayers);
+        for (Integer id : view.visible)
+            if (!view.nextVisible.contains(id))
+                VarInts.putInt(buffer, id);
+
+        StateEncoder.writeCellRuns(buffer, view.changes, view.changeCount, owners, contested);
+        return Protocol.endFrame(buffer);
+    }
+}
@@ -0,0 +1,146 @@
+package se.liu.ida.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import se.liu.ida.logic.Direction;
+
+/**
+ * Load tests a game server with many clients from one thread. Every client
+ * joins, turns in a random direction now and then and counts the frames it
+ * receives. Prints throughput once per second.
+ */
+public class LoadTestClient {
+    private static final long TURN_INTERVAL_NANOS = 200_000_000L;
+
+    /**
+     * Arguments are host, port, number of clients and seconds to run, which
+     * default to localhost, 4000, 1000 and 10.
+     *
+     * @param args optional host, port, clients and seconds
+     * @throws IOException if connecting fails
+     */
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 4000;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        run(host, port, clients, seconds);
+    }
+
+    /**
+     * Runs the load test
+     *
+     * @param host    host of server
+     * @param port    port of server
+     * @param clients number of clients to connect
+     * @param seconds how long to run
+     * @throws IOException if connecting fails
+     */
+    public static void run(String host, int port, int clients, int seconds) throws IOException {
+        Random r = new Random();
+        Selector selector = Selector.open();
+        List<SocketChannel> channels = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, new ClientState());
+            write(channel, Protocol.join("load" + i));
+            channels.add(channel);
+        }
+
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        long nextTurn = System.nanoTime();
+        long nextReport = System.nanoTime() + 1_000_000_000L;
+        long frames = 0;
+        long bytes = 0;
+        while (System.nanoTime() < end) {
+            selector.select(10);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                SocketChannel channel = (SocketChannel) key.channel();
+                ClientState state = (ClientState) key.attachment();
+                int read;
+                try {
+                    read = channel.read(state.buffer);
+                } catch (IOException e) {
+                    read = -1;
+                }
+                if (read < 0) {
+                    key.cancel();
+                    channel.close();
+                    channels.remove(channel);
+                    continue;
+                }
+                bytes += read;
+                frames += state.skipFrames();
+            }
+
+            if (System.nanoTime() >= nextTurn) {
+                nextTurn += TURN_INTERVAL_NANOS;
+                for (SocketChannel channel : channels)
+                    write(channel, Protocol.direction(Direction.values()[r.nextInt(4)], 0));
+            }
+            if (System.nanoTime() >= nextReport) {
+                nextReport += 1_000_000_000L;
+                System.out.printf("%d clients, %d frames/s, %.1f MB/s%n", channels.size(), frames, bytes / 1e6);
+                frames = 0;
+                bytes = 0;
+            }
+        }
+        for (SocketChannel channel : channels)
+            channel.close();
+        selector.close();
+    }
+
+    /**
+     * Writes a small frame, dropping it if the socket buffer is full
+     */
+    private static void write(SocketChannel channel, ByteBuffer frame) throws IOException {
+        channel.write(frame);
+    }
+
+    /**
+     * Receive state of one client. Frames are only counted, not decoded.
+     */
+    private static class ClientState {
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        // Bytes left of the frame currently being skipped
+        private long skipping;
+
+        /**
+         * Skips over received frames
+         *
+         * @return number of frames completed
+         */
+        int skipFrames() {
+            buffer.flip();
+            int completed = 0;
+            while (true) {
+                if (skipping > 0) {
+                    int n = (int) Math.min(skipping, buffer.remaining());
+                    buffer.position(buffer.position() + n);
+                    skipping -= n;
+                    if (skipping > 0)
+                        break;
+                    completed++;
+                }
+                if (buffer.remaining() < 4)
+                    break;
+                skipping = buffer.getInt();
+            }
+            buffer.compact();
+            return completed;
+        }
+    }
+}
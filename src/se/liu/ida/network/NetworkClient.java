@@ -0,0 +1,242 @@
+package se.liu.ida.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import se.liu.ida.logic.Direction;
+
+/**
+ * A player's connection to a GameServer with client side prediction. Frames
+ * are read on a thread of their own and applied by <code>update()</code>,
+ * which also moves the prediction ahead of the server. The prediction is kept
+ * far enough ahead that a turn sent for its tick reaches the server before the
+ * server simulates that tick, so a turn shows at once and is rarely corrected.
+ *
+ * Everything but <code>turn</code> and <code>close</code> must be called from
+ * one thread, such as the event dispatch thread.
+ */
+public class NetworkClient implements Closeable {
+    // Extra ticks the prediction is kept ahead to absorb jitter
+    private static final int LEAD_MARGIN = 1;
+
+    private final SocketChannel channel;
+    private final String name;
+    private final Thread reader;
+    // Frames from the reader thread, each the arrival time, type and payload
+    private final Queue<ByteBuffer> frames;
+    private volatile boolean running;
+
+    // The direction the user wants, set from any thread
+    private volatile Direction wanted;
+    private Direction sent;
+
+    private int playerId;
+    private ClientWorld world;
+    private PlayerPrediction prediction;
+    private long periodNanos;
+    private long joinNanos;
+    private long roundTripNanos;
+    // Last view tick and when it arrived, to estimate the server's tick
+    private long serverTick = -1;
+    private long serverTickNanos;
+    // When the prediction last stepped, to interpolate between ticks
+    private long stepNanos;
+
+    private NetworkClient(SocketChannel channel, String name) {
+        this.channel = channel;
+        this.name = name;
+        this.frames = new ConcurrentLinkedQueue<>();
+        this.reader = new Thread(this::readFrames, "network-client-reader");
+        this.reader.setDaemon(true);
+    }
+
+    /**
+     * Connects to a server and joins the game
+     *
+     * @param host host of server
+     * @param port port of server
+     * @param name name of the player
+     * @return the connected client
+     * @throws IOException if connecting fails
+     */
+    public static NetworkClient connect(String host, int port, String name) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        NetworkClient client = new NetworkClient(channel, name);
+        client.running = true;
+        client.reader.start();
+        client.join();
+        return client;
+    }
+
+    /**
+     * Joins the game with a new player, after the last one died
+     *
+     * @throws IOException if sending fails
+     */
+    public void join() throws IOException {
+        joinNanos = System.nanoTime();
+        write(Protocol.join(name));
+    }
+
+    /**
+     * Turns the local player on the next predicted tick. May be called from any
+     * thread.
+     *
+     * @param direction direction to turn in
+     */
+    public void turn(Direction direction) {
+        this.wanted = direction;
+    }
+
+    /**
+     * Applies the frames that have arrived, reconciling the prediction with every
+     * view, and predicts ahead up to the tick the server will be at when a turn
+     * sent now arrives
+     *
+     * @throws IOException if sending a turn fails
+     */
+    public void update() throws IOException {
+        ByteBuffer frame;
+        while ((frame = frames.poll()) != null) {
+            long arrival = frame.getLong();
+            byte type = frame.get();
+            if (type == Protocol.WELCOME)
+                welcome(frame, arrival);
+            else if (type == Protocol.VIEW && world != null)
+                view(frame, arrival);
+        }
+        if (prediction == null || prediction.getTick() < 0)
+            return;
+
+        long now = System.nanoTime();
+        long estimate = serverTick + (now - serverTickNanos) / periodNanos;
+        long lead = (roundTripNanos + periodNanos - 1) / periodNanos + LEAD_MARGIN;
+        long target = estimate + Math.min(lead, PlayerPrediction.MAX_LEAD / 2);
+        while (prediction.getTick() < target) {
+            Direction direction = wanted != null ? wanted : prediction.getDirection();
+            if (direction != null && direction != sent) {
+                write(Protocol.direction(direction, prediction.getTick() + 1));
+                sent = direction;
+            }
+            prediction.step(direction);
+            stepNanos = now;
+        }
+    }
+
+    private void welcome(ByteBuffer payload, long arrival) {
+        playerId = payload.getInt();
+        int width = payload.getInt();
+        int height = payload.getInt();
+        payload.getInt();
+        payload.getInt();
+        serverTick = payload.getLong();
+        serverTickNanos = arrival;
+        periodNanos = payload.getLong();
+        roundTripNanos = arrival - joinNanos;
+        if (world == null || world.getWidth() != width || world.getHeight() != height)
+            world = new ClientWorld(width, height);
+        prediction = new PlayerPrediction(world, playerId);
+        wanted = null;
+        sent = null;
+    }
+
+    private void view(ByteBuffer payload, long arrival) {
+        world.apply(payload);
+        serverTick = world.getTick();
+        serverTickNanos = arrival;
+        if (prediction != null)
+            prediction.reconcile();
+    }
+
+    /**
+     * Reads frames until the connection closes and queues them with their
+     * arrival time for <code>update</code>
+     */
+    private void readFrames() {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        try {
+            while (running && channel.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.remaining() >= 4 && buffer.remaining() >= 4 + buffer.getInt(buffer.position())) {
+                    int length = buffer.getInt();
+                    ByteBuffer frame = ByteBuffer.allocate(8 + length);
+                    frame.putLong(System.nanoTime());
+                    frame.put(buffer.slice(buffer.position(), length));
+                    buffer.position(buffer.position() + length);
+                    frames.add(frame.flip());
+                }
+                buffer.compact();
+            }
+        } catch (IOException e) {
+            if (running)
+                e.printStackTrace();
+        }
+        running = false;
+    }
+
+    private synchronized void write(ByteBuffer frame) throws IOException {
+        while (frame.hasRemaining())
+            channel.write(frame);
+    }
+
+    /**
+     * @return whether the connection is open
+     */
+    public boolean isConnected() {
+        return running;
+    }
+
+    /**
+     * @return the client's copy of the game area, null until welcomed
+     */
+    public ClientWorld getWorld() {
+        return world;
+    }
+
+    /**
+     * @return the prediction of the local player, null until welcomed
+     */
+    public PlayerPrediction getPrediction() {
+        return prediction;
+    }
+
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * @return measured round trip time in nanoseconds
+     */
+    public long getRoundTripNanos() {
+        return roundTripNanos;
+    }
+
+    /**
+     * @return how far the time since the prediction last stepped has come to the
+     *         next step, between 0 and 1
+     */
+    public double getTickFraction() {
+        if (periodNanos == 0)
+            return 0;
+        return Math.min(1, (System.nanoTime() - stepNanos) / (double) periodNanos);
+    }
+
+    /**
+     * @return time between ticks in nanoseconds, 0 until welcomed
+     */
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        channel.close();
+    }
+}
@@ -0,0 +1,154 @@
+package se.liu.ida.network;
+
+import se.liu.ida.logic.Direction;
+import se.liu.ida.objects.BoardSnapshot;
+
+/**
+ * Client side prediction of the local player. The player is moved ahead of the
+ * server every local tick with the same rules as the board, see
+ * <code>BoardSnapshot.advance</code>, so its trail and captures show up
+ * without waiting for a round trip. The direction used on every predicted tick
+ * is kept, and when a view arrives the prediction is rebuilt from the
+ * authoritative state and those directions are replayed for the ticks the
+ * server hasn't simulated yet.
+ *
+ * A replay that puts the player somewhere else than before is a misprediction.
+ * The difference is kept as an error that a painter blends away, so corrections
+ * don't make the player jump.
+ */
+public class PlayerPrediction {
+    // Predicted ticks whose directions are kept, the most a prediction can be
+    // ahead of the server
+    static final int MAX_LEAD = 256;
+
+    private final ClientWorld world;
+    private final int playerId;
+    private final Direction[] inputs;
+
+    // Tick the prediction is at, -1 before the first view
+    private long tick = -1;
+    private BoardSnapshot predicted;
+    // Index of the local player in predicted, -1 if it isn't alive
+    private int index = -1;
+
+    // Tiles between where the player was drawn and the corrected prediction
+    private double errorX;
+    private double errorY;
+    private int corrections;
+
+    /**
+     * Creates a prediction of a player
+     *
+     * @param world    the client's copy of the game area
+     * @param playerId id of the local player
+     */
+    public PlayerPrediction(ClientWorld world, int playerId) {
+        this.world = world;
+        this.playerId = playerId;
+        this.inputs = new Direction[MAX_LEAD];
+    }
+
+    /**
+     * Rebuilds the prediction from the last view applied to the world and
+     * replays the directions of the ticks after it
+     */
+    public void reconcile() {
+        long authoritative = world.getTick();
+        if (authoritative < 0)
+            return;
+        boolean wasAlive = index >= 0;
+        int oldX = wasAlive ? predicted.getX(index) : 0;
+        int oldY = wasAlive ? predicted.getY(index) : 0;
+
+        predicted = BoardSnapshot.fromLayers(world.getWidth(), world.getHeight(), world.getOwners(),
+                world.getContested(), world.getPlayerIds(), world.getPlayerXs(), world.getPlayerYs(),
+                world.getPlayerDirections(), world.getPlayerCount());
+        index = predicted.indexOfId(playerId);
+        if (index >= 0 && !predicted.isAlive(index))
+            index = -1;
+
+        // Ticks the server is ahead are not predicted
+        if (tick < authoritative || tick - authoritative >= MAX_LEAD)
+            tick = authoritative;
+        for (long t = authoritative + 1; t <= tick && index >= 0; t++) {
+            if (!predicted.advance(index, inputs[(int) (t % MAX_LEAD)]))
+                index = -1;
+        }
+
+        if (wasAlive && index >= 0 && (oldX != predicted.getX(index) || oldY != predicted.getY(index))) {
+            errorX += oldX - predicted.getX(index);
+            errorY += oldY - predicted.getY(index);
+            corrections++;
+        }
+    }
+
+    /**
+     * Predicts one more tick
+     *
+     * @param direction direction the player turns to on the tick
+     */
+    public void step(Direction direction) {
+        if (tick < 0)
+            return;
+        tick++;
+        inputs[(int) (tick % MAX_LEAD)] = direction;
+        if (index >= 0 && !predicted.advance(index, direction))
+            index = -1;
+    }
+
+    /**
+     * Scales the correction error, called by whoever draws the prediction as the
+     * error is blended away
+     *
+     * @param factor factor between 0 and 1 to keep of the error
+     */
+    public void decayError(double factor) {
+        errorX *= factor;
+        errorY *= factor;
+    }
+
+    /**
+     * @return tick the prediction is at, -1 before the first view
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return the predicted state, null before the first view
+     */
+    public BoardSnapshot getSnapshot() {
+        return predicted;
+    }
+
+    /**
+     * @return index of the local player in the predicted state, -1 if it isn't
+     *         alive
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return direction the local player has on the predicted tick, null if none
+     *         was predicted yet
+     */
+    public Direction getDirection() {
+        return index >= 0 ? predicted.getDirection(index) : null;
+    }
+
+    public double getErrorX() {
+        return errorX;
+    }
+
+    public double getErrorY() {
+        return errorY;
+    }
+
+    /**
+     * @return number of mispredictions corrected
+     */
+    public int getCorrections() {
+        return corrections;
+    }
+}
@@ -0,0 +1,133 @@
+package se.liu.ida.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import se.liu.ida.entities.Player;
+import se.liu.ida.logic.Direction;
+import se.liu.ida.objects.Board;
+
+/**
+ * Messages sent between game server and clients. Every message is a frame of
+ * an int length, counting the type byte and payload, followed by a type byte
+ * and the payload. All numbers are big endian.
+ *
+ * Clients send JOIN with their name and DIRECTION with a direction ordinal and
+ * the tick the turn is for. The server answers a join with WELCOME: the id of
+ * the client's player, the size of the game area, the chunk size, the view
+ * radius, the current tick and the time between ticks in nanoseconds. After
+ * every tick each client gets a VIEW with only what it can see, see
+ * InterestManager.
+ *
+ * Clients that follow the whole game area, such as spectators, send SPECTATE
+ * and get a KEYFRAME followed by a STATE_DELTA every tick, see StateEncoder,
+ * and send ACK with the tick of every state frame they have applied.
+ *
+ * Frames from the server are encoded with varints into pooled direct buffers,
+ * the few fixed size messages above use plain ints.
+ */
+final class Protocol {
+    static final byte JOIN = 1;
+    static final byte DIRECTION = 2;
+    static final byte ACK = 3;
+    static final byte SPECTATE = 4;
+    static final byte WELCOME = 10;
+    static final byte KEYFRAME = 11;
+    static final byte STATE_DELTA = 12;
+    static final byte VIEW = 13;
+
+    // Length int and type byte
+    static final int HEADER_SIZE = 5;
+    // Largest frame accepted from clients
+    static final int MAX_CLIENT_FRAME = 256;
+
+    private Protocol() {
+    }
+
+    /**
+     * Allocates a frame and writes its header
+     */
+    private static ByteBuffer frame(byte type, int payloadSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+        buffer.putInt(1 + payloadSize);
+        buffer.put(type);
+        return buffer;
+    }
+
+    static ByteBuffer join(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = frame(JOIN, 2 + bytes.length);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+        return buffer.flip();
+    }
+
+    /**
+     * @param direction direction to turn in
+     * @param tick      tick the turn is for, 0 to turn as soon as possible
+     */
+    static ByteBuffer direction(Direction direction, long tick) {
+        ByteBuffer buffer = frame(DIRECTION, 9);
+        buffer.put((byte) direction.ordinal());
+        buffer.putLong(tick);
+        return buffer.flip();
+    }
+
+    static ByteBuffer welcome(Player player, Board board, int chunkSize, int viewRadius, long periodNanos) {
+        ByteBuffer buffer = frame(WELCOME, 36);
+        buffer.putInt(player.getId());
+        buffer.putInt(board.getMapWidth());
+        buffer.putInt(board.getMapHeight());
+        buffer.putInt(chunkSize);
+        buffer.putInt(viewRadius);
+        buffer.putLong(board.getTickNumber());
+        buffer.putLong(periodNanos);
+        return buffer.flip();
+    }
+
+    static ByteBuffer ack(long tick) {
+        ByteBuffer buffer = frame(ACK, 8);
+        buffer.putLong(tick);
+        return buffer.flip();
+    }
+
+    static ByteBuffer spectate() {
+        return frame(SPECTATE, 0).flip();
+    }
+
+    /**
+     * Writes a frame header with a length to be filled in by
+     * <code>endFrame</code> at the start of a cleared buffer
+     */
+    static void beginFrame(ByteBuffer buffer, byte type) {
+        buffer.putInt(0);
+        buffer.put(type);
+    }
+
+    /**
+     * Fills in the length of a frame started by <code>beginFrame</code>
+     *
+     * @return buffer flipped for writing to a channel
+     */
+    static ByteBuffer endFrame(ByteBuffer buffer) {
+        buffer.putInt(0, buffer.position() - 4);
+        return buffer.flip();
+    }
+
+    /**
+     * Reads a name written by <code>join</code> from the position of buffer
+     *
+     * @throws IOException if the name is longer than what is left of buffer
+     */
+    static String readName(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 2)
+            throw new IOException("Missing name length");
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining())
+            throw new IOException("Name of " + length + " bytes in " + buffer.remaining() + " left");
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,89 @@
+package se.liu.ida.network;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks a sharded world against the same world in one shard. The single shard
+ * runs on a thread of this process and every shard of the split world in a JVM
+ * of its own on loopback. The checksums of the two worlds are compared after
+ * every tick, and ticks per second of both are printed.
+ */
+public class ShardCheck {
+    private static final long SEED = 1;
+
+    /**
+     * Arguments are size of game area, shards across and down, number of bots and
+     * ticks, which default to 1000, 2, 2, 1000 and 500.
+     *
+     * @param args optional size, columns, rows, bots and ticks
+     * @throws IOException if a worker can't be started or fails
+     */
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int columns = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int rows = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int bots = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int ticks = args.length > 4 ? Integer.parseInt(args[4]) : 500;
+
+        ServerSocket local = new ServerSocket(0);
+        Thread worker = new Thread(new ShardWorker(local), "shard-worker");
+        worker.start();
+        List<InetSocketAddress> single = List.of(new InetSocketAddress("localhost", local.getLocalPort()));
+
+        List<Process> processes = new ArrayList<>();
+        List<InetSocketAddress> split = new ArrayList<>();
+        try {
+            for (int i = 0; i < columns * rows; i++) {
+                Process process = startWorker();
+                processes.add(process);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                String port = reader.readLine();
+                if (port == null)
+                    throw new IOException("Worker " + i + " exited");
+                split.add(new InetSocketAddress("localhost", Integer.parseInt(port.trim())));
+            }
+
+            try (ShardCoordinator reference = new ShardCoordinator(size, size, 1, 1, single, SEED, bots);
+                    ShardCoordinator sharded = new ShardCoordinator(size, size, columns, rows, split, SEED, bots)) {
+                long referenceNanos = 0;
+                long shardedNanos = 0;
+                for (int t = 0; t < ticks; t++) {
+                    long start = System.nanoTime();
+                    reference.tick();
+                    long middle = System.nanoTime();
+                    sharded.tick();
+                    shardedNanos += System.nanoTime() - middle;
+                    referenceNanos += middle - start;
+                    if (reference.getChecksum() != sharded.getChecksum()
+                            || reference.getPlayerCount() != sharded.getPlayerCount()) {
+                        System.out.println("Worlds differ after tick " + sharded.getTickNumber());
+                        System.exit(1);
+                    }
+                }
+                System.out.printf("%d ticks on %dx%d with %d players, worlds equal%n", ticks, size, size,
+                        sharded.getPlayerCount());
+                System.out.printf("1 shard: %.0f ticks/s, %dx%d shards: %.0f ticks/s%n", ticks * 1e9 / referenceNanos,
+                        columns, rows, ticks * 1e9 / shardedNanos);
+            }
+        } finally {
+            for (Process process : processes)
+                process.destroy();
+        }
+    }
+
+    /**
+     * Starts a worker in a JVM of its own with the same class path as this one
+     */
+    private static Process startWorker() throws IOException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), ShardWorker.class.getName())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+}
@@ -0,0 +1,513 @@
+package se.liu.ida.network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import se.liu.ida.logic.Direction;
+import se.liu.ida.logic.InputQueue;
+
+/**
+ * Runs a world too large for one simulation thread split into a grid of
+ * rectangular shards, each simulated by a ShardWorker that may run in another
+ * process or on another host. The coordinator keeps track of the players and
+ * moves them, and the workers keep track of the tiles. Players and trails cross
+ * shard borders without being handed over, since a player is only a position
+ * to the workers and each worker owns the trail tiles in its own shard.
+ *
+ * Every tick runs in lockstep with all workers in three round trips, see
+ * ShardWorker. Enclosures spanning several shards are found by having every
+ * worker label the connected areas around the player in its shard and report
+ * the labels along its borders, which the coordinator joins with union-find
+ * before telling every worker which of its areas are enclosed.
+ *
+ * The rules are those of Board with all players moving at once: heads are
+ * checked against the tiles as they were before anyone moved, and of two
+ * players meeting head on the one owning the least dies. Bots turn at random
+ * like BotPlayer and spawn without looking for free space. Given the same seed
+ * a world plays out the same way however it is split.
+ */
+public class ShardCoordinator implements Closeable {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    // Most turns waiting per human player
+    private static final int INPUT_CAPACITY = 16;
+
+    private final int width;
+    private final int height;
+    private final Shard[] shards;
+    // Shard column of every x and shard row of every y
+    private final int[] columnOf;
+    private final int[] rowOf;
+    private final int columns;
+    private final Random r;
+
+    // Players alive in order of id
+    private final List<PlayerState> players;
+    private final Map<Integer, PlayerState> byId;
+    // Players that spawn on the next tick
+    private final List<PlayerState> spawning;
+    private int nextId = 1;
+    private long tickNumber;
+    private long checksum;
+
+    /**
+     * Connects to one worker per shard and starts a world with bots
+     *
+     * @param width     width of game area
+     * @param height    height of game area
+     * @param columns   number of shards across
+     * @param rows      number of shards down
+     * @param workers   addresses of the workers, row by row
+     * @param seed      seed for all randomness in the world
+     * @param botNumber number of bots to keep in the world
+     * @throws IOException if connecting to a worker fails
+     */
+    public ShardCoordinator(int width, int height, int columns, int rows, List<InetSocketAddress> workers, long seed,
+            int botNumber) throws IOException {
+        if (workers.size() != columns * rows)
+            throw new IllegalArgumentException("Need " + columns * rows + " workers, got " + workers.size());
+        this.width = width;
+        this.height = height;
+        this.columns = columns;
+        this.r = new Random(seed);
+        this.players = new ArrayList<>();
+        this.byId = new HashMap<>();
+        this.spawning = new ArrayList<>();
+
+        this.columnOf = new int[width];
+        this.rowOf = new int[height];
+        this.shards = new Shard[columns * rows];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int left = width * column / columns;
+                int right = width * (column + 1) / columns;
+                int top = height * row / rows;
+                int bottom = height * (row + 1) / rows;
+                for (int x = left; x < right; x++)
+                    columnOf[x] = column;
+                for (int y = top; y < bottom; y++)
+                    rowOf[y] = row;
+                shards[row * columns + column] = new Shard(workers.get(row * columns + column), left, top, right,
+                        bottom);
+            }
+        }
+        for (Shard shard : shards) {
+            shard.out.writeByte(ShardWorker.INIT);
+            shard.out.writeInt(width);
+            shard.out.writeInt(height);
+            shard.out.writeInt(shard.left);
+            shard.out.writeInt(shard.top);
+            shard.out.writeInt(shard.right);
+            shard.out.writeInt(shard.bottom);
+            shard.out.flush();
+        }
+
+        for (int i = 0; i < botNumber; i++)
+            spawn(null);
+    }
+
+    /**
+     * Adds a human player that spawns on the next tick and turns with the inputs
+     * offered to its queue
+     *
+     * @return id of the player
+     */
+    public int join() {
+        return spawn(new InputQueue(INPUT_CAPACITY)).id;
+    }
+
+    private PlayerState spawn(InputQueue inputs) {
+        PlayerState player = new PlayerState(nextId++, inputs);
+        player.x = 3 + r.nextInt(width - 6);
+        player.y = 3 + r.nextInt(height - 6);
+        player.direction = DIRECTIONS[r.nextInt(DIRECTIONS.length)];
+        player.minX = player.x - 1;
+        player.maxX = player.x + 1;
+        player.minY = player.y - 1;
+        player.maxY = player.y + 1;
+        spawning.add(player);
+        return player;
+    }
+
+    /**
+     * Simulates one tick in lockstep with all workers
+     *
+     * @throws IOException if a worker fails
+     */
+    public void tick() throws IOException {
+        tickNumber++;
+        HashSet<PlayerState> dead = new HashSet<>();
+        HashMap<Integer, PlayerState> heads = new HashMap<>();
+        for (PlayerState player : players) {
+            turn(player);
+            player.x += player.direction.getX();
+            player.y += player.direction.getY();
+            if (player.x < 0 || player.x >= width || player.y < 0 || player.y >= height) {
+                dead.add(player);
+                continue;
+            }
+            // Players are moved in order of id, so of two meeting head on the
+            // one with the higher id dies if they own as much
+            PlayerState other = heads.putIfAbsent(player.y * width + player.x, player);
+            if (other != null) {
+                if (player.owned > other.owned) {
+                    dead.add(other);
+                    heads.put(player.y * width + player.x, player);
+                } else {
+                    dead.add(player);
+                }
+            }
+        }
+        // Players spawning don't move until the next tick
+        List<PlayerState> spawned = new ArrayList<>(spawning);
+        spawning.clear();
+        for (PlayerState player : spawned)
+            byId.put(player.id, player);
+
+        HashSet<Integer> kills = new HashSet<>();
+        HashSet<Integer> homes = new HashSet<>();
+        move(spawned, heads, kills, homes);
+        for (PlayerState player : players)
+            if (kills.contains(player.id))
+                dead.add(player);
+
+        // Players that came home with a trail fill their enclosures
+        List<PlayerState> fillers = new ArrayList<>();
+        for (PlayerState player : players) {
+            if (dead.contains(player) || heads.get(player.y * width + player.x) != player)
+                continue;
+            if (homes.contains(player.id)) {
+                if (player.trail > 0)
+                    fillers.add(player);
+                player.trail = 0;
+            } else {
+                player.trail++;
+                player.minX = Math.min(player.minX, player.x);
+                player.maxX = Math.max(player.maxX, player.x);
+                player.minY = Math.min(player.minY, player.y);
+                player.maxY = Math.max(player.maxY, player.y);
+            }
+        }
+        resolve(dead, fillers);
+        fill(fillers);
+
+        // Dead bots respawn in order of id so the world plays out the same way
+        for (PlayerState player : players) {
+            if (dead.contains(player)) {
+                byId.remove(player.id);
+                if (player.inputs == null)
+                    spawn(null);
+            }
+        }
+        players.removeIf(dead::contains);
+        players.addAll(spawned);
+    }
+
+    /**
+     * Turns a player with its next due input, or at random if it is a bot
+     */
+    private void turn(PlayerState player) {
+        if (player.inputs != null) {
+            Direction direction = player.inputs.poll(tickNumber);
+            if (direction != null)
+                player.direction = direction;
+            return;
+        }
+        Direction direction;
+        do {
+            direction = DIRECTIONS[r.nextInt(DIRECTIONS.length)];
+        } while (player.x + direction.getX() < 0 || player.x + direction.getX() >= width
+                || player.y + direction.getY() < 0 || player.y + direction.getY() >= height);
+        player.direction = direction;
+    }
+
+    /**
+     * Sends every worker the spawns and the heads in its shard, and collects the
+     * trails run over and the players that came home
+     */
+    private void move(List<PlayerState> spawned, Map<Integer, PlayerState> heads, HashSet<Integer> kills,
+            HashSet<Integer> homes) throws IOException {
+        List<List<PlayerState>> shardHeads = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++)
+            shardHeads.add(new ArrayList<>());
+        for (PlayerState player : heads.values())
+            shardHeads.get(rowOf[player.y] * columns + columnOf[player.x]).add(player);
+
+        for (int i = 0; i < shards.length; i++) {
+            DataOutputStream out = shards[i].out;
+            out.writeByte(ShardWorker.MOVE);
+            out.writeInt(spawned.size());
+            for (PlayerState player : spawned) {
+                out.writeInt(player.id);
+                out.writeInt(player.x);
+                out.writeInt(player.y);
+            }
+            out.writeInt(shardHeads.get(i).size());
+            for (PlayerState player : shardHeads.get(i)) {
+                out.writeInt(player.id);
+                out.writeInt(player.x);
+                out.writeInt(player.y);
+            }
+            out.flush();
+        }
+        for (Shard shard : shards) {
+            kills.addAll(ShardWorker.readIds(shard.in));
+            homes.addAll(ShardWorker.readIds(shard.in));
+        }
+    }
+
+    /**
+     * Tells every worker who died and who fills, and joins the areas the workers
+     * labelled around each filling player into the areas that are enclosed
+     */
+    private void resolve(HashSet<PlayerState> dead, List<PlayerState> fillers) throws IOException {
+        for (Shard shard : shards) {
+            DataOutputStream out = shard.out;
+            out.writeByte(ShardWorker.RESOLVE);
+            out.writeInt(dead.size());
+            for (PlayerState player : dead)
+                out.writeInt(player.id);
+            out.writeInt(fillers.size());
+            for (PlayerState player : fillers) {
+                out.writeInt(player.id);
+                out.writeInt(player.minX);
+                out.writeInt(player.minY);
+                out.writeInt(player.maxX);
+                out.writeInt(player.maxY);
+            }
+            out.flush();
+        }
+
+        for (Shard shard : shards)
+            shard.inside = new boolean[fillers.size()][];
+        for (int f = 0; f < fillers.size(); f++) {
+            // Labels of all shards numbered one after another
+            int[] offsets = new int[shards.length];
+            int total = 0;
+            boolean[][] outside = new boolean[shards.length][];
+            HashMap<Integer, Integer> borderNodes = new HashMap<>();
+            for (int i = 0; i < shards.length; i++) {
+                DataInputStream in = shards[i].in;
+                int count = in.readInt();
+                outside[i] = new boolean[count + 1];
+                for (int label = 1; label <= count; label++)
+                    outside[i][label] = in.readBoolean();
+                offsets[i] = total;
+                total += count + 1;
+                int border = in.readInt();
+                for (int b = 0; b < border; b++) {
+                    int cell = in.readInt();
+                    borderNodes.put(cell, offsets[i] + in.readInt());
+                }
+            }
+
+            int[] parent = new int[total];
+            boolean[] rootOutside = new boolean[total];
+            for (int node = 0; node < total; node++)
+                parent[node] = node;
+            for (int i = 0; i < shards.length; i++)
+                for (int label = 1; label < outside[i].length; label++)
+                    rootOutside[offsets[i] + label] = outside[i][label];
+            for (Map.Entry<Integer, Integer> entry : borderNodes.entrySet()) {
+                int cell = entry.getKey();
+                int x = cell % width;
+                if (x + 1 < width)
+                    union(parent, rootOutside, entry.getValue(), borderNodes.get(cell + 1));
+                union(parent, rootOutside, entry.getValue(), borderNodes.get(cell + width));
+            }
+
+            for (int i = 0; i < shards.length; i++) {
+                boolean[] inside = new boolean[outside[i].length];
+                for (int label = 1; label < inside.length; label++)
+                    inside[label] = !rootOutside[find(parent, offsets[i] + label)];
+                shards[i].inside[f] = inside;
+            }
+        }
+    }
+
+    private static void union(int[] parent, boolean[] outside, int a, Integer b) {
+        if (b == null)
+            return;
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) {
+            parent[rootB] = rootA;
+            outside[rootA] |= outside[rootB];
+        }
+    }
+
+    private static int find(int[] parent, int node) {
+        while (parent[node] != node) {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+        return node;
+    }
+
+    /**
+     * Tells every worker which of its areas are enclosed, and collects the change
+     * in tiles owned per player and the checksums of the shards
+     */
+    private void fill(List<PlayerState> fillers) throws IOException {
+        for (Shard shard : shards) {
+            DataOutputStream out = shard.out;
+            out.writeByte(ShardWorker.FILL);
+            for (boolean[] inside : shard.inside) {
+                out.writeInt(inside.length - 1);
+                for (int label = 1; label < inside.length; label++)
+                    out.writeBoolean(inside[label]);
+            }
+            out.flush();
+        }
+        checksum = 0;
+        for (Shard shard : shards) {
+            int deltas = shard.in.readInt();
+            for (int i = 0; i < deltas; i++) {
+                int id = shard.in.readInt();
+                int delta = shard.in.readInt();
+                PlayerState player = byId.get(id);
+                if (player != null)
+                    player.owned += delta;
+            }
+            checksum += shard.in.readLong();
+        }
+    }
+
+    /**
+     * Hashes a tile that isn't empty for the checksum of the world
+     *
+     * @param index     index of the tile in row major order
+     * @param owner     owner id of the tile
+     * @param contested contested owner id of the tile
+     * @return hash of the tile
+     */
+    static long hashTile(long index, int owner, int contested) {
+        long h = index * 0x9E3779B97F4A7C15L + owner * 0xC2B2AE3D27D4EB4FL + contested * 0x165667B19E3779F9L;
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * @param id id of a human player
+     * @return queue to offer the player's turns to, or null if it isn't alive
+     */
+    public InputQueue getInputs(int id) {
+        PlayerState player = byId.get(id);
+        if (player == null) {
+            for (PlayerState spawn : spawning)
+                if (spawn.id == id)
+                    return spawn.inputs;
+            return null;
+        }
+        return player.inputs;
+    }
+
+    /**
+     * @param id id of a player
+     * @return number of tiles the player owns, or -1 if it isn't alive
+     */
+    public int getOwned(int id) {
+        PlayerState player = byId.get(id);
+        return player == null ? -1 : player.owned;
+    }
+
+    public long getTickNumber() {
+        return tickNumber;
+    }
+
+    /**
+     * @return number of players alive
+     */
+    public int getPlayerCount() {
+        return players.size();
+    }
+
+    /**
+     * @return checksum of all tiles after the last tick, the same however the
+     *         world is split
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Shuts down all workers and closes the connections to them
+     */
+    @Override
+    public void close() throws IOException {
+        for (Shard shard : shards) {
+            try {
+                shard.out.writeByte(ShardWorker.SHUTDOWN);
+                shard.out.flush();
+            } finally {
+                shard.socket.close();
+            }
+        }
+    }
+
+    /**
+     * A connection to the worker of one shard and the shard's bounds, right and
+     * bottom exclusive
+     */
+    private static class Shard {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        final int left;
+        final int top;
+        final int right;
+        final int bottom;
+        // Which labels are enclosed for each filler this tick
+        boolean[][] inside;
+
+        Shard(InetSocketAddress address, int left, int top, int right, int bottom) throws IOException {
+            this.socket = new Socket();
+            socket.connect(address);
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+    }
+
+    /**
+     * What the coordinator knows about a player
+     */
+    private static class PlayerState {
+        final int id;
+        // Queue of turns for a human player, null for a bot
+        final InputQueue inputs;
+        int x;
+        int y;
+        Direction direction;
+        // Length of the trail and tiles owned
+        int trail;
+        int owned;
+        // Box around every tile the player has owned or contested since it
+        // spawned, enough to bound its enclosures
+        int minX;
+        int minY;
+        int maxX;
+        int maxY;
+
+        PlayerState(int id, InputQueue inputs) {
+            this.id = id;
+            this.inputs = inputs;
+        }
+    }
+}
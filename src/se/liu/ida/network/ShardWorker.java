@@ -0,0 +1,415 @@
+package se.liu.ida.network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Simulates the tiles of one rectangular shard of a world split by a
+ * ShardCoordinator. A worker only knows the owner and contested ids of its own
+ * tiles. The coordinator moves the players and tells each worker which heads
+ * are in its shard, and the worker reports which trails they ran over and which
+ * heads came home.
+ *
+ * Each tick has three steps in lockstep with the coordinator:
+ * <ol>
+ * <li>MOVE: spawns claim their starting areas and heads contest their
+ * tiles</li>
+ * <li>RESOLVE: dead players lose their tiles, trails of players that came home
+ * become owned, and the tiles around each of those players are labelled by
+ * connected area</li>
+ * <li>FILL: the areas the coordinator found enclosed are filled</li>
+ * </ol>
+ * A worker serves one coordinator and exits when it disconnects.
+ */
+public class ShardWorker implements Runnable {
+    static final byte INIT = 1;
+    static final byte MOVE = 2;
+    static final byte RESOLVE = 3;
+    static final byte FILL = 4;
+    static final byte SHUTDOWN = 5;
+
+    private final ServerSocket server;
+
+    // Size of the whole world and the shard's bounds, right and bottom
+    // exclusive
+    private int mapWidth;
+    private int mapHeight;
+    private int left;
+    private int top;
+    private int width;
+    private int height;
+    // Owner and contested ids of the shard's tiles in row major order
+    private int[] owners;
+    private int[] contested;
+
+    // Connected area of each tile around the player being filled, 0 for none
+    private int[] labels;
+    private int[] stack;
+    // Labels of each filling player found in RESOLVE, used in FILL
+    private int[][] fillLabels;
+    private int[] fillIds;
+
+    // Change in tiles owned per player during the tick
+    private final Map<Integer, Integer> ownedDeltas;
+
+    /**
+     * Creates a worker waiting for its coordinator on a socket
+     *
+     * @param server socket to accept the coordinator on
+     */
+    public ShardWorker(ServerSocket server) {
+        this.server = server;
+        this.ownedDeltas = new HashMap<>();
+    }
+
+    /**
+     * Accepts the coordinator and serves it until it disconnects or shuts the
+     * worker down
+     */
+    @Override
+    public void run() {
+        try (ServerSocket s = server; Socket socket = s.accept()) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (serve(in, out))
+                out.flush();
+        } catch (EOFException e) {
+            // Coordinator went away
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean serve(DataInputStream in, DataOutputStream out) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case INIT:
+                init(in);
+                return true;
+            case MOVE:
+                move(in, out);
+                return true;
+            case RESOLVE:
+                resolve(in, out);
+                return true;
+            case FILL:
+                fill(in, out);
+                return true;
+            case SHUTDOWN:
+                return false;
+            default:
+                throw new IOException("Unknown message type " + type);
+        }
+    }
+
+    private void init(DataInputStream in) throws IOException {
+        mapWidth = in.readInt();
+        mapHeight = in.readInt();
+        left = in.readInt();
+        top = in.readInt();
+        width = in.readInt() - left;
+        height = in.readInt() - top;
+        owners = new int[width * height];
+        contested = new int[width * height];
+        labels = new int[width * height];
+        stack = new int[width * height];
+    }
+
+    /**
+     * Claims starting areas and moves heads onto the shard's tiles. All heads are
+     * checked against the tiles as they were before any of them moved, so the
+     * result doesn't depend on how the world is split.
+     */
+    private void move(DataInputStream in, DataOutputStream out) throws IOException {
+        ownedDeltas.clear();
+        int spawns = in.readInt();
+        for (int i = 0; i < spawns; i++) {
+            int id = in.readInt();
+            int x = in.readInt();
+            int y = in.readInt();
+            for (int ty = Math.max(top, y - 1); ty <= Math.min(top + height - 1, y + 1); ty++) {
+                for (int tx = Math.max(left, x - 1); tx <= Math.min(left + width - 1, x + 1); tx++) {
+                    own((ty - top) * width + tx - left, id);
+                    contested[(ty - top) * width + tx - left] = 0;
+                }
+            }
+        }
+
+        int heads = in.readInt();
+        int[] ids = new int[heads];
+        int[] cells = new int[heads];
+        HashSet<Integer> kills = new HashSet<>();
+        HashSet<Integer> homes = new HashSet<>();
+        for (int i = 0; i < heads; i++) {
+            ids[i] = in.readInt();
+            int x = in.readInt();
+            int y = in.readInt();
+            if (x < left || x >= left + width || y < top || y >= top + height)
+                throw new IOException("Head outside shard");
+            cells[i] = (y - top) * width + x - left;
+            if (contested[cells[i]] != 0)
+                kills.add(contested[cells[i]]);
+            if (owners[cells[i]] == ids[i])
+                homes.add(ids[i]);
+        }
+        for (int i = 0; i < heads; i++)
+            if (owners[cells[i]] != ids[i])
+                contested[cells[i]] = ids[i];
+
+        writeIds(out, kills);
+        writeIds(out, homes);
+    }
+
+    /**
+     * Clears the tiles of dead players, turns the trails of players that came
+     * home to owned tiles and labels the connected areas not owned by each of
+     * them within their bounds
+     */
+    private void resolve(DataInputStream in, DataOutputStream out) throws IOException {
+        HashSet<Integer> dead = readIds(in);
+        int fillers = in.readInt();
+        fillIds = new int[fillers];
+        int[][] bounds = new int[fillers][];
+        HashSet<Integer> filling = new HashSet<>();
+        for (int i = 0; i < fillers; i++) {
+            fillIds[i] = in.readInt();
+            bounds[i] = new int[] { in.readInt(), in.readInt(), in.readInt(), in.readInt() };
+            filling.add(fillIds[i]);
+        }
+
+        if (!dead.isEmpty() || !filling.isEmpty()) {
+            for (int cell = 0; cell < owners.length; cell++) {
+                if (owners[cell] != 0 && dead.contains(owners[cell]))
+                    own(cell, 0);
+                if (contested[cell] != 0 && dead.contains(contested[cell])) {
+                    contested[cell] = 0;
+                } else if (contested[cell] != 0 && filling.contains(contested[cell])) {
+                    own(cell, contested[cell]);
+                    contested[cell] = 0;
+                }
+            }
+        }
+
+        fillLabels = new int[fillers][];
+        for (int i = 0; i < fillers; i++)
+            label(out, i, fillIds[i], bounds[i]);
+    }
+
+    /**
+     * Labels the connected areas of tiles not owned by a player within its
+     * bounding box grown by one tile, and writes for every label whether it
+     * reaches outside the box or the edge of the world, followed by the labels
+     * of the tiles on the shard's border that neighbour another shard
+     *
+     * @param index  index of the filling player in this tick's fillers
+     * @param id     id of the filling player
+     * @param bounds the player's bounding box as min x, min y, max x and max y
+     */
+    private void label(DataOutputStream out, int index, int id, int[] bounds) throws IOException {
+        int minX = Math.max(0, bounds[0] - 1);
+        int minY = Math.max(0, bounds[1] - 1);
+        int maxX = Math.min(mapWidth - 1, bounds[2] + 1);
+        int maxY = Math.min(mapHeight - 1, bounds[3] + 1);
+        // The box clipped to the shard
+        int fromX = Math.max(minX, left);
+        int fromY = Math.max(minY, top);
+        int toX = Math.min(maxX, left + width - 1);
+        int toY = Math.min(maxY, top + height - 1);
+        if (fromX > toX || fromY > toY) {
+            fillLabels[index] = new int[0];
+            out.writeInt(0);
+            out.writeInt(0);
+            return;
+        }
+
+        for (int y = fromY; y <= toY; y++)
+            Arrays.fill(labels, (y - top) * width + fromX - left, (y - top) * width + toX - left + 1, 0);
+        int count = 0;
+        boolean[] outside = new boolean[16];
+        for (int y = fromY; y <= toY; y++) {
+            for (int x = fromX; x <= toX; x++) {
+                int start = (y - top) * width + x - left;
+                if (labels[start] != 0 || owners[start] == id)
+                    continue;
+                count++;
+                if (count >= outside.length)
+                    outside = Arrays.copyOf(outside, 2 * outside.length);
+                labels[start] = count;
+                int size = 0;
+                stack[size++] = start;
+                while (size > 0) {
+                    int cell = stack[--size];
+                    int cx = cell % width + left;
+                    int cy = cell / width + top;
+                    // Tiles outside the box can't be enclosed, and neither can
+                    // tiles on the edge of the world
+                    if (cx < bounds[0] || cx > bounds[2] || cy < bounds[1] || cy > bounds[3] || cx == 0
+                            || cy == 0 || cx == mapWidth - 1 || cy == mapHeight - 1)
+                        outside[count] = true;
+                    if (cx > fromX)
+                        size = push(cell - 1, count, id, size);
+                    if (cx < toX)
+                        size = push(cell + 1, count, id, size);
+                    if (cy > fromY)
+                        size = push(cell - width, count, id, size);
+                    if (cy < toY)
+                        size = push(cell + width, count, id, size);
+                }
+            }
+        }
+
+        out.writeInt(count);
+        for (int i = 1; i <= count; i++)
+            out.writeBoolean(outside[i]);
+
+        // Tiles on the shard's border whose neighbour in the box is in another
+        // shard, for the coordinator to join areas across shards
+        int border = 0;
+        for (int y = fromY; y <= toY; y++)
+            for (int x = fromX; x <= toX; x++)
+                if (labels[(y - top) * width + x - left] != 0 && onBorder(x, y, minX, minY, maxX, maxY))
+                    border++;
+        out.writeInt(border);
+        for (int y = fromY; y <= toY; y++) {
+            for (int x = fromX; x <= toX; x++) {
+                int label = labels[(y - top) * width + x - left];
+                if (label != 0 && onBorder(x, y, minX, minY, maxX, maxY)) {
+                    out.writeInt(y * mapWidth + x);
+                    out.writeInt(label);
+                }
+            }
+        }
+
+        // Remembers the label of every tile in the box for FILL
+        int[] kept = new int[(toX - fromX + 1) * (toY - fromY + 1) + 4];
+        kept[0] = fromX;
+        kept[1] = fromY;
+        kept[2] = toX;
+        kept[3] = toY;
+        int k = 4;
+        for (int y = fromY; y <= toY; y++)
+            for (int x = fromX; x <= toX; x++)
+                kept[k++] = labels[(y - top) * width + x - left];
+        fillLabels[index] = kept;
+    }
+
+    private int push(int cell, int label, int id, int size) {
+        if (labels[cell] == 0 && owners[cell] != id) {
+            labels[cell] = label;
+            stack[size++] = cell;
+        }
+        return size;
+    }
+
+    /**
+     * @return whether a tile in the box is on the edge of the shard next to a
+     *         tile of the box in another shard
+     */
+    private boolean onBorder(int x, int y, int minX, int minY, int maxX, int maxY) {
+        return (x == left && x > minX) || (x == left + width - 1 && x < maxX) || (y == top && y > minY)
+                || (y == top + height - 1 && y < maxY);
+    }
+
+    /**
+     * Fills the areas the coordinator found enclosed, in the order of the
+     * fillers, and reports the change in tiles owned per player during the tick
+     * and a checksum of the shard
+     */
+    private void fill(DataInputStream in, DataOutputStream out) throws IOException {
+        for (int i = 0; i < fillIds.length; i++) {
+            int count = in.readInt();
+            boolean[] inside = new boolean[count + 1];
+            for (int l = 1; l <= count; l++)
+                inside[l] = in.readBoolean();
+            int[] kept = fillLabels[i];
+            if (kept.length == 0)
+                continue;
+            int k = 4;
+            for (int y = kept[1]; y <= kept[3]; y++) {
+                for (int x = kept[0]; x <= kept[2]; x++) {
+                    int label = kept[k++];
+                    if (label != 0 && inside[label]) {
+                        own((y - top) * width + x - left, fillIds[i]);
+                        contested[(y - top) * width + x - left] = 0;
+                    }
+                }
+            }
+        }
+
+        out.writeInt(ownedDeltas.size());
+        for (Map.Entry<Integer, Integer> delta : ownedDeltas.entrySet()) {
+            out.writeInt(delta.getKey());
+            out.writeInt(delta.getValue());
+        }
+        out.writeLong(checksum());
+    }
+
+    /**
+     * Gives a tile to a player, or to no one, counting the change in tiles owned
+     */
+    private void own(int cell, int id) {
+        int old = owners[cell];
+        if (old != id) {
+            if (old != 0)
+                ownedDeltas.merge(old, -1, Integer::sum);
+            if (id != 0)
+                ownedDeltas.merge(id, 1, Integer::sum);
+            owners[cell] = id;
+        }
+    }
+
+    /**
+     * @return sum of a hash of every tile that isn't empty, the same however the
+     *         world is split
+     */
+    private long checksum() {
+        long sum = 0;
+        for (int cell = 0; cell < owners.length; cell++) {
+            if (owners[cell] != 0 || contested[cell] != 0) {
+                long index = (long) (cell / width + top) * mapWidth + cell % width + left;
+                sum += ShardCoordinator.hashTile(index, owners[cell], contested[cell]);
+            }
+        }
+        return sum;
+    }
+
+    private static void writeIds(DataOutputStream out, HashSet<Integer> ids) throws IOException {
+        out.writeInt(ids.size());
+        for (int id : ids)
+            out.writeInt(id);
+    }
+
+    static HashSet<Integer> readIds(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        HashSet<Integer> ids = new HashSet<>();
+        for (int i = 0; i < count; i++)
+            ids.add(in.readInt());
+        return ids;
+    }
+
+    /**
+     * Runs a worker in its own process. Prints the port it listens on on a line
+     * of its own before accepting the coordinator.
+     *
+     * @param args optional port, which defaults to 0 for any free port
+     * @throws IOException if the socket can't be opened
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        ServerSocket server = new ServerSocket(port);
+        System.out.println(server.getLocalPort());
+        System.out.flush();
+        new ShardWorker(server).run();
+    }
+}
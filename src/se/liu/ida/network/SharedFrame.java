@@ -0,0 +1,42 @@
+package se.liu.ida.network;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A frame encoded once and queued on many connections. Each connection gets a
+ * read only view of the same buffer, and the buffer goes back to the pool when
+ * every view has been written. Only touched by the server's selector thread.
+ */
+class SharedFrame {
+    private final ByteBuffer frame;
+    // Views not yet written, plus one held by whoever shares the frame
+    private int references;
+
+    /**
+     * @param frame frame flipped for writing, owned by this from now on
+     */
+    SharedFrame(ByteBuffer frame) {
+        this.frame = frame;
+        this.references = 1;
+    }
+
+    /**
+     * @return a read only view of the frame with its own position, to be given
+     *         back with <code>release</code> when written
+     */
+    ByteBuffer share() {
+        references++;
+        return frame.asReadOnlyBuffer();
+    }
+
+    /**
+     * Gives back a view, or the reference of whoever shares the frame once done
+     * sharing it
+     *
+     * @param pool pool the frame came from
+     */
+    void release(BufferPool pool) {
+        if (--references == 0)
+            pool.release(frame);
+    }
+}
@@ -0,0 +1,248 @@
+package se.liu.ida.network;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import se.liu.ida.logic.Direction;
+
+/**
+ * A client's copy of a board's state, kept up to date by applying the
+ * KEYFRAME and STATE_DELTA frames of StateEncoder. Decoding allocates nothing
+ * except when a keyframe changes the size of the game area or the number of
+ * players grows.
+ */
+public class StateDecoder {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // Tick of the state, -1 before the first keyframe
+    private long tick = -1;
+    private int width;
+    private int height;
+    private int[] owners = new int[0];
+    private int[] contested = new int[0];
+
+    // Players sorted by id, and arrays the next players are read into
+    private int playerCount;
+    private int[] ids = new int[16];
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+    private byte[] directions = new byte[16];
+    private int[] colors = new int[16];
+    private int[] nextIds = new int[16];
+    private int[] nextXs = new int[16];
+    private int[] nextYs = new int[16];
+    private byte[] nextDirections = new byte[16];
+    private int[] nextColors = new int[16];
+
+    /**
+     * Applies a frame to the state
+     *
+     * @param type    type byte of the frame
+     * @param payload payload of the frame from its position
+     * @return true if the frame was applied, false if it is a delta from a base
+     *         newer than the state and a keyframe is needed
+     * @throws IllegalArgumentException if type isn't KEYFRAME or STATE_DELTA
+     */
+    public boolean apply(byte type, ByteBuffer payload) {
+        if (type == Protocol.KEYFRAME) {
+            readKeyframe(payload);
+            return true;
+        }
+        if (type != Protocol.STATE_DELTA)
+            throw new IllegalArgumentException("Not a state frame: " + type);
+        long nextTick = VarInts.getLong(payload);
+        long base = nextTick - VarInts.getLong(payload);
+        if (tick < 0 || base > tick || nextTick <= tick)
+            return false;
+        readCellRuns(payload, owners, contested);
+        readPlayers(payload);
+        for (int i = 0; i < playerCount; i++)
+            if (directions[i] < 0)
+                contested[ys[i] * width + xs[i]] = ids[i];
+        for (int i = 0; i < playerCount; i++)
+            directions[i] &= StateEncoder.DIRECTION_MASK;
+        tick = nextTick;
+        return true;
+    }
+
+    private void readKeyframe(ByteBuffer payload) {
+        tick = VarInts.getLong(payload);
+        width = VarInts.getInt(payload);
+        height = VarInts.getInt(payload);
+        if (owners.length != width * height) {
+            owners = new int[width * height];
+            contested = new int[width * height];
+        }
+        readRows(payload, owners, width, 0, 0, width, height);
+        readRows(payload, contested, width, 0, 0, width, height);
+        readPlayers(payload);
+        for (int i = 0; i < playerCount; i++)
+            directions[i] &= StateEncoder.DIRECTION_MASK;
+    }
+
+    /**
+     * Reads the players into the next arrays and swaps them in. Players with the
+     * <code>TRAIL</code> flag get a negative direction until the caller has
+     * extended their trail.
+     */
+    private void readPlayers(ByteBuffer payload) {
+        int count = VarInts.getInt(payload);
+        if (nextIds.length < count) {
+            int length = Math.max(count, 2 * nextIds.length);
+            nextIds = new int[length];
+            nextXs = new int[length];
+            nextYs = new int[length];
+            nextDirections = new byte[length];
+            nextColors = new int[length];
+        }
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int id = VarInts.getInt(payload);
+            int flags = payload.get();
+            nextIds[i] = id;
+            nextXs[i] = VarInts.getInt(payload);
+            nextYs[i] = VarInts.getInt(payload);
+            if (nextXs[i] >= width || nextYs[i] >= height)
+                throw new IllegalArgumentException("Player outside game area");
+            nextDirections[i] = (byte) (flags & StateEncoder.DIRECTION_MASK);
+            if ((flags & StateEncoder.TRAIL) != 0)
+                nextDirections[i] |= (byte) 0x80;
+            if ((flags & StateEncoder.NEW) != 0) {
+                nextColors[i] = payload.getInt();
+            } else {
+                // Both lists are sorted by id
+                while (previous < playerCount && ids[previous] < id)
+                    previous++;
+                nextColors[i] = previous < playerCount && ids[previous] == id ? colors[previous] : 0;
+            }
+        }
+
+        int[] swapIds = ids;
+        ids = nextIds;
+        nextIds = swapIds;
+        int[] swapXs = xs;
+        xs = nextXs;
+        nextXs = swapXs;
+        int[] swapYs = ys;
+        ys = nextYs;
+        nextYs = swapYs;
+        byte[] swapDirections = directions;
+        directions = nextDirections;
+        nextDirections = swapDirections;
+        int[] swapColors = colors;
+        colors = nextColors;
+        nextColors = swapColors;
+        playerCount = count;
+    }
+
+    /**
+     * Reads a rectangle written by <code>StateEncoder.writeRows</code> into layer
+     *
+     * @throws IllegalArgumentException if a run doesn't fit its row
+     */
+    static void readRows(ByteBuffer buffer, int[] layer, int stride, int left, int top, int right, int bottom) {
+        for (int y = top; y < bottom; y++) {
+            int x = left;
+            while (x < right) {
+                int length = VarInts.getInt(buffer);
+                int id = VarInts.getInt(buffer);
+                if (length < 1 || length > right - x)
+                    throw new IllegalArgumentException("Bad run length " + length);
+                Arrays.fill(layer, y * stride + x, y * stride + x + length, id);
+                x += length;
+            }
+        }
+    }
+
+    /**
+     * Reads cell runs written by <code>StateEncoder.writeCellRuns</code> into the
+     * layers
+     *
+     * @throws IllegalArgumentException if a run is outside the layers
+     */
+    static void readCellRuns(ByteBuffer buffer, int[] owners, int[] contested) {
+        int runs = VarInts.getInt(buffer);
+        int end = 0;
+        for (int i = 0; i < runs; i++) {
+            int start = end + VarInts.getInt(buffer);
+            int length = VarInts.getInt(buffer);
+            int owner = VarInts.getInt(buffer);
+            int contestedOwner = VarInts.getInt(buffer);
+            if (start < end || length < 1 || length > owners.length - start)
+                throw new IllegalArgumentException("Bad cell run " + start + "+" + length);
+            end = start + length;
+            Arrays.fill(owners, start, end, owner);
+            Arrays.fill(contested, start, end, contestedOwner);
+        }
+    }
+
+    /**
+     * @return tick of the state, -1 before the first keyframe
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return id of the owner of a tile, 0 if none
+     */
+    public int getOwner(int x, int y) {
+        return owners[y * width + x];
+    }
+
+    /**
+     * @return id of the player whose trail is on a tile, 0 if none
+     */
+    public int getContested(int x, int y) {
+        return contested[y * width + x];
+    }
+
+    /**
+     * @return owner layer in row major order, not to be modified
+     */
+    int[] getOwners() {
+        return owners;
+    }
+
+    /**
+     * @return contested layer in row major order, not to be modified
+     */
+    int[] getContestedLayer() {
+        return contested;
+    }
+
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    public int getPlayerId(int i) {
+        return ids[i];
+    }
+
+    public int getPlayerX(int i) {
+        return xs[i];
+    }
+
+    public int getPlayerY(int i) {
+        return ys[i];
+    }
+
+    public Direction getPlayerDirection(int i) {
+        return DIRECTIONS[directions[i]];
+    }
+
+    /**
+     * @return color of the i:th player as an RGB int
+     */
+    public int getPlayerColor(int i) {
+        return colors[i];
+    }
+}
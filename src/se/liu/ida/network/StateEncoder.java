@@ -0,0 +1,309 @@
+package se.liu.ida.network;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import se.liu.ida.entities.Player;
+import se.liu.ida.objects.Board;
+import se.liu.ida.objects.TileLayers;
+
+/**
+ * Encodes the state of a whole board as compact KEYFRAME and STATE_DELTA frames
+ * into pooled direct buffers. Numbers are varints, see VarInts.
+ *
+ * A KEYFRAME is the tick, the size of the game area, the owner layer and the
+ * contested layer as rows of runs, each run a length and an id, and the
+ * players. A STATE_DELTA is the tick, how many ticks back its base is, runs of
+ * cells that changed since the base, each a gap from the end of the previous
+ * run, a length, an owner and a contested owner, and the players. A cell whose
+ * only change is becoming the trail under a player's head is left out and sent
+ * as a flag on the player instead.
+ *
+ * A delta sets every cell that changed after its base to its current value, so
+ * it can be applied to any state from its base onwards. Clients acknowledge
+ * the ticks they have applied and deltas are built from the last acknowledged
+ * tick, so frames a server skips for a slow client are never needed again.
+ *
+ * Players are sorted by id, each an id, a flags byte, x and y, and for players
+ * that are new since the base also their color. The flags byte holds the
+ * direction ordinal in its low two bits, <code>TRAIL</code> and
+ * <code>NEW</code>.
+ *
+ * Encoding allocates nothing once the scratch arrays have grown. Only touched
+ * from the room's tick.
+ */
+class StateEncoder {
+    static final int DIRECTION_MASK = 0x3;
+    static final int TRAIL = 0x4;
+    static final int NEW = 0x8;
+
+    // Varint id, flags, varint x and y, and color
+    private static final int MAX_PLAYER_SIZE = 3 * VarInts.MAX_INT_SIZE + 1 + 4;
+
+    private final ChangeHistory history;
+    private final int width;
+    private final int height;
+
+    // Cells changed since the base of the delta being encoded: marked with the
+    // current epoch, the union of their change flags, and listed
+    private final int[] marks;
+    private int epoch;
+    private final byte[] flags;
+    private int[] cells = new int[256];
+    private int cellCount;
+    // Ids and indices of players packed for sorting by id
+    private long[] order = new long[16];
+
+    /**
+     * Creates an encoder for a board
+     *
+     * @param board   board to encode
+     * @param history history recorded after every tick of board
+     */
+    StateEncoder(Board board, ChangeHistory history) {
+        this.history = history;
+        this.width = board.getMapWidth();
+        this.height = board.getMapHeight();
+        this.marks = new int[width * height];
+        this.flags = new byte[width * height];
+    }
+
+    /**
+     * Encodes a KEYFRAME of the board
+     *
+     * @param board board to encode
+     * @param pool  pool to take the frame's buffer from
+     * @return the frame, flipped for writing to a channel
+     */
+    ByteBuffer keyframe(Board board, BufferPool pool) {
+        TileLayers layers = board.getLayers();
+        int[] owners = layers.getOwners();
+        int[] contested = layers.getContested();
+        List<Player> players = sortPlayers(board);
+        int size = Protocol.HEADER_SIZE + VarInts.MAX_LONG_SIZE + 2 * VarInts.MAX_INT_SIZE
+                + rowsSize(owners, width, 0, 0, width, height) + rowsSize(contested, width, 0, 0, width, height)
+                + VarInts.MAX_INT_SIZE + MAX_PLAYER_SIZE * players.size();
+
+        ByteBuffer buffer = pool.acquire(size);
+        Protocol.beginFrame(buffer, Protocol.KEYFRAME);
+        VarInts.putLong(buffer, board.getTickNumber());
+        VarInts.putInt(buffer, width);
+        VarInts.putInt(buffer, height);
+        writeRows(buffer, owners, width, 0, 0, width, height);
+        writeRows(buffer, contested, width, 0, 0, width, height);
+        VarInts.putInt(buffer, players.size());
+        for (int i = 0; i < players.size(); i++)
+            writePlayer(buffer, players.get((int) order[i]), NEW);
+        return Protocol.endFrame(buffer);
+    }
+
+    /**
+     * Encodes a STATE_DELTA from base to the board's current tick
+     *
+     * @param board board to encode, its last tick must have been recorded
+     * @param base  tick the client confirmed
+     * @param pool  pool to take the frame's buffer from
+     * @return the frame, flipped for writing to a channel, or null if base is no
+     *         longer in the history and a keyframe is needed
+     */
+    ByteBuffer delta(Board board, long base, BufferPool pool) {
+        long tick = board.getTickNumber();
+        if (base < 0 || history.getNewestTick() != tick || !history.covers(base))
+            return null;
+        TileLayers layers = board.getLayers();
+        int[] owners = layers.getOwners();
+        int[] contested = layers.getContested();
+        List<Player> players = sortPlayers(board);
+        gatherChanges(base, tick);
+
+        // A head on a cell that only became contested by its own player is a
+        // trail extension, the client can fill it in from the player's flag
+        for (int i = 0; i < players.size(); i++) {
+            Player player = players.get(i);
+            int head = player.getY() * width + player.getX();
+            if (marks[head] == epoch && flags[head] == TileLayers.CONTESTED_CHANGED
+                    && contested[head] == player.getId())
+                flags[head] = 0;
+        }
+        int kept = 0;
+        for (int i = 0; i < cellCount; i++)
+            if (flags[cells[i]] != 0)
+                cells[kept++] = cells[i];
+        cellCount = kept;
+        Arrays.sort(cells, 0, cellCount);
+
+        int size = Protocol.HEADER_SIZE + 2 * VarInts.MAX_LONG_SIZE
+                + cellRunsSize(cells, cellCount, owners, contested) + VarInts.MAX_INT_SIZE
+                + MAX_PLAYER_SIZE * players.size();
+        ByteBuffer buffer = pool.acquire(size);
+        Protocol.beginFrame(buffer, Protocol.STATE_DELTA);
+        VarInts.putLong(buffer, tick);
+        VarInts.putLong(buffer, tick - base);
+        writeCellRuns(buffer, cells, cellCount, owners, contested);
+        VarInts.putInt(buffer, players.size());
+        for (int i = 0; i < players.size(); i++) {
+            Player player = players.get((int) order[i]);
+            int head = player.getY() * width + player.getX();
+            int playerFlags = 0;
+            if (marks[head] == epoch && flags[head] == 0 && contested[head] == player.getId())
+                playerFlags |= TRAIL;
+            if (!history.hadPlayer(base, player.getId()))
+                playerFlags |= NEW;
+            writePlayer(buffer, player, playerFlags);
+        }
+        return Protocol.endFrame(buffer);
+    }
+
+    /**
+     * Marks and lists every cell changed in the ticks after base up to tick,
+     * with the union of its change flags
+     */
+    private void gatherChanges(long base, long tick) {
+        if (++epoch == 0) {
+            Arrays.fill(marks, 0);
+            epoch = 1;
+        }
+        cellCount = 0;
+        for (long t = base + 1; t <= tick; t++) {
+            int changes = history.getCellCount(t);
+            for (int i = 0; i < changes; i++) {
+                int cell = history.getCell(t, i);
+                if (marks[cell] != epoch) {
+                    marks[cell] = epoch;
+                    flags[cell] = 0;
+                    if (cellCount == cells.length)
+                        cells = Arrays.copyOf(cells, 2 * cellCount);
+                    cells[cellCount++] = cell;
+                }
+                flags[cell] |= history.getFlags(t, i);
+            }
+        }
+    }
+
+    /**
+     * Fills <code>order</code> with the indices of the board's players sorted by
+     * id, in its low 32 bits
+     */
+    private List<Player> sortPlayers(Board board) {
+        List<Player> players = board.getPlayers();
+        if (order.length < players.size())
+            order = new long[Math.max(players.size(), 2 * order.length)];
+        for (int i = 0; i < players.size(); i++)
+            order[i] = (long) players.get(i).getId() << 32 | i;
+        Arrays.sort(order, 0, players.size());
+        for (int i = 0; i < players.size(); i++)
+            order[i] &= 0xFFFFFFFFL;
+        return players;
+    }
+
+    private static void writePlayer(ByteBuffer buffer, Player player, int playerFlags) {
+        VarInts.putInt(buffer, player.getId());
+        buffer.put((byte) (playerFlags | player.getDirection().ordinal()));
+        VarInts.putInt(buffer, player.getX());
+        VarInts.putInt(buffer, player.getY());
+        if ((playerFlags & NEW) != 0)
+            buffer.putInt(player.getColor().getRGB());
+    }
+
+    /**
+     * @return bytes <code>writeRows</code> writes for the same arguments
+     */
+    static int rowsSize(int[] layer, int stride, int left, int top, int right, int bottom) {
+        int size = 0;
+        for (int y = top; y < bottom; y++) {
+            int x = left;
+            while (x < right) {
+                int id = layer[y * stride + x];
+                int start = x;
+                while (x < right && layer[y * stride + x] == id)
+                    x++;
+                size += VarInts.size(x - start) + VarInts.size(id);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes a rectangle of a layer as rows of runs of equal ids, each run a
+     * length and an id. Runs don't cross rows.
+     *
+     * @param buffer buffer to write to
+     * @param layer  layer in row major order
+     * @param stride width of layer
+     * @param left   first x of the rectangle
+     * @param top    first y of the rectangle
+     * @param right  x after the rectangle
+     * @param bottom y after the rectangle
+     */
+    static void writeRows(ByteBuffer buffer, int[] layer, int stride, int left, int top, int right, int bottom) {
+        for (int y = top; y < bottom; y++) {
+            int x = left;
+            while (x < right) {
+                int id = layer[y * stride + x];
+                int start = x;
+                while (x < right && layer[y * stride + x] == id)
+                    x++;
+                VarInts.putInt(buffer, x - start);
+                VarInts.putInt(buffer, id);
+            }
+        }
+    }
+
+    /**
+     * @return bytes <code>writeCellRuns</code> writes for the same arguments
+     */
+    static int cellRunsSize(int[] cells, int count, int[] owners, int[] contested) {
+        int size = VarInts.MAX_INT_SIZE;
+        int end = 0;
+        int i = 0;
+        while (i < count) {
+            int start = cells[i];
+            int length = runLength(cells, count, i, owners, contested);
+            size += VarInts.size(start - end) + VarInts.size(length) + VarInts.size(owners[start])
+                    + VarInts.size(contested[start]);
+            end = start + length;
+            i += length;
+        }
+        return size;
+    }
+
+    /**
+     * Writes changed cells as runs of adjacent cells with equal owner and
+     * contested owner: the number of runs, then for each run the gap from the
+     * end of the previous run, its length, owner and contested owner
+     *
+     * @param buffer    buffer to write to
+     * @param cells     indices of changed cells, sorted and without duplicates
+     * @param count     number of cells
+     * @param owners    owner layer
+     * @param contested contested layer
+     */
+    static void writeCellRuns(ByteBuffer buffer, int[] cells, int count, int[] owners, int[] contested) {
+        int runs = 0;
+        for (int i = 0; i < count; i += runLength(cells, count, i, owners, contested))
+            runs++;
+        VarInts.putInt(buffer, runs);
+        int end = 0;
+        int i = 0;
+        while (i < count) {
+            int start = cells[i];
+            int length = runLength(cells, count, i, owners, contested);
+            VarInts.putInt(buffer, start - end);
+            VarInts.putInt(buffer, length);
+            VarInts.putInt(buffer, owners[start]);
+            VarInts.putInt(buffer, contested[start]);
+            end = start + length;
+            i += length;
+        }
+    }
+
+    private static int runLength(int[] cells, int count, int i, int[] owners, int[] contested) {
+        int start = cells[i];
+        int length = 1;
+        while (i + length < count && cells[i + length] == start + length
+                && owners[start + length] == owners[start] && contested[start + length] == contested[start])
+            length++;
+        return length;
+    }
+}
@@ -0,0 +1,85 @@
+package se.liu.ida.network;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length integers, 7 bits per byte with the high bit set on every byte
+ * but the last. Small numbers such as player ids and run lengths take a single
+ * byte.
+ */
+final class VarInts {
+    // Most bytes a varint int and long can take
+    static final int MAX_INT_SIZE = 5;
+    static final int MAX_LONG_SIZE = 10;
+
+    private VarInts() {
+    }
+
+    /**
+     * @return number of bytes <code>putInt</code> writes for value
+     */
+    static int size(int value) {
+        return Math.max(1, (38 - Integer.numberOfLeadingZeros(value)) / 7);
+    }
+
+    /**
+     * @return number of bytes <code>putLong</code> writes for value
+     */
+    static int size(long value) {
+        return Math.max(1, (70 - Long.numberOfLeadingZeros(value)) / 7);
+    }
+
+    /**
+     * Writes an int, treated as unsigned, at the position of buffer
+     */
+    static void putInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Writes a long, treated as unsigned, at the position of buffer
+     */
+    static void putLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an int written by <code>putInt</code> from the position of buffer
+     *
+     * @throws IllegalArgumentException if the varint is longer than an int
+     */
+    static int getInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    /**
+     * Reads a long written by <code>putLong</code> from the position of buffer
+     *
+     * @throws IllegalArgumentException if the varint is longer than a long
+     */
+    static long getLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+}
@@ -5,19 +5,35 @@ import javax.swing.*;
 import se.liu.ida.entities.BotPlayer;
 import se.liu.ida.entities.HumanPlayer;
 import se.liu.ida.entities.Player;
+import se.liu.ida.graphics.Minimap;
+import se.liu.ida.graphics.PerfHud;
 import se.liu.ida.graphics.Painter;
+import se.liu.ida.graphics.QualityController;
 import se.liu.ida.logic.Direction;
-import se.liu.ida.logic.GameController;
+import se.liu.ida.logic.GameRandom;
+import se.liu.ida.storage.MatchEventLog;
 
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
 import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 /**
  * The board class is the class responsible for main game logic. This class
@@ -37,38 +53,88 @@ public class Board extends JPanel {
     private static final String MOVE_P2_LEFT_KEY = "p2 west";
     private static final String MOVE_P2_RIGHT_KEY = "p2 east";
 
+    // Size of a tile on screen in pixels
+    private static final int SCALE = 20;
+    // Ticks per second when nothing else is specified
+    private static final double DEFAULT_TICK_RATE = 12;
+    // Frames per second when the display doesn't tell its refresh rate
+    private static final int DEFAULT_REFRESH_RATE = 60;
+    // Number of players on the scoreboard
+    private static final int SCOREBOARD_SIZE = 5;
+    // Largest side of the minimap and its distance from the corner, in pixels
+    private static final int MINIMAP_SIZE = 200;
+    private static final int MINIMAP_MARGIN = 10;
+    // Distance of the performance overlay from the top left corner, in pixels
+    private static final int PERF_HUD_MARGIN = 10;
+    // Threads rendering the views of a split screen, shared by all boards
+    private static final int RENDER_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService RENDERERS = Executors.newFixedThreadPool(RENDER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "view-renderer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final int mapHeight;
     private final int mapWidth;
-    private transient Tile[][] gameArea;
+    // Memory of the board, which outlives it when shared between matches
+    private transient BoardArena arena;
+    private transient TileGrid gameArea;
+    // Owner and contested ids of all tiles as primitive arrays
+    private transient TileLayers layers;
 
     private boolean multiplayer;
 
     private int botNumber;
 
     private transient ArrayList<Player> players;
+    private transient ArrayList<HumanPlayer> humanPlayers;
+    // Bots that died this tick and should be respawned
+    private transient ArrayList<BotPlayer> deadBots;
+    // Which player is on which tile this tick, to find head on collisions
+    private transient HashMap<Tile, Player> tilePlayerMap;
 
-    private transient Player p1;
-    private transient Player p2;
+    private transient HumanPlayer p1;
+    private transient HumanPlayer p2;
 
-    private Random r;
+    private transient ArrayList<Painter> painters;
+    private transient HashMap<Player, Painter> player_painter;
+    // Territory of the whole game area, kept by boards played by humans
+    private transient Minimap minimap;
+    // Sheds drawing work when ticks and frames take too much time, on boards
+    // played by humans
+    private transient QualityController quality;
+    // Times of ticks and frames and the overlay showing them, both null while
+    // the overlay is hidden
+    private transient volatile TickProfiler profiler;
+    private transient PerfHud perfHud;
+    // Frame the scoreboard was last refreshed from, and when
+    private transient BoardFrame scoreboardFrame;
+    private long scoreboardNanos;
 
-    private static Board instance = null;
+    private transient ActionListener actionListener;
 
-    public static Board createInstance(String p1name, int mapWidth, int mapHeight, int botNumber) {
-        instance = new Board(p1name, mapWidth, mapHeight, botNumber);
-        return instance;
-    }
+    private GameRandom r;
 
-    public static Board createInstance(String p1name, String p2name, int mapWidth, int mapHeight, int botNumber) {
-        instance = new Board(p1name, p2name, mapWidth, mapHeight, botNumber);
-        return instance;
-    }
+    private transient Timer timer;
+    private boolean paused;
+    // Set by the tick every human player died in, the game is ended after it
+    private transient boolean gameOver;
+    private double tickRate = DEFAULT_TICK_RATE;
+    // When the last tick ended, frames are drawn between it and the next
+    private long lastTickNanos;
+    // Asks for frames at the display's refresh rate
+    private transient javax.swing.Timer renderTimer;
+    // Whether a frame has been asked for and not drawn yet
+    private transient boolean framePending;
 
-    public static Board getInstance() {
-        if (instance == null)
-            throw new NullPointerException("You have to create the board first!");
-        return instance;
-    }
+    // Number of ticks since the board was created
+    private long tickNumber;
+    // Snapshot of the board shared by all bots during a tick
+    private transient BoardSnapshot snapshot;
+    private long snapshotTick = -1;
+    // Log of deaths and captures for analysis, or null
+    private transient MatchEventLog events;
+    private int match;
 
     public int getMapWidth() {
         return this.mapWidth;
@@ -84,23 +150,22 @@ public class Board extends JPanel {
      * @param p1name    name of player
      * @param mapWidth  width of game area
      * @param mapHeight height of game area
-     * @param gameSpeed game speed between 1 and 5, 5 being the fastest
      * @param botNumber number of bots to have in game
      */
-    private Board(String p1name, int mapWidth, int mapHeight, int botNumber) {
-        this.mapWidth = mapWidth;
-        this.mapHeight = mapHeight;
-        this.botNumber = botNumber;
-        this.multiplayer = false;
-        this.players = new ArrayList<>();
-        this.r = new Random();
-
-        this.p1 = new HumanPlayer(p1name);
-        this.p2 = null;
-
-        players.add(this.p1);
+    public Board(String p1name, int mapWidth, int mapHeight, int botNumber) {
+        this(p1name, new BoardArena(mapWidth, mapHeight), botNumber);
+    }
 
-        initBoard();
+    /**
+     * Creates board for singleplayer in an arena
+     * 
+     * @param p1name    name of player
+     * @param arena     free arena to use until the board is released
+     * @param botNumber number of bots to have in game
+     */
+    public Board(String p1name, BoardArena arena, int botNumber) {
+        this(arena, botNumber);
+        start(p1name);
     }
 
     /**
@@ -110,51 +175,456 @@ public class Board extends JPanel {
      * @param p2name    name of player 2
      * @param mapWidth  width of game area
      * @param mapHeight height of game area
-     * @param gameSpeed game speed between 1 and 5, 5 being the fastest
      * @param botNumber number of bots to have in game
      */
-    private Board(String p1name, String p2name, int mapWidth, int mapHeight, int botNumber) {
+    public Board(String p1name, String p2name, int mapWidth, int mapHeight, int botNumber) {
+        this(p1name, p2name, new BoardArena(mapWidth, mapHeight), botNumber);
+    }
+
+    /**
+     * Creates board for multiplayer in an arena
+     * 
+     * @param p1name    name of player 1
+     * @param p2name    name of player 2
+     * @param arena     free arena to use until the board is released
+     * @param botNumber number of bots to have in game
+     */
+    public Board(String p1name, String p2name, BoardArena arena, int botNumber) {
+        this(arena, botNumber);
+        start(p1name, p2name);
+    }
+
+    /**
+     * Creates a board for humans with its bots placed but no human players yet,
+     * so the world can be built on another thread before the players are known.
+     * The game begins once <code>start</code> adds the players.
+     * 
+     * @param arena     free arena to use until the board is released
+     * @param botNumber number of bots to have in game
+     */
+    public Board(BoardArena arena, int botNumber) {
+        this.mapWidth = arena.getMapWidth();
+        this.mapHeight = arena.getMapHeight();
+        this.botNumber = botNumber;
+        this.r = new GameRandom();
+
+        initGameArea(arena);
+
+        // Adds new bots with randomized colors
+        for (int i = 0; i < botNumber; i++)
+            addPlayer(new BotPlayer(this));
+
+        initMinimap();
+    }
+
+    /**
+     * Creates a headless board with only bots. A headless board has no key
+     * bindings and no timer, it is driven by calling <code>tick()</code>. Boards
+     * created with the same seed and bots play out the same way.
+     * 
+     * @param mapWidth  width of game area
+     * @param mapHeight height of game area
+     * @param seed      seed for all randomness on the board
+     * @param bots      one factory per bot to create
+     */
+    public Board(int mapWidth, int mapHeight, long seed, List<Function<Board, ? extends BotPlayer>> bots) {
+        this(new BoardArena(mapWidth, mapHeight), seed, bots);
+    }
+
+    /**
+     * Creates a headless board with only bots in an arena, which plays out the
+     * same way as a board created with its own memory
+     * 
+     * @param arena free arena to use until the board is released
+     * @param seed  seed for all randomness on the board
+     * @param bots  one factory per bot to create
+     */
+    public Board(BoardArena arena, long seed, List<Function<Board, ? extends BotPlayer>> bots) {
+        this.mapWidth = arena.getMapWidth();
+        this.mapHeight = arena.getMapHeight();
+        this.botNumber = bots.size();
+        this.multiplayer = false;
+        this.r = new GameRandom(seed);
+
+        initGameArea(arena);
+
+        for (Function<Board, ? extends BotPlayer> bot : bots)
+            addPlayer(bot.apply(this));
+    }
+
+    /**
+     * Creates an empty board to restore a saved game on, which SaveGame fills
+     * with players and tiles before calling <code>resume()</code>
+     * 
+     * @param mapWidth    width of game area
+     * @param mapHeight   height of game area
+     * @param multiplayer true if two humans play on this board's keyboard
+     * @param botNumber   number of bots the game was created with
+     * @param r           the board's random generator
+     * @param tickNumber  number of ticks played
+     */
+    Board(int mapWidth, int mapHeight, boolean multiplayer, int botNumber, GameRandom r, long tickNumber) {
         this.mapWidth = mapWidth;
         this.mapHeight = mapHeight;
         this.botNumber = botNumber;
-        this.multiplayer = true;
-        this.players = new ArrayList<>();
-        this.r = new Random();
+        this.multiplayer = multiplayer;
+        this.r = r;
+        this.tickNumber = tickNumber;
 
-        this.p1 = new HumanPlayer(p1name);
-        this.p2 = new HumanPlayer(p2name);
+        initGameArea(new BoardArena(mapWidth, mapHeight));
+    }
+
+    /**
+     * Takes the tile grid and the collections keeping track of players from an
+     * arena
+     * 
+     * @param arena free arena to use
+     */
+    private void initGameArea(BoardArena arena) {
+        arena.acquire(this);
+        this.arena = arena;
+        this.gameArea = arena.gameArea;
+        this.layers = arena.layers;
+        this.players = arena.players;
+        this.humanPlayers = arena.humanPlayers;
+        this.deadBots = arena.deadBots;
+        this.tilePlayerMap = arena.tilePlayerMap;
+        this.painters = new ArrayList<>();
+        this.player_painter = new HashMap<>();
+
+        setBackground(Color.BLACK);
+    }
+
+    /**
+     * Starts a singleplayer game on a board created without human players. Must
+     * be called on the event dispatch thread.
+     * 
+     * @param p1name name of player
+     * @throws IllegalStateException if the game has already started
+     */
+    public void start(String p1name) {
+        if (p1 != null)
+            throw new IllegalStateException("Game already started");
+        this.multiplayer = false;
+        this.p1 = addHumanPlayer(new HumanPlayer(this, p1name));
 
         initBoard();
     }
 
     /**
-     * Initializes necessary variables, timer, players etc required for the board
+     * Starts a multiplayer game on a board created without human players. Must
+     * be called on the event dispatch thread.
+     * 
+     * @param p1name name of player 1
+     * @param p2name name of player 2
+     * @throws IllegalStateException if the game has already started
+     */
+    public void start(String p1name, String p2name) {
+        if (p1 != null)
+            throw new IllegalStateException("Game already started");
+        this.multiplayer = true;
+        this.p1 = addHumanPlayer(new HumanPlayer(this, p1name));
+        this.p2 = addHumanPlayer(new HumanPlayer(this, p2name));
+
+        initBoard();
+    }
+
+    /**
+     * Initializes key bindings and the timer required for a board played by
+     * humans
      */
     private void initBoard() {
-        this.gameArea = new Tile[this.mapWidth][this.mapHeight];
-        for (int i = 0; i < this.mapWidth; i++) {
-            for (int j = 0; j < this.mapHeight; j++) {
-                gameArea[i][j] = new Tile(i, j);
-            }
+        specifyKeyActions();
+        startTimer();
+    }
+
+    /**
+     * Builds the minimap from the whole game area once, after which it follows
+     * the changes of every tick
+     */
+    private void initMinimap() {
+        minimap = new Minimap(layers);
+        minimap.rebuild(players);
+        layers.clearChanges();
+    }
+
+    /**
+     * Starts a timer to tick the game logic at the tick rate, and a timer asking
+     * for frames at the display's refresh rate. Frames are drawn between ticks,
+     * so the game moves as smoothly at any tick rate.
+     */
+    private void startTimer() {
+        final int INITIAL_DELAY = 0;
+        timer = new Timer();
+        timer.scheduleAtFixedRate(new ScheduleTask(), INITIAL_DELAY, Math.max(1, Math.round(1000 / tickRate)));
+
+        if (renderTimer == null) {
+            // Asks for one frame at a time, so slow frames are skipped rather than queued
+            renderTimer = new javax.swing.Timer((int) Math.round(1000.0 / refreshRate()), e -> {
+                if (!framePending) {
+                    framePending = true;
+                    repaint();
+                }
+            });
+            renderTimer.start();
         }
+    }
+
+    /**
+     * Get the refresh rate of the screen, or a default if it isn't known
+     * 
+     * @return frames per second
+     */
+    private static int refreshRate() {
+        if (GraphicsEnvironment.isHeadless())
+            return DEFAULT_REFRESH_RATE;
+        int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode()
+                .getRefreshRate();
+        return rate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_REFRESH_RATE : rate;
+    }
+
+    /**
+     * Sets how many ticks the board plays per second. Lowering it saves work
+     * without making drawing less smooth, since frames are drawn between ticks.
+     * 
+     * @param tickRate ticks per second
+     * @throws IllegalArgumentException if the rate isn't positive
+     */
+    public void setTickRate(double tickRate) {
+        if (!(tickRate > 0))
+            throw new IllegalArgumentException("Tick rate must be positive: " + tickRate);
+        this.tickRate = tickRate;
+        if (quality != null)
+            quality.setTickRate(tickRate);
+        if (timer != null) {
+            timer.cancel();
+            startTimer();
+        }
+    }
+
+    public double getTickRate() {
+        return tickRate;
+    }
+
+    /**
+     * Shows or hides the overlay of tick and frame times. Ticks are only timed
+     * while it is shown. Must be called on the event dispatch thread.
+     * 
+     * @param visible true to show the overlay
+     */
+    public void setPerfHudVisible(boolean visible) {
+        if (visible == isPerfHudVisible())
+            return;
+        if (visible) {
+            TickProfiler profiler = new TickProfiler();
+            perfHud = new PerfHud(profiler);
+            this.profiler = profiler;
+        } else {
+            profiler = null;
+            perfHud = null;
+        }
+        repaint();
+    }
+
+    public boolean isPerfHudVisible() {
+        return perfHud != null;
+    }
+
+    /**
+     * Get how far the board has come from its last tick towards the next, by the
+     * time since the last tick, or 1 if drawing doesn't interpolate under load
+     * 
+     * @return fraction between 0 and 1
+     */
+    double getTickFraction() {
+        // Without interpolation players are drawn where they are
+        if (lastTickNanos == 0 || (quality != null && !quality.interpolates()))
+            return 1;
+        double fraction = (System.nanoTime() - lastTickNanos) * tickRate / 1e9;
+        return Math.max(0, Math.min(1, fraction));
+    }
+
+    /**
+     * Stops the timer ticking the board, if it has one. A stopped board can't be
+     * started again.
+     */
+    public void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        if (renderTimer != null) {
+            renderTimer.stop();
+            renderTimer = null;
+        }
+    }
+
+    /**
+     * @return true if the board is ticked by its own timer, false if it is
+     *         driven by calling <code>tick()</code> or has been stopped
+     */
+    public boolean isRunning() {
+        return timer != null;
+    }
+
+    /**
+     * Stops the board and hands its arena back, cleared, for the next match. The
+     * board can't be used afterwards.
+     */
+    public void release() {
+        stop();
+        snapshot = null;
+        arena.release(this);
+    }
+
+    /**
+     * Adds a human player that plays from somewhere else than this board's
+     * keyboard, for example over the network. The player has no painter and the
+     * game doesn't end when it dies.
+     * 
+     * @param name name of the player
+     * @return the new player
+     */
+    public HumanPlayer joinPlayer(String name) {
+        HumanPlayer player = new HumanPlayer(this, name);
+        addPlayer(player);
+        return player;
+    }
 
+    /**
+     * Adds a player to the board and gives it a starting area
+     * 
+     * @param player player to add
+     */
+    private void addPlayer(Player player) {
+        players.add(player);
+        startingArea(player);
+    }
+
+    /**
+     * Adds a restored player without giving it a starting area, its tiles are
+     * restored separately. Dead players are left out.
+     * 
+     * @param player player to add
+     */
+    void restorePlayer(Player player) {
+        if (player.isAlive())
+            players.add(player);
+    }
+
+    /**
+     * Makes a restored human player play on this board's keyboard, as player 1
+     * first and player 2 second
+     * 
+     * @param player restored human player
+     */
+    void restoreLocalPlayer(HumanPlayer player) {
+        addLocalPlayer(player);
+        if (p1 == null)
+            p1 = player;
+        else
+            p2 = player;
+    }
+
+    /**
+     * Starts a restored board. A board with human players gets its key bindings
+     * and timer and starts paused.
+     */
+    void resume() {
+        if (humanPlayers.isEmpty())
+            return;
+        initMinimap();
+        paused = true;
         specifyKeyActions();
+        startTimer();
+    }
 
-        setBackground(Color.BLACK);
+    /**
+     * Adds a human player to the board together with a painter following it
+     * 
+     * @param player human player to add
+     * @return the added player
+     */
+    private HumanPlayer addHumanPlayer(HumanPlayer player) {
+        addPlayer(player);
+        addLocalPlayer(player);
+        return player;
+    }
 
-        // Adds new bots and give them a color either from colorList or randomized
-        for (int i = 0; i < botNumber; i++)
-            players.add(new BotPlayer());
+    /**
+     * Makes a human player play on this board's keyboard and gives it a painter
+     * 
+     * @param player human player already on the board
+     */
+    private void addLocalPlayer(HumanPlayer player) {
+        if (quality == null)
+            quality = new QualityController(tickRate, refreshRate());
+        humanPlayers.add(player);
+        Painter painter = new Painter(SCALE, painters.size(), quality);
+        painters.add(painter);
+        player_painter.put(player, painter);
+    }
+
+    /**
+     * Get a new seed from the board's random generator, used to seed players
+     * 
+     * @return a new seed
+     */
+    public long nextSeed() {
+        return r.nextLong();
+    }
 
-        // Gives each player a starting area
-        for (int i = 0; i < players.size(); i++)
-            startingArea(players.get(i));
+    BoardSnapshot.Scratch getSnapshotScratch() {
+        return arena.getSnapshotScratch();
+    }
 
-        // Starts a timer to tick the game logic
-        final int INITIAL_DELAY = 0;
-        final int PERIOD_INTERVAL = 1000 / 60;
-        Timer timer = new Timer();
-        timer.scheduleAtFixedRate(new ScheduleTask(), INITIAL_DELAY, PERIOD_INTERVAL);
+    long getRandomState() {
+        return r.getState();
+    }
+
+    boolean isMultiplayer() {
+        return multiplayer;
+    }
+
+    int getBotNumber() {
+        return botNumber;
+    }
+
+    /**
+     * Sets the listener notified when the game ends
+     * 
+     * @param actionListener listener notified when the game ends
+     */
+    public void setActionListener(ActionListener actionListener) {
+        this.actionListener = actionListener;
+    }
+
+    /**
+     * Sets the log that deaths and captures on the board are published to, as
+     * a new match
+     * 
+     * @param events log to publish to, or null to stop publishing
+     */
+    public void setEventLog(MatchEventLog events) {
+        this.events = events;
+        this.match = events == null ? 0 : events.newMatch();
+    }
+
+    /**
+     * Sets whether the game is paused
+     * 
+     * @param paused true to pause the game, false to resume it
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public long getTickNumber() {
+        return tickNumber;
     }
 
     /**
@@ -169,25 +639,25 @@ public class Board extends JPanel {
             am.put(MOVE_P1_UP_KEY, new AbstractAction() {
                 @Override
                 public void actionPerformed(ActionEvent e) {
-                    p1.changeDirection(Direction.NORTH);
+                    p1.queueTurn(Direction.NORTH);
                 }
             });
             im.put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), MOVE_P1_DOWN_KEY);
             am.put(MOVE_P1_DOWN_KEY, new AbstractAction() {
                 public void actionPerformed(ActionEvent evt) {
-                    p1.changeDirection(Direction.SOUTH);
+                    p1.queueTurn(Direction.SOUTH);
                 }
             });
             im.put(KeyStroke.getKeyStroke(KeyEvent.VK_LEFT, 0), MOVE_P1_LEFT_KEY);
             am.put(MOVE_P1_LEFT_KEY, new AbstractAction() {
                 public void actionPerformed(ActionEvent evt) {
-                    p1.changeDirection(Direction.WEST);
+                    p1.queueTurn(Direction.WEST);
                 }
             });
             im.put(KeyStroke.getKeyStroke(KeyEvent.VK_RIGHT, 0), MOVE_P1_RIGHT_KEY);
             am.put(MOVE_P1_RIGHT_KEY, new AbstractAction() {
                 public void actionPerformed(ActionEvent evt) {
-                    p1.changeDirection(Direction.EAST);
+                    p1.queueTurn(Direction.EAST);
                 }
             });
         } else {
@@ -195,49 +665,49 @@ public class Board extends JPanel {
             am.put(MOVE_P1_UP_KEY, new AbstractAction() {
                 @Override
                 public void actionPerformed(ActionEvent e) {
-                    p1.changeDirection(Direction.NORTH);
+                    p1.queueTurn(Direction.NORTH);
                 }
             });
             im.put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), MOVE_P1_DOWN_KEY);
             am.put(MOVE_P1_DOWN_KEY, new AbstractAction() {
                 public void actionPerformed(ActionEvent evt) {
-                    p1.changeDirection(Direction.SOUTH);
+                    p1.queueTurn(Direction.SOUTH);
                 }
             });
             im.put(KeyStroke.getKeyStroke(KeyEvent.VK_LEFT, 0), MOVE_P1_LEFT_KEY);
             am.put(MOVE_P1_LEFT_KEY, new AbstractAction() {
                 public void actionPerformed(ActionEvent evt) {
-                    p1.changeDirection(Direction.WEST);
+                    p1.queueTurn(Direction.WEST);
                 }
             });
             im.put(KeyStroke.getKeyStroke(KeyEvent.VK_RIGHT, 0), MOVE_P1_RIGHT_KEY);
             am.put(MOVE_P1_RIGHT_KEY, new AbstractAction() {
                 public void actionPerformed(ActionEvent evt) {
-                    p1.changeDirection(Direction.EAST);
+                    p1.queueTurn(Direction.EAST);
                 }
             });
             im.put(KeyStroke.getKeyStroke(KeyEvent.VK_W, 0), MOVE_P2_UP_KEY);
             am.put(MOVE_P2_UP_KEY, new AbstractAction() {
                 public void actionPerformed(ActionEvent evt) {
-                    p2.changeDirection(Direction.NORTH);
+                    p2.queueTurn(Direction.NORTH);
                 }
             });
             im.put(KeyStroke.getKeyStroke(KeyEvent.VK_S, 0), MOVE_P2_DOWN_KEY);
             am.put(MOVE_P2_DOWN_KEY, new AbstractAction() {
                 public void actionPerformed(ActionEvent evt) {
-                    p2.changeDirection(Direction.SOUTH);
+                    p2.queueTurn(Direction.SOUTH);
                 }
             });
             im.put(KeyStroke.getKeyStroke(KeyEvent.VK_A, 0), MOVE_P2_LEFT_KEY);
             am.put(MOVE_P2_LEFT_KEY, new AbstractAction() {
                 public void actionPerformed(ActionEvent evt) {
-                    p2.changeDirection(Direction.WEST);
+                    p2.queueTurn(Direction.WEST);
                 }
             });
             im.put(KeyStroke.getKeyStroke(KeyEvent.VK_D, 0), MOVE_P2_RIGHT_KEY);
             am.put(MOVE_P2_RIGHT_KEY, new AbstractAction() {
                 public void actionPerformed(ActionEvent evt) {
-                    p2.changeDirection(Direction.EAST);
+                    p2.queueTurn(Direction.EAST);
                 }
             });
         }
@@ -245,7 +715,14 @@ public class Board extends JPanel {
         im.put(KeyStroke.getKeyStroke(KeyEvent.VK_P, 0), "pause");
         am.put("pause", new AbstractAction() {
             public void actionPerformed(ActionEvent evt) {
-                GameController.getInstance().pause();
+                setPaused(!paused);
+            }
+        });
+
+        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), "perf hud");
+        am.put("perf hud", new AbstractAction() {
+            public void actionPerformed(ActionEvent evt) {
+                setPerfHudVisible(!isPerfHudVisible());
             }
         });
     }
@@ -258,70 +735,197 @@ public class Board extends JPanel {
     private void startingArea(Player player) {
         for (int i = player.getX() - 1; i <= player.getX() + 1; i++) {
             for (int j = player.getY() - 1; j <= player.getY() + 1; j++) {
-                player.addTileToOwned(this.gameArea[i][j]);
+                player.addTileToOwned(this.gameArea.get(i, j));
             }
         }
     }
 
     public Tile getTileAt(int i, int j) {
-        return this.gameArea[i][j];
+        return this.gameArea.get(i, j);
+    }
+
+    /**
+     * Get the primitive owner and contested layers of the game area
+     * 
+     * @return layers of the game area
+     */
+    public TileLayers getLayers() {
+        return layers;
+    }
+
+    /**
+     * Get all players on the board
+     * 
+     * @return list of all players on the board
+     */
+    public List<Player> getPlayers() {
+        return players;
+    }
+
+    /**
+     * Get the human players playing on this board's keyboard, dead or alive
+     * 
+     * @return list of human players
+     */
+    public List<HumanPlayer> getHumanPlayers() {
+        return humanPlayers;
+    }
+
+    /**
+     * Get a snapshot of the board for simulating ahead. The snapshot is captured
+     * once per tick and shared, so callers must fork it before changing it.
+     * 
+     * @return snapshot of the board as it was when first requested this tick
+     */
+    public BoardSnapshot getSnapshot() {
+        if (snapshot == null || snapshotTick != tickNumber) {
+            snapshot = BoardSnapshot.capture(this);
+            snapshotTick = tickNumber;
+        }
+        return snapshot;
     }
 
     /**
      * Overrides paintComponent and is called whenever everything should be drawn on
-     * the screen
+     * the screen. Captures a frame of the board between two ticks and lets each
+     * painter draw its part of the split screen from it. With more than one view
+     * and more than one processor the views are rendered side by side on worker
+     * threads and only put together here.
      * 
      * @param g Graphics element used to draw elements on screen
      */
     @Override
     public void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        framePending = false;
         super.paintComponent(g);
-        for (int i = 0; i < painters.size(); i++) {
-            // Set clipping area for painter
-            g.setClip(getWidth(), 0, getWidth(), getHeight());
+        if (painters.isEmpty())
+            return;
+        int viewWidth = getWidth() / painters.size();
+        int viewHeight = getHeight();
+        if (viewWidth <= 0 || viewHeight <= 0)
+            return;
+        // Under load the scoreboard keeps the leaders of an earlier frame for a while
+        boolean refreshScoreboard = scoreboardFrame == null
+                || start - scoreboardNanos >= quality.getScoreboardPeriodNanos();
+        BoardFrame frame;
+        BufferedImage map = null;
+        synchronized (this) {
+            frame = new BoardFrame(this, humanPlayers, viewWidth / 2 / SCALE + 2, viewHeight / 2 / SCALE + 2,
+                    refreshScoreboard ? SCOREBOARD_SIZE : 0);
+            if (minimap != null)
+                map = minimap.snapshot(MINIMAP_SIZE);
+        }
+        if (refreshScoreboard) {
+            scoreboardFrame = frame;
+            scoreboardNanos = start;
+        }
 
-            // Move graphics to top-left of clipping area
-            g.translate(getWidth(), 0);
+        if (painters.size() > 1 && RENDER_THREADS > 1) {
+            List<Future<BufferedImage>> views = new ArrayList<>();
+            for (Painter painter : painters)
+                views.add(RENDERERS.submit(() -> painter.render(frame, viewWidth, viewHeight)));
+            for (int i = 0; i < views.size(); i++) {
+                try {
+                    g.drawImage(views.get(i).get(), i * viewWidth, 0, null);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                }
+            }
+        } else {
+            Shape clip = g.getClip();
+            for (int i = 0; i < painters.size(); i++) {
+                // Set clipping area for painter
+                g.setClip(i * viewWidth, 0, viewWidth, viewHeight);
 
-            // Painter paints area
-            painters.get(i).draw(g);
+                // Move graphics to top-left of clipping area
+                g.translate(i * viewWidth, 0);
 
-            // Move graphics back to top-left of window
-            g.translate(-getWidth(), 0);
-        }
-        try {
-            drawScoreboard(g);
+                // Painter paints area
+                painters.get(i).draw(g, frame, viewWidth, viewHeight);
 
-        } catch (IndexOutOfBoundsException ignored) {
+                // Move graphics back to top-left of window
+                g.translate(-i * viewWidth, 0);
+            }
+            g.setClip(clip);
         }
+        drawScoreboard(g, scoreboardFrame);
+        if (map != null)
+            drawMinimap(g, frame, map);
         Toolkit.getDefaultToolkit().sync();
+        long paintNanos = System.nanoTime() - start;
+        quality.recordFrame(paintNanos);
+        // Drawn after timing the frame, so the overlay doesn't count itself
+        TickProfiler profiler = this.profiler;
+        if (profiler != null && perfHud != null) {
+            profiler.recordFrame(start + paintNanos, paintNanos);
+            perfHud.draw(g, PERF_HUD_MARGIN, PERF_HUD_MARGIN, tickRate, quality.getLevel());
+        }
+    }
+
+    /**
+     * Draws the minimap in the bottom left corner, scaled to fit its square,
+     * with a mark where each human player is
+     * 
+     * @param g     Graphics object received as argument in paintComponent method
+     * @param frame frame whose followed players are marked
+     * @param map   image of a level of the minimap
+     */
+    private void drawMinimap(Graphics g, BoardFrame frame, BufferedImage map) {
+        double scale = Math.min(MINIMAP_SIZE / (double) map.getWidth(), MINIMAP_SIZE / (double) map.getHeight());
+        int width = (int) (map.getWidth() * scale);
+        int height = (int) (map.getHeight() * scale);
+        int left = MINIMAP_MARGIN;
+        int top = getHeight() - height - MINIMAP_MARGIN;
+        g.drawImage(map, left, top, width, height, null);
+        g.setColor(Color.GRAY);
+        g.drawRect(left - 1, top - 1, width + 1, height + 1);
+
+        for (int i = 0; i < humanPlayers.size(); i++) {
+            BoardFrame.Window window = frame.getWindow(i);
+            if (!window.isFocusAlive())
+                continue;
+            int x = left + (int) ((long) window.getFocusX() * width / mapWidth);
+            int y = top + (int) ((long) window.getFocusY() * height / mapHeight);
+            g.setColor(Color.BLACK);
+            g.fillRect(x - 3, y - 3, 6, 6);
+            g.setColor(Color.WHITE);
+            g.fillRect(x - 2, y - 2, 4, 4);
+        }
     }
 
     /**
      * Draws the live scoreboard up in the rightmost corner
      * 
-     * @param g Graphics object received as argument in paintComponent method
+     * @param g     Graphics object received as argument in paintComponent method
+     * @param frame frame whose leaders are drawn
      */
-    private void drawScoreboard(Graphics g) {
+    private void drawScoreboard(Graphics g, BoardFrame frame) {
+        if (frame.getLeaderCount() == 0)
+            return;
         g.setFont(new Font("Monospaced", Font.PLAIN, 16));
         FontMetrics fontMetrics = g.getFontMetrics();
         int fontHeight = fontMetrics.getHeight();
         int barWidth;
         int barHeight = fontHeight + 4;
 
-        Player player;
+        int player;
         String string;
         Color color;
 
-        double highestPercentOwned = players.get(0).getPercentOwned();
-        Collections.sort(players);
-        for (int i = 0; i < Integer.min(5, players.size()); i++) {
-            player = players.get(i);
-            string = String.format("%.2f%% - %s", player.getPercentOwned(), player.getName());
-            color = player.getColor();
+        double highestPercentOwned = frame.getPercentOwned(frame.getLeader(0));
+        for (int i = 0; i < frame.getLeaderCount(); i++) {
+            player = frame.getLeader(i);
+            string = String.format("%.2f%% - %s", frame.getPercentOwned(player), frame.getName(player));
+            color = frame.getColor(player);
 
-            barWidth = (int) ((player.getPercentOwned() / highestPercentOwned) * (getWidth() / 4));
-            g.setColor(player.getColor());
+            barWidth = highestPercentOwned > 0
+                    ? (int) ((frame.getPercentOwned(player) / highestPercentOwned) * (getWidth() / 4))
+                    : 0;
+            g.setColor(color);
             g.fillRect(getWidth() - barWidth, barHeight * i, barWidth, barHeight);
             // If color is perceived as dark set the font color to white, else black
             if (0.299 * color.getRed() + 0.587 * color.getGreen() + 0.114 * color.getBlue() < 127) {
@@ -335,19 +939,44 @@ public class Board extends JPanel {
 
     /**
      * Method responsible for main logic of the game. Checks collisions and if
-     * enclosures should be filled.
+     * enclosures should be filled. Called by the timer on boards played by humans
+     * and by whoever drives a headless board.
      */
-    private void tick() {
+    public void tick() {
         Player player;
+        tickNumber++;
         tilePlayerMap.clear();
+        // Read once, so the overlay can be turned off mid-tick
+        TickProfiler profiler = this.profiler;
+        boolean profiling = profiler != null;
+        long moveNanos = 0;
+        long collisionNanos = 0;
+        long fillNanos = 0;
+        // Players who came home with a trail this tick, filled once all have moved
+        ArrayList<Capture> captures = null;
         for (int i = 0; i < players.size(); i++) {
             player = players.get(i);
+            // Players killed earlier this tick don't move
+            if (!player.isAlive())
+                continue;
+            long mark = profiling ? System.nanoTime() : 0;
+            if (player instanceof HumanPlayer)
+                ((HumanPlayer) player).applyInput(tickNumber);
+            player.rememberPosition();
             player.move();
+            if (profiling) {
+                long now = System.nanoTime();
+                moveNanos += now - mark;
+                mark = now;
+            }
             // Kill player if player moves outside game area
             if (player.getX() < 0 || player.getX() >= mapWidth || player.getY() < 0 || player.getY() >= mapHeight) {
+                publishDeath(player, null, MatchEventLog.WALL_DEATH);
                 player.die();
             } else {
-                Tile tile = getTile(player.getX(), player.getY());
+                Tile tile = getTileAt(player.getX(), player.getY());
+                if (tile.getContestedOwner() != null)
+                    publishDeath(tile.getContestedOwner(), player, MatchEventLog.TRAIL_DEATH);
                 player.checkCollision(tile);
                 player.setCurrentTile(tile);
                 findCollision(player, tile);
@@ -357,53 +986,90 @@ public class Board extends JPanel {
                     player.contestTile(tile);
                     // If player arrives back to an owned tile
                 } else if (player.getTilesContested().size() > 0) {
+                    if (profiling) {
+                        long now = System.nanoTime();
+                        collisionNanos += now - mark;
+                        mark = now;
+                    }
+                    if (captures == null)
+                        captures = new ArrayList<>();
+                    captures.add(new Capture(player, player.getTilesOwned().size(),
+                            new ArrayList<>(player.getTilesContested())));
                     player.contestToOwned();
-                    fillEnclosure(player);
+                    if (profiling) {
+                        long now = System.nanoTime();
+                        fillNanos += now - mark;
+                        mark = now;
+                    }
                 }
             }
-            // If BotPlayer is killed, add it to deadBots list
-            if (player instanceof BotPlayer && !player.isAlive()) {
-                deadBots.add(player);
+            if (profiling)
+                collisionNanos += System.nanoTime() - mark;
+        }
+        if (captures != null) {
+            long fillStart = profiling ? System.nanoTime() : 0;
+            resolveCaptures(captures);
+            if (profiling)
+                fillNanos += System.nanoTime() - fillStart;
+        }
+        long respawnStart = profiling ? System.nanoTime() : 0;
+
+        // If BotPlayer is killed, add it to deadBots list
+        for (Player p : players) {
+            if (p instanceof BotPlayer && !p.isAlive()) {
+                deadBots.add((BotPlayer) p);
             }
         }
+
+        // Remove dead players
+        players.removeIf(p -> !p.isAlive());
         respawnBots();
 
+        for (Player p : players) {
+            p.updateD();
+        }
+        if (profiling) {
+            long now = System.nanoTime();
+            profiler.recordTick(now, moveNanos, collisionNanos, fillNanos, now - respawnStart);
+        }
+
+        if (humanPlayers.isEmpty()) {
+            return;
+        }
         boolean allKilled = true;
         for (HumanPlayer humanPlayer : humanPlayers) {
-            humanPlayer.updateD();
+            humanPlayer.recordScore();
             // Sets painter to stop drawing if humanPlayer is dead
             player_painter.get(humanPlayer).setDraw(humanPlayer.isAlive());
             allKilled = allKilled && !humanPlayer.isAlive();
         }
         if (allKilled) {
-            endGame();
+            gameOver = true;
         }
-
-        // Remove dead players
-        players.removeIf(p -> !p.isAlive());
     }
 
     /**
-     * Method to end game and tell this to PaperIO class
+     * Method to end game and tell this to PaperIO class. Stops the timer since
+     * nothing happens on the board anymore. Must be called without holding the
+     * board's lock, the dialog and listener run later on the event dispatch
+     * thread, which may be waiting for the lock to draw a frame.
      */
     private void endGame() {
-        JOptionPane.showMessageDialog(this, "You lost, game over", "GAME OVER", JOptionPane.PLAIN_MESSAGE);
-        actionListener.actionPerformed(new ActionEvent(this, 0, "End Game"));
+        stop();
+        SwingUtilities.invokeLater(() -> {
+            JOptionPane.showMessageDialog(this, "You lost, game over", "GAME OVER", JOptionPane.PLAIN_MESSAGE);
+            actionListener.actionPerformed(new ActionEvent(this, 0, "End Game"));
+        });
     }
 
     /**
-     * Method that respawns dead bots after a set interval
+     * Method that respawns dead bots with new bots of the same kind
      */
     private void respawnBots() {
-        for (int i = 0; i < deadBots.size(); i++) {
-            if (deadBots.get(i).isAlive()) {
-                Player player = new BotPlayer(gameArea.length, gameArea[0].length,
-                        new Color((int) (Math.random() * 0x1000000)));
-                startingArea(player);
-                players.add(player);
-                deadBots.remove(deadBots.get(i));
-            }
+        for (BotPlayer bot : deadBots) {
+            addPlayer(bot.respawn());
         }
+        deadBots.clear();
     }
 
     /**
@@ -428,13 +1094,17 @@ public class Board extends JPanel {
             for (Map.Entry<Tile, Player> entry : tilePlayerMap.entrySet()) {
                 if (entry.getKey() == tile) {
                     if (entry.getValue().getTilesContested().size() > player.getTilesContested().size()) {
+                        publishDeath(entry.getValue(), player, MatchEventLog.HEAD_ON_DEATH);
                         entry.getValue().die();
                     } else if (entry.getValue().getTilesContested().size() < player.getTilesContested().size()) {
+                        publishDeath(player, entry.getValue(), MatchEventLog.HEAD_ON_DEATH);
                         player.die();
                     } else if (entry.getValue().getTilesContested().size() == player.getTilesContested().size()) {
                         if (entry.getValue().getTilesOwned().size() > player.getTilesOwned().size()) {
+                            publishDeath(entry.getValue(), player, MatchEventLog.HEAD_ON_DEATH);
                             entry.getValue().die();
                         } else {
+                            publishDeath(player, entry.getValue(), MatchEventLog.HEAD_ON_DEATH);
                             player.die();
                         }
                     }
@@ -443,117 +1113,118 @@ public class Board extends JPanel {
         } else { // If no corresponding tile is found, add tile and player to tilePlayerMap
             tilePlayerMap.put(tile, player);
         }
-        // Remove dead players
-        players.removeIf(p -> !p.isAlive());
     }
 
     /**
-     * Controls tick counter of game which is needed to make game smooth.
+     * Publishes the death of a player to the event log, if there is one, before
+     * the player dies and its tiles are cleared
+     * 
+     * @param victim player about to die
+     * @param killer player that killed it, or null
+     * @param type   cause of death
      */
-    private void updateTick() {
-        tickCounter++;
-        tickCounter %= tickReset;
+    private void publishDeath(Player victim, Player killer, byte type) {
+        if (events != null && victim.isAlive())
+            events.publish(match, tickNumber, type, victim.getId(), killer == null ? 0 : killer.getId(), victim.getX(),
+                    victim.getY(), victim.getTilesOwned().size());
     }
 
     /**
      * After a player has traveled out to enclose an area the area needs to be
      * filled. This method depends on that the Player.contestedToOwned() method has
-     * been called. The method works by doing a depth first search from each tile
-     * adjacent to a tile owned by the player sent as parameter. If the DFS
-     * algorithm finds a boundary we know it is not enclosed and should not be
-     * filled. The boundary is the smallest rectangle surrounding all owned tiles by
-     * the player to minimize cost of method. If the DFS can't find the boundary or
-     * if the one the DFS starts on we know it should be filled.
-     * 
-     * @param player The player whose enclosure to be filled
-     */
-    private void fillEnclosure(Player player) {
-        // Set boundary
-        int maxX = 0;
-        int minX = gameArea[0].length;
-        int maxY = 0;
-        int minY = gameArea.length;
-        for (Tile t : player.getTilesOwned()) {
-            if (t.getX() > maxX)
-                maxX = t.getX();
-            if (t.getX() < minX)
-                minX = t.getX();
-            if (t.getY() > maxY)
-                maxY = t.getY();
-            if (t.getY() < minY)
-                minY = t.getY();
+     * been called. Searches from the tiles next to the trail just claimed, see
+     * EnclosureFinder, so it takes time in proportion to the area enclosed rather
+     * than the player's territory. Only reads the board, so enclosures of several
+     * players can be found at the same time.
+     * 
+     * @param player The player whose enclosure to be found
+     * @param trail  tiles of the trail the player just claimed
+     * @return tiles enclosed by the player and not owned by it
+     */
+    private ArrayList<Tile> findEnclosure(Player player, List<Tile> trail) {
+        int[] seeds = new int[4 * trail.size()];
+        int count = 0;
+        for (Tile t : trail) {
+            int cell = t.getY() * mapWidth + t.getX();
+            if (t.getY() - 1 >= 0)
+                seeds[count++] = cell - mapWidth;
+            if (t.getY() + 1 < mapHeight)
+                seeds[count++] = cell + mapWidth;
+            if (t.getX() - 1 >= 0)
+                seeds[count++] = cell - 1;
+            if (t.getX() + 1 < mapWidth)
+                seeds[count++] = cell + 1;
         }
+        EnclosureFinder finder = new EnclosureFinder(layers.getOwners(), mapWidth, mapHeight);
+        int[] cells = finder.find(player.getId(), Arrays.copyOf(seeds, count), player.getMinOwnedX(),
+                player.getMinOwnedY(), player.getMaxOwnedX(), player.getMaxOwnedY());
+        ArrayList<Tile> inside = new ArrayList<>(cells.length);
+        for (int cell : cells)
+            inside.add(getTileAt(cell % mapWidth, cell / mapWidth));
+        return inside;
+    }
 
-        // Necessary collections for DFS to work
-        ArrayList<Tile> outside = new ArrayList<>();
-        ArrayList<Tile> inside = new ArrayList<>();
-        ArrayList<Tile> visited = new ArrayList<>();
-        HashSet<Tile> toCheck = new HashSet<>();
-
-        // Add all adjacent tiles
-        int y;
-        int x;
-        for (Tile t : player.getTilesOwned()) {
-            y = t.getY();
-            x = t.getX();
-            if (y - 1 >= 0)
-                toCheck.add(gameArea[y - 1][x]);
-            if (y + 1 < gameArea.length)
-                toCheck.add(gameArea[y + 1][x]);
-            if (x - 1 >= 0)
-                toCheck.add(gameArea[y][x - 1]);
-            if (x + 1 < gameArea[y].length)
-                toCheck.add(gameArea[y][x + 1]);
+    /**
+     * Fills the enclosures of all players who came home with a trail this tick,
+     * once every player has moved, so the result doesn't depend on the order
+     * players move in. Enclosures are found from the same board, on the
+     * fork-join pool when there are several. A tile enclosed by more than one
+     * player goes to the largest enclosure, which surrounds the others, and
+     * between enclosures of the same size to the player with the lowest id.
+     * Players killed after coming home capture nothing, their territory is
+     * already gone.
+     * 
+     * @param captures players who came home, in the order they did
+     */
+    private void resolveCaptures(List<Capture> captures) {
+        captures.removeIf(capture -> !capture.player.isAlive());
+        if (captures.size() == 1 || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            for (Capture capture : captures)
+                capture.enclosed = findEnclosure(capture.player, capture.trail);
+        } else {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Capture capture : captures)
+                tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                    capture.enclosed = findEnclosure(capture.player, capture.trail);
+                }));
+            for (ForkJoinTask<?> task : tasks)
+                task.join();
         }
 
-        // Loop over all tiles to do DFS from
-        for (Tile t : toCheck) {
-            if (!inside.contains(t)) {
-                Stack<Tile> stack = new Stack<>();
-                boolean cont = true;
-                Tile v;
-                visited.clear();
-
-                // DFS algorithm
-                stack.push(t);
-                while ((!stack.empty()) && cont) {
-                    v = stack.pop();
-                    if (!visited.contains(v) && (v.getOwner() != player)) {
-                        y = v.getY();
-                        x = v.getX();
-                        if (outside.contains(v) // If already declared as outside
-                                || x < minX || x > maxX || y < minY || y > maxY // If outside of boundary
-                                || x == gameArea[0].length - 1 || x == 0 || y == 0 || y == gameArea.length - 1) { // If
-                                                                                                                  // it
-                                                                                                                  // is
-                                                                                                                  // a
-                                                                                                                  // edge
-                                                                                                                  // tile
-                            cont = false;
-                        } else {
-                            visited.add(v);
-                            if (y - 1 >= 0)
-                                stack.push(gameArea[y - 1][x]);
-                            if (y + 1 < gameArea.length)
-                                stack.push(gameArea[y + 1][x]);
-                            if (x - 1 >= 0)
-                                stack.push(gameArea[y][x - 1]);
-                            if (x + 1 < gameArea[y].length)
-                                stack.push(gameArea[y][x + 1]);
-                        }
-                    }
-                }
-                if (cont) { // If DFS don't find boundary
-                    inside.addAll(visited);
-                } else {
-                    outside.addAll(visited);
-                }
+        if (captures.size() > 1) {
+            captures.sort(Comparator.comparingInt((Capture capture) -> -capture.enclosed.size())
+                    .thenComparingInt(capture -> capture.player.getId()));
+        }
+        // Only needed when claims can overlap
+        HashSet<Tile> claimed = captures.size() > 1 ? new HashSet<>() : null;
+        for (Capture capture : captures) {
+            for (Tile t : capture.enclosed) {
+                if (claimed == null || claimed.add(t))
+                    capture.player.addTileToOwned(t);
             }
+            Player player = capture.player;
+            if (events != null)
+                events.publish(match, tickNumber, MatchEventLog.CAPTURE, player.getId(), 0, player.getX(),
+                        player.getY(), player.getTilesOwned().size() - capture.ownedBefore);
         }
+    }
 
-        // Set all enclosed tiles to be owned by player
-        for (Tile t : inside) {
-            player.addTileToOwned(t);
+    /**
+     * A player who came home with a trail during a tick, waiting for its
+     * enclosure to be filled
+     */
+    private static final class Capture {
+        private final Player player;
+        // Tiles the player owned before its trail was claimed
+        private final int ownedBefore;
+        // Trail the player claimed, enclosed areas border it
+        private final List<Tile> trail;
+        private ArrayList<Tile> enclosed;
+
+        private Capture(Player player, int ownedBefore, List<Tile> trail) {
+            this.player = player;
+            this.ownedBefore = ownedBefore;
+            this.trail = trail;
         }
     }
 
@@ -563,17 +1234,26 @@ public class Board extends JPanel {
     private class ScheduleTask extends TimerTask {
 
         /**
-         * Gets called by timer at specified interval. Calls tick at specified rate and
-         * repaint each time
+         * Gets called by timer at the tick rate and ticks. Ticks while holding the
+         * board's lock so a game can be saved or drawn between two ticks.
          */
         @Override
         public void run() {
             if (!paused) {
-                updateTick();
-                if (tickCounter == 0) {
+                synchronized (Board.this) {
+                    long start = System.nanoTime();
                     tick();
+                    // The minimap is the only one following the changes of a board played here
+                    if (minimap != null) {
+                        minimap.update(players);
+                        layers.clearChanges();
+                    }
+                    lastTickNanos = System.nanoTime();
+                    quality.recordTick(lastTickNanos - start);
                 }
-                repaint();
+                // Outside the lock, so a frame waiting for it can be drawn
+                if (gameOver)
+                    endGame();
             }
         }
     }
@@ -0,0 +1,126 @@
+package se.liu.ida.objects;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import se.liu.ida.entities.BotPlayer;
+import se.liu.ida.entities.HumanPlayer;
+import se.liu.ida.entities.Player;
+
+/**
+ * A BoardArena keeps the memory of a board alive between matches, so a new
+ * match on a game area of the same size doesn't allocate a grid of tiles and
+ * its layers again. It holds the tiles, their layers, the collections keeping
+ * track of players and the scratch memory of board snapshots. Large worlds
+ * create their tiles as players reach them, see TileGrid.
+ *
+ * One board uses an arena at a time, from creation until it is released. On
+ * release every remaining player leaves the game, which clears the tiles it owns
+ * and contests, so resetting costs O(tiles touched) rather than O(game area).
+ */
+public class BoardArena {
+    // Size of a tile and the reference to it
+    private static final int TILE_BYTES = 40;
+
+    private final int mapWidth;
+    private final int mapHeight;
+
+    final TileGrid gameArea;
+    final TileLayers layers;
+    final ArrayList<Player> players = new ArrayList<>();
+    final ArrayList<HumanPlayer> humanPlayers = new ArrayList<>();
+    final ArrayList<BotPlayer> deadBots = new ArrayList<>();
+    final HashMap<Tile, Player> tilePlayerMap = new HashMap<>();
+    // Created by the first snapshot, since only boards with bots looking ahead need it
+    private BoardSnapshot.Scratch snapshotScratch;
+
+    // Board using the arena, or null if it is free
+    private Board user;
+
+    /**
+     * Creates an arena for game areas of a size, with no tile owned
+     *
+     * @param mapWidth  width of game area
+     * @param mapHeight height of game area
+     */
+    public BoardArena(int mapWidth, int mapHeight) {
+        this.mapWidth = mapWidth;
+        this.mapHeight = mapHeight;
+        this.layers = new TileLayers(mapWidth, mapHeight);
+        this.gameArea = new TileGrid(mapWidth, mapHeight, layers);
+    }
+
+    /**
+     * @return scratch memory shared by all snapshots of the board using the arena
+     */
+    BoardSnapshot.Scratch getSnapshotScratch() {
+        if (snapshotScratch == null)
+            snapshotScratch = new BoardSnapshot.Scratch(mapWidth * mapHeight);
+        return snapshotScratch;
+    }
+
+    /**
+     * Estimates the memory an arena for a game area takes before players have
+     * been anywhere
+     *
+     * @param mapWidth  width of game area
+     * @param mapHeight height of game area
+     * @return estimated size in bytes
+     */
+    public static long estimateBytes(int mapWidth, int mapHeight) {
+        long cells = (long) mapWidth * mapHeight;
+        // Owner and contested ids and change flags of every cell
+        long bytes = cells * (4 + 4 + 1);
+        if (cells <= TileGrid.EAGER_CELLS)
+            bytes += cells * TILE_BYTES;
+        return bytes;
+    }
+
+    /**
+     * Lets a board use the arena until it releases it
+     *
+     * @param board board about to use the arena
+     * @throws IllegalStateException if another board uses the arena
+     */
+    synchronized void acquire(Board board) {
+        if (user != null)
+            throw new IllegalStateException("Arena is used by another board");
+        user = board;
+    }
+
+    /**
+     * Clears everything the board left behind and frees the arena for the next
+     * board
+     *
+     * @param board board using the arena
+     */
+    synchronized void release(Board board) {
+        if (user != board)
+            return;
+        for (Player player : players)
+            player.die();
+        for (HumanPlayer player : humanPlayers)
+            player.die();
+        players.clear();
+        humanPlayers.clear();
+        deadBots.clear();
+        tilePlayerMap.clear();
+        layers.clearChanges();
+        user = null;
+    }
+
+    public int getMapWidth() {
+        return mapWidth;
+    }
+
+    public int getMapHeight() {
+        return mapHeight;
+    }
+
+    /**
+     * @return true if no board uses the arena
+     */
+    public synchronized boolean isFree() {
+        return user == null;
+    }
+}
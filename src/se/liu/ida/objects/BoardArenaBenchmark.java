@@ -0,0 +1,80 @@
+package se.liu.ida.objects;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import se.liu.ida.entities.BotPlayer;
+
+/**
+ * Benchmarks starting back to back matches on boards with memory of their own
+ * against boards reusing one arena. Checks that a board in a reused arena plays
+ * out the same way as a board created from scratch, and that a released arena
+ * has no tile left owned or contested.
+ */
+public class BoardArenaBenchmark {
+    /**
+     * Arguments are size of game area, number of bots, number of matches and
+     * ticks per match, which default to 2000, 200, 10 and 50.
+     *
+     * @param args optional size, bots, matches and ticks
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int botCount = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int matches = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int ticks = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+
+        List<Function<Board, ? extends BotPlayer>> bots = new ArrayList<>();
+        for (int i = 0; i < botCount; i++)
+            bots.add(BotPlayer::new);
+
+        List<SaveGame> fresh = new ArrayList<>();
+        long startNanos = 0;
+        long gcBefore = gcMillis();
+        for (int match = 0; match < matches; match++) {
+            long start = System.nanoTime();
+            Board board = new Board(size, size, match, bots);
+            startNanos += System.nanoTime() - start;
+            for (int i = 0; i < ticks; i++)
+                board.tick();
+            fresh.add(SaveGame.capture(board));
+        }
+        System.out.printf("fresh: %.1f ms per start, %d ms of GC%n", startNanos / 1e6 / matches,
+                gcMillis() - gcBefore);
+
+        BoardArena arena = new BoardArena(size, size);
+        startNanos = 0;
+        long releaseNanos = 0;
+        gcBefore = gcMillis();
+        for (int match = 0; match < matches; match++) {
+            long start = System.nanoTime();
+            Board board = new Board(arena, match, bots);
+            startNanos += System.nanoTime() - start;
+            for (int i = 0; i < ticks; i++)
+                board.tick();
+            if (!SaveGame.capture(board).equals(fresh.get(match)))
+                throw new IllegalStateException("Match " + match + " played differently in the arena");
+            start = System.nanoTime();
+            board.release();
+            releaseNanos += System.nanoTime() - start;
+            for (int cell = 0; cell < size * size; cell++) {
+                if (arena.layers.getOwners()[cell] != TileLayers.NO_PLAYER
+                        || arena.layers.getContested()[cell] != TileLayers.NO_PLAYER)
+                    throw new IllegalStateException("Released arena has tiles left at cell " + cell);
+            }
+        }
+        System.out.printf("arena: %.1f ms per start, %.1f ms per release, %d ms of GC%n",
+                startNanos / 1e6 / matches, releaseNanos / 1e6 / matches, gcMillis() - gcBefore);
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(0, collector.getCollectionTime());
+        return millis;
+    }
+}
@@ -0,0 +1,317 @@
+package se.liu.ida.objects;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import se.liu.ida.entities.Player;
+
+/**
+ * A BoardFrame is an immutable copy of what a board's painters draw in one
+ * frame: the players, the leaders of the scoreboard and a window of tiles around
+ * every player followed. It is captured between two ticks, so painters can draw
+ * it on any thread while the board ticks on.
+ *
+ * Players are referred to by their index in the frame. Tiles in a window hold
+ * the index of their owner and contested owner, or -1 for none.
+ */
+public final class BoardFrame {
+    private final int mapWidth;
+    private final int mapHeight;
+    // How far the board had come from its last tick towards the next
+    private final double tickFraction;
+
+    private final int[] xs;
+    private final int[] ys;
+    // Positions before the last tick
+    private final int[] lastXs;
+    private final int[] lastYs;
+    private final Color[] colors;
+    private final String[] names;
+    private final double[] percentsOwned;
+    // Player indexes in scoreboard order, best first
+    private final int[] leaders;
+
+    private final Window[] windows;
+
+    /**
+     * Captures a frame of a board. Must be called while the board doesn't tick,
+     * such as while holding its lock.
+     *
+     * @param board    board to capture
+     * @param followed players whose surroundings are drawn, one window each
+     * @param tilesX   tiles seen on each side of a followed player horizontally
+     * @param tilesY   tiles seen on each side of a followed player vertically
+     * @param leaders  number of players on the scoreboard, 0 to leave it out
+     */
+    BoardFrame(Board board, List<? extends Player> followed, int tilesX, int tilesY, int leaders) {
+        this.mapWidth = board.getMapWidth();
+        this.mapHeight = board.getMapHeight();
+        this.tickFraction = board.getTickFraction();
+
+        List<Player> players = new ArrayList<>(board.getPlayers());
+        int count = players.size();
+        this.xs = new int[count];
+        this.ys = new int[count];
+        this.lastXs = new int[count];
+        this.lastYs = new int[count];
+        this.colors = new Color[count];
+        this.names = new String[count];
+        this.percentsOwned = new double[count];
+        HashMap<Integer, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            Player player = players.get(i);
+            xs[i] = player.getX();
+            ys[i] = player.getY();
+            lastXs[i] = player.getLastX();
+            lastYs[i] = player.getLastY();
+            colors[i] = player.getColor();
+            names[i] = player.getName();
+            percentsOwned[i] = player.getPercentOwned();
+            indexes.put(player.getId(), i);
+        }
+
+        // Sorts a copy, the board's list is the order players move in
+        this.leaders = new int[Math.min(leaders, count)];
+        if (this.leaders.length > 0) {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++)
+                order[i] = i;
+            Arrays.sort(order, (a, b) -> Double.compare(percentsOwned[b], percentsOwned[a]));
+            for (int i = 0; i < this.leaders.length; i++)
+                this.leaders[i] = order[i];
+        }
+
+        TileLayers layers = board.getLayers();
+        this.windows = new Window[followed.size()];
+        for (int i = 0; i < windows.length; i++)
+            windows[i] = new Window(followed.get(i), layers, indexes, tilesX, tilesY, tickFraction);
+    }
+
+    public int getMapWidth() {
+        return mapWidth;
+    }
+
+    public int getMapHeight() {
+        return mapHeight;
+    }
+
+    /**
+     * @return how far the board had come from its last tick towards the next,
+     *         between 0 and 1
+     */
+    public double getTickFraction() {
+        return tickFraction;
+    }
+
+    public int getPlayerCount() {
+        return xs.length;
+    }
+
+    public int getX(int player) {
+        return xs[player];
+    }
+
+    public int getY(int player) {
+        return ys[player];
+    }
+
+    public int getLastX(int player) {
+        return lastXs[player];
+    }
+
+    public int getLastY(int player) {
+        return lastYs[player];
+    }
+
+    /**
+     * Get where a player is drawn, between its position before the last tick
+     * and its position after it
+     *
+     * @param player index of the player
+     * @return x position in tiles
+     */
+    public double getDrawX(int player) {
+        return lastXs[player] + (xs[player] - lastXs[player]) * tickFraction;
+    }
+
+    /**
+     * Get where a player is drawn, between its position before the last tick
+     * and its position after it
+     *
+     * @param player index of the player
+     * @return y position in tiles
+     */
+    public double getDrawY(int player) {
+        return lastYs[player] + (ys[player] - lastYs[player]) * tickFraction;
+    }
+
+    public Color getColor(int player) {
+        return colors[player];
+    }
+
+    public String getName(int player) {
+        return names[player];
+    }
+
+    public double getPercentOwned(int player) {
+        return percentsOwned[player];
+    }
+
+    /**
+     * @return number of players on the scoreboard
+     */
+    public int getLeaderCount() {
+        return leaders.length;
+    }
+
+    /**
+     * Get a player on the scoreboard
+     *
+     * @param rank place on the scoreboard, 0 for the best
+     * @return index of the player
+     */
+    public int getLeader(int rank) {
+        return leaders[rank];
+    }
+
+    /**
+     * Get the window of tiles around a followed player
+     *
+     * @param view index of the followed player in the list the frame was
+     *             captured with
+     * @return the window
+     */
+    public Window getWindow(int view) {
+        return windows[view];
+    }
+
+    /**
+     * The tiles around a followed player, as they were when the frame was
+     * captured
+     */
+    public static final class Window {
+        private final int focusX;
+        private final int focusY;
+        // Where the view is centered, between the followed player's last two positions
+        private final double cameraX;
+        private final double cameraY;
+        private final boolean focusAlive;
+        private final int left;
+        private final int top;
+        private final int width;
+        private final int height;
+        private final int[] owners;
+        private final int[] contested;
+
+        private Window(Player focus, TileLayers layers, HashMap<Integer, Integer> indexes, int tilesX, int tilesY,
+                double tickFraction) {
+            this.focusX = focus.getX();
+            this.focusY = focus.getY();
+            this.cameraX = focus.getLastX() + (focusX - focus.getLastX()) * tickFraction;
+            this.cameraY = focus.getLastY() + (focusY - focus.getLastY()) * tickFraction;
+            this.focusAlive = focus.isAlive();
+            this.left = Math.max(0, focusX - tilesX);
+            this.top = Math.max(0, focusY - tilesY);
+            this.width = Math.max(0, Math.min(layers.getWidth() - 1, focusX + tilesX) - left + 1);
+            this.height = Math.max(0, Math.min(layers.getHeight() - 1, focusY + tilesY) - top + 1);
+            this.owners = new int[width * height];
+            this.contested = new int[width * height];
+
+            int[] ownerIds = layers.getOwners();
+            int[] contestedIds = layers.getContested();
+            // Territory comes in runs of one owner, so the last id looked up is
+            // usually the next one too
+            int lastId = TileLayers.NO_PLAYER;
+            int lastIndex = -1;
+            for (int y = 0; y < height; y++) {
+                int row = (top + y) * layers.getWidth() + left;
+                for (int x = 0; x < width; x++) {
+                    int owner = ownerIds[row + x];
+                    if (owner != lastId) {
+                        lastId = owner;
+                        lastIndex = indexOf(indexes, owner);
+                    }
+                    owners[y * width + x] = lastIndex;
+                    contested[y * width + x] = indexOf(indexes, contestedIds[row + x]);
+                }
+            }
+        }
+
+        private static int indexOf(HashMap<Integer, Integer> indexes, int id) {
+            if (id == TileLayers.NO_PLAYER)
+                return -1;
+            Integer index = indexes.get(id);
+            return index == null ? -1 : index;
+        }
+
+        public int getFocusX() {
+            return focusX;
+        }
+
+        public int getFocusY() {
+            return focusY;
+        }
+
+        /**
+         * @return x position in tiles the view is centered on
+         */
+        public double getCameraX() {
+            return cameraX;
+        }
+
+        /**
+         * @return y position in tiles the view is centered on
+         */
+        public double getCameraY() {
+            return cameraY;
+        }
+
+        /**
+         * @return true if the followed player was alive
+         */
+        public boolean isFocusAlive() {
+            return focusAlive;
+        }
+
+        public int getLeft() {
+            return left;
+        }
+
+        public int getTop() {
+            return top;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Get the owner of a tile in the window
+         *
+         * @param x x position on the game area
+         * @param y y position on the game area
+         * @return index of the owner, or -1 for none
+         */
+        public int getOwner(int x, int y) {
+            return owners[(y - top) * width + x - left];
+        }
+
+        /**
+         * Get the contested owner of a tile in the window
+         *
+         * @param x x position on the game area
+         * @param y y position on the game area
+         * @return index of the contested owner, or -1 for none
+         */
+        public int getContestedOwner(int x, int y) {
+            return contested[(y - top) * width + x - left];
+        }
+    }
+}
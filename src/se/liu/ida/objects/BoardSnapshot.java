@@ -0,0 +1,759 @@
+package se.liu.ida.objects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import se.liu.ida.entities.Player;
+import se.liu.ida.logic.Direction;
+
+/**
+ * A BoardSnapshot is a compact copy of the game area and the players on it that
+ * bots can use to simulate moves ahead of time. Cells are stored in square
+ * chunks that are shared copy-on-write between forks, so a fork costs O(chunks)
+ * and a write only copies the chunk it touches. Every change is recorded in a
+ * journal so a simulated line of play can be undone in O(changes) with
+ * <code>mark()</code> and <code>undo(int)</code>.
+ *
+ * Players are referred to by their index in the snapshot. A snapshot and its
+ * forks share scratch memory for enclosure filling and must therefore be used
+ * from one thread at a time. Snapshots captured from a board share the scratch
+ * memory of the board's arena too, so they belong to the thread ticking it.
+ */
+public class BoardSnapshot {
+    private static final int CHUNK_SHIFT = 4;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Kinds of journal entries, each entry is four ints: kind, a, b, old value
+    private static final int OWNER = 0;
+    private static final int CONTESTED = 1;
+    private static final int X = 2;
+    private static final int Y = 3;
+    private static final int DIRECTION = 4;
+    private static final int ALIVE = 5;
+    private static final int TRAIL_LENGTH = 6;
+    private static final int TRAIL_CELL = 7;
+    private static final int BOUND = 8;
+
+    // Indexes into the bounds of a player's territory
+    private static final int MIN_X = 0;
+    private static final int MAX_X = 1;
+    private static final int MIN_Y = 2;
+    private static final int MAX_Y = 3;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // Source of generations, a snapshot may only write in place to chunks of its
+    // own generation
+    private static final AtomicInteger GENERATIONS = new AtomicInteger();
+
+    private final int width;
+    private final int height;
+    private final int chunksX;
+
+    // Cells hold player index + 1, or 0 for no player
+    private int[][] ownerChunks;
+    private int[][] contestedChunks;
+    private int[] chunkGenerations;
+    private int generation;
+
+    private final Player[] players;
+    private final IdentityHashMap<Player, Integer> indexes;
+    // Player id of each index
+    private final int[] ids;
+    private int[] xs;
+    private int[] ys;
+    private int[] directions;
+    private int[] alive;
+    private int[] ownedCounts;
+    private int[] bounds;
+    // Each player's trail as cell indexes y * width + x
+    private int[][] trails;
+    private int[] trailLengths;
+
+    private int[] journal;
+    private int journalSize;
+
+    private final Scratch scratch;
+
+    /**
+     * Creates an empty snapshot where no player owns anything
+     *
+     * @param width   width of game area
+     * @param height  height of game area
+     * @param players players in the snapshot, in index order
+     * @param scratch scratch memory for enclosure filling
+     */
+    private BoardSnapshot(int width, int height, Player[] players, Scratch scratch) {
+        this.width = width;
+        this.height = height;
+        this.chunksX = (width + CHUNK_MASK) >> CHUNK_SHIFT;
+        int chunkCount = chunksX * ((height + CHUNK_MASK) >> CHUNK_SHIFT);
+        this.generation = GENERATIONS.incrementAndGet();
+        this.ownerChunks = new int[chunkCount][CHUNK_SIZE * CHUNK_SIZE];
+        this.contestedChunks = new int[chunkCount][CHUNK_SIZE * CHUNK_SIZE];
+        this.chunkGenerations = new int[chunkCount];
+        Arrays.fill(chunkGenerations, generation);
+
+        int n = players.length;
+        this.players = players;
+        this.indexes = new IdentityHashMap<>();
+        this.ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (players[i] != null) {
+                indexes.put(players[i], i);
+                ids[i] = players[i].getId();
+            }
+        }
+        this.xs = new int[n];
+        this.ys = new int[n];
+        this.directions = new int[n];
+        this.alive = new int[n];
+        this.ownedCounts = new int[n];
+        this.bounds = new int[4 * n];
+        this.trails = new int[n][];
+        this.trailLengths = new int[n];
+        this.journal = new int[256];
+        this.scratch = scratch;
+    }
+
+    /**
+     * Creates a fork sharing all chunks with source
+     *
+     * @param source snapshot to fork
+     */
+    private BoardSnapshot(BoardSnapshot source) {
+        this.width = source.width;
+        this.height = source.height;
+        this.chunksX = source.chunksX;
+        // Neither source nor fork may write in place to shared chunks anymore
+        source.generation = GENERATIONS.incrementAndGet();
+        this.generation = GENERATIONS.incrementAndGet();
+        this.ownerChunks = source.ownerChunks.clone();
+        this.contestedChunks = source.contestedChunks.clone();
+        this.chunkGenerations = source.chunkGenerations.clone();
+
+        this.players = source.players;
+        this.indexes = source.indexes;
+        this.ids = source.ids;
+        this.xs = source.xs.clone();
+        this.ys = source.ys.clone();
+        this.directions = source.directions.clone();
+        this.alive = source.alive.clone();
+        this.ownedCounts = source.ownedCounts.clone();
+        this.bounds = source.bounds.clone();
+        this.trails = new int[source.trails.length][];
+        for (int i = 0; i < trails.length; i++)
+            trails[i] = Arrays.copyOf(source.trails[i], source.trails[i].length);
+        this.trailLengths = source.trailLengths.clone();
+        this.journal = new int[256];
+        this.scratch = source.scratch;
+    }
+
+    /**
+     * Captures the current state of a board into a new snapshot
+     *
+     * @param board board to capture
+     * @return a snapshot of the board
+     */
+    public static BoardSnapshot capture(Board board) {
+        List<Player> boardPlayers = board.getPlayers();
+        Player[] players = boardPlayers.toArray(new Player[0]);
+        BoardSnapshot snapshot = new BoardSnapshot(board.getMapWidth(), board.getMapHeight(), players,
+                board.getSnapshotScratch());
+
+        for (int i = 0; i < players.length; i++) {
+            Player player = players[i];
+            snapshot.xs[i] = player.getX();
+            snapshot.ys[i] = player.getY();
+            snapshot.directions[i] = player.getDirection().ordinal();
+            snapshot.alive[i] = player.isAlive() ? 1 : 0;
+            snapshot.bounds[4 * i + MIN_X] = Integer.MAX_VALUE;
+            snapshot.bounds[4 * i + MAX_X] = Integer.MIN_VALUE;
+            snapshot.bounds[4 * i + MIN_Y] = Integer.MAX_VALUE;
+            snapshot.bounds[4 * i + MAX_Y] = Integer.MIN_VALUE;
+
+            List<Tile> contested = player.getTilesContested();
+            snapshot.trails[i] = new int[Math.max(16, 2 * contested.size())];
+            for (Tile t : contested)
+                snapshot.trails[i][snapshot.trailLengths[i]++] = t.getY() * snapshot.width + t.getX();
+        }
+
+        for (int x = 0; x < snapshot.width; x++) {
+            for (int y = 0; y < snapshot.height; y++) {
+                Tile tile = board.getTileAt(x, y);
+                Integer owner = tile.getOwner() == null ? null : snapshot.indexes.get(tile.getOwner());
+                Integer contested = tile.getContestedOwner() == null ? null
+                        : snapshot.indexes.get(tile.getContestedOwner());
+                if (owner != null) {
+                    snapshot.writeOwner(x, y, owner + 1);
+                    snapshot.growBounds(owner, x, y);
+                }
+                if (contested != null)
+                    snapshot.writeContested(x, y, contested + 1);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Creates a snapshot from layers of player ids, such as a network client's
+     * copy of a board. Players that own or contest cells but aren't listed are
+     * added after the listed ones as dead players, so every cell keeps an owner.
+     * Trails are rebuilt from the contested layer in row major order.
+     *
+     * @param width      width of game area
+     * @param height     height of game area
+     * @param owners     owner ids in row major order, 0 for none
+     * @param contested  contested owner ids in row major order, 0 for none
+     * @param ids        ids of the players alive on the board
+     * @param xs         x positions of the players
+     * @param ys         y positions of the players
+     * @param directions directions of the players
+     * @param count      number of players listed
+     * @return a snapshot of the layers, where the listed players have the
+     *         indices they are listed at
+     */
+    public static BoardSnapshot fromLayers(int width, int height, int[] owners, int[] contested, int[] ids,
+            int[] xs, int[] ys, Direction[] directions, int count) {
+        HashMap<Integer, Integer> indexOfId = new HashMap<>();
+        for (int i = 0; i < count; i++)
+            indexOfId.put(ids[i], i);
+        List<Integer> unlisted = new ArrayList<>();
+        for (int cell = 0; cell < 2 * width * height; cell++) {
+            int id = cell < width * height ? owners[cell] : contested[cell - width * height];
+            if (id != TileLayers.NO_PLAYER && !indexOfId.containsKey(id)) {
+                indexOfId.put(id, count + unlisted.size());
+                unlisted.add(id);
+            }
+        }
+
+        int n = count + unlisted.size();
+        BoardSnapshot snapshot = new BoardSnapshot(width, height, new Player[n], new Scratch(width * height));
+        for (int i = 0; i < n; i++) {
+            snapshot.ids[i] = i < count ? ids[i] : unlisted.get(i - count);
+            snapshot.bounds[4 * i + MIN_X] = Integer.MAX_VALUE;
+            snapshot.bounds[4 * i + MAX_X] = Integer.MIN_VALUE;
+            snapshot.bounds[4 * i + MIN_Y] = Integer.MAX_VALUE;
+            snapshot.bounds[4 * i + MAX_Y] = Integer.MIN_VALUE;
+            snapshot.trails[i] = new int[16];
+            if (i < count) {
+                snapshot.xs[i] = xs[i];
+                snapshot.ys[i] = ys[i];
+                snapshot.directions[i] = directions[i].ordinal();
+                snapshot.alive[i] = 1;
+            } else {
+                snapshot.xs[i] = -1;
+                snapshot.ys[i] = -1;
+            }
+        }
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int cell = y * width + x;
+                if (owners[cell] != TileLayers.NO_PLAYER) {
+                    int owner = indexOfId.get(owners[cell]);
+                    snapshot.writeOwner(x, y, owner + 1);
+                    snapshot.growBounds(owner, x, y);
+                }
+                if (contested[cell] != TileLayers.NO_PLAYER) {
+                    int player = indexOfId.get(contested[cell]);
+                    snapshot.writeContested(x, y, player + 1);
+                    if (snapshot.trailLengths[player] == snapshot.trails[player].length)
+                        snapshot.trails[player] = Arrays.copyOf(snapshot.trails[player],
+                                2 * snapshot.trailLengths[player]);
+                    snapshot.trails[player][snapshot.trailLengths[player]++] = cell;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Creates a fork of this snapshot. The fork and this snapshot share chunks
+     * until either one writes to them. The fork starts with an empty journal.
+     *
+     * @return a new independent snapshot with the same state as this
+     */
+    public BoardSnapshot fork() {
+        return new BoardSnapshot(this);
+    }
+
+    /**
+     * Marks the current position in the journal to be able to undo back to it
+     *
+     * @return the mark to pass to <code>undo(int)</code>
+     */
+    public int mark() {
+        return journalSize;
+    }
+
+    /**
+     * Undoes every change made since mark was taken
+     *
+     * @param mark a value previously returned by <code>mark()</code>
+     */
+    public void undo(int mark) {
+        while (journalSize > mark) {
+            journalSize -= 4;
+            int a = journal[journalSize + 1];
+            int b = journal[journalSize + 2];
+            int old = journal[journalSize + 3];
+            switch (journal[journalSize]) {
+                case OWNER:
+                    writeOwner(a, b, old);
+                    break;
+                case CONTESTED:
+                    writeContested(a, b, old);
+                    break;
+                case X:
+                    xs[a] = old;
+                    break;
+                case Y:
+                    ys[a] = old;
+                    break;
+                case DIRECTION:
+                    directions[a] = old;
+                    break;
+                case ALIVE:
+                    alive[a] = old;
+                    break;
+                case TRAIL_LENGTH:
+                    trailLengths[a] = old;
+                    break;
+                case TRAIL_CELL:
+                    trails[a][b] = old;
+                    break;
+                case BOUND:
+                    bounds[4 * a + b] = old;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown journal entry " + journal[journalSize]);
+            }
+        }
+    }
+
+    /**
+     * Advances one player a single step in direction, applying the same rules as
+     * the board: leaving the game area or running into your own trail kills you,
+     * running into another player's trail kills that player, and returning home
+     * with a trail claims the trail and everything it encloses. Other players
+     * stand still.
+     *
+     * @param player    index of player to move
+     * @param direction direction to move in
+     * @return true if player is alive after the step, false otherwise
+     */
+    public boolean advance(int player, Direction direction) {
+        if (alive[player] == 0)
+            return false;
+        set(DIRECTION, player, 0, direction.ordinal());
+        int x = xs[player] + direction.getX();
+        int y = ys[player] + direction.getY();
+        set(X, player, 0, x);
+        set(Y, player, 0, y);
+
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            kill(player);
+            return false;
+        }
+
+        int contested = readContested(x, y) - 1;
+        if (contested == player) {
+            kill(player);
+            return false;
+        } else if (contested >= 0) {
+            kill(contested);
+        }
+
+        // Head on collision, the same tie breaking as the board
+        for (int other = 0; other < xs.length; other++) {
+            if (other != player && alive[other] == 1 && xs[other] == x && ys[other] == y) {
+                if (trailLengths[other] > trailLengths[player]) {
+                    kill(other);
+                } else if (trailLengths[other] < trailLengths[player]
+                        || ownedCounts[other] <= ownedCounts[player]) {
+                    kill(player);
+                    return false;
+                } else {
+                    kill(other);
+                }
+            }
+        }
+
+        if (readOwner(x, y) - 1 != player) {
+            pushTrail(player, x, y);
+        } else if (trailLengths[player] > 0) {
+            trailToOwned(player);
+            fillEnclosure(player);
+        }
+        return true;
+    }
+
+    /**
+     * Kills a player and neutralizes its trail. Its territory is left as it is
+     * since the rules only care about whether a cell is owned by yourself.
+     *
+     * @param player index of player to kill
+     */
+    private void kill(int player) {
+        set(ALIVE, player, 0, 0);
+        int[] trail = trails[player];
+        for (int i = 0; i < trailLengths[player]; i++)
+            set(CONTESTED, trail[i] % width, trail[i] / width, 0);
+        set(TRAIL_LENGTH, player, 0, 0);
+    }
+
+    /**
+     * Adds a cell to the end of a player's trail
+     */
+    private void pushTrail(int player, int x, int y) {
+        int length = trailLengths[player];
+        if (length == trails[player].length)
+            trails[player] = Arrays.copyOf(trails[player], 2 * length);
+        set(TRAIL_CELL, player, length, y * width + x);
+        set(TRAIL_LENGTH, player, 0, length + 1);
+        set(CONTESTED, x, y, player + 1);
+    }
+
+    /**
+     * Turns a player's whole trail into owned cells
+     */
+    private void trailToOwned(int player) {
+        int[] trail = trails[player];
+        for (int i = 0; i < trailLengths[player]; i++)
+            claim(player, trail[i] % width, trail[i] / width);
+        set(TRAIL_LENGTH, player, 0, 0);
+    }
+
+    /**
+     * Claims every cell inside the bounds of a player's territory that can't reach
+     * outside the bounds without crossing the player's territory. Runs in
+     * O(bounds area) using the shared scratch memory.
+     */
+    private void fillEnclosure(int player) {
+        int minX = Math.max(0, bounds[4 * player + MIN_X] - 1);
+        int maxX = Math.min(width - 1, bounds[4 * player + MAX_X] + 1);
+        int minY = Math.max(0, bounds[4 * player + MIN_Y] - 1);
+        int maxY = Math.min(height - 1, bounds[4 * player + MAX_Y] + 1);
+        int mark = scratch.nextMark();
+        int[] visited = scratch.visited;
+        int owner = player + 1;
+
+        // Everything reachable from the ring around the bounds is outside
+        for (int x = minX; x <= maxX; x++) {
+            scratch.pushIfOpen(this, x, minY, owner, mark);
+            scratch.pushIfOpen(this, x, maxY, owner, mark);
+        }
+        for (int y = minY; y <= maxY; y++) {
+            scratch.pushIfOpen(this, minX, y, owner, mark);
+            scratch.pushIfOpen(this, maxX, y, owner, mark);
+        }
+        while (scratch.stackSize > 0) {
+            int cell = scratch.stack[--scratch.stackSize];
+            int x = cell % width;
+            int y = cell / width;
+            if (x > minX)
+                scratch.pushIfOpen(this, x - 1, y, owner, mark);
+            if (x < maxX)
+                scratch.pushIfOpen(this, x + 1, y, owner, mark);
+            if (y > minY)
+                scratch.pushIfOpen(this, x, y - 1, owner, mark);
+            if (y < maxY)
+                scratch.pushIfOpen(this, x, y + 1, owner, mark);
+        }
+
+        for (int y = minY + 1; y < maxY; y++) {
+            for (int x = minX + 1; x < maxX; x++) {
+                if (visited[y * width + x] != mark && readOwner(x, y) != owner)
+                    claim(player, x, y);
+            }
+        }
+    }
+
+    /**
+     * Sets a cell as owned by player and clears whoever was contesting it
+     */
+    private void claim(int player, int x, int y) {
+        set(OWNER, x, y, player + 1);
+        set(CONTESTED, x, y, 0);
+        int base = 4 * player;
+        if (x < bounds[base + MIN_X])
+            set(BOUND, player, MIN_X, x);
+        if (x > bounds[base + MAX_X])
+            set(BOUND, player, MAX_X, x);
+        if (y < bounds[base + MIN_Y])
+            set(BOUND, player, MIN_Y, y);
+        if (y > bounds[base + MAX_Y])
+            set(BOUND, player, MAX_Y, y);
+    }
+
+    /**
+     * Grows the bounds of a player's territory without journaling, used when
+     * capturing
+     */
+    private void growBounds(int player, int x, int y) {
+        int base = 4 * player;
+        bounds[base + MIN_X] = Math.min(bounds[base + MIN_X], x);
+        bounds[base + MAX_X] = Math.max(bounds[base + MAX_X], x);
+        bounds[base + MIN_Y] = Math.min(bounds[base + MIN_Y], y);
+        bounds[base + MAX_Y] = Math.max(bounds[base + MAX_Y], y);
+    }
+
+    /**
+     * Journals the old value of a field and sets it to value
+     */
+    private void set(int kind, int a, int b, int value) {
+        int old;
+        switch (kind) {
+            case OWNER:
+                old = readOwner(a, b);
+                break;
+            case CONTESTED:
+                old = readContested(a, b);
+                break;
+            case X:
+                old = xs[a];
+                break;
+            case Y:
+                old = ys[a];
+                break;
+            case DIRECTION:
+                old = directions[a];
+                break;
+            case ALIVE:
+                old = alive[a];
+                break;
+            case TRAIL_LENGTH:
+                old = trailLengths[a];
+                break;
+            case TRAIL_CELL:
+                old = trails[a][b];
+                break;
+            case BOUND:
+                old = bounds[4 * a + b];
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal entry " + kind);
+        }
+        if (old == value)
+            return;
+
+        if (journalSize == journal.length)
+            journal = Arrays.copyOf(journal, 2 * journal.length);
+        journal[journalSize++] = kind;
+        journal[journalSize++] = a;
+        journal[journalSize++] = b;
+        journal[journalSize++] = old;
+
+        switch (kind) {
+            case OWNER:
+                writeOwner(a, b, value);
+                break;
+            case CONTESTED:
+                writeContested(a, b, value);
+                break;
+            case X:
+                xs[a] = value;
+                break;
+            case Y:
+                ys[a] = value;
+                break;
+            case DIRECTION:
+                directions[a] = value;
+                break;
+            case ALIVE:
+                alive[a] = value;
+                break;
+            case TRAIL_LENGTH:
+                trailLengths[a] = value;
+                break;
+            case TRAIL_CELL:
+                trails[a][b] = value;
+                break;
+            default:
+                bounds[4 * a + b] = value;
+        }
+    }
+
+    private int chunkOf(int x, int y) {
+        return (y >> CHUNK_SHIFT) * chunksX + (x >> CHUNK_SHIFT);
+    }
+
+    private static int offsetOf(int x, int y) {
+        return ((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK);
+    }
+
+    /**
+     * Makes sure a chunk belongs to this snapshot's generation, copying it if it
+     * is shared
+     */
+    private int writableChunk(int x, int y) {
+        int chunk = chunkOf(x, y);
+        if (chunkGenerations[chunk] != generation) {
+            ownerChunks[chunk] = ownerChunks[chunk].clone();
+            contestedChunks[chunk] = contestedChunks[chunk].clone();
+            chunkGenerations[chunk] = generation;
+        }
+        return chunk;
+    }
+
+    private int readOwner(int x, int y) {
+        return ownerChunks[chunkOf(x, y)][offsetOf(x, y)];
+    }
+
+    private int readContested(int x, int y) {
+        return contestedChunks[chunkOf(x, y)][offsetOf(x, y)];
+    }
+
+    /**
+     * Writes an owner without journaling and keeps owned counts up to date
+     */
+    private void writeOwner(int x, int y, int value) {
+        int[] chunk = ownerChunks[writableChunk(x, y)];
+        int offset = offsetOf(x, y);
+        if (chunk[offset] != 0)
+            ownedCounts[chunk[offset] - 1]--;
+        if (value != 0)
+            ownedCounts[value - 1]++;
+        chunk[offset] = value;
+    }
+
+    private void writeContested(int x, int y, int value) {
+        contestedChunks[writableChunk(x, y)][offsetOf(x, y)] = value;
+    }
+
+    /**
+     * @param player player to look up
+     * @return index of player in this snapshot or -1 if it isn't part of it
+     */
+    public int indexOf(Player player) {
+        Integer index = indexes.get(player);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param id id of player to look up
+     * @return index of the player with id in this snapshot or -1 if it isn't
+     *         part of it
+     */
+    public int indexOfId(int id) {
+        for (int i = 0; i < ids.length; i++)
+            if (ids[i] == id)
+                return i;
+        return -1;
+    }
+
+    /**
+     * @param player index of player
+     * @return id of the player
+     */
+    public int getId(int player) {
+        return ids[player];
+    }
+
+    /**
+     * @param x x position in the tile system
+     * @param y y position in the tile system
+     * @return index of the player owning the cell or -1 if no one does
+     */
+    public int getOwner(int x, int y) {
+        return readOwner(x, y) - 1;
+    }
+
+    /**
+     * @param x x position in the tile system
+     * @param y y position in the tile system
+     * @return index of the player contesting the cell or -1 if no one does
+     */
+    public int getContestedOwner(int x, int y) {
+        return readContested(x, y) - 1;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getPlayerCount() {
+        return players.length;
+    }
+
+    public int getX(int player) {
+        return xs[player];
+    }
+
+    public int getY(int player) {
+        return ys[player];
+    }
+
+    public Direction getDirection(int player) {
+        return DIRECTIONS[directions[player]];
+    }
+
+    public boolean isAlive(int player) {
+        return alive[player] == 1;
+    }
+
+    public int getOwnedCount(int player) {
+        return ownedCounts[player];
+    }
+
+    public int getTrailLength(int player) {
+        return trailLengths[player];
+    }
+
+    /**
+     * Get the cell where a player's trail started
+     *
+     * @param player index of player
+     * @return cell index y * width + x of the first trail cell or -1 if player has
+     *         no trail
+     */
+    public int getTrailStart(int player) {
+        return trailLengths[player] == 0 ? -1 : trails[player][0];
+    }
+
+    /**
+     * Scratch memory for flood fills. Marks are bumped for every fill so the
+     * visited array never has to be cleared. A board's arena keeps one for all
+     * snapshots of the board.
+     */
+    static final class Scratch {
+        private final int[] visited;
+        private int[] stack;
+        private int stackSize;
+        private int mark;
+
+        Scratch(int cells) {
+            this.visited = new int[cells];
+            this.stack = new int[64];
+        }
+
+        int nextMark() {
+            if (++mark == 0) {
+                Arrays.fill(visited, 0);
+                mark = 1;
+            }
+            stackSize = 0;
+            return mark;
+        }
+
+        void pushIfOpen(BoardSnapshot snapshot, int x, int y, int owner, int mark) {
+            int cell = y * snapshot.width + x;
+            if (visited[cell] == mark || snapshot.readOwner(x, y) == owner)
+                return;
+            visited[cell] = mark;
+            if (stackSize == stack.length)
+                stack = Arrays.copyOf(stack, 2 * stackSize);
+            stack[stackSize++] = cell;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package se.liu.ida.objects;
+
+import java.util.Arrays;
+
+/**
+ * An EnclosureFinder finds the areas a player encloses when its trail turns into
+ * territory. An area that wasn't enclosed before must border the trail, so only
+ * the cells next to the trail are searched from. Each search labels the cells
+ * it reaches breadth first and stops as soon as it reaches the edge of the game
+ * area or leaves the bounds of the player's territory, where nothing is
+ * enclosed. A search reaching a cell labeled by an earlier search has escaped
+ * too, since a search that didn't escape labeled its whole area. Searches that
+ * run out of cells have found an enclosed area.
+ *
+ * Labels are kept in a set of the cells searched rather than an array of the
+ * game area, so a capture costs time and memory in proportion to the area it
+ * encloses and the cells outside walked before escaping, and finders can run
+ * on several threads at once.
+ */
+final class EnclosureFinder {
+    private static final int EMPTY = -1;
+
+    private final int[] owners;
+    private final int width;
+    private final int height;
+    // Steps from a cell to its neighbours above, below, left and right
+    private final int[] neighbours;
+
+    // Open addressing set of cells searched and the search that labeled each
+    private int[] cells = new int[64];
+    private int[] labels = new int[64];
+    private int size;
+    // Cells of the current search in the order they were reached, the ones
+    // not yet visited at the end
+    private int[] queue = new int[64];
+
+    /**
+     * Creates a finder over the owner layer of a game area
+     *
+     * @param owners owner ids of the game area, row by row
+     * @param width  width of the game area
+     * @param height height of the game area
+     */
+    EnclosureFinder(int[] owners, int width, int height) {
+        this.owners = owners;
+        this.width = width;
+        this.height = height;
+        this.neighbours = new int[] { -width, width, -1, 1 };
+        Arrays.fill(cells, EMPTY);
+    }
+
+    /**
+     * Finds the cells not owned by a player that its territory encloses and that
+     * can be reached from seeds
+     *
+     * @param owner id of the player
+     * @param seeds row major indexes of the cells next to the trail just claimed
+     * @param minX  smallest x position of the player's territory
+     * @param minY  smallest y position of the player's territory
+     * @param maxX  largest x position of the player's territory
+     * @param maxY  largest y position of the player's territory
+     * @return enclosed cells as row major indexes
+     */
+    int[] find(int owner, int[] seeds, int minX, int minY, int maxX, int maxY) {
+        int[] enclosed = new int[16];
+        int found = 0;
+        int search = 0;
+        for (int seed : seeds) {
+            if (owners[seed] == owner || labelOf(seed) != EMPTY)
+                continue;
+            int head = 0;
+            int tail = 0;
+            label(seed, search);
+            queue[tail++] = seed;
+            boolean escaped = false;
+            while (head < tail && !escaped) {
+                int cell = queue[head++];
+                int x = cell % width;
+                int y = cell / width;
+                if (x <= 0 || x >= width - 1 || y <= 0 || y >= height - 1 || x < minX || x > maxX || y < minY
+                        || y > maxY) {
+                    escaped = true;
+                    break;
+                }
+                // Not on an edge, so every neighbour is inside the game area
+                for (int step : neighbours) {
+                    int next = cell + step;
+                    if (owners[next] == owner)
+                        continue;
+                    int label = labelOf(next);
+                    if (label == EMPTY) {
+                        label(next, search);
+                        if (tail == queue.length)
+                            queue = Arrays.copyOf(queue, 2 * tail);
+                        queue[tail++] = next;
+                    } else if (label != search) {
+                        escaped = true;
+                        break;
+                    }
+                }
+            }
+            if (!escaped) {
+                if (found + tail > enclosed.length)
+                    enclosed = Arrays.copyOf(enclosed, Math.max(2 * enclosed.length, found + tail));
+                System.arraycopy(queue, 0, enclosed, found, tail);
+                found += tail;
+            }
+            search++;
+        }
+        return Arrays.copyOf(enclosed, found);
+    }
+
+    private int labelOf(int cell) {
+        int mask = cells.length - 1;
+        for (int slot = hash(cell) & mask;; slot = (slot + 1) & mask) {
+            if (cells[slot] == cell)
+                return labels[slot];
+            if (cells[slot] == EMPTY)
+                return EMPTY;
+        }
+    }
+
+    private void label(int cell, int search) {
+        // Kept at most half full
+        if (2 * (size + 1) > cells.length)
+            grow();
+        int mask = cells.length - 1;
+        int slot = hash(cell) & mask;
+        while (cells[slot] != EMPTY)
+            slot = (slot + 1) & mask;
+        cells[slot] = cell;
+        labels[slot] = search;
+        size++;
+    }
+
+    private void grow() {
+        int[] oldCells = cells;
+        int[] oldLabels = labels;
+        cells = new int[2 * oldCells.length];
+        labels = new int[2 * oldCells.length];
+        Arrays.fill(cells, EMPTY);
+        size = 0;
+        for (int i = 0; i < oldCells.length; i++) {
+            if (oldCells[i] != EMPTY)
+                label(oldCells[i], oldLabels[i]);
+        }
+    }
+
+    private static int hash(int cell) {
+        int h = cell * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,251 @@
+package se.liu.ida.objects;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import javax.imageio.ImageIO;
+
+import se.liu.ida.entities.BotPlayer;
+import se.liu.ida.entities.Player;
+import se.liu.ida.graphics.Painter;
+
+/**
+ * A FrameExporter plays a board without a display and writes a frame of every
+ * tick to disk, either as numbered PNG images or as one stream of raw 24 bit RGB
+ * pixels that a video encoder can read, for example with
+ * <code>ffmpeg -f rawvideo -pix_fmt rgb24 -s WIDTHxHEIGHT -i frames.rgb</code>.
+ *
+ * Frames are captured between ticks on the calling thread and drawn by the
+ * same Painter a window uses, on worker threads, which also encode them. They
+ * are written in tick order by the calling thread. Only a fixed number of
+ * frames is in flight at a time, so memory stays bounded however long the game.
+ */
+public class FrameExporter {
+    /**
+     * How frames are written
+     */
+    public enum Format {
+        // One PNG image per frame in a directory
+        PNG,
+        // All frames one after the other in one file, three bytes per pixel
+        RAW_RGB
+    }
+
+    private static final int DEFAULT_SCALE = 20;
+
+    private final int width;
+    private final int height;
+    private final int scale;
+    private final int threads;
+    // Frames captured and not yet written, at most
+    private final int maxInFlight;
+
+    /**
+     * Creates an exporter drawing frames of a size on a thread per processor
+     *
+     * @param width  width of frames in pixels
+     * @param height height of frames in pixels
+     * @param scale  size of a tile in pixels
+     */
+    public FrameExporter(int width, int height, int scale) {
+        this(width, height, scale, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an exporter drawing frames of a size
+     *
+     * @param width   width of frames in pixels
+     * @param height  height of frames in pixels
+     * @param scale   size of a tile in pixels
+     * @param threads number of threads drawing and encoding frames
+     */
+    public FrameExporter(int width, int height, int scale, int threads) {
+        if (width <= 0 || height <= 0 || scale <= 0 || threads <= 0)
+            throw new IllegalArgumentException("Size, scale and threads must be positive");
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        this.threads = threads;
+        this.maxInFlight = 2 * threads;
+    }
+
+    /**
+     * Plays a board for a number of ticks and writes a frame after each. The view
+     * follows a player until it dies and then the player owning the most.
+     *
+     * @param board  board to play, driven by this method and not by a timer
+     * @param follow player to follow first, or null for the first human player
+     *               alive or else the one owning the most
+     * @param ticks  number of ticks to play and frames to write
+     * @param format how to write frames
+     * @param target directory for PNG images or file for raw RGB
+     * @return number of frames written, less than ticks if every player died
+     * @throws IOException              if writing fails
+     * @throws InterruptedException     if interrupted while waiting for frames
+     * @throws IllegalArgumentException if the board is still ticked by its timer
+     */
+    public int export(Board board, Player follow, int ticks, Format format, Path target)
+            throws IOException, InterruptedException {
+        if (board.isRunning())
+            throw new IllegalArgumentException("Can't export a board ticked by its timer, stop it first");
+        if (format == Format.PNG)
+            Files.createDirectories(target);
+
+        // Painters reuse their image, so each thread draws with its own
+        ThreadLocal<Painter> painters = ThreadLocal.withInitial(() -> new Painter(scale, 0));
+        ExecutorService renderers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "frame-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>();
+        int written = 0;
+        try (OutputStream stream = format == Format.RAW_RGB
+                ? new BufferedOutputStream(Files.newOutputStream(target), 1 << 20)
+                : OutputStream.nullOutputStream()) {
+            Player followed = follow != null ? follow : firstHuman(board);
+            for (int tick = 0; tick < ticks; tick++) {
+                board.tick();
+                if (followed == null || !followed.isAlive())
+                    followed = leader(board);
+                if (followed == null)
+                    break;
+                BoardFrame frame = new BoardFrame(board, List.of(followed), width / 2 / scale + 2,
+                        height / 2 / scale + 2, 0);
+                inFlight.add(renderers.submit(() -> encode(painters.get().render(frame, width, height), format)));
+                if (inFlight.size() >= maxInFlight)
+                    write(inFlight.remove(), format, target, stream, written++);
+            }
+            while (!inFlight.isEmpty())
+                write(inFlight.remove(), format, target, stream, written++);
+        } finally {
+            for (Future<byte[]> frame : inFlight)
+                frame.cancel(true);
+            renderers.shutdownNow();
+        }
+        return written;
+    }
+
+    /**
+     * Waits for a frame to be encoded and writes it
+     */
+    private static void write(Future<byte[]> frame, Format format, Path target, OutputStream stream, int number)
+            throws IOException, InterruptedException {
+        byte[] bytes;
+        try {
+            bytes = frame.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new IOException("Drawing frame " + number + " failed", e.getCause());
+        }
+        if (format == Format.PNG)
+            Files.write(target.resolve(String.format("frame-%06d.png", number)), bytes);
+        else
+            stream.write(bytes);
+    }
+
+    /**
+     * Encodes a drawn image, called on the thread that drew it
+     */
+    private static byte[] encode(BufferedImage image, Format format) {
+        if (format == Format.PNG) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                ImageIO.write(image, "png", out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+        int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        byte[] bytes = new byte[pixels.length * 3];
+        for (int i = 0; i < pixels.length; i++) {
+            bytes[3 * i] = (byte) (pixels[i] >> 16);
+            bytes[3 * i + 1] = (byte) (pixels[i] >> 8);
+            bytes[3 * i + 2] = (byte) pixels[i];
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the first human player alive, or null if none is alive
+     */
+    private static Player firstHuman(Board board) {
+        for (Player player : board.getHumanPlayers()) {
+            if (player.isAlive())
+                return player;
+        }
+        return null;
+    }
+
+    /**
+     * @return the player alive owning the most, or null if none is alive
+     */
+    private static Player leader(Board board) {
+        Player leader = null;
+        for (Player player : board.getPlayers()) {
+            if (player.isAlive() && (leader == null || player.getPercentOwned() > leader.getPercentOwned()))
+                leader = player;
+        }
+        return leader;
+    }
+
+    /**
+     * Exports frames of a saved game or of a new game between bots. Arguments
+     * are the format, png or raw, the target, the number of frames, then either a
+     * saved game or the size of the game area and number of bots, which default
+     * to 300 frames of a 500 by 500 game with 100 bots. A saved game follows its
+     * human player first. Frames are 1280 by 720.
+     *
+     * @param args format, target and optional frames, saved game or size and bots
+     * @throws Exception if exporting fails
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 2) {
+            System.err.println("Usage: FrameExporter png|raw TARGET [FRAMES] [SAVED_GAME | SIZE BOTS]");
+            System.exit(2);
+        }
+        Format format = args[0].equalsIgnoreCase("png") ? Format.PNG : Format.RAW_RGB;
+        Path target = Paths.get(args[1]);
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+        Board board;
+        if (args.length == 4) {
+            board = SaveGame.load(Paths.get(args[3]));
+            // Saves from the game resume with their own timers, the exporter ticks
+            // the board instead
+            board.stop();
+        } else {
+            int size = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+            int botCount = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+            List<Function<Board, ? extends BotPlayer>> bots = new ArrayList<>();
+            for (int i = 0; i < botCount; i++)
+                bots.add(BotPlayer::new);
+            board = new Board(new BoardArena(size, size), 1, bots);
+        }
+
+        FrameExporter exporter = new FrameExporter(1280, 720, DEFAULT_SCALE);
+        long start = System.nanoTime();
+        int written = exporter.export(board, null, frames, format, target);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d frames in %.1f s, %.1f frames/s, to %s%n", written, seconds, written / seconds, target);
+        if (format == Format.RAW_RGB)
+            System.out.printf("ffmpeg -f rawvideo -pix_fmt rgb24 -s 1280x720 -r 12 -i %s out.mp4%n", target);
+    }
+}
@@ -0,0 +1,232 @@
+package se.liu.ida.objects;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import se.liu.ida.entities.Player;
+
+/**
+ * ObservationExtractor fills caller supplied buffers with a square window of
+ * the board centered on a player, for training bot policies. An observation
+ * has three channels of player ids, each <code>side * side</code> ints laid out
+ * row by row: owner, contested owner and player heads. Cells outside of the
+ * game area are <code>OUTSIDE</code> in every channel and cells without a
+ * player are <code>TileLayers.NO_PLAYER</code>.
+ *
+ * Rows are read straight from the board's <code>TileLayers</code>, so no tile
+ * is asked for its owner. They are copied in bulk into arrays, and into buffers
+ * through an int view of the buffer that is kept while the same buffer is
+ * written to, so nothing is allocated per observation. An extractor
+ * keeps its own head layer and must be used from one thread at a time.
+ */
+public class ObservationExtractor {
+    public static final int OWNER_CHANNEL = 0;
+    public static final int CONTESTED_CHANNEL = 1;
+    public static final int HEAD_CHANNEL = 2;
+    public static final int CHANNELS = 3;
+
+    // Value of cells outside of the game area
+    public static final int OUTSIDE = -1;
+
+    private final Board board;
+    private final int radius;
+    private final int side;
+    // Layers written for each channel, in channel order
+    private final int[][] channels;
+
+    // Player heads as ids row by row, with the cells written last time so they
+    // can be cleared without clearing the whole layer
+    private final int[] heads;
+    private int[] headCells;
+    private int headCount;
+
+    // A row of OUTSIDE values to bulk copy into buffers
+    private final int[] outsideRow;
+
+    // Int view of the whole of the buffer last written to, made for its byte
+    // order and for positions a multiple of four bytes after viewStart
+    private ByteBuffer viewed;
+    private ByteOrder viewOrder;
+    private int viewStart;
+    private IntBuffer view;
+
+    /**
+     * Creates an extractor of windows reaching radius tiles out from the player
+     * in every direction
+     *
+     * @param board  board to observe
+     * @param radius how many tiles the window reaches out from the player
+     */
+    public ObservationExtractor(Board board, int radius) {
+        this.board = board;
+        this.radius = radius;
+        this.side = 2 * radius + 1;
+        this.heads = new int[board.getMapWidth() * board.getMapHeight()];
+        this.headCells = new int[16];
+        TileLayers layers = board.getLayers();
+        this.channels = new int[][] { layers.getOwners(), layers.getContested(), heads };
+        this.outsideRow = new int[side];
+        Arrays.fill(outsideRow, OUTSIDE);
+    }
+
+    /**
+     * Get the side of the square window
+     *
+     * @return number of tiles along each side of the window
+     */
+    public int getSide() {
+        return side;
+    }
+
+    /**
+     * Get the number of ints in one observation
+     *
+     * @return number of ints written per player
+     */
+    public int getObservationSize() {
+        return CHANNELS * side * side;
+    }
+
+    /**
+     * Fills out with the observation around player starting at offset
+     *
+     * @param player player to center window on
+     * @param out    array to write to, must fit <code>getObservationSize()</code>
+     *               ints from offset
+     * @param offset index of out to start writing at
+     */
+    public void extract(Player player, int[] out, int offset) {
+        updateHeads();
+        write(player, out, offset, null);
+    }
+
+    /**
+     * Writes the observation around player as ints at the position of out and
+     * advances the position. Ints use the byte order of out.
+     *
+     * @param player player to center window on
+     * @param out    buffer to write to, heap or direct
+     */
+    public void extract(Player player, ByteBuffer out) {
+        updateHeads();
+        writeTo(player, out);
+    }
+
+    /**
+     * Fills out with the observations of all players one after another, starting
+     * at offset. The head layer is only built once for the whole batch.
+     *
+     * @param players players to center windows on
+     * @param out     array to write to, must fit
+     *                <code>players.size() * getObservationSize()</code> ints from
+     *                offset
+     * @param offset  index of out to start writing at
+     */
+    public void extractAll(List<? extends Player> players, int[] out, int offset) {
+        updateHeads();
+        for (int i = 0; i < players.size(); i++)
+            write(players.get(i), out, offset + i * getObservationSize(), null);
+    }
+
+    /**
+     * Writes the observations of all players one after another at the position
+     * of out and advances the position
+     *
+     * @param players players to center windows on
+     * @param out     buffer to write to, heap or direct
+     */
+    public void extractAll(List<? extends Player> players, ByteBuffer out) {
+        updateHeads();
+        for (int i = 0; i < players.size(); i++)
+            writeTo(players.get(i), out);
+    }
+
+    private void writeTo(Player player, ByteBuffer out) {
+        int bytes = 4 * getObservationSize();
+        if (out.remaining() < bytes)
+            throw new BufferOverflowException();
+        int start = out.position() & 3;
+        if (out != viewed || out.order() != viewOrder || start != viewStart) {
+            // A view starts at the position its buffer had, so it is made from a
+            // duplicate cleared to cover the whole buffer
+            ByteBuffer whole = out.duplicate().order(out.order());
+            whole.clear().position(start);
+            view = whole.asIntBuffer();
+            viewed = out;
+            viewOrder = out.order();
+            viewStart = start;
+        }
+        write(player, null, (out.position() - start) / 4, view);
+        out.position(out.position() + bytes);
+    }
+
+    /**
+     * Writes all channels either to array out or to buffer ints, from offset
+     */
+    private void write(Player player, int[] out, int offset, IntBuffer ints) {
+        int width = board.getMapWidth();
+        int height = board.getMapHeight();
+        int left = player.getX() - radius;
+        int top = player.getY() - radius;
+
+        // The columns of the window that are inside of the game area
+        int from = Math.max(0, -left);
+        int to = Math.min(side, width - left);
+
+        int index = offset;
+        for (int[] channel : channels) {
+            for (int row = 0; row < side; row++) {
+                int y = top + row;
+                if (y < 0 || y >= height || from >= to) {
+                    copy(outsideRow, 0, out, index, ints, side);
+                } else {
+                    copy(outsideRow, 0, out, index, ints, from);
+                    copy(channel, y * width + left + from, out, index + from, ints, to - from);
+                    copy(outsideRow, 0, out, index + to, ints, side - to);
+                }
+                index += side;
+            }
+        }
+    }
+
+    /**
+     * Copies length ints from source either to array out or to buffer ints, at
+     * index
+     */
+    private static void copy(int[] source, int sourceIndex, int[] out, int index, IntBuffer ints, int length) {
+        if (length <= 0)
+            return;
+        if (ints == null)
+            System.arraycopy(source, sourceIndex, out, index, length);
+        else
+            ints.put(index, source, sourceIndex, length);
+    }
+
+    /**
+     * Clears the heads written last time and writes the current ones
+     */
+    private void updateHeads() {
+        for (int i = 0; i < headCount; i++)
+            heads[headCells[i]] = TileLayers.NO_PLAYER;
+        headCount = 0;
+
+        int width = board.getMapWidth();
+        int height = board.getMapHeight();
+        List<Player> players = board.getPlayers();
+        for (int i = 0; i < players.size(); i++) {
+            Player player = players.get(i);
+            int x = player.getX();
+            int y = player.getY();
+            if (!player.isAlive() || x < 0 || x >= width || y < 0 || y >= height)
+                continue;
+            if (headCount == headCells.length)
+                headCells = Arrays.copyOf(headCells, 2 * headCount);
+            headCells[headCount++] = y * width + x;
+            heads[y * width + x] = player.getId();
+        }
+    }
+}
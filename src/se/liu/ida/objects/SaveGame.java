@@ -0,0 +1,427 @@
+package se.liu.ida.objects;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import se.liu.ida.entities.BotPlayer;
+import se.liu.ida.entities.HumanPlayer;
+import se.liu.ida.entities.MonteCarloBotPlayer;
+import se.liu.ida.entities.Player;
+import se.liu.ida.logic.Direction;
+import se.liu.ida.logic.GameRandom;
+
+/**
+ * A saved game, from which a board continues as if it had never stopped. A save
+ * is captured between two ticks, which only takes a pass over the tile layers,
+ * and can then be written from any thread so the game isn't held up by the
+ * disk. Loading maps the file into memory and restores the board from it.
+ *
+ * The file is a header of magic, version and CRC32 of the rest, followed by the
+ * size of the game area, tick number and random state of the board, every
+ * player's kind, name, color, position, direction, random state and trail, and
+ * last the owner and contested layers row by row as runs of equal players.
+ * Players are referred to by their number in the file, starting at 1, rather
+ * than by id, and numbers are stored as variable length integers.
+ */
+public class SaveGame {
+    private static final int MAGIC = 0x50534156;
+    private static final int VERSION = 1;
+    private static final int HEADER = 12;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    // Kinds of players
+    private static final byte HUMAN = 0;
+    private static final byte BOT = 1;
+    private static final byte MONTE_CARLO_BOT = 2;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final ByteBuffer data;
+
+    private SaveGame(ByteBuffer data) {
+        this.data = data;
+    }
+
+    /**
+     * Captures the state of a board. Must be called between ticks: from the
+     * thread ticking a headless board, from a command of the board's room, or
+     * while synchronized on a board ticked by its own timer.
+     *
+     * @param board board to save
+     * @return the saved game
+     */
+    public static SaveGame capture(Board board) {
+        List<Player> players = new ArrayList<>(board.getPlayers());
+        List<HumanPlayer> local = board.getHumanPlayers();
+        for (HumanPlayer human : local) {
+            if (!human.isAlive())
+                players.add(human);
+        }
+        // Turns ids in the layers into numbers without hashing every cell
+        int maxId = 0;
+        for (Player player : players)
+            maxId = Math.max(maxId, player.getId());
+        int[] numberOf = new int[maxId + 1];
+        for (int i = 0; i < players.size(); i++)
+            numberOf[players.get(i).getId()] = i + 1;
+
+        Writer out = new Writer(HEADER + 64 + players.size() * 64 + board.getMapHeight() * 8);
+        out.putVarInt(board.getMapWidth());
+        out.putVarInt(board.getMapHeight());
+        out.putVarLong(board.getTickNumber());
+        out.putLong(board.getRandomState());
+        out.putByte(board.isMultiplayer() ? 1 : 0);
+        out.putVarInt(board.getBotNumber());
+
+        out.putVarInt(players.size());
+        for (Player player : players) {
+            byte kind = kindOf(player);
+            out.putByte(kind);
+            out.putByte(player.isAlive() ? 1 : 0);
+            out.putString(player.getName() == null ? "" : player.getName());
+            out.putInt(player.getColor().getRGB());
+            out.putVarInt(zigZag(player.getX()));
+            out.putVarInt(zigZag(player.getY()));
+            out.putByte(player.getDirection().ordinal());
+            out.putLong(player.getRandomState());
+            if (kind == HUMAN)
+                out.putDouble(((HumanPlayer) player).getBestPercentOwned());
+            List<Tile> trail = player.getTilesContested();
+            out.putVarInt(trail.size());
+            for (Tile tile : trail)
+                out.putVarInt(tile.getY() * board.getMapWidth() + tile.getX());
+        }
+        out.putVarInt(local.size());
+        for (HumanPlayer human : local)
+            out.putVarInt(players.indexOf(human));
+
+        TileLayers layers = board.getLayers();
+        putLayer(out, layers.getOwners(), layers.getWidth(), layers.getHeight(), numberOf);
+        putLayer(out, layers.getContested(), layers.getWidth(), layers.getHeight(), numberOf);
+
+        ByteBuffer data = out.finish();
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate().position(HEADER));
+        data.putInt(0, MAGIC);
+        data.putInt(4, VERSION);
+        data.putInt(8, (int) crc.getValue());
+        return new SaveGame(data);
+    }
+
+    private static byte kindOf(Player player) {
+        if (player.getClass() == HumanPlayer.class)
+            return HUMAN;
+        if (player.getClass() == BotPlayer.class)
+            return BOT;
+        if (player.getClass() == MonteCarloBotPlayer.class)
+            return MONTE_CARLO_BOT;
+        throw new IllegalArgumentException("Can't save a " + player.getClass().getSimpleName());
+    }
+
+    /**
+     * Writes a layer row by row as runs of length and player number
+     */
+    private static void putLayer(Writer out, int[] ids, int width, int height, int[] numberOf) {
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int x = 0;
+            while (x < width) {
+                int id = ids[row + x];
+                // Compares the row with itself shifted by one to find where the run ends,
+                // which the JIT vectorizes for the long runs most of a board is made of
+                int end = Arrays.mismatch(ids, row + x, row + width - 1, ids, row + x + 1, row + width);
+                int length = end < 0 ? width - x : end + 1;
+                x += length;
+                out.putVarInt(length);
+                // Players that aren't saved can't own tiles, but are stored as no player anyway
+                out.putVarInt(id < numberOf.length ? numberOf[id] : 0);
+            }
+        }
+    }
+
+    /**
+     * @return size of the saved game in bytes
+     */
+    public int size() {
+        return data.limit();
+    }
+
+    /**
+     * Two saves are equal if they save the same game, even if from different
+     * boards
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof SaveGame && data.equals(((SaveGame) obj).data);
+    }
+
+    @Override
+    public int hashCode() {
+        return data.hashCode();
+    }
+
+    /**
+     * Writes the saved game to a file, first to a temporary file that is then
+     * renamed so an earlier save is never left half overwritten
+     *
+     * @param file file to write
+     * @throws IOException if writing fails
+     */
+    public void write(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = data.duplicate();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads a game saved by <code>write</code>. A board with human players starts
+     * paused with its timer running, a board with only bots is driven by calling
+     * <code>tick()</code>.
+     *
+     * @param file file to read
+     * @return the restored board
+     * @throws IOException if reading fails or the file isn't a valid save
+     */
+    public static Board load(Path file) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.limit() < HEADER || in.getInt(0) != MAGIC)
+            throw new IOException("Not a saved game: " + file);
+        if (in.getInt(4) != VERSION)
+            throw new IOException("Unsupported saved game version " + in.getInt(4) + ": " + file);
+        CRC32 crc = new CRC32();
+        crc.update(in.duplicate().position(HEADER));
+        if (in.getInt(8) != (int) crc.getValue())
+            throw new IOException("Saved game is damaged: " + file);
+        in.position(HEADER);
+        try {
+            return restore(in);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException
+                | ClassCastException e) {
+            throw new IOException("Saved game is invalid: " + file, e);
+        }
+    }
+
+    private static Board restore(ByteBuffer in) throws IOException {
+        int width = getVarInt(in);
+        int height = getVarInt(in);
+        long tickNumber = getVarLong(in);
+        GameRandom random = GameRandom.ofState(in.getLong());
+        boolean multiplayer = in.get() != 0;
+        int botNumber = getVarInt(in);
+        Board board = new Board(width, height, multiplayer, botNumber, random, tickNumber);
+
+        Player[] players = new Player[getVarInt(in)];
+        boolean[] alive = new boolean[players.length];
+        int[][] trails = new int[players.length][];
+        for (int i = 0; i < players.length; i++) {
+            byte kind = in.get();
+            alive[i] = in.get() != 0;
+            String name = getString(in);
+            Color color = new Color(in.getInt(), true);
+            int x = zagZig(getVarInt(in));
+            int y = zagZig(getVarInt(in));
+            Direction direction = DIRECTIONS[in.get()];
+            long randomState = in.getLong();
+            if (kind == HUMAN)
+                players[i] = new HumanPlayer(board, color, name, randomState, in.getDouble());
+            else if (kind == BOT)
+                players[i] = new BotPlayer(board, color, name, randomState);
+            else if (kind == MONTE_CARLO_BOT)
+                players[i] = new MonteCarloBotPlayer(board, color, name, randomState);
+            else
+                throw new IOException("Unknown kind of player " + kind);
+            players[i].setX(x);
+            players[i].setY(y);
+            players[i].changeDirection(direction);
+            players[i].updateD();
+            trails[i] = new int[getVarInt(in)];
+            for (int j = 0; j < trails[i].length; j++)
+                trails[i][j] = getVarInt(in);
+        }
+        for (int i = 0; i < players.length; i++) {
+            if (!alive[i])
+                players[i].die();
+            board.restorePlayer(players[i]);
+        }
+        int localCount = getVarInt(in);
+        for (int i = 0; i < localCount; i++)
+            board.restoreLocalPlayer((HumanPlayer) players[getVarInt(in)]);
+
+        // Owned tiles are given in row order, trails in the order they were walked
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            while (x < width) {
+                int length = getVarInt(in);
+                int number = getVarInt(in);
+                if (length <= 0 || x + length > width)
+                    throw new IOException("Run outside row " + y);
+                if (number != 0) {
+                    Player owner = players[number - 1];
+                    for (int end = x + length; x < end; x++)
+                        owner.addTileToOwned(board.getTileAt(x, y));
+                } else {
+                    x += length;
+                }
+            }
+        }
+        for (int i = 0; i < players.length; i++) {
+            for (int cell : trails[i]) {
+                Tile tile = board.getTileAt(cell % width, cell / width);
+                players[i].contestTile(tile);
+            }
+        }
+        // The contested layer is implied by the trails, and checks them
+        int[] contested = board.getLayers().getContested();
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            while (x < width) {
+                int length = getVarInt(in);
+                int number = getVarInt(in);
+                int id = number == 0 ? TileLayers.NO_PLAYER : players[number - 1].getId();
+                if (length <= 0 || x + length > width)
+                    throw new IOException("Run outside row " + y);
+                for (int end = x + length; x < end; x++) {
+                    if (contested[y * width + x] != id)
+                        throw new IOException("Trails don't match contested tiles at " + x + ", " + y);
+                }
+            }
+        }
+        if (in.hasRemaining())
+            throw new IOException("Data after end of saved game");
+
+        for (Player player : players) {
+            if (player.isAlive())
+                player.setCurrentTile(board.getTileAt(player.getX(), player.getY()));
+        }
+        board.resume();
+        return board;
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int zagZig(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int getVarInt(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static long getVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static String getString(ByteBuffer in) throws IOException {
+        byte[] bytes = new byte[getVarInt(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A buffer that grows as the save is written, leaving room for the header
+     */
+    private static final class Writer {
+        private ByteBuffer buffer;
+
+        Writer(int capacity) {
+            buffer = ByteBuffer.allocate(capacity);
+            buffer.position(HEADER);
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+
+        void putByte(int value) {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        void putVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarInt(bytes.length);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        ByteBuffer finish() {
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package se.liu.ida.objects;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import se.liu.ida.entities.BotPlayer;
+
+/**
+ * Benchmarks SaveGame on a large headless board. Plays a while, saves the game,
+ * loads it and saves the loaded board again, checking that both saves are the
+ * same, then plays on both boards side by side checking that they stay the
+ * same.
+ */
+public class SaveGameBenchmark {
+    /**
+     * Arguments are size of game area, number of bots, ticks to play before
+     * saving and ticks to play after loading, which default to 4000, 400, 200
+     * and 200.
+     *
+     * @param args optional size, bots, ticks before and ticks after
+     * @throws IOException if saving or loading fails
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int botCount = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        int before = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int after = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        List<Function<Board, ? extends BotPlayer>> bots = new ArrayList<>();
+        for (int i = 0; i < botCount; i++)
+            bots.add(BotPlayer::new);
+        long start = System.nanoTime();
+        Board board = new Board(size, size, 1, bots);
+        System.out.printf("create: %dx%d with %d bots in %.0f ms%n", size, size, botCount,
+                (System.nanoTime() - start) / 1e6);
+        for (int i = 0; i < before; i++)
+            board.tick();
+
+        Path file = Files.createTempFile("savegame", ".sav");
+        try {
+            start = System.nanoTime();
+            SaveGame save = SaveGame.capture(board);
+            long captured = System.nanoTime();
+            System.out.printf("first capture: %.1f ms%n", (captured - start) / 1e6);
+            // Later saves are what a long match sees, once the capture is compiled
+            for (int i = 0; i < 10; i++)
+                SaveGame.capture(board);
+            start = System.nanoTime();
+            save = SaveGame.capture(board);
+            captured = System.nanoTime();
+            save.write(file);
+            long written = System.nanoTime();
+            System.out.printf("save: capture %.1f ms, write %.1f ms, %d bytes%n", (captured - start) / 1e6,
+                    (written - captured) / 1e6, save.size());
+
+            start = System.nanoTime();
+            Board loaded = SaveGame.load(file);
+            System.out.printf("load: %.0f ms%n", (System.nanoTime() - start) / 1e6);
+            SaveGame again = SaveGame.capture(loaded);
+            if (!again.equals(save))
+                throw new IllegalStateException("Loaded board saves differently");
+
+            for (int i = 0; i < after; i++) {
+                board.tick();
+                loaded.tick();
+                // Player ids differ between the boards, numbers in saves don't
+                if (!SaveGame.capture(board).equals(SaveGame.capture(loaded)))
+                    throw new IllegalStateException("Loaded board differs after " + (i + 1) + " ticks");
+            }
+            System.out.printf("played %d ticks on both boards, still the same%n", after);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package se.liu.ida.objects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import se.liu.ida.entities.BotPlayer;
+
+/**
+ * Checks that ticks stay within budget on every size of world the menu offers,
+ * up to the largest large world. Plays a headless board of each size with the
+ * number of bots advertised for it and fails if the 99th percentile of tick
+ * times is above the budget. The largest worlds need a heap of a few GB, such as
+ * -Xmx4g.
+ */
+public class ScalingCheck {
+    // A tick must fit in one frame of the board's timer so drawing never waits
+    private static final double BUDGET_MILLIS = 1000.0 / 60;
+    private static final int[][] SIZES = { { 100, 10 }, { 500, 25 }, { 1000, 100 }, { 2500, 250 },
+            { 5000, 500 }, { 10_000, 1000 }, { 10_000, 2000 } };
+
+    /**
+     * Arguments are ticks to warm up and ticks to measure on each size, which
+     * default to 200 and 1000.
+     *
+     * @param args optional warm up and measured ticks
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int warmUp = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        boolean failed = false;
+        for (int[] size : SIZES) {
+            List<Function<Board, ? extends BotPlayer>> bots = new ArrayList<>();
+            for (int i = 0; i < size[1]; i++)
+                bots.add(BotPlayer::new);
+            long start = System.nanoTime();
+            BoardArena arena = new BoardArena(size[0], size[0]);
+            Board board = new Board(arena, 1, bots);
+            double createMillis = (System.nanoTime() - start) / 1e6;
+
+            for (int i = 0; i < warmUp; i++)
+                board.tick();
+            long[] times = new long[ticks];
+            for (int i = 0; i < ticks; i++) {
+                start = System.nanoTime();
+                board.tick();
+                times[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(times);
+            double p50 = times[ticks / 2] / 1e6;
+            double p99 = times[ticks * 99 / 100] / 1e6;
+            boolean ok = p99 <= BUDGET_MILLIS;
+            failed |= !ok;
+            Runtime runtime = Runtime.getRuntime();
+            System.out.printf("%6dx%-6d %5d bots: create %7.1f ms, tick p50 %6.2f ms, p99 %6.2f ms, max %6.2f ms, "
+                    + "%5d chunks, %5d MB heap %s%n", size[0], size[0], size[1], createMillis, p50, p99,
+                    times[ticks - 1] / 1e6, arena.gameArea.getChunkCount(),
+                    (runtime.totalMemory() - runtime.freeMemory()) >> 20, ok ? "ok" : "OVER BUDGET");
+            board.release();
+        }
+        if (failed) {
+            System.out.printf("Ticks over budget of %.1f ms%n", BUDGET_MILLIS);
+            System.exit(1);
+        }
+    }
+}
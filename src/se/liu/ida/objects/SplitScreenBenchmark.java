@@ -0,0 +1,103 @@
+package se.liu.ida.objects;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import se.liu.ida.entities.BotPlayer;
+import se.liu.ida.entities.HumanPlayer;
+import se.liu.ida.graphics.Painter;
+
+/**
+ * Benchmarks drawing a two player split screen, one view after the other into
+ * one image against both views at once into images of their own. Checks that
+ * both ways draw the same pixels.
+ */
+public class SplitScreenBenchmark {
+    private static final int SCALE = 20;
+
+    /**
+     * Arguments are width and height of the window, size of game area, number of
+     * bots and frames to draw, which default to 1920, 1080, 500, 100 and 300.
+     *
+     * @param args optional window width and height, size, bots and frames
+     * @throws Exception if a view fails to render
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int windowWidth = args.length > 0 ? Integer.parseInt(args[0]) : 1920;
+        int windowHeight = args.length > 1 ? Integer.parseInt(args[1]) : 1080;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int botCount = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        int frames = args.length > 4 ? Integer.parseInt(args[4]) : 300;
+
+        List<Function<Board, ? extends BotPlayer>> bots = new ArrayList<>();
+        for (int i = 0; i < botCount; i++)
+            bots.add(BotPlayer::new);
+        Board board = new Board(new BoardArena(size, size), 1, bots);
+        List<HumanPlayer> followed = List.of(board.joinPlayer("p1"), board.joinPlayer("p2"));
+        for (int i = 0; i < 100; i++)
+            board.tick();
+
+        int viewWidth = windowWidth / 2;
+        Painter[] painters = { new Painter(SCALE, 0), new Painter(SCALE, 1) };
+        BufferedImage window = new BufferedImage(windowWidth, windowHeight, BufferedImage.TYPE_INT_RGB);
+        BufferedImage composite = new BufferedImage(windowWidth, windowHeight, BufferedImage.TYPE_INT_RGB);
+        ExecutorService renderers = Executors.newFixedThreadPool(2);
+        try {
+            long sequential = 0;
+            long parallel = 0;
+            for (int frame = 0; frame < frames; frame++) {
+                board.tick();
+                BoardFrame boardFrame = new BoardFrame(board, followed, viewWidth / 2 / SCALE + 2,
+                        windowHeight / 2 / SCALE + 2, 5);
+
+                long start = System.nanoTime();
+                Graphics2D g = window.createGraphics();
+                for (int i = 0; i < painters.length; i++) {
+                    g.setClip(i * viewWidth, 0, viewWidth, windowHeight);
+                    g.translate(i * viewWidth, 0);
+                    painters[i].draw(g, boardFrame, viewWidth, windowHeight);
+                    g.translate(-i * viewWidth, 0);
+                }
+                g.dispose();
+                sequential += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                List<Future<BufferedImage>> views = new ArrayList<>();
+                for (Painter painter : painters)
+                    views.add(renderers.submit(() -> painter.render(boardFrame, viewWidth, windowHeight)));
+                g = composite.createGraphics();
+                for (int i = 0; i < views.size(); i++)
+                    g.drawImage(views.get(i).get(), i * viewWidth, 0, null);
+                g.dispose();
+                parallel += System.nanoTime() - start;
+
+                if (frame == frames - 1) {
+                    for (int y = 0; y < windowHeight; y++) {
+                        for (int x = 0; x < 2 * viewWidth; x++) {
+                            if (window.getRGB(x, y) != composite.getRGB(x, y))
+                                throw new IllegalStateException("Views differ at " + x + ", " + y);
+                        }
+                    }
+                }
+                // Clears the window like the board's background does
+                g = window.createGraphics();
+                g.setColor(Color.BLACK);
+                g.fillRect(0, 0, windowWidth, windowHeight);
+                g.dispose();
+            }
+            System.out.printf("%d processors, %dx%d window: one after the other %.2f ms, side by side %.2f ms per frame%n",
+                    Runtime.getRuntime().availableProcessors(), windowWidth, windowHeight, sequential / 1e6 / frames,
+                    parallel / 1e6 / frames);
+        } finally {
+            renderers.shutdown();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package se.liu.ida.objects;
+
+/**
+ * A TickProfiler keeps the times of the last ticks, split into phases, and of
+ * the last frames in ring buffers of primitive arrays. Ticks are written by the
+ * thread ticking and frames by the thread drawing, each without locks or
+ * allocation. Readers on any thread see an entry once its count is published,
+ * and should only read the newest half of the buffer, which the writer doesn't
+ * reach before the reader is done.
+ *
+ * A board only has a profiler while the performance overlay is shown, so a
+ * board without one spends nothing on profiling.
+ */
+public class TickProfiler {
+    // Phases of a tick
+    public static final int MOVE = 0;
+    public static final int COLLISION = 1;
+    public static final int FILL = 2;
+    public static final int RESPAWN = 3;
+    public static final int PHASES = 4;
+
+    // Entries kept of ticks and of frames
+    public static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+
+    private final long[] tickPhases = new long[CAPACITY * PHASES];
+    private final long[] tickEnds = new long[CAPACITY];
+    private volatile long ticks;
+
+    private final long[] frameNanos = new long[CAPACITY];
+    private final long[] frameEnds = new long[CAPACITY];
+    private volatile long frames;
+
+    /**
+     * Records a tick, called by the thread ticking
+     *
+     * @param end       when the tick ended, by System.nanoTime()
+     * @param move      time spent moving players
+     * @param collision time spent finding collisions and extending trails
+     * @param fill      time spent capturing enclosed areas
+     * @param respawn   time spent removing dead players and respawning bots
+     */
+    void recordTick(long end, long move, long collision, long fill, long respawn) {
+        long tick = ticks;
+        int slot = (int) (tick & MASK);
+        tickPhases[slot * PHASES + MOVE] = move;
+        tickPhases[slot * PHASES + COLLISION] = collision;
+        tickPhases[slot * PHASES + FILL] = fill;
+        tickPhases[slot * PHASES + RESPAWN] = respawn;
+        tickEnds[slot] = end;
+        ticks = tick + 1;
+    }
+
+    /**
+     * Records a frame, called by the thread drawing
+     *
+     * @param end   when the frame was drawn, by System.nanoTime()
+     * @param nanos time spent drawing it
+     */
+    void recordFrame(long end, long nanos) {
+        long frame = frames;
+        int slot = (int) (frame & MASK);
+        frameNanos[slot] = nanos;
+        frameEnds[slot] = end;
+        frames = frame + 1;
+    }
+
+    /**
+     * @return number of ticks recorded, the newest has index one less
+     */
+    public long getTickCount() {
+        return ticks;
+    }
+
+    /**
+     * Get the time of a phase of a recorded tick
+     *
+     * @param tick  index of the tick, among the newest <code>CAPACITY / 2</code>
+     * @param phase phase, such as <code>MOVE</code>
+     * @return time in nanoseconds
+     */
+    public long getPhase(long tick, int phase) {
+        return tickPhases[(int) (tick & MASK) * PHASES + phase];
+    }
+
+    /**
+     * Get the total time of a recorded tick
+     *
+     * @param tick index of the tick, among the newest <code>CAPACITY / 2</code>
+     * @return time in nanoseconds
+     */
+    public long getTickNanos(long tick) {
+        int slot = (int) (tick & MASK) * PHASES;
+        return tickPhases[slot + MOVE] + tickPhases[slot + COLLISION] + tickPhases[slot + FILL]
+                + tickPhases[slot + RESPAWN];
+    }
+
+    /**
+     * @param tick index of the tick, among the newest <code>CAPACITY / 2</code>
+     * @return when the tick ended, by System.nanoTime()
+     */
+    public long getTickEnd(long tick) {
+        return tickEnds[(int) (tick & MASK)];
+    }
+
+    /**
+     * @return number of frames recorded, the newest has index one less
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * @param frame index of the frame, among the newest <code>CAPACITY / 2</code>
+     * @return time spent drawing the frame in nanoseconds
+     */
+    public long getFrameNanos(long frame) {
+        return frameNanos[(int) (frame & MASK)];
+    }
+
+    /**
+     * @param frame index of the frame, among the newest <code>CAPACITY / 2</code>
+     * @return when the frame was drawn, by System.nanoTime()
+     */
+    public long getFrameEnd(long frame) {
+        return frameEnds[(int) (frame & MASK)];
+    }
+}
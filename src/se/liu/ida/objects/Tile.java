@@ -16,6 +16,8 @@ public class Tile {
     // Coords
     private int x;
     private int y;
+    // Layers mirroring owner and contested ids, may be null
+    private final TileLayers layers;
 
     /**
      * Initializes a tile at position (x, y)
@@ -24,8 +26,21 @@ public class Tile {
      * @param y y position of the tile
      */
     public Tile(int x, int y) {
+        this(x, y, null);
+    }
+
+    /**
+     * Initializes a tile at position (x, y) that mirrors its owner and contested
+     * owner ids into layers
+     * 
+     * @param x      x position of the tile
+     * @param y      y position of the tile
+     * @param layers layers to mirror ids into
+     */
+    public Tile(int x, int y, TileLayers layers) {
         this.x = x;
         this.y = y;
+        this.layers = layers;
         this.owner = null;
         this.contestedOwner = null;
     }
@@ -38,21 +53,34 @@ public class Tile {
      * @return the color of the tile
      */
     public Color getColor() {
+        return colorOf(owner == null ? null : owner.getColor(),
+                contestedOwner == null ? null : contestedOwner.getColor(), owner == contestedOwner);
+    }
+
+    /**
+     * Return the color of a tile with an owner and/or contested owner of given
+     * colors, so tiles can be drawn the same way without Tile objects
+     * 
+     * @param ownerColor     color of owner or null if none
+     * @param contestedColor color of contested owner or null if none
+     * @param sameOwner      whether owner and contested owner are the same player
+     * @return the color of such a tile
+     */
+    public static Color colorOf(Color ownerColor, Color contestedColor, boolean sameOwner) {
         // If a Tile has an owner and Tile is not being contested,
         // returns owner's color darkened
-        if (owner != null && contestedOwner == null) {
-            return owner.getColor().darker();
+        if (ownerColor != null && contestedColor == null) {
+            return ownerColor.darker();
         }
         // If Tile has no owner and is being contested,
         // returns contestedOwner's color with an alpha of 100
-        else if (owner == null && contestedOwner != null) {
-            return (new Color(contestedOwner.getColor().getRed(), contestedOwner.getColor().getGreen(),
-                    contestedOwner.getColor().getBlue(), 100));
+        else if (ownerColor == null && contestedColor != null) {
+            return (new Color(contestedColor.getRed(), contestedColor.getGreen(), contestedColor.getBlue(), 100));
         }
         // If Tile has an owner and is being contested by someone,
         // returns contestedOwner's color with an alpha of 100
-        else if (owner != null && contestedOwner != owner) {
-            return blendColors();
+        else if (ownerColor != null && !sameOwner) {
+            return blendColors(ownerColor, contestedColor);
         } else {
             return Color.WHITE;
         }
@@ -63,10 +91,10 @@ public class Tile {
      * 
      * @return the blended color
      */
-    private Color blendColors() {
-        float blendedRed = ((owner.getColor().getRed() / 255f) * (contestedOwner.getColor().getRed() / 255f));
-        float blendedGreen = ((owner.getColor().getGreen() / 255f) * (contestedOwner.getColor().getGreen() / 255f));
-        float blendedBlue = ((owner.getColor().getBlue() / 255f) * (contestedOwner.getColor().getBlue() / 255f));
+    private static Color blendColors(Color ownerColor, Color contestedColor) {
+        float blendedRed = ((ownerColor.getRed() / 255f) * (contestedColor.getRed() / 255f));
+        float blendedGreen = ((ownerColor.getGreen() / 255f) * (contestedColor.getGreen() / 255f));
+        float blendedBlue = ((ownerColor.getBlue() / 255f) * (contestedColor.getBlue() / 255f));
 
         return (new Color(((blendedRed + 1) / 2), ((blendedGreen + 1) / 2), ((blendedBlue + 1) / 2)));
     }
@@ -87,6 +115,8 @@ public class Tile {
      */
     public void setOwner(Player owner) {
         this.owner = owner;
+        if (layers != null)
+            layers.setOwner(x, y, owner == null ? TileLayers.NO_PLAYER : owner.getId());
     }
 
     /**
@@ -103,6 +133,8 @@ public class Tile {
      */
     public void setContestedOwner(Player contestedOwner) {
         this.contestedOwner = contestedOwner;
+        if (layers != null)
+            layers.setContested(x, y, contestedOwner == null ? TileLayers.NO_PLAYER : contestedOwner.getId());
     }
 
     /**
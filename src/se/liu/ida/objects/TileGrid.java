@@ -0,0 +1,87 @@
+package se.liu.ida.objects;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The tiles of a game area, stored in square chunks. Small game areas get all
+ * their chunks up front. Large worlds, where a tile object per cell wouldn't fit
+ * in memory, get a chunk the first time one of its tiles is asked for, so only
+ * the parts of the world players have been to take memory. A chunk is created
+ * at most once even if the tick and the painter ask for it at the same time.
+ */
+final class TileGrid {
+    private static final int CHUNK_SHIFT = 4;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // Largest game area, in cells, whose tiles are all created up front
+    static final int EAGER_CELLS = 1 << 20;
+
+    private final int width;
+    private final int height;
+    private final int chunksX;
+    private final TileLayers layers;
+    private final AtomicReferenceArray<Tile[]> chunks;
+
+    /**
+     * Creates the tiles of a game area
+     *
+     * @param width  width of game area
+     * @param height height of game area
+     * @param layers layers the tiles mirror their ids into
+     */
+    TileGrid(int width, int height, TileLayers layers) {
+        this.width = width;
+        this.height = height;
+        this.layers = layers;
+        this.chunksX = (width + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.chunks = new AtomicReferenceArray<>(chunksX * ((height + CHUNK_MASK) >> CHUNK_SHIFT));
+        if ((long) width * height <= EAGER_CELLS) {
+            for (int i = 0; i < chunks.length(); i++)
+                chunks.set(i, newChunk(i));
+        }
+    }
+
+    /**
+     * Get the tile at a position inside the game area
+     *
+     * @param x x position
+     * @param y y position
+     * @return the tile
+     * @throws ArrayIndexOutOfBoundsException if the position is outside
+     */
+    Tile get(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height)
+            throw new ArrayIndexOutOfBoundsException("Tile outside game area: " + x + ", " + y);
+        int chunkIndex = (y >> CHUNK_SHIFT) * chunksX + (x >> CHUNK_SHIFT);
+        Tile[] chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunk = newChunk(chunkIndex);
+            if (!chunks.compareAndSet(chunkIndex, null, chunk))
+                chunk = chunks.get(chunkIndex);
+        }
+        return chunk[(y & CHUNK_MASK) << CHUNK_SHIFT | (x & CHUNK_MASK)];
+    }
+
+    private Tile[] newChunk(int chunkIndex) {
+        int left = (chunkIndex % chunksX) << CHUNK_SHIFT;
+        int top = (chunkIndex / chunksX) << CHUNK_SHIFT;
+        Tile[] chunk = new Tile[CHUNK_SIZE * CHUNK_SIZE];
+        for (int y = top; y < Math.min(top + CHUNK_SIZE, height); y++) {
+            for (int x = left; x < Math.min(left + CHUNK_SIZE, width); x++)
+                chunk[(y & CHUNK_MASK) << CHUNK_SHIFT | (x & CHUNK_MASK)] = new Tile(x, y, layers);
+        }
+        return chunk;
+    }
+
+    /**
+     * @return number of chunks whose tiles have been created
+     */
+    int getChunkCount() {
+        int count = 0;
+        for (int i = 0; i < chunks.length(); i++) {
+            if (chunks.get(i) != null)
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,147 @@
+package se.liu.ida.objects;
+
+import java.util.Arrays;
+
+/**
+ * TileLayers mirrors the owner and contested owner of every tile as player ids
+ * in flat primitive arrays. Tiles write to the layers whenever their owner or
+ * contested owner changes, which lets whole rows be copied in bulk instead of
+ * asking each tile. Cells are stored row by row at index y * width + x.
+ *
+ * The layers also keep a list of cells whose ids changed since
+ * <code>clearChanges()</code> was last called, each cell listed once, so that
+ * a consumer can act on what changed during a tick without scanning the grid.
+ * The list never holds more than one entry per cell, and it is up to its one
+ * consumer to clear it once the changes have been handled.
+ */
+public class TileLayers {
+    // Id stored in cells without a player
+    public static final int NO_PLAYER = 0;
+
+    // Flags telling which layers of a changed cell changed
+    public static final int OWNER_CHANGED = 1;
+    public static final int CONTESTED_CHANGED = 2;
+
+    private final int width;
+    private final int height;
+    private final int[] owners;
+    private final int[] contested;
+
+    // Cells changed since last clear, and flags per cell telling which layers
+    // changed, 0 if the cell isn't in the list
+    private int[] changes;
+    private int changeCount;
+    private final byte[] changed;
+
+    /**
+     * Creates empty layers where no tile has an owner or contested owner
+     *
+     * @param width  width of game area
+     * @param height height of game area
+     */
+    public TileLayers(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.owners = new int[width * height];
+        this.contested = new int[width * height];
+        this.changes = new int[64];
+        this.changed = new byte[width * height];
+    }
+
+    void setOwner(int x, int y, int id) {
+        int cell = y * width + x;
+        if (owners[cell] != id) {
+            owners[cell] = id;
+            markChanged(cell, OWNER_CHANGED);
+        }
+    }
+
+    void setContested(int x, int y, int id) {
+        int cell = y * width + x;
+        if (contested[cell] != id) {
+            contested[cell] = id;
+            markChanged(cell, CONTESTED_CHANGED);
+        }
+    }
+
+    private void markChanged(int cell, int flag) {
+        boolean listed = changed[cell] != 0;
+        changed[cell] |= flag;
+        if (listed)
+            return;
+        if (changeCount == changes.length)
+            changes = Arrays.copyOf(changes, 2 * changeCount);
+        changes[changeCount++] = cell;
+    }
+
+    /**
+     * Forgets all changes, in O(changes)
+     */
+    public void clearChanges() {
+        for (int i = 0; i < changeCount; i++)
+            changed[changes[i]] = 0;
+        changeCount = 0;
+    }
+
+    /**
+     * @return number of cells changed since changes were last cleared
+     */
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Get a changed cell
+     *
+     * @param i index of change, less than <code>getChangeCount()</code>
+     * @return cell index y * width + x of the changed cell
+     */
+    public int getChange(int i) {
+        return changes[i];
+    }
+
+    /**
+     * Get which layers of a cell changed since changes were last cleared
+     *
+     * @param cell cell index y * width + x
+     * @return <code>OWNER_CHANGED</code> and/or <code>CONTESTED_CHANGED</code>,
+     *         or 0 if the cell didn't change
+     */
+    public int getChangeFlags(int cell) {
+        return changed[cell];
+    }
+
+    public int getOwner(int x, int y) {
+        return owners[y * width + x];
+    }
+
+    public int getContested(int x, int y) {
+        return contested[y * width + x];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the owner layer. The array is live and must not be modified.
+     *
+     * @return owner ids row by row
+     */
+    public int[] getOwners() {
+        return owners;
+    }
+
+    /**
+     * Get the contested owner layer. The array is live and must not be modified.
+     *
+     * @return contested owner ids row by row
+     */
+    public int[] getContested() {
+        return contested;
+    }
+}
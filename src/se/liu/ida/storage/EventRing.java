@@ -0,0 +1,115 @@
+package se.liu.ida.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed ring of match events that any number of simulation threads publish to
+ * without locks and one consumer drains. Every field of an event has an array
+ * of its own, all allocated up front, so publishing allocates nothing.
+ *
+ * A publisher claims a sequence number with a compare-and-set and marks the
+ * slot published once it has written the event. The consumer reads slots in
+ * sequence order and frees them by advancing its own sequence. When the ring is
+ * full events are dropped and counted rather than making the simulation wait.
+ */
+final class EventRing {
+    private final int capacity;
+    private final int mask;
+
+    private final int[] matches;
+    private final long[] ticks;
+    private final byte[] types;
+    private final int[] players;
+    private final int[] others;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] values;
+    // Sequence number of the event last published in each slot
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLongArray published;
+    // Sequence number of the next event the consumer reads
+    private volatile long consumed;
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param capacity most events waiting for the consumer, a power of two
+     */
+    EventRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        matches = new int[capacity];
+        ticks = new long[capacity];
+        types = new byte[capacity];
+        players = new int[capacity];
+        others = new int[capacity];
+        xs = new int[capacity];
+        ys = new int[capacity];
+        values = new int[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            published.set(i, -1);
+    }
+
+    /**
+     * Publishes an event, safe to call from any thread
+     *
+     * @return false if the ring was full and the event was dropped
+     */
+    boolean publish(int match, long tick, byte type, int player, int other, int x, int y, int value) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= capacity) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        matches[slot] = match;
+        ticks[slot] = tick;
+        types[slot] = type;
+        players[slot] = player;
+        others[slot] = other;
+        xs[slot] = x;
+        ys[slot] = y;
+        values[slot] = value;
+        published.setRelease(slot, sequence);
+        return true;
+    }
+
+    /**
+     * Moves published events to a segment in the order they were claimed, called
+     * by the consumer only. Stops at an event claimed but not yet written.
+     *
+     * @param segment segment to add events to
+     * @param max     most events to move
+     * @return number of events moved
+     */
+    int drain(EventSegment segment, int max) {
+        long next = consumed;
+        int count = 0;
+        while (count < max) {
+            int slot = (int) next & mask;
+            if (published.getAcquire(slot) != next)
+                break;
+            segment.add(matches[slot], ticks[slot], types[slot], players[slot], others[slot], xs[slot], ys[slot],
+                    values[slot]);
+            next++;
+            count++;
+        }
+        consumed = next;
+        return count;
+    }
+
+    /**
+     * @return number of events dropped because the ring was full
+     */
+    long getDropped() {
+        return dropped.sum();
+    }
+}
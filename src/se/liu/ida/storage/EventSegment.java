@@ -0,0 +1,258 @@
+package se.liu.ida.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A batch of match events stored column by column. In a file, every column is
+ * written on its own after a header of magic, version and number of events, so
+ * similar values sit next to each other and compress well. Matches, ticks and
+ * players are stored as differences from the previous event, and all numbers
+ * as variable length integers, before the whole segment is compressed with
+ * GZIP, whose checksum catches a damaged file.
+ */
+final class EventSegment {
+    private static final int MAGIC = 0x4D455653;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int capacity;
+    private int size;
+
+    private final int[] matches;
+    private final long[] ticks;
+    private final byte[] types;
+    private final int[] players;
+    private final int[] others;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] values;
+
+    /**
+     * @param capacity most events in the segment
+     */
+    EventSegment(int capacity) {
+        this.capacity = capacity;
+        matches = new int[capacity];
+        ticks = new long[capacity];
+        types = new byte[capacity];
+        players = new int[capacity];
+        others = new int[capacity];
+        xs = new int[capacity];
+        ys = new int[capacity];
+        values = new int[capacity];
+    }
+
+    void add(int match, long tick, byte type, int player, int other, int x, int y, int value) {
+        matches[size] = match;
+        ticks[size] = tick;
+        types[size] = type;
+        players[size] = player;
+        others[size] = other;
+        xs[size] = x;
+        ys[size] = y;
+        values[size] = value;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of events that can still be added
+     */
+    int remaining() {
+        return capacity - size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int getMatch(int i) {
+        return matches[i];
+    }
+
+    long getTick(int i) {
+        return ticks[i];
+    }
+
+    byte getType(int i) {
+        return types[i];
+    }
+
+    int getPlayer(int i) {
+        return players[i];
+    }
+
+    int getOther(int i) {
+        return others[i];
+    }
+
+    int getX(int i) {
+        return xs[i];
+    }
+
+    int getY(int i) {
+        return ys[i];
+    }
+
+    int getValue(int i) {
+        return values[i];
+    }
+
+    /**
+     * Writes the events to a file, first to a temporary file that is then
+     * renamed so a reader never sees half a segment
+     *
+     * @param file file to write
+     * @throws IOException if writing fails
+     */
+    void write(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream fileOut = Files.newOutputStream(temporary);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new GZIPOutputStream(fileOut, BUFFER_SIZE), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(size);
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                writeVarInt(out, zigZag(matches[i] - previous));
+                previous = matches[i];
+            }
+            long previousTick = 0;
+            for (int i = 0; i < size; i++) {
+                writeVarLong(out, zigZag(ticks[i] - previousTick));
+                previousTick = ticks[i];
+            }
+            out.write(types, 0, size);
+            previous = 0;
+            for (int i = 0; i < size; i++) {
+                writeVarInt(out, zigZag(players[i] - previous));
+                previous = players[i];
+            }
+            for (int i = 0; i < size; i++)
+                writeVarInt(out, others[i]);
+            // Players die just outside the game area, so coordinates may be negative
+            for (int i = 0; i < size; i++)
+                writeVarInt(out, zigZag(xs[i]));
+            for (int i = 0; i < size; i++)
+                writeVarInt(out, zigZag(ys[i]));
+            for (int i = 0; i < size; i++)
+                writeVarInt(out, zigZag(values[i]));
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a segment written by <code>write</code>
+     *
+     * @param file file to read
+     * @return the segment
+     * @throws IOException if reading fails or the file is damaged
+     */
+    static EventSegment read(Path file) throws IOException {
+        try (InputStream fileIn = Files.newInputStream(file);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        new GZIPInputStream(fileIn, BUFFER_SIZE), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION)
+                throw new IOException("Not an event segment: " + file);
+            int size = in.readInt();
+            if (size < 0)
+                throw new IOException("Damaged event segment: " + file);
+            EventSegment segment = new EventSegment(size);
+            segment.size = size;
+            int previous = 0;
+            for (int i = 0; i < size; i++)
+                previous = segment.matches[i] = previous + zagZig(readVarInt(in));
+            long previousTick = 0;
+            for (int i = 0; i < size; i++)
+                previousTick = segment.ticks[i] = previousTick + zagZig(readVarLong(in));
+            in.readFully(segment.types, 0, size);
+            previous = 0;
+            for (int i = 0; i < size; i++)
+                previous = segment.players[i] = previous + zagZig(readVarInt(in));
+            for (int i = 0; i < size; i++)
+                segment.others[i] = readVarInt(in);
+            for (int i = 0; i < size; i++)
+                segment.xs[i] = zagZig(readVarInt(in));
+            for (int i = 0; i < size; i++)
+                segment.ys[i] = zagZig(readVarInt(in));
+            for (int i = 0; i < size; i++)
+                segment.values[i] = zagZig(readVarInt(in));
+            // Reads to the end so GZIP checks the checksum
+            if (in.read() != -1)
+                throw new IOException("Damaged event segment: " + file);
+            return segment;
+        }
+    }
+
+    /**
+     * Maps small negative numbers to small positive ones so they take few bytes
+     */
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int zagZig(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long zagZig(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,137 @@
+package se.liu.ida.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The best result of a human player in one game, as kept by HighScoreStore.
+ * The score is the largest share of the game area the player owned during the
+ * game, in hundredths of a percent.
+ */
+public class HighScore {
+    // Longest name stored, longer names are cut
+    static final int MAX_NAME_BYTES = 255;
+
+    private final String name;
+    private final int score;
+    private final int mapWidth;
+    private final int mapHeight;
+    private final long ticks;
+    private final long time;
+
+    /**
+     * Creates a high score
+     *
+     * @param name      name of the player
+     * @param score     largest share of the game area owned, in hundredths of a
+     *                  percent
+     * @param mapWidth  width of game area
+     * @param mapHeight height of game area
+     * @param ticks     number of ticks the game lasted
+     * @param time      when the game ended, in milliseconds since the epoch
+     */
+    public HighScore(String name, int score, int mapWidth, int mapHeight, long ticks, long time) {
+        if (score < 0 || score > HighScoreStore.MAX_SCORE)
+            throw new IllegalArgumentException("Score out of range: " + score);
+        this.name = name;
+        this.score = score;
+        this.mapWidth = mapWidth;
+        this.mapHeight = mapHeight;
+        this.ticks = ticks;
+        this.time = time;
+    }
+
+    /**
+     * @return size of the high score when encoded
+     */
+    int encodedSize() {
+        return 8 + 4 + 4 + 4 + 8 + 1 + nameBytes().length;
+    }
+
+    /**
+     * Writes the high score at the buffer's position
+     *
+     * @param buffer buffer with <code>encodedSize()</code> bytes remaining
+     */
+    void encode(ByteBuffer buffer) {
+        byte[] bytes = nameBytes();
+        buffer.putLong(time);
+        buffer.putInt(score);
+        buffer.putInt(mapWidth);
+        buffer.putInt(mapHeight);
+        buffer.putLong(ticks);
+        buffer.put((byte) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Reads a high score written by <code>encode</code>
+     *
+     * @param buffer buffer positioned at the high score
+     * @return the high score
+     */
+    static HighScore decode(ByteBuffer buffer) {
+        long time = buffer.getLong();
+        int score = buffer.getInt();
+        int mapWidth = buffer.getInt();
+        int mapHeight = buffer.getInt();
+        long ticks = buffer.getLong();
+        byte[] bytes = new byte[buffer.get() & 0xFF];
+        buffer.get(bytes);
+        return new HighScore(new String(bytes, StandardCharsets.UTF_8), score, mapWidth, mapHeight, ticks, time);
+    }
+
+    private byte[] nameBytes() {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= MAX_NAME_BYTES)
+            return bytes;
+        // Cuts before a continuation byte so the name stays valid UTF-8
+        int length = MAX_NAME_BYTES;
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80)
+            length--;
+        return Arrays.copyOf(bytes, length);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return largest share of the game area owned, in hundredths of a percent
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return largest share of the game area owned, in percent
+     */
+    public double getPercent() {
+        return score / 100.0;
+    }
+
+    public int getMapWidth() {
+        return mapWidth;
+    }
+
+    public int getMapHeight() {
+        return mapHeight;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return when the game ended, in milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.2f%% - %s", getPercent(), name);
+    }
+}
@@ -0,0 +1,102 @@
+package se.liu.ida.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks HighScoreStore in a temporary directory. Appends random scores,
+ * queries the best scores and ranks, reopens the store, reopens it after
+ * tearing the last record as a crash would, and compacts it, checking that the
+ * best scores stay the same throughout.
+ */
+public class HighScoreBenchmark {
+    private static final int TOP = 10;
+    private static final int RANK_QUERIES = 100_000;
+
+    /**
+     * Arguments are number of scores to append, which defaults to 2000000, and
+     * number of scores to keep when compacting, which defaults to 1000.
+     *
+     * @param args optional scores and scores kept
+     * @throws IOException if the store fails
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int keep = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        Path directory = Files.createTempDirectory("highscores");
+        Random r = new Random(1);
+        try {
+            HighScoreStore store = HighScoreStore.open(directory);
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++)
+                store.append(new HighScore("player" + r.nextInt(1000), r.nextInt(10_001), 100, 100,
+                        r.nextInt(100_000), System.currentTimeMillis()));
+            store.flush();
+            System.out.printf("append: %d scores in %.0f ms, %d bytes of log%n", count,
+                    (System.nanoTime() - start) / 1e6, Files.size(directory.resolve("highscores.log")));
+
+            start = System.nanoTime();
+            List<HighScore> top = store.top(TOP);
+            System.out.printf("top %d: %.3f ms, best %s%n", TOP, (System.nanoTime() - start) / 1e6, top.get(0));
+            start = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < RANK_QUERIES; i++)
+                sum += store.rank(r.nextInt(10_001));
+            System.out.printf("rank: %.2f us per query (%d)%n", (System.nanoTime() - start) / 1e3 / RANK_QUERIES,
+                    sum / RANK_QUERIES);
+            store.close();
+
+            start = System.nanoTime();
+            store = HighScoreStore.open(directory);
+            System.out.printf("reopen: %.1f ms, %d scores%n", (System.nanoTime() - start) / 1e6, store.size());
+            check(top, store.top(TOP));
+            store.append(new HighScore("torn", 0, 100, 100, 0, 0));
+            store.close();
+
+            // A crash in the middle of the last record leaves half of it
+            Path log = directory.resolve("highscores.log");
+            try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 5);
+                channel.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), channel.size());
+            }
+            start = System.nanoTime();
+            store = HighScoreStore.open(directory);
+            System.out.printf("recover: %.1f ms, %d scores%n", (System.nanoTime() - start) / 1e6, store.size());
+            if (store.size() != count)
+                throw new IllegalStateException("Torn record not cut off");
+            check(top, store.top(TOP));
+
+            start = System.nanoTime();
+            int removed = store.compact(keep).get();
+            System.out.printf("compact: %.0f ms, removed %d, %d bytes of log%n", (System.nanoTime() - start) / 1e6,
+                    removed, Files.size(log));
+            check(top, store.top(TOP));
+            store.close();
+            store = HighScoreStore.open(directory);
+            check(top, store.top(TOP));
+            store.close();
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void check(List<HighScore> expected, List<HighScore> actual) {
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.get(i).getScore() != actual.get(i).getScore()
+                    || expected.get(i).getTime() != actual.get(i).getTime()
+                    || !expected.get(i).getName().equals(actual.get(i).getName()))
+                throw new IllegalStateException("Best scores differ at " + i);
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package se.liu.ida.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * A durable store of high scores, made to keep millions of games. Scores are
+ * appended to a log where every record has a checksum, and a sorted index of
+ * all scores is memory mapped so the best scores and the rank of a score are
+ * found with binary searches instead of reading the log.
+ *
+ * Appending never blocks: scores are written by a thread of the store's own,
+ * which writes everything appended while it was busy with one fsync. Scores
+ * appended since the index was written are kept sorted in memory and merged
+ * into a new index once there are many of them.
+ *
+ * When opened, the part of the log the index doesn't cover is read back and a
+ * record torn by a crash is cut off. An index that doesn't match the log is
+ * rebuilt from it. Compaction rewrites the log with only the best scores.
+ *
+ * On disk, the log is a header of magic, version and generation followed by
+ * records of payload length, CRC32 of the payload and the payload. The index is
+ * a header of magic, version, the generation of the log, the length of the log
+ * it covers and the number of keys, followed by the keys in ascending order. A
+ * key is a score and the offset of its record in the log packed so that better
+ * scores come first and equal scores in the order they were appended.
+ */
+public class HighScoreStore implements Closeable {
+    static final int MAX_SCORE = (1 << 23) - 1;
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private static final String LOG_FILE = "highscores.log";
+    private static final String INDEX_FILE = "highscores.idx";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int LOG_MAGIC = 0x48534C47;
+    private static final int INDEX_MAGIC = 0x48534958;
+    private static final int VERSION = 1;
+    private static final int LOG_HEADER = 16;
+    private static final int INDEX_HEADER = 32;
+    private static final int RECORD_HEADER = 8;
+    private static final int MIN_PAYLOAD = 29;
+    private static final int MAX_PAYLOAD = MIN_PAYLOAD + HighScore.MAX_NAME_BYTES;
+    // Scores kept in memory before they are merged into the index
+    private static final int TAIL_LIMIT = 1 << 16;
+    // Most records written with one fsync
+    private static final int BATCH_LIMIT = 4096;
+    private static final int IO_BUFFER_SIZE = 1 << 20;
+
+    private final Path logPath;
+    private final Path indexPath;
+    // Writes, index rebuilds and compactions, in the order they were asked for
+    private final ExecutorService writer;
+    private final Queue<HighScore> pending;
+    private final AtomicBoolean writeScheduled;
+    // Only touched by the writer
+    private final ByteBuffer batch;
+    private volatile IOException failure;
+
+    // Guarded by this, replaced by the writer
+    private FileChannel log;
+    private long generation;
+    // Length of the log written and forced to disk
+    private long logLength;
+    private LongBuffer index;
+    // Keys not in the index yet, sorted if tailSorted
+    private long[] tail;
+    private int tailSize;
+    private boolean tailSorted;
+
+    private HighScoreStore(Path directory, FileChannel log, long generation) {
+        this.logPath = directory.resolve(LOG_FILE);
+        this.indexPath = directory.resolve(INDEX_FILE);
+        this.log = log;
+        this.generation = generation;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.writeScheduled = new AtomicBoolean();
+        this.batch = ByteBuffer.allocate(BATCH_LIMIT * (RECORD_HEADER + MAX_PAYLOAD));
+        this.index = LongBuffer.allocate(0);
+        this.tail = new long[1024];
+        this.tailSorted = true;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "high-score-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the store in a directory, creating it if needed, and recovers from
+     * a crash if the last one was cut short
+     *
+     * @param directory directory of the store's files
+     * @return the opened store
+     * @throws IOException if the files can't be read or aren't a store
+     */
+    public static HighScoreStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(LOG_FILE + TEMPORARY_SUFFIX));
+        Files.deleteIfExists(directory.resolve(INDEX_FILE + TEMPORARY_SUFFIX));
+        FileChannel log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long generation;
+            if (log.size() < LOG_HEADER) {
+                // A new log, or one whose header never made it to disk
+                generation = ThreadLocalRandom.current().nextLong();
+                log.truncate(0);
+                writeFully(log, logHeader(generation), 0);
+                log.force(true);
+            } else {
+                ByteBuffer header = readFully(log, 0, LOG_HEADER);
+                if (header.getInt() != LOG_MAGIC || header.getInt() != VERSION)
+                    throw new IOException("Not a high score log: " + directory.resolve(LOG_FILE));
+                generation = header.getLong();
+            }
+            HighScoreStore store = new HighScoreStore(directory, log, generation);
+            store.recover();
+            return store;
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the index if it matches the log, reads the records after it and cuts
+     * off a torn record at the end of the log
+     */
+    private void recover() throws IOException {
+        long from = LOG_HEADER;
+        boolean indexValid = false;
+        if (Files.exists(indexPath)) {
+            try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (map.limit() >= INDEX_HEADER && map.getInt(0) == INDEX_MAGIC && map.getInt(4) == VERSION
+                        && map.getLong(8) == generation && map.getLong(16) <= log.size()
+                        && INDEX_HEADER + 8L * map.getInt(24) == map.limit()) {
+                    from = map.getLong(16);
+                    index = map.position(INDEX_HEADER).slice().asLongBuffer();
+                    indexValid = true;
+                }
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE).flip();
+        CRC32 crc = new CRC32();
+        long size = log.size();
+        long read = from;
+        long end = from;
+        while (true) {
+            if (buffer.remaining() < RECORD_HEADER + MAX_PAYLOAD && read < size) {
+                buffer.compact();
+                while (buffer.hasRemaining() && read < size) {
+                    int n = log.read(buffer, read);
+                    if (n < 0)
+                        break;
+                    read += n;
+                }
+                buffer.flip();
+            }
+            if (buffer.remaining() < RECORD_HEADER)
+                break;
+            int start = buffer.position();
+            int length = buffer.getInt(start);
+            if (length < MIN_PAYLOAD || length > MAX_PAYLOAD || buffer.remaining() < RECORD_HEADER + length)
+                break;
+            crc.reset();
+            crc.update(buffer.slice(start + RECORD_HEADER, length));
+            int score = buffer.getInt(start + RECORD_HEADER + 8);
+            if ((int) crc.getValue() != buffer.getInt(start + 4) || score < 0 || score > MAX_SCORE)
+                break;
+            addToTail(key(score, end));
+            buffer.position(start + RECORD_HEADER + length);
+            end += RECORD_HEADER + length;
+        }
+        if (end < size) {
+            log.truncate(end);
+            log.force(true);
+        }
+        logLength = end;
+
+        if (!indexValid || tailSize > TAIL_LIMIT)
+            rebuildIndex();
+    }
+
+    /**
+     * Appends a high score without waiting for it to be written. The score can
+     * be queried once it is on disk.
+     *
+     * @param score score to append
+     */
+    public void append(HighScore score) {
+        pending.add(score);
+        if (writeScheduled.compareAndSet(false, true))
+            writer.execute(this::writePending);
+    }
+
+    /**
+     * Writes all pending scores, as many as possible per fsync. Called by the
+     * writer.
+     */
+    private void writePending() {
+        writeScheduled.set(false);
+        CRC32 crc = new CRC32();
+        long[] keys = new long[BATCH_LIMIT];
+        while (!pending.isEmpty()) {
+            batch.clear();
+            int count = 0;
+            HighScore score;
+            while (count < BATCH_LIMIT && (score = pending.poll()) != null) {
+                int start = batch.position();
+                batch.putInt(score.encodedSize());
+                batch.putInt(0);
+                score.encode(batch);
+                crc.reset();
+                crc.update(batch.slice(start + RECORD_HEADER, score.encodedSize()));
+                batch.putInt(start + 4, (int) crc.getValue());
+                keys[count++] = key(score.getScore(), logLength + start);
+            }
+            batch.flip();
+            try {
+                int written = batch.remaining();
+                writeFully(log, batch, logLength);
+                log.force(false);
+                synchronized (this) {
+                    for (int i = 0; i < count; i++)
+                        addToTail(keys[i]);
+                    logLength += written;
+                }
+                if (tailSize > TAIL_LIMIT)
+                    rebuildIndex();
+            } catch (IOException e) {
+                failure = e;
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    private void addToTail(long key) {
+        if (tailSize == tail.length)
+            tail = Arrays.copyOf(tail, 2 * tail.length);
+        if (tailSize > 0 && key < tail[tailSize - 1])
+            tailSorted = false;
+        tail[tailSize++] = key;
+    }
+
+    private void sortTail() {
+        if (!tailSorted) {
+            Arrays.sort(tail, 0, tailSize);
+            tailSorted = true;
+        }
+    }
+
+    /**
+     * Merges the index and the scores kept in memory into a new index, and maps
+     * it. Called by the writer, or while opening.
+     */
+    private void rebuildIndex() throws IOException {
+        long[] keys;
+        int count;
+        LongBuffer old;
+        long covered;
+        synchronized (this) {
+            sortTail();
+            keys = Arrays.copyOf(tail, tailSize);
+            count = tailSize;
+            old = index;
+            covered = logLength;
+        }
+
+        Path temporary = indexPath.resolveSibling(INDEX_FILE + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+            buffer.putInt(INDEX_MAGIC).putInt(VERSION).putLong(generation).putLong(covered)
+                    .putInt(old.limit() + count).putInt(0);
+            int i = 0;
+            int j = 0;
+            long position = 0;
+            while (i < old.limit() || j < count) {
+                if (j == count || (i < old.limit() && old.get(i) < keys[j]))
+                    buffer.putLong(old.get(i++));
+                else
+                    buffer.putLong(keys[j++]);
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    position += writeFully(channel, buffer, position);
+                    buffer.clear();
+                }
+            }
+            buffer.flip();
+            writeFully(channel, buffer, position);
+            channel.force(true);
+        }
+        Files.move(temporary, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        LongBuffer mapped = mapIndex();
+        synchronized (this) {
+            index = mapped;
+            // Only the writer adds to the tail, so everything in it is merged
+            tailSize = 0;
+            tailSorted = true;
+        }
+    }
+
+    private LongBuffer mapIndex() throws IOException {
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return map.position(INDEX_HEADER).slice().asLongBuffer();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the best scores, in the order they were
+     * appended, and rebuilds the index. Runs after all scores appended before it.
+     *
+     * @param keep number of best scores to keep
+     * @return the number of scores removed, when done
+     */
+    public Future<Integer> compact(int keep) {
+        return writer.submit(() -> compactNow(keep));
+    }
+
+    private int compactNow(int keep) throws IOException {
+        long[] offsets;
+        int before;
+        synchronized (this) {
+            before = size();
+            long[] best = topKeys(Math.min(keep, before));
+            offsets = new long[best.length];
+            for (int i = 0; i < best.length; i++)
+                offsets[i] = best[i] & OFFSET_MASK;
+        }
+        Arrays.sort(offsets);
+
+        long newGeneration = ThreadLocalRandom.current().nextLong();
+        Path temporaryLog = logPath.resolveSibling(LOG_FILE + TEMPORARY_SUFFIX);
+        long[] keys = new long[offsets.length];
+        long length;
+        try (FileChannel channel = FileChannel.open(temporaryLog, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            length = writeFully(channel, logHeader(newGeneration), 0);
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+            long flushed = length;
+            for (int i = 0; i < offsets.length; i++) {
+                ByteBuffer record = readRecord(offsets[i]);
+                keys[i] = key(record.getInt(RECORD_HEADER + 8), length);
+                length += record.remaining();
+                if (buffer.remaining() < record.remaining()) {
+                    buffer.flip();
+                    flushed += writeFully(channel, buffer, flushed);
+                    buffer.clear();
+                }
+                buffer.put(record);
+            }
+            buffer.flip();
+            writeFully(channel, buffer, flushed);
+            channel.force(true);
+        }
+        Arrays.sort(keys);
+
+        synchronized (this) {
+            log.close();
+            Files.move(temporaryLog, logPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            log = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            generation = newGeneration;
+            logLength = length;
+            index = LongBuffer.allocate(0);
+            tail = keys.length > 0 ? keys : new long[1024];
+            tailSize = keys.length;
+            tailSorted = true;
+        }
+        // The old index no longer matches the log and is ignored if this crashes
+        rebuildIndex();
+        return before - keys.length;
+    }
+
+    /**
+     * Blocks until every score appended so far is on disk
+     *
+     * @throws IOException if writing failed
+     */
+    public void flush() throws IOException {
+        try {
+            writer.submit(() -> {
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Get the best scores, best first and equal scores in the order they were
+     * appended
+     *
+     * @param n number of scores to get
+     * @return up to n of the best scores
+     * @throws IOException if the log can't be read
+     */
+    public synchronized List<HighScore> top(int n) throws IOException {
+        long[] keys = topKeys(Math.min(n, size()));
+        List<HighScore> scores = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            ByteBuffer record = readRecord(key & OFFSET_MASK);
+            scores.add(HighScore.decode(record.position(RECORD_HEADER)));
+        }
+        return scores;
+    }
+
+    /**
+     * Merges the first keys of the index and the tail. Called holding the lock.
+     */
+    private long[] topKeys(int n) {
+        sortTail();
+        long[] keys = new long[n];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < n; k++) {
+            if (j == tailSize || (i < index.limit() && index.get(i) < tail[j]))
+                keys[k] = index.get(i++);
+            else
+                keys[k] = tail[j++];
+        }
+        return keys;
+    }
+
+    /**
+     * Get the rank a score would have among the scores stored, in time
+     * logarithmic in their number
+     *
+     * @param score score in hundredths of a percent
+     * @return 1 if no stored score is better, one more than the number of better
+     *         scores otherwise
+     */
+    public synchronized int rank(int score) {
+        sortTail();
+        long key = key(Math.min(score, MAX_SCORE), 0);
+        int better = 0;
+        int low = 0;
+        int high = index.limit();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (index.get(middle) < key)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        better += low;
+        int position = Arrays.binarySearch(tail, 0, tailSize, key);
+        better += position >= 0 ? position : -position - 1;
+        return better + 1;
+    }
+
+    /**
+     * @return number of scores stored
+     */
+    public synchronized int size() {
+        return index.limit() + tailSize;
+    }
+
+    /**
+     * Reads a whole record, header included. Called holding the lock.
+     */
+    private ByteBuffer readRecord(long offset) throws IOException {
+        ByteBuffer header = readFully(log, offset, RECORD_HEADER);
+        int length = header.getInt(0);
+        if (length < MIN_PAYLOAD || length > MAX_PAYLOAD)
+            throw new IOException("Bad record at " + offset);
+        return readFully(log, offset, RECORD_HEADER + length);
+    }
+
+    private static long key(int score, long offset) {
+        return ((long) (MAX_SCORE - score) << OFFSET_BITS) | offset;
+    }
+
+    private static ByteBuffer logHeader(long generation) {
+        return ByteBuffer.allocate(LOG_HEADER).putInt(LOG_MAGIC).putInt(VERSION).putLong(generation).flip();
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of file at " + (position + buffer.position()));
+        return buffer.flip();
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int length = buffer.remaining();
+        int written = 0;
+        while (written < length)
+            written += channel.write(buffer, position + written);
+        return length;
+    }
+
+    /**
+     * Writes everything pending and closes the store
+     */
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            log.close();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package se.liu.ida.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A log of what happens in matches, kept for analysis: deaths and their cause,
+ * captured areas and head on collisions. Boards publish events to a ring
+ * allocated up front without locks or allocation, so logging adds next to
+ * nothing to a tick. A thread of the log's own drains the ring into batches and
+ * writes every batch as a compressed, column by column segment file once it is
+ * full or has waited long enough. MatchEventQuery reads the segments back.
+ *
+ * Events that don't fit in the ring are dropped rather than slowing down the
+ * simulation, and counted.
+ */
+public class MatchEventLog implements Closeable {
+    /**
+     * A player moved outside the game area. Other is 0.
+     */
+    public static final byte WALL_DEATH = 1;
+    /**
+     * A player's trail was cut. Other is the player who cut it, which may be the
+     * player itself.
+     */
+    public static final byte TRAIL_DEATH = 2;
+    /**
+     * A player lost a head on collision. Other is the player who won it.
+     */
+    public static final byte HEAD_ON_DEATH = 3;
+    /**
+     * A player came home and claimed its trail and the area enclosed by it.
+     * Value is the number of tiles gained.
+     */
+    public static final byte CAPTURE = 4;
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int RING_CAPACITY = 1 << 16;
+    private static final int SEGMENT_CAPACITY = 1 << 18;
+    // Longest time events wait in a batch that isn't full
+    private static final long FLUSH_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Path directory;
+    private final EventRing ring = new EventRing(RING_CAPACITY);
+    private final EventSegment segment = new EventSegment(SEGMENT_CAPACITY);
+    // Number of the next segment file
+    private long segmentNumber;
+    private final AtomicInteger matches;
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile IOException failure;
+
+    private MatchEventLog(Path directory, long segmentNumber, int lastMatch) {
+        this.directory = directory;
+        this.segmentNumber = segmentNumber;
+        this.matches = new AtomicInteger(lastMatch);
+        writer = new Thread(this::write, "match event writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens a log in a directory, creating it if needed. Segments already there
+     * are kept, and new matches are numbered after the matches in them.
+     *
+     * @param directory directory of the segment files
+     * @return the log
+     * @throws IOException if the directory can't be created or read
+     */
+    public static MatchEventLog open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> segments = segments(directory);
+        long segmentNumber = 0;
+        int lastMatch = 0;
+        if (!segments.isEmpty()) {
+            Path last = segments.get(segments.size() - 1);
+            segmentNumber = numberOf(last) + 1;
+            EventSegment events = EventSegment.read(last);
+            for (int i = 0; i < events.size(); i++)
+                lastMatch = Math.max(lastMatch, events.getMatch(i));
+        }
+        return new MatchEventLog(directory, segmentNumber, lastMatch);
+    }
+
+    /**
+     * Lists the segment files in a directory, oldest first
+     *
+     * @param directory directory of the segment files
+     * @return the segment files
+     * @throws IOException if the directory can't be read
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files)
+                segments.add(file);
+        }
+        // Numbers are zero padded, so names sort in the order they were written
+        segments.sort(null);
+        return segments;
+    }
+
+    private static long numberOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()),
+                16);
+    }
+
+    /**
+     * Numbers a new match, which its board tags its events with
+     *
+     * @return the number of the match
+     */
+    public int newMatch() {
+        return matches.incrementAndGet();
+    }
+
+    /**
+     * Publishes an event without blocking, safe to call from any thread
+     *
+     * @param match  number of the match
+     * @param tick   tick the event happened on
+     * @param type   kind of event, such as <code>CAPTURE</code>
+     * @param player id of the player the event happened to
+     * @param other  id of the other player involved, or 0
+     * @param x      x coordinate of the player
+     * @param y      y coordinate of the player
+     * @param value  tiles lost by a death or gained by a capture
+     * @return false if the event was dropped because the writer is behind
+     */
+    public boolean publish(int match, long tick, byte type, int player, int other, int x, int y, int value) {
+        return ring.publish(match, tick, type, player, other, x, y, value);
+    }
+
+    /**
+     * @return number of events dropped because the writer was behind
+     */
+    public long getDropped() {
+        return ring.getDropped();
+    }
+
+    /**
+     * Runs on the writer thread until the log is closed
+     */
+    private void write() {
+        long firstEvent = 0;
+        while (true) {
+            boolean stopping = !running;
+            boolean wasEmpty = segment.size() == 0;
+            int count = ring.drain(segment, segment.remaining());
+            if (wasEmpty && count > 0)
+                firstEvent = System.nanoTime();
+            if (segment.remaining() == 0
+                    || segment.size() > 0 && (stopping || System.nanoTime() - firstEvent > FLUSH_NANOS))
+                writeSegment();
+            if (count == 0) {
+                if (stopping)
+                    return;
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    private void writeSegment() {
+        try {
+            segment.write(directory.resolve(String.format("%s%016x%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX)));
+            segmentNumber++;
+        } catch (IOException e) {
+            // Keeps going so the ring doesn't fill up, the first failure is thrown by close
+            if (failure == null)
+                failure = e;
+        }
+        segment.clear();
+    }
+
+    /**
+     * Writes the events published so far and stops the writer
+     *
+     * @throws IOException if a segment couldn't be written
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null)
+            throw failure;
+    }
+}
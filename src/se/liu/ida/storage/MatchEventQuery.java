@@ -0,0 +1,87 @@
+package se.liu.ida.storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Prints aggregate statistics of the matches in a MatchEventLog directory:
+ * deaths by cause and the tiles they cost, self inflicted deaths, and the
+ * number and size of captured areas. Segments are read one at a time, column
+ * by column.
+ */
+public class MatchEventQuery {
+    private static final String[] CAUSES = { "wall", "trail", "head on" };
+
+    /**
+     * Arguments are the log directory and optionally the number of a match to
+     * restrict the statistics to.
+     *
+     * @param args directory and optional match
+     * @throws IOException if a segment can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: MatchEventQuery <directory> [match]");
+            return;
+        }
+        Path directory = Paths.get(args[0]);
+        int onlyMatch = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+
+        List<Path> segments = MatchEventLog.segments(directory);
+        Set<Integer> matches = new HashSet<>();
+        long events = 0;
+        long[] deaths = new long[CAUSES.length];
+        long[] tilesLost = new long[CAUSES.length];
+        long selfKills = 0;
+        int[] captures = new int[1024];
+        int captureCount = 0;
+        long lastTick = 0;
+        for (Path file : segments) {
+            EventSegment segment = EventSegment.read(file);
+            for (int i = 0; i < segment.size(); i++) {
+                if (onlyMatch != 0 && segment.getMatch(i) != onlyMatch)
+                    continue;
+                events++;
+                matches.add(segment.getMatch(i));
+                lastTick = Math.max(lastTick, segment.getTick(i));
+                byte type = segment.getType(i);
+                if (type == MatchEventLog.CAPTURE) {
+                    if (captureCount == captures.length)
+                        captures = Arrays.copyOf(captures, captureCount * 2);
+                    captures[captureCount++] = segment.getValue(i);
+                } else if (type >= MatchEventLog.WALL_DEATH && type <= MatchEventLog.HEAD_ON_DEATH) {
+                    deaths[type - MatchEventLog.WALL_DEATH]++;
+                    tilesLost[type - MatchEventLog.WALL_DEATH] += segment.getValue(i);
+                    if (type == MatchEventLog.TRAIL_DEATH && segment.getOther(i) == segment.getPlayer(i))
+                        selfKills++;
+                }
+            }
+        }
+
+        System.out.printf("%d events from %d matches in %d segments, last tick %d%n", events, matches.size(),
+                segments.size(), lastTick);
+        long totalDeaths = Arrays.stream(deaths).sum();
+        System.out.printf("deaths: %d%n", totalDeaths);
+        for (int i = 0; i < CAUSES.length; i++)
+            System.out.printf("  %-8s %8d (%5.1f%%), %.1f tiles lost on average%n", CAUSES[i], deaths[i],
+                    totalDeaths == 0 ? 0 : 100.0 * deaths[i] / totalDeaths,
+                    deaths[i] == 0 ? 0 : (double) tilesLost[i] / deaths[i]);
+        System.out.printf("  %-8s %8d%n", "own trail", selfKills);
+
+        System.out.printf("captures: %d%n", captureCount);
+        if (captureCount > 0) {
+            Arrays.sort(captures, 0, captureCount);
+            long sum = 0;
+            for (int i = 0; i < captureCount; i++)
+                sum += captures[i];
+            System.out.printf("  tiles: mean %.1f, median %d, 90th percentile %d, 99th percentile %d, max %d%n",
+                    (double) sum / captureCount, captures[captureCount / 2], captures[captureCount * 9 / 10],
+                    captures[captureCount * 99 / 100], captures[captureCount - 1]);
+        }
+    }
+}